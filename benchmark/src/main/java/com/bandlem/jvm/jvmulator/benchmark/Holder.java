@@ -0,0 +1,15 @@
+/*
+ * Copyright (c) 2020, Alex Blewitt, Bandlem Ltd
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package com.bandlem.jvm.jvmulator.benchmark;
+// Target of the field access kernel; it has to be loadable by the emulator's
+// class loader, so it lives here rather than in the compiled source
+public class Holder {
+	public static int count;
+	public int value;
+}
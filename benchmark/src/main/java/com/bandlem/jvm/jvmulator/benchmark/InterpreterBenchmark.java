@@ -0,0 +1,241 @@
+/*
+ * Copyright (c) 2020, Alex Blewitt, Bandlem Ltd
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package com.bandlem.jvm.jvmulator.benchmark;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import com.bandlem.jvm.jvmulator.JVMThread;
+import com.bandlem.jvm.jvmulator.Slot;
+import com.bandlem.jvm.jvmulator.classfile.ClassPath;
+import com.bandlem.jvm.jvmulator.classfile.JavaClass;
+import com.bandlem.jvm.jvmulator.classfile.Member.Method;
+import com.bandlem.jvm.jvmulator.compiler.JavaC;
+import com.bandlem.jvm.jvmulator.compiler.SourceFile;
+// Runs small kernels through the interpreter; use -prof gc for allocation rates
+@BenchmarkMode(Mode.Throughput)
+@Fork(1)
+@Measurement(iterations = 5, time = 1)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@State(Scope.Thread)
+@Warmup(iterations = 5, time = 1)
+public class InterpreterBenchmark {
+	// The nested classes are emulated, so allocate creates objects on the
+	// emulated heap and dispatch calls through the vtables and inline caches
+	private static final String KERNELS = "" //
+			+ "public class Kernels {\n" //
+			+ "  static class Point {\n" //
+			+ "    final int x;\n" //
+			+ "    final int y;\n" //
+			+ "    Point(int x, int y) {\n" //
+			+ "      this.x = x;\n" //
+			+ "      this.y = y;\n" //
+			+ "    }\n" //
+			+ "  }\n" //
+			+ "  static abstract class Shape {\n" //
+			+ "    abstract int area();\n" //
+			+ "  }\n" //
+			+ "  static class Square extends Shape {\n" //
+			+ "    final int side;\n" //
+			+ "    Square(int side) {\n" //
+			+ "      this.side = side;\n" //
+			+ "    }\n" //
+			+ "    int area() {\n" //
+			+ "      return side * side;\n" //
+			+ "    }\n" //
+			+ "  }\n" //
+			+ "  static class Rectangle extends Shape {\n" //
+			+ "    final int width;\n" //
+			+ "    final int height;\n" //
+			+ "    Rectangle(int width, int height) {\n" //
+			+ "      this.width = width;\n" //
+			+ "      this.height = height;\n" //
+			+ "    }\n" //
+			+ "    int area() {\n" //
+			+ "      return width * height;\n" //
+			+ "    }\n" //
+			+ "  }\n" //
+			+ "  public static int allocate(int n) {\n" //
+			+ "    int total = 0;\n" //
+			+ "    for (int i = 0; i < n; i++) {\n" //
+			+ "      Point point = new Point(i, i + 1);\n" //
+			+ "      total += point.x * point.y;\n" //
+			+ "    }\n" //
+			+ "    return total;\n" //
+			+ "  }\n" //
+			+ "  public static int array(int[] array) {\n" //
+			+ "    for (int i = 0; i < array.length; i++) {\n" //
+			+ "      array[i] = i;\n" //
+			+ "    }\n" //
+			+ "    int sum = 0;\n" //
+			+ "    for (int i = 0; i < array.length; i++) {\n" //
+			+ "      sum += array[i];\n" //
+			+ "    }\n" //
+			+ "    return sum;\n" //
+			+ "  }\n" //
+			+ "  public static String build(int n) {\n" //
+			+ "    String s = \"\";\n" //
+			+ "    for (int i = 0; i < n; i++) {\n" //
+			+ "      s = s.concat(String.valueOf(i));\n" //
+			+ "    }\n" //
+			+ "    return s;\n" //
+			+ "  }\n" //
+			+ "  public static String concat(int n) {\n" //
+			+ "    String s = \"\";\n" //
+			+ "    for (int i = 0; i < n; i++) {\n" //
+			+ "      s = s + i;\n" //
+			+ "    }\n" //
+			+ "    return s;\n" //
+			+ "  }\n" //
+			+ "  public static int dispatch(int n) {\n" //
+			+ "    Shape square = new Square(3);\n" //
+			+ "    Shape rectangle = new Rectangle(2, 5);\n" //
+			+ "    int total = 0;\n" //
+			+ "    for (int i = 0; i < n; i++) {\n" //
+			+ "      total += ((i & 1) == 0 ? square : rectangle).area();\n" //
+			+ "    }\n" //
+			+ "    return total;\n" //
+			+ "  }\n" //
+			+ "  public static int fib(int n) {\n" //
+			+ "    return n < 2 ? n : fib(n - 1) + fib(n - 2);\n" //
+			+ "  }\n" //
+			+ "  public static int fields(com.bandlem.jvm.jvmulator.benchmark.Holder holder, int n) {\n" //
+			+ "    for (int i = 0; i < n; i++) {\n" //
+			+ "      holder.value += i;\n" //
+			+ "      com.bandlem.jvm.jvmulator.benchmark.Holder.count++;\n" //
+			+ "    }\n" //
+			+ "    return holder.value;\n" //
+			+ "  }\n" //
+			+ "  public static int loop(int n) {\n" //
+			+ "    int total = 0;\n" //
+			+ "    for (int i = 0; i < n; i++) {\n" //
+			+ "      total += i ^ (total << 1);\n" //
+			+ "    }\n" //
+			+ "    return total;\n" //
+			+ "  }\n" //
+			+ "}\n";
+	private static final String[] NESTED = {
+			"Point", "Rectangle", "Shape", "Square"
+	};
+	private Method allocate;
+	private Method array;
+	private Method build;
+	private byte[] bytes;
+	// Holds the class files of the nested classes for the thread's class path
+	private Path classes;
+	// Zero keeps the kernels in the interpreter, otherwise they are compiled once hot
+	@Param({
+			"0", "10000"
+	})
+	public int compileThreshold;
+	private Method concat;
+	private Method dispatch;
+	private int[] elements;
+	// The parse benchmarks do not depend on the engine
+	@Param({
+			"SWITCH", "THREADED", "REGISTER"
+	})
+	public JVMThread.Engine engine;
+	private Method fib;
+	private Method fields;
+	private Holder holder;
+	private JavaClass javaClass;
+	private Method loop;
+	private JVMThread thread;
+	@Benchmark
+	public Slot allocation() {
+		return thread.run(javaClass, allocate, Slot.of(1000));
+	}
+	@Benchmark
+	public Slot arrayFillSum() {
+		return thread.run(javaClass, array, Slot.of(elements));
+	}
+	@Benchmark
+	public Slot dynamicConcat() {
+		return thread.run(javaClass, concat, Slot.of(100));
+	}
+	@Benchmark
+	public Slot fieldAccess() {
+		return thread.run(javaClass, fields, Slot.of(holder), Slot.of(1000));
+	}
+	@Benchmark
+	public Slot integerLoop() {
+		return thread.run(javaClass, loop, Slot.of(1000));
+	}
+	@Benchmark
+	public JavaClass parse() {
+		return new JavaClass(new DataInputStream(new ByteArrayInputStream(bytes)));
+	}
+	// Only records offsets; entries and attributes are read when first used
+	@Benchmark
+	public JavaClass parseBuffer() {
+		return new JavaClass(ByteBuffer.wrap(bytes));
+	}
+	@Benchmark
+	public Slot recursiveFib() {
+		return thread.run(javaClass, fib, Slot.of(15));
+	}
+	@Setup
+	public void setup() throws IOException {
+		final JavaC javac = new JavaC();
+		if (!javac.compile(new SourceFile("Kernels", KERNELS))) {
+			throw new IllegalStateException("Cannot compile kernels: " + javac.getDiagnostics());
+		}
+		bytes = javac.getBytes("Kernels");
+		classes = Files.createTempDirectory("kernels");
+		for (final String nested : NESTED) {
+			Files.write(classes.resolve("Kernels$" + nested + ".class"), javac.getBytes("Kernels$" + nested));
+		}
+		javaClass = parse();
+		allocate = javaClass.getMethod("allocate");
+		array = javaClass.getMethod("array");
+		build = javaClass.getMethod("build");
+		concat = javaClass.getMethod("concat");
+		dispatch = javaClass.getMethod("dispatch");
+		fib = javaClass.getMethod("fib");
+		fields = javaClass.getMethod("fields");
+		loop = javaClass.getMethod("loop");
+		elements = new int[1000];
+		holder = new Holder();
+		thread = new JVMThread();
+		thread.setClassPath(new ClassPath(classes));
+		thread.setEngine(engine);
+		thread.setCompileThreshold(compileThreshold);
+	}
+	@Benchmark
+	public Slot stringBuilding() {
+		return thread.run(javaClass, build, Slot.of(100));
+	}
+	@TearDown
+	public void tearDown() throws IOException {
+		for (final String nested : NESTED) {
+			Files.delete(classes.resolve("Kernels$" + nested + ".class"));
+		}
+		Files.delete(classes);
+	}
+	@Benchmark
+	public Slot virtualDispatch() {
+		return thread.run(javaClass, dispatch, Slot.of(1000));
+	}
+}
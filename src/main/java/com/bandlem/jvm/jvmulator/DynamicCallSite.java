@@ -0,0 +1,167 @@
+/*
+ * Copyright (c) 2020, Alex Blewitt, Bandlem Ltd
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package com.bandlem.jvm.jvmulator;
+import java.lang.invoke.CallSite;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandleInfo;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.function.Predicate;
+import com.bandlem.jvm.jvmulator.classfile.Attribute.BootstrapMethods;
+import com.bandlem.jvm.jvmulator.classfile.ConstantPool;
+import com.bandlem.jvm.jvmulator.classfile.ConstantPool.ClassConstant;
+import com.bandlem.jvm.jvmulator.classfile.ConstantPool.DoubleConstant;
+import com.bandlem.jvm.jvmulator.classfile.ConstantPool.FloatConstant;
+import com.bandlem.jvm.jvmulator.classfile.ConstantPool.IntConstant;
+import com.bandlem.jvm.jvmulator.classfile.ConstantPool.InterfaceMethodRef;
+import com.bandlem.jvm.jvmulator.classfile.ConstantPool.InvokeDynamic;
+import com.bandlem.jvm.jvmulator.classfile.ConstantPool.Item;
+import com.bandlem.jvm.jvmulator.classfile.ConstantPool.LongConstant;
+import com.bandlem.jvm.jvmulator.classfile.ConstantPool.MethodRef;
+import com.bandlem.jvm.jvmulator.classfile.ConstantPool.NameAndType;
+import com.bandlem.jvm.jvmulator.classfile.ConstantPool.StringConstant;
+import com.bandlem.jvm.jvmulator.classfile.JavaClass;
+// An invokedynamic call site, linked by running its bootstrap method once and
+// then calling the target of the call site that it returned. Bootstrap methods
+// run on the host with a lookup in the host's copy of the calling class, so the
+// bodies of lambdas run on the host; emulated objects are passed as Object.
+// Classes that the host cannot load get the emulator's own lookup, which is
+// enough for string concatenation but not for lambdas or method references,
+// whose bootstraps need to find the body in the calling class.
+class DynamicCallSite {
+	private static final MethodHandles.Lookup LOOKUP = MethodHandles.lookup();
+	// The value of a static argument to a bootstrap method
+	static Object constant(final ConstantPool pool, final int index, final MethodHandles.Lookup lookup)
+			throws ReflectiveOperationException {
+		final Item item = pool.getItem(index);
+		final ClassLoader classLoader = lookup.lookupClass().getClassLoader();
+		if (item instanceof StringConstant) {
+			return pool.getString(((StringConstant) item).index);
+		} else if (item instanceof IntConstant) {
+			return ((IntConstant) item).value;
+		} else if (item instanceof LongConstant) {
+			return ((LongConstant) item).value;
+		} else if (item instanceof FloatConstant) {
+			return ((FloatConstant) item).value;
+		} else if (item instanceof DoubleConstant) {
+			return ((DoubleConstant) item).value;
+		} else if (item instanceof ClassConstant) {
+			return load(pool.getClassName(index), classLoader);
+		} else if (item instanceof ConstantPool.MethodType) {
+			return MethodType.fromMethodDescriptorString(
+					pool.getString(((ConstantPool.MethodType) item).descriptorIndex), classLoader);
+		} else if (item instanceof ConstantPool.MethodHandle) {
+			return handle(pool, (ConstantPool.MethodHandle) item, lookup);
+		}
+		throw new IllegalArgumentException("Unsupported bootstrap argument type " + item.type);
+	}
+	// The type of the call site, with emulated classes replaced by Object
+	private static MethodType erase(final String descriptor, final Predicate<String> emulated,
+			final ClassLoader classLoader) {
+		MethodType type = MethodType.fromMethodDescriptorString(descriptor, classLoader);
+		for (int i = 0; i < type.parameterCount(); i++) {
+			final Class<?> parameter = type.parameterType(i);
+			if (!parameter.isPrimitive() && emulated.test(parameter.getName().replace('.', '/'))) {
+				type = type.changeParameterType(i, Object.class);
+			}
+		}
+		return type;
+	}
+	private static MethodHandle handle(final ConstantPool pool, final ConstantPool.MethodHandle item,
+			final MethodHandles.Lookup lookup) throws ReflectiveOperationException {
+		final int kind = item.referenceKind;
+		if (kind < MethodHandleInfo.REF_invokeVirtual) {
+			throw new IllegalArgumentException("Unsupported method handle kind " + kind);
+		}
+		final Item reference = pool.getItem(item.referenceIndex);
+		final int classIndex;
+		final int nameAndTypeIndex;
+		if (reference instanceof MethodRef) {
+			classIndex = ((MethodRef) reference).classIndex;
+			nameAndTypeIndex = ((MethodRef) reference).nameAndTypeIndex;
+		} else {
+			classIndex = ((InterfaceMethodRef) reference).classIndex;
+			nameAndTypeIndex = ((InterfaceMethodRef) reference).nameAndTypeIndex;
+		}
+		final ClassLoader classLoader = lookup.lookupClass().getClassLoader();
+		final NameAndType nameAndType = (NameAndType) pool.getItem(nameAndTypeIndex);
+		final Class<?> owner = load(pool.getClassName(classIndex), classLoader);
+		final String name = pool.getString(nameAndType.nameIndex);
+		final MethodType type = MethodType.fromMethodDescriptorString(pool.getString(nameAndType.descriptorIndex),
+				classLoader);
+		switch (kind) {
+		case MethodHandleInfo.REF_invokeStatic:
+			return lookup.findStatic(owner, name, type);
+		case MethodHandleInfo.REF_invokeSpecial:
+			return lookup.findSpecial(owner, name, type, lookup.lookupClass());
+		case MethodHandleInfo.REF_newInvokeSpecial:
+			return lookup.findConstructor(owner, type);
+		default:
+			return lookup.findVirtual(owner, name, type);
+		}
+	}
+	// Runs the bootstrap method of the invokedynamic constant pool entry, with
+	// the emulated classes given by the predicate
+	static DynamicCallSite link(final JavaClass javaClass, final int index, final Predicate<String> emulated) {
+		final ConstantPool pool = javaClass.pool;
+		final InvokeDynamic item = (InvokeDynamic) pool.getItem(index);
+		final NameAndType nameAndType = (NameAndType) pool.getItem(item.nameAndTypeIndex);
+		final String name = pool.getString(nameAndType.nameIndex);
+		try {
+			final MethodHandles.Lookup lookup = lookup(javaClass.this_class);
+			final BootstrapMethods bootstraps = (BootstrapMethods) javaClass.getAttribute(BootstrapMethods.NAME);
+			final int[] arguments = bootstraps.arguments[item.bootstrapIndex];
+			final Object[] values = new Object[3 + arguments.length];
+			values[0] = lookup;
+			values[1] = name;
+			values[2] = erase(pool.getString(nameAndType.descriptorIndex), emulated,
+					lookup.lookupClass().getClassLoader());
+			for (int i = 0; i < arguments.length; i++) {
+				values[3 + i] = constant(pool, arguments[i], lookup);
+			}
+			final MethodHandle bootstrap = (MethodHandle) constant(pool, bootstraps.handles[item.bootstrapIndex],
+					lookup);
+			final CallSite site = (CallSite) bootstrap.invokeWithArguments(values);
+			return new DynamicCallSite(ResolvedMethod.adapt(site.dynamicInvoker()));
+		} catch (final Throwable e) {
+			throw new UnsupportedOperationException("Cannot link invokedynamic " + name, e);
+		}
+	}
+	private static Class<?> load(final String className, final ClassLoader classLoader)
+			throws ClassNotFoundException {
+		return Class.forName(className.replace('/', '.'), false, classLoader);
+	}
+	// A lookup with the access of the calling class, or the emulator's own if the
+	// host cannot load the class, which is enough for bootstraps such as string
+	// concatenation that do not look up members of the calling class
+	private static MethodHandles.Lookup lookup(final String className) throws IllegalAccessException {
+		final Class<?> host;
+		try {
+			host = load(className, DynamicCallSite.class.getClassLoader());
+		} catch (final ClassNotFoundException e) {
+			return LOOKUP;
+		}
+		return MethodHandles.privateLookupIn(host, LOOKUP);
+	}
+	private final MethodHandle invoker;
+	DynamicCallSite(final MethodHandle invoker) {
+		this.invoker = invoker;
+	}
+	// Pops the arguments and pushes any result, with exceptions thrown as they
+	// are, checked or not, as they would be from the emulated code, whose
+	// handlers can catch them
+	@SuppressWarnings("unchecked")
+	<T extends Throwable> void invoke(final Stack stack) throws T {
+		try {
+			invoker.invokeExact(stack);
+		} catch (final Throwable e) {
+			throw (T) JVMFrame.raise(e);
+		}
+	}
+}
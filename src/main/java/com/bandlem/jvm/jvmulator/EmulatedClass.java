@@ -0,0 +1,196 @@
+/*
+ * Copyright (c) 2020, Alex Blewitt, Bandlem Ltd
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package com.bandlem.jvm.jvmulator;
+import java.lang.ref.WeakReference;
+import java.lang.reflect.Modifier;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+import com.bandlem.jvm.jvmulator.classfile.JavaClass;
+import com.bandlem.jvm.jvmulator.classfile.Member.Field;
+import com.bandlem.jvm.jvmulator.classfile.Member.Method;
+import com.bandlem.jvm.jvmulator.classfile.MemberKey;
+// A class whose instances live on the emulated heap. Its instance fields are
+// laid out after those of its superclass, with primitives numbered from zero
+// in an object's primitives array and references in its references array, so
+// that an object is two flat arrays however many fields it has. Only classes
+// whose superclasses are all emulated up to java.lang.Object can be laid out.
+// Classes are shared by every thread that runs the same class file, so that
+// the caches of call sites and member references see one class for each.
+class EmulatedClass {
+	// An index found in the layout of a class, which holds for its subclasses
+	// too, replaced as a whole so that threads resolving it at once agree
+	static final class Indexed {
+		final int index;
+		final EmulatedClass layout;
+		Indexed(final EmulatedClass layout, final int index) {
+			this.layout = layout;
+			this.index = index;
+		}
+	}
+	// The classes laid out from each class file, held for as long as a thread uses them
+	private static final Map<JavaClass, WeakReference<EmulatedClass>> CLASSES = new WeakHashMap<>();
+	static final String OBJECT = "java/lang/Object";
+	// The class laid out from the class file, shared with the threads that have
+	// laid it out before unless their superclass came from another class file
+	static EmulatedClass of(final JavaClass javaClass, final EmulatedClass superclass,
+			final Function<String, JavaClass> interfaces) {
+		synchronized (CLASSES) {
+			final WeakReference<EmulatedClass> shared = CLASSES.get(javaClass);
+			EmulatedClass type = shared == null ? null : shared.get();
+			if (type == null || type.superclass != superclass) {
+				type = new EmulatedClass(javaClass, superclass, interfaces);
+				CLASSES.put(javaClass, new WeakReference<>(type));
+			}
+			return type;
+		}
+	}
+	// The emulated superclasses from the top down, ending with this class, so
+	// that the superclass at any depth is found without walking the hierarchy
+	private final EmulatedClass[] display;
+	// The index of each instance field, including inherited ones, as the index
+	// into the primitives or the complement of the index into the references
+	private final Map<MemberKey, Integer> fields;
+	final JavaClass javaClass;
+	// Methods found by key for calls on instances, either emulated or the
+	// host's, which serves as the interface table
+	private final Map<MemberKey, Object> methods = new ConcurrentHashMap<>();
+	final String name;
+	final int primitives;
+	final int references;
+	// The emulated superclass, or null for java.lang.Object
+	final EmulatedClass superclass;
+	// The names of this class, its superclasses and all of their interfaces,
+	// including those that the interfaces extend
+	private final Set<String> supertypes;
+	// The index of each overridable method in the vtable, including inherited ones
+	private final Map<MemberKey, Integer> virtuals;
+	// The overridable methods, with those of the superclass at the same indexes
+	// and overridden by any that this class declares, followed by its own
+	final Object[] vtable;
+	// The class files of interfaces are found by name, with null for those
+	// that are left to the host
+	EmulatedClass(final JavaClass javaClass, final EmulatedClass superclass,
+			final Function<String, JavaClass> interfaces) {
+		this.javaClass = javaClass;
+		this.name = javaClass.this_class;
+		this.superclass = superclass;
+		supertypes = superclass == null ? new HashSet<>() : new HashSet<>(superclass.supertypes);
+		supertypes.add(name);
+		for (final String implemented : javaClass.interfaces) {
+			addInterface(implemented, interfaces);
+		}
+		display = superclass == null ? new EmulatedClass[1]
+				: Arrays.copyOf(superclass.display, superclass.display.length + 1);
+		display[display.length - 1] = this;
+		fields = superclass == null ? new HashMap<>() : new HashMap<>(superclass.fields);
+		int primitives = superclass == null ? 0 : superclass.primitives;
+		int references = superclass == null ? 0 : superclass.references;
+		for (final Field field : javaClass.fields) {
+			if ((field.flags & Modifier.STATIC) == 0) {
+				final boolean reference = TypeInference.type(field.descriptor.charAt(0)) == Slot.REFERENCE_TYPE;
+				fields.put(field.getKey(), reference ? ~references++ : primitives++);
+			}
+		}
+		this.primitives = primitives;
+		this.references = references;
+		virtuals = superclass == null ? new HashMap<>() : new HashMap<>(superclass.virtuals);
+		int size = superclass == null ? 0 : superclass.vtable.length;
+		final Object[] vtable = superclass == null ? new Object[javaClass.methods.length]
+				: Arrays.copyOf(superclass.vtable, size + javaClass.methods.length);
+		for (final Method method : javaClass.methods) {
+			if ((method.flags & (Modifier.STATIC | Modifier.PRIVATE)) == 0 && !method.name.equals("<init>")) {
+				final Integer index = virtuals.get(method.getKey());
+				if (index == null) {
+					virtuals.put(method.getKey(), size);
+					vtable[size++] = new EmulatedMethod(javaClass, method);
+				} else {
+					vtable[index] = new EmulatedMethod(javaClass, method);
+				}
+			}
+		}
+		this.vtable = Arrays.copyOf(vtable, size);
+	}
+	// Adds the interface and those that it extends, from its class file or the
+	// host's class, ignoring interfaces that neither can find
+	private void addInterface(final String interfaceName, final Function<String, JavaClass> interfaces) {
+		if (!supertypes.add(interfaceName)) {
+			return;
+		}
+		final JavaClass emulated = interfaces.apply(interfaceName);
+		if (emulated != null) {
+			for (final String extended : emulated.interfaces) {
+				addInterface(extended, interfaces);
+			}
+			return;
+		}
+		try {
+			final Class<?> host = Class.forName(interfaceName.replace('/', '.'), false,
+					EmulatedClass.class.getClassLoader());
+			for (final Class<?> extended : host.getInterfaces()) {
+				addInterface(extended.getName().replace('.', '/'), interfaces);
+			}
+		} catch (final ClassNotFoundException e) {
+			// Only instanceof the interface itself can be answered
+		}
+	}
+	// Finds the nearest method in this class or its superclasses, which a valid
+	// class file ensures is not abstract, falling back to those of
+	// java.lang.Object, which the host runs on the emulated object itself
+	private Object find(final MemberKey key) {
+		for (EmulatedClass type = this; type != null; type = type.superclass) {
+			final Method method = type.javaClass.getMethod(key);
+			if (method != null) {
+				return new EmulatedMethod(type.javaClass, method);
+			}
+		}
+		return ResolvedMethod.resolve(key.name, key.descriptor, OBJECT, JVMFrame.class.getClassLoader());
+	}
+	// The index of an instance field, as the index into the primitives or the
+	// complement of the index into the references
+	int getField(final MemberKey key) {
+		final Integer index = fields.get(key);
+		if (index == null) {
+			throw new NoSuchFieldError(name + ":" + key);
+		}
+		return index;
+	}
+	// The method run by a call on an instance of this class
+	Object getMethod(final MemberKey key) {
+		return methods.computeIfAbsent(key, this::find);
+	}
+	// The named class, which is this class or one of its emulated superclasses
+	EmulatedClass getSuperclass(final String className) {
+		for (EmulatedClass type = this; type != null; type = type.superclass) {
+			if (type.name.equals(className)) {
+				return type;
+			}
+		}
+		throw new IncompatibleClassChangeError(name + " is not a subclass of " + className);
+	}
+	// The vtable index of an overridable method, or -1 if there is none
+	int getVirtual(final MemberKey key) {
+		final Integer index = virtuals.get(key);
+		return index == null ? -1 : index;
+	}
+	// Whether instances are also instances of the named class or interface
+	boolean isInstance(final String className) {
+		return className.equals(OBJECT) || supertypes.contains(className);
+	}
+	// Whether this is the given class or a subclass of it, in constant time
+	boolean isSubclassOf(final EmulatedClass type) {
+		final int depth = type == null ? display.length : type.display.length - 1;
+		return depth < display.length && display[depth] == type;
+	}
+}
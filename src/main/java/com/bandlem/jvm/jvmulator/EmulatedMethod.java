@@ -0,0 +1,32 @@
+/*
+ * Copyright (c) 2020, Alex Blewitt, Bandlem Ltd
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package com.bandlem.jvm.jvmulator;
+import java.lang.reflect.Modifier;
+import com.bandlem.jvm.jvmulator.classfile.Attribute.Code;
+import com.bandlem.jvm.jvmulator.classfile.JavaClass;
+import com.bandlem.jvm.jvmulator.classfile.Member.Method;
+class EmulatedMethod {
+	final Code code;
+	final JavaClass javaClass;
+	final Method method;
+	final String name;
+	final int slots;
+	EmulatedMethod(final JavaClass javaClass, final Method method) {
+		this.code = method.getCodeAttribute();
+		this.javaClass = javaClass;
+		this.method = method;
+		this.name = method.name;
+		// Instance methods take the receiver as well as their arguments
+		this.slots = method.getMethodDescriptor().slots + ((method.flags & Modifier.STATIC) == 0 ? 1 : 0);
+	}
+	@Override
+	public String toString() {
+		return javaClass.this_class + ":" + name;
+	}
+}
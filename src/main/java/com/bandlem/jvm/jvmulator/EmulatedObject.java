@@ -0,0 +1,44 @@
+/*
+ * Copyright (c) 2020, Alex Blewitt, Bandlem Ltd
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package com.bandlem.jvm.jvmulator;
+// An instance of an emulated class, with its fields held in flat arrays laid
+// out by the class. Primitives are held as they are on the stack, with floats
+// and doubles as their raw bits, and are narrowed as they are stored.
+class EmulatedObject {
+	final long[] primitives;
+	final Object[] references;
+	final EmulatedClass type;
+	EmulatedObject(final EmulatedClass type) {
+		this.type = type;
+		this.primitives = new long[type.primitives];
+		this.references = new Object[type.references];
+	}
+	// Pushes the value of a field, found by the index the reference has resolved
+	void get(final FieldReference field, final Stack stack) {
+		final int index = field.index(type);
+		if (index < 0) {
+			stack.push(references[~index]);
+		} else {
+			stack.push(field.type, primitives[index], null);
+		}
+	}
+	// Pops the value of a field from the stack, which must have the field's type
+	void put(final FieldReference field, final Stack stack) {
+		final int index = field.index(type);
+		if (index < 0) {
+			references[~index] = stack.popReference();
+		} else {
+			primitives[index] = field.narrow(stack.popBits(field.type));
+		}
+	}
+	@Override
+	public String toString() {
+		return type.name.replace('/', '.') + "@" + Integer.toHexString(hashCode());
+	}
+}
@@ -0,0 +1,86 @@
+/*
+ * Copyright (c) 2020, Alex Blewitt, Bandlem Ltd
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package com.bandlem.jvm.jvmulator;
+import java.util.Arrays;
+import com.bandlem.jvm.jvmulator.classfile.ConstantPool;
+// A method's exception table compiled into an interval index. The instructions
+// are split into segments at every start and end of a protected range, and
+// each segment lists the handlers that cover it in table order, so finding the
+// handler for an instruction is a binary search for its segment followed by a
+// check of the few handlers there. Ranges and handlers are instruction
+// indexes, and catch types are resolved to host classes on first use. Emulated
+// classes cannot extend Throwable, so those that the host cannot load catch nothing.
+class ExceptionTable {
+	// The first instruction of each segment, with the end of the last one
+	private final int[] bounds;
+	// Catch types as constant pool indexes, or zero to catch everything
+	private final int[] catchTypes;
+	// The handlers covering segment k, as entries from firsts[k] up to firsts[k + 1]
+	private final int[] entries;
+	private final int[] firsts;
+	private final int[] handlers;
+	private final Class<?>[] types;
+	ExceptionTable(final int[] starts, final int[] ends, final int[] handlers, final int[] catchTypes) {
+		this.handlers = handlers;
+		this.catchTypes = catchTypes;
+		this.types = new Class<?>[handlers.length];
+		final int[] points = Arrays.copyOf(starts, starts.length * 2);
+		System.arraycopy(ends, 0, points, starts.length, ends.length);
+		Arrays.sort(points);
+		int count = 0;
+		for (final int point : points) {
+			if (count == 0 || points[count - 1] != point) {
+				points[count++] = point;
+			}
+		}
+		bounds = Arrays.copyOf(points, count);
+		firsts = new int[count];
+		int[] entries = new int[handlers.length];
+		int size = 0;
+		for (int k = 0; k + 1 < count; k++) {
+			firsts[k] = size;
+			for (int e = 0; e < handlers.length; e++) {
+				if (starts[e] <= bounds[k] && bounds[k] < ends[e]) {
+					if (size == entries.length) {
+						entries = Arrays.copyOf(entries, size * 2);
+					}
+					entries[size++] = e;
+				}
+			}
+		}
+		firsts[count - 1] = size;
+		this.entries = entries;
+	}
+	// Returns the handler for an exception thrown by the instruction, or -1 if
+	// it is not caught in this method
+	int find(final int instruction, final Throwable thrown, final ConstantPool pool) {
+		final int k = Arrays.binarySearch(bounds, instruction);
+		final int segment = k >= 0 ? k : -k - 2;
+		if (segment < 0 || segment + 1 >= bounds.length) {
+			return -1;
+		}
+		for (int i = firsts[segment]; i < firsts[segment + 1]; i++) {
+			final int e = entries[i];
+			if (catchTypes[e] == 0) {
+				return handlers[e];
+			}
+			if (types[e] == null) {
+				types[e] = JVMFrame.resolveClass(pool, catchTypes[e]);
+			}
+			if (types[e].isInstance(thrown)) {
+				return handlers[e];
+			}
+		}
+		return -1;
+	}
+	// Whether a protected range starts or ends at the instruction
+	boolean isBoundary(final int instruction) {
+		return Arrays.binarySearch(bounds, instruction) >= 0;
+	}
+}
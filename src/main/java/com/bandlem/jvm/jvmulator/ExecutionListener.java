@@ -0,0 +1,15 @@
+/*
+ * Copyright (c) 2020, Alex Blewitt, Bandlem Ltd
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package com.bandlem.jvm.jvmulator;
+import com.bandlem.jvm.jvmulator.classfile.MemberKey;
+// Notified after each instruction when running with -Djvmulator.profile=true.
+// Methods are identified by name and descriptor, so overloads are kept apart.
+public interface ExecutionListener {
+	void executed(String className, MemberKey method, int offset, byte opcode, long nanos);
+}
@@ -0,0 +1,77 @@
+/*
+ * Copyright (c) 2020, Alex Blewitt, Bandlem Ltd
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package com.bandlem.jvm.jvmulator;
+import com.bandlem.jvm.jvmulator.classfile.ConstantPool;
+import com.bandlem.jvm.jvmulator.classfile.ConstantPool.FieldRef;
+import com.bandlem.jvm.jvmulator.classfile.ConstantPool.NameAndType;
+import com.bandlem.jvm.jvmulator.classfile.MemberKey;
+// A field named by the constant pool, which is found in the layout of an
+// emulated object or resolved to the host's field on first use with a host
+// object, as the same code can see both. Subclasses lay out their fields after
+// those of their superclass, so the index found in the named class's layout
+// holds for every object the reference is used with, and is resolved once.
+class FieldReference {
+	static FieldReference resolve(final ConstantPool pool, final int index) {
+		final FieldRef fieldRef = (FieldRef) pool.getItem(index);
+		final NameAndType nat = (NameAndType) pool.getItem(fieldRef.nameAndTypeIndex);
+		final String fieldName = pool.getString(nat.nameIndex);
+		final String descriptor = pool.getString(nat.descriptorIndex);
+		return new FieldReference(pool.getClassName(fieldRef.classIndex), MemberKey.of(fieldName, descriptor));
+	}
+	private final String className;
+	private ResolvedField host;
+	// The emulated class named by the reference, once resolved, with the index
+	// of the field in objects of that class and its subclasses
+	private EmulatedClass.Indexed indexed;
+	final MemberKey key;
+	// The descriptor's first character, such as B for byte
+	private final char kind;
+	// The slots taken by the field's value on the stack
+	final int slots;
+	final byte type;
+	FieldReference(final String className, final MemberKey key) {
+		this.className = className;
+		this.key = key;
+		this.kind = key.descriptor.charAt(0);
+		this.type = TypeInference.type(kind);
+		this.slots = Slot.isWide(type) ? 2 : 1;
+	}
+	ResolvedField host() {
+		if (host == null) {
+			host = ResolvedField.resolve(className, key.name, key.descriptor);
+		}
+		return host;
+	}
+	// The index of the field in an object of the class, resolved from the
+	// superclass named by the reference the first time it is used
+	int index(final EmulatedClass type) {
+		EmulatedClass.Indexed indexed = this.indexed;
+		if (indexed == null || !type.isSubclassOf(indexed.layout)) {
+			final EmulatedClass layout = type.getSuperclass(className);
+			indexed = new EmulatedClass.Indexed(layout, layout.getField(key));
+			this.indexed = indexed;
+		}
+		return indexed.index;
+	}
+	// Narrows an int to the field's type, as putfield does
+	long narrow(final long bits) {
+		switch (kind) {
+		case 'Z':
+			return bits & 1;
+		case 'B':
+			return (byte) bits;
+		case 'C':
+			return (char) bits;
+		case 'S':
+			return (short) bits;
+		default:
+			return bits;
+		}
+	}
+}
@@ -0,0 +1,42 @@
+/*
+ * Copyright (c) 2020, Alex Blewitt, Bandlem Ltd
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package com.bandlem.jvm.jvmulator;
+import java.util.Arrays;
+// The methods that a call site has found for the emulated classes of its
+// receivers. Most call sites only ever see one class, which is checked first,
+// and a few see a handful; once more than LIMIT classes have been seen the site
+// is megamorphic, and further classes are dispatched through their tables.
+// Threads running the same site share its classes, as emulated classes are
+// shared, and see the entries replaced as a whole when a class is added.
+class InlineCache {
+	private static final Object[] EMPTY = {};
+	static final int LIMIT = 4;
+	// Each class followed by the method found for it
+	private volatile Object[] entries = EMPTY;
+	Object find(final EmulatedClass type, final MethodReference reference) {
+		final Object[] entries = this.entries;
+		for (int i = 0; i < entries.length; i += 2) {
+			if (entries[i] == type) {
+				return entries[i + 1];
+			}
+		}
+		final Object method = reference.dispatch(type);
+		if (entries.length < 2 * LIMIT) {
+			final Object[] added = Arrays.copyOf(entries, entries.length + 2);
+			added[entries.length] = type;
+			added[entries.length + 1] = method;
+			this.entries = added;
+		}
+		return method;
+	}
+	// The number of classes cached
+	int size() {
+		return entries.length / 2;
+	}
+}
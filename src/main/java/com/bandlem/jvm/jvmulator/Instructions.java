@@ -0,0 +1,299 @@
+/*
+ * Copyright (c) 2020, Alex Blewitt, Bandlem Ltd
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package com.bandlem.jvm.jvmulator;
+import java.lang.invoke.MethodHandle;
+import java.util.Arrays;
+import com.bandlem.jvm.jvmulator.classfile.Attribute.Code;
+import com.bandlem.jvm.jvmulator.classfile.ConstantPool;
+import com.bandlem.jvm.jvmulator.classfile.Member.Method;
+public class Instructions {
+	private static ExceptionTable exceptions(final int[] table, final int[] indexes, final int count) {
+		final int length = table.length / 4;
+		final int[] starts = new int[length];
+		final int[] ends = new int[length];
+		final int[] handlers = new int[length];
+		final int[] catchTypes = new int[length];
+		for (int e = 0; e < length; e++) {
+			starts[e] = index(indexes, table[e * 4], -1);
+			ends[e] = index(indexes, table[e * 4 + 1], count);
+			handlers[e] = index(indexes, table[e * 4 + 2], -1);
+			catchTypes[e] = table[e * 4 + 3];
+		}
+		return new ExceptionTable(starts, ends, handlers, catchTypes);
+	}
+	// The instruction at a bytecode offset, or the given end if the offset is
+	// the end of the code, as the end of a protected range can be
+	private static int index(final int[] indexes, final int offset, final int end) {
+		if (offset < indexes.length && indexes[offset] >= 0) {
+			return indexes[offset];
+		} else if (offset == indexes.length && end >= 0) {
+			return end;
+		}
+		throw new IllegalArgumentException("Invalid exception table offset " + offset);
+	}
+	public static Instructions of(final Code code) {
+		return code.getDecoded(c -> new Instructions(c.getBytecode(), c.getExceptionTable()));
+	}
+	private static int s1(final byte[] bytecode, final int offset) {
+		return bytecode[offset];
+	}
+	private static int s2(final byte[] bytecode, final int offset) {
+		return bytecode[offset] << 8 | bytecode[offset + 1] & 0xff;
+	}
+	private static int s4(final byte[] bytecode, final int offset) {
+		return s2(bytecode, offset) << 16 | s2(bytecode, offset + 2) & 0xffff;
+	}
+	private static int size(final byte[] bytecode, final int offset) {
+		final byte opcode = bytecode[offset];
+		switch (opcode) {
+		case Opcodes.WIDE:
+			return bytecode[offset + 1] == Opcodes.IINC ? 6 : 4;
+		case Opcodes.TABLESWITCH: {
+			// Operands are aligned to four bytes from the start of the code
+			final int table = (offset + 4) & ~3;
+			final long count = (long) s4(bytecode, table + 8) - s4(bytecode, table + 4) + 1;
+			if (count < 1 || table + 12 + 4 * count > bytecode.length) {
+				throw new IllegalArgumentException("Invalid tableswitch at " + offset);
+			}
+			return table - offset + 12 + 4 * (int) count;
+		}
+		case Opcodes.LOOKUPSWITCH: {
+			final int table = (offset + 4) & ~3;
+			final long count = s4(bytecode, table + 4);
+			if (count < 0 || table + 8 + 8 * count > bytecode.length) {
+				throw new IllegalArgumentException("Invalid lookupswitch at " + offset);
+			}
+			return table - offset + 8 + 8 * (int) count;
+		}
+		default:
+			return 1 + Opcodes.operands(opcode);
+		}
+	}
+	private static int target(final int[] indexes, final int offset, final int delta) {
+		final int target = offset + delta;
+		if (target < 0 || target >= indexes.length || indexes[target] < 0) {
+			throw new IllegalArgumentException("Invalid branch target " + target + " at " + offset);
+		}
+		return indexes[target];
+	}
+	private static int u1(final byte[] bytecode, final int offset) {
+		return bytecode[offset] & 0xff;
+	}
+	private static int u2(final byte[] bytecode, final int offset) {
+		return s2(bytecode, offset) & 0xffff;
+	}
+	// The inline caches of virtual and interface calls by instruction, created
+	// with the instructions so that threads running them share them, or null if
+	// the method has none
+	private final InlineCache[] caches;
+	// The linked call sites of invokedynamic instructions by instruction, or
+	// null if the method has none
+	final DynamicCallSite[] callSites;
+	// The method compiled to a host class once hot, taking its arguments from
+	// and leaving its result on a stack
+	MethodHandle compiled;
+	// The exception handlers of the method, or null if it has none
+	final ExceptionTable exceptions;
+	// Instructions are held by index rather than by bytecode offset, with
+	// operands decoded and branch targets resolved to instruction indexes.
+	// The extras hold a second operand, such as the increment for iinc.
+	final int[] extras;
+	// Compiled for the threaded engine on first use
+	private Threaded.Handler[] handlers;
+	// Invocations and loop back-edges, counted towards compiling the method
+	int heat;
+	private final int[] offsets;
+	final byte[] opcodes;
+	final int[] operands;
+	// Translated for the register engine on first use, or null if it cannot be
+	private RegisterCode registerCode;
+	private boolean translated;
+	// The jump tables of switch instructions by instruction, or null if the
+	// method has none
+	final SwitchTable[] switches;
+	// Set when the method cannot be compiled, so that it is not tried again
+	boolean uncompilable;
+	public Instructions(final byte[] bytecode) {
+		this(bytecode, new int[0]);
+	}
+	// Decodes the bytecode along with its exception table, given as the start,
+	// end, handler and catch type of each handler in turn
+	Instructions(final byte[] bytecode, final int[] exceptionTable) {
+		final int[] indexes = new int[bytecode.length];
+		Arrays.fill(indexes, -1);
+		int count = 0;
+		int offset = 0;
+		boolean calling = false;
+		boolean dynamic = false;
+		boolean switching = false;
+		while (offset < bytecode.length) {
+			indexes[offset] = count++;
+			calling |= bytecode[offset] == Opcodes.INVOKEVIRTUAL || bytecode[offset] == Opcodes.INVOKEINTERFACE;
+			dynamic |= bytecode[offset] == Opcodes.INVOKEDYNAMIC;
+			switching |= bytecode[offset] == Opcodes.TABLESWITCH || bytecode[offset] == Opcodes.LOOKUPSWITCH;
+			offset += size(bytecode, offset);
+		}
+		if (offset != bytecode.length) {
+			throw new IllegalArgumentException("Truncated instruction at end of bytecode");
+		}
+		caches = calling ? new InlineCache[count] : null;
+		callSites = dynamic ? new DynamicCallSite[count] : null;
+		extras = new int[count];
+		offsets = new int[count + 1];
+		opcodes = new byte[count];
+		operands = new int[count];
+		switches = switching ? new SwitchTable[count] : null;
+		offset = 0;
+		for (int i = 0; i < count; i++) {
+			offsets[i] = offset;
+			offset += decode(bytecode, offset, i, indexes);
+			if (opcodes[i] == Opcodes.INVOKEVIRTUAL || opcodes[i] == Opcodes.INVOKEINTERFACE) {
+				caches[i] = new InlineCache();
+			}
+		}
+		offsets[count] = offset;
+		exceptions = exceptionTable.length == 0 ? null : exceptions(exceptionTable, indexes, count);
+	}
+	private int decode(final byte[] bytecode, final int offset, final int i, final int[] indexes) {
+		final byte opcode = bytecode[offset];
+		opcodes[i] = opcode;
+		switch (opcode) {
+		case Opcodes.BIPUSH:
+			operands[i] = s1(bytecode, offset + 1);
+			break;
+		case Opcodes.ALOAD:
+		case Opcodes.ASTORE:
+		case Opcodes.DLOAD:
+		case Opcodes.DSTORE:
+		case Opcodes.FLOAD:
+		case Opcodes.FSTORE:
+		case Opcodes.ILOAD:
+		case Opcodes.ISTORE:
+		case Opcodes.LDC:
+		case Opcodes.LLOAD:
+		case Opcodes.LSTORE:
+		case Opcodes.NEWARRAY:
+		case Opcodes.RET:
+			operands[i] = u1(bytecode, offset + 1);
+			break;
+		case Opcodes.SIPUSH:
+			operands[i] = s2(bytecode, offset + 1);
+			break;
+		case Opcodes.ANEWARRAY:
+		case Opcodes.CHECKCAST:
+		case Opcodes.GETFIELD:
+		case Opcodes.GETSTATIC:
+		case Opcodes.INSTANCEOF:
+		case Opcodes.INVOKEDYNAMIC:
+		case Opcodes.INVOKESPECIAL:
+		case Opcodes.INVOKESTATIC:
+		case Opcodes.INVOKEVIRTUAL:
+		case Opcodes.LDC_W:
+		case Opcodes.LDC2_W:
+		case Opcodes.NEW:
+		case Opcodes.PUTFIELD:
+		case Opcodes.PUTSTATIC:
+			operands[i] = u2(bytecode, offset + 1);
+			break;
+		case Opcodes.INVOKEINTERFACE:
+		case Opcodes.MULTIANEWARRAY:
+			operands[i] = u2(bytecode, offset + 1);
+			extras[i] = u1(bytecode, offset + 3);
+			break;
+		case Opcodes.IINC:
+			operands[i] = u1(bytecode, offset + 1);
+			extras[i] = s1(bytecode, offset + 2);
+			break;
+		case Opcodes.GOTO:
+		case Opcodes.IF_ACMPEQ:
+		case Opcodes.IF_ACMPNE:
+		case Opcodes.IF_ICMPEQ:
+		case Opcodes.IF_ICMPGE:
+		case Opcodes.IF_ICMPGT:
+		case Opcodes.IF_ICMPLE:
+		case Opcodes.IF_ICMPLT:
+		case Opcodes.IF_ICMPNE:
+		case Opcodes.IFEQ:
+		case Opcodes.IFGE:
+		case Opcodes.IFGT:
+		case Opcodes.IFLE:
+		case Opcodes.IFLT:
+		case Opcodes.IFNE:
+		case Opcodes.IFNONNULL:
+		case Opcodes.IFNULL:
+		case Opcodes.JSR:
+			operands[i] = target(indexes, offset, s2(bytecode, offset + 1));
+			break;
+		case Opcodes.GOTO_W:
+		case Opcodes.JSR_W:
+			operands[i] = target(indexes, offset, s4(bytecode, offset + 1));
+			break;
+		case Opcodes.TABLESWITCH: {
+			final int table = (offset + 4) & ~3;
+			final int low = s4(bytecode, table + 4);
+			final int[] targets = new int[s4(bytecode, table + 8) - low + 1];
+			for (int k = 0; k < targets.length; k++) {
+				targets[k] = target(indexes, offset, s4(bytecode, table + 12 + 4 * k));
+			}
+			switches[i] = new SwitchTable(low, null, targets, target(indexes, offset, s4(bytecode, table)));
+			break;
+		}
+		case Opcodes.LOOKUPSWITCH: {
+			final int table = (offset + 4) & ~3;
+			final int[] keys = new int[s4(bytecode, table + 4)];
+			final int[] targets = new int[keys.length];
+			for (int k = 0; k < keys.length; k++) {
+				keys[k] = s4(bytecode, table + 8 + 8 * k);
+				if (k > 0 && keys[k] <= keys[k - 1]) {
+					throw new IllegalArgumentException("Unsorted lookupswitch keys at " + offset);
+				}
+				targets[k] = target(indexes, offset, s4(bytecode, table + 12 + 8 * k));
+			}
+			switches[i] = new SwitchTable(0, keys, targets, target(indexes, offset, s4(bytecode, table)));
+			break;
+		}
+		case Opcodes.WIDE:
+			// Decoded as the modified instruction with a wider operand
+			opcodes[i] = bytecode[offset + 1];
+			operands[i] = u2(bytecode, offset + 2);
+			if (opcodes[i] == Opcodes.IINC) {
+				extras[i] = s2(bytecode, offset + 4);
+			}
+			break;
+		default:
+			break;
+		}
+		return size(bytecode, offset);
+	}
+	InlineCache getCache(final int instruction) {
+		return caches[instruction];
+	}
+	Threaded.Handler[] getHandlers() {
+		if (handlers == null) {
+			handlers = Threaded.compile(this);
+		}
+		return handlers;
+	}
+	RegisterCode getRegisterCode(final ConstantPool pool, final int locals, final Method method) {
+		if (!translated) {
+			registerCode = RegisterCode.translate(this, pool, locals, method);
+			translated = true;
+		}
+		return registerCode;
+	}
+	public int offset(final int index) {
+		return offsets[index];
+	}
+	public byte opcode(final int index) {
+		return opcodes[index];
+	}
+	public int size() {
+		return opcodes.length;
+	}
+}
@@ -7,182 +7,352 @@
  * http://www.eclipse.org/legal/epl-v10.html
  */
 package com.bandlem.jvm.jvmulator;
-import java.lang.reflect.Field;
-import java.lang.reflect.Method;
+import java.lang.reflect.Array;
 import java.lang.reflect.Modifier;
+import com.bandlem.jvm.jvmulator.classfile.Attribute.Code;
 import com.bandlem.jvm.jvmulator.classfile.ConstantPool;
 import com.bandlem.jvm.jvmulator.classfile.ConstantPool.DoubleConstant;
-import com.bandlem.jvm.jvmulator.classfile.ConstantPool.FieldRef;
 import com.bandlem.jvm.jvmulator.classfile.ConstantPool.FloatConstant;
 import com.bandlem.jvm.jvmulator.classfile.ConstantPool.IntConstant;
 import com.bandlem.jvm.jvmulator.classfile.ConstantPool.Item;
 import com.bandlem.jvm.jvmulator.classfile.ConstantPool.LongConstant;
 import com.bandlem.jvm.jvmulator.classfile.ConstantPool.MethodRef;
 import com.bandlem.jvm.jvmulator.classfile.ConstantPool.NameAndType;
+import com.bandlem.jvm.jvmulator.classfile.ConstantPool.Resolver;
 import com.bandlem.jvm.jvmulator.classfile.ConstantPool.StringConstant;
 import com.bandlem.jvm.jvmulator.classfile.JavaClass;
-import com.bandlem.jvm.jvmulator.classfile.Member;
+import com.bandlem.jvm.jvmulator.classfile.MemberKey;
+import com.bandlem.jvm.jvmulator.classfile.Member.Method;
 public class JVMFrame {
+	// The result of new for a host class, which stands in for the object on the
+	// stack until its constructor is called
+	static final class Uninitialized {
+	}
+	// The last exception raised on each host thread by an instruction or the
+	// host code that emulated code calls, which its handlers can catch
+	private static final ThreadLocal<Throwable> RAISED = new ThreadLocal<>();
+	private static final String UNKNOWN = "<unknown>";
+	private static final MemberKey UNKNOWN_METHOD = MemberKey.of(UNKNOWN, "");
+	// Checks an index into an array before it is used, as the host would
+	private static void checkIndex(final Object array, final int index) {
+		final int length = Array.getLength(array);
+		if (index < 0 || index >= length) {
+			throw raise(new ArrayIndexOutOfBoundsException("Index " + index + " out of bounds for length " + length));
+		}
+	}
+	// Division and remainder raise the exception that the host would for a zero
+	// divisor, so that emulated handlers can catch it
+	static int divide(final int value1, final int value2) {
+		if (value2 == 0) {
+			throw raise(new ArithmeticException("/ by zero"));
+		}
+		return value1 / value2;
+	}
+	static long divide(final long value1, final long value2) {
+		if (value2 == 0) {
+			throw raise(new ArithmeticException("/ by zero"));
+		}
+		return value1 / value2;
+	}
 	static Slot getfield(final Object target, final String fieldName, final String descriptor, final String className,
 			final ClassLoader classLoader) {
-		try {
-			final Class<?> clazz = Class.forName(className.replace('/', '.'));
-			final Field field = clazz.getField(fieldName);
-			final Object result = field.get(target);
-			switch (descriptor.charAt(descriptor.length() - 1)) {
-			case 'Z':
-			case 'B':
-			case 'S':
-			case 'C':
-			case 'I':
-				return Slot.of((int) result);
-			case 'J':
-				return Slot.of((long) result);
-			case 'F':
-				return Slot.of((float) result);
-			case 'D':
-				return Slot.of((double) result);
-			default:
-				return Slot.of(result);
-			}
-		} catch (final Exception e) {
-			throw new UnsupportedOperationException("Cannot access field " + className + ":" + fieldName, e);
-		}
+		return ResolvedField.resolve(className, fieldName, descriptor).get(target);
 	}
 	static boolean instanceOf(final Object target, final String className) {
-		try {
-			final Class<?> clazz = Class.forName(className.replace('/', '.'));
-			return clazz.isAssignableFrom(target.getClass());
-		} catch (final Exception e) {
-			throw new UnsupportedOperationException("Cannot instanceof " + className + " on " + target, e);
+		return resolveClass(className).isInstance(target);
+	}
+	// Whether emulated code can catch the exception, as opposed to one from the
+	// emulator itself, such as an unsupported instruction or a mismatched stack,
+	// even where the host would throw the same class of exception for both
+	private static boolean isGuest(final Throwable thrown) {
+		return thrown == RAISED.get();
+	}
+	// The receiver of a field access, call or array instruction, which the
+	// emulated code can catch the failure of if it is null
+	static <T> T nonNull(final T reference) {
+		if (reference == null) {
+			throw raise(new NullPointerException());
 		}
+		return reference;
 	}
 	static void putfield(final Slot value, final Object target, final String fieldName, final String descriptor,
 			final String className, final ClassLoader classLoader) {
+		ResolvedField.resolve(className, fieldName, descriptor).put(value, target);
+	}
+	// Records an exception that emulated code raised, returning it to be thrown
+	static <T extends Throwable> T raise(final T thrown) {
+		RAISED.set(thrown);
+		return thrown;
+	}
+	static int remainder(final int value1, final int value2) {
+		if (value2 == 0) {
+			throw raise(new ArithmeticException("/ by zero"));
+		}
+		return value1 % value2;
+	}
+	static long remainder(final long value1, final long value2) {
+		if (value2 == 0) {
+			throw raise(new ArithmeticException("/ by zero"));
+		}
+		return value1 % value2;
+	}
+	// The host class that host objects are tested against, or void.class, which
+	// has no instances, for classes that only the emulator can load
+	static Class<?> resolveClass(final ConstantPool pool, final int index) {
 		try {
-			final Class<?> clazz = Class.forName(className.replace('/', '.'));
-			final Field field = clazz.getField(fieldName);
-			switch (descriptor.charAt(descriptor.length() - 1)) {
-			case 'Z':
-				field.setBoolean(target, value.booleanValue());
-				return;
-			case 'B':
-				field.setByte(target, (byte) value.intValue());
-				return;
-			case 'S':
-				field.setShort(target, (short) value.intValue());
-				return;
-			case 'C':
-				field.setChar(target, (char) value.intValue());
-				return;
-			case 'I':
-				field.setInt(target, value.intValue());
-				return;
-			case 'J':
-				field.setLong(target, value.longValue());
-				return;
-			case 'F':
-				field.setFloat(target, value.floatValue());
-				return;
-			case 'D':
-				field.setDouble(target, value.doubleValue());
-				return;
-			default:
-				field.set(target, value.referenceValue());
-				return;
-			}
+			return Class.forName(pool.getClassName(index).replace('/', '.'));
+		} catch (final ClassNotFoundException e) {
+			return void.class;
+		}
+	}
+	static Class<?> resolveClass(final String className) {
+		try {
+			return Class.forName(className.replace('/', '.'));
 		} catch (final Exception e) {
-			throw new UnsupportedOperationException("Cannot access field " + className + ":" + fieldName, e);
+			throw new UnsupportedOperationException("Cannot resolve class " + className, e);
 		}
 	}
-	private final byte[] bytecode;
-	// private final JavaClass javaClass;
-	private final Slot[] locals;
+	// Identify the code being run for an execution listener
+	private String className;
+	private int[] extras;
+	private Instructions instructions;
+	private JavaClass javaClass;
+	final Locals locals;
+	// The method being run, if known, whose arguments the register code can rely on
+	private Method method;
+	private MemberKey methodKey;
+	private final Resolver<Object> methodResolver = this::resolveMethod;
+	private byte[] opcodes;
+	private int[] operands;
 	private int pc;
-	private final ConstantPool pool;
-	private Slot returnValue;
-	final Stack stack = new Stack();
+	private ConstantPool pool;
+	// The return value is held unboxed so that it can be handed back to a
+	// calling frame without allocating a slot
+	long returnBits;
+	Object returnReference;
+	byte returnType;
+	final Stack stack;
+	private final JVMThread thread;
+	public JVMFrame(final JavaClass javaClass, final Code code) {
+		this(new JVMThread(), new Locals(code.getMaxLocals()), new Stack(code.getMaxStack()));
+		thread.define(javaClass);
+		load(javaClass, Instructions.of(code), null);
+	}
 	public JVMFrame(final JavaClass javaClass, final int locals, final byte[] code) {
-		this.bytecode = code;
-		this.locals = new Slot[locals];
-		// this.javaClass = javaClass;
-		this.pool = javaClass == null ? null : javaClass.pool;
+		this(new JVMThread(), new Locals(locals), new Stack());
+		thread.define(javaClass);
+		load(javaClass, new Instructions(code), null);
 	}
-	private void getfield(final Object target, final int index) {
-		final FieldRef fieldRef = (FieldRef) pool.getItem(index);
-		final NameAndType nat = (NameAndType) pool.getItem(fieldRef.nameAndTypeIndex);
-		final String fieldName = pool.getString(nat.nameIndex);
-		final String descriptor = pool.getString(nat.descriptorIndex);
-		final String className = pool.getClassName(fieldRef.classIndex);
-		final Slot result = getfield(target, fieldName, descriptor, className, JVMFrame.class.getClassLoader());
-		stack.pushSlot(result);
+	JVMFrame(final JVMThread thread) {
+		this(thread, new Locals(0), new Stack());
+	}
+	private JVMFrame(final JVMThread thread, final Locals locals, final Stack stack) {
+		this.locals = locals;
+		this.stack = stack;
+		this.thread = thread;
+	}
+	// Allocates an emulated object, or a placeholder for a host object that is
+	// created when its constructor is called
+	Object allocate(final int index) {
+		final String className = pool.getClassName(index);
+		final EmulatedClass type = thread.getEmulatedClass(className);
+		return type == null ? new Uninitialized() : new EmulatedObject(type);
+	}
+	// Loops close with a backward goto, which counts towards compiling the method
+	void backEdge() {
+		instructions.heat++;
+	}
+	// Leaves the reference on the stack if it is null or an instance of the class
+	void checkcast(final int index) {
+		final Object ref = stack.peekReference(0);
+		if (ref != null && !isInstance(ref, index)) {
+			final String type = ref instanceof EmulatedObject ? ((EmulatedObject) ref).type.name
+					: ref.getClass().getName();
+			throw raise(new ClassCastException(type.replace('/', '.') + " cannot be cast to "
+					+ pool.getClassName(index).replace('/', '.')));
+		}
+	}
+	// Prepares a pooled frame to run the given code with empty locals and stack
+	void enter(final JavaClass javaClass, final Code code, final Method method) {
+		locals.reset(code.getMaxLocals());
+		stack.clear();
+		load(javaClass, Instructions.of(code), method);
 	}
-	public Slot[] getLocals() {
+	void execute() {
+		// Profiling needs the hook in step, so the other engines are bypassed
+		if (thread.engine == JVMThread.Engine.SWITCH || JVMThread.PROFILING && thread.listener != null) {
+			while (step())
+				;
+		} else if (thread.engine == JVMThread.Engine.THREADED || !executeRegisters()) {
+			executeThreaded();
+		}
+		if (stack.size() != 0) {
+			throw new IllegalStateException("Stack should be empty at return");
+		}
+	}
+	// Runs the method as register code, or returns false if it cannot be translated
+	// or its arguments do not have the types that it was translated for
+	private boolean executeRegisters() {
+		final RegisterCode code = instructions.getRegisterCode(pool, locals.size(), method);
+		return code != null && code.execute(this);
+	}
+	private void executeThreaded() {
+		final Threaded.Handler[] handlers = instructions.getHandlers();
+		int next = pc;
+		while (next >= 0) {
+			final int instruction = next;
+			pc = next;
+			try {
+				next = handlers[next].execute(this);
+			} catch (final Throwable e) {
+				next = handle(instruction, e);
+			}
+		}
+	}
+	void getfield(final Object target, final int index) {
+		final FieldReference field = pool.getResolved(index, FieldReference::resolve);
+		if (target instanceof EmulatedObject) {
+			((EmulatedObject) target).get(field, stack);
+		} else {
+			stack.pushSlot(field.host().get(target));
+		}
+	}
+	public Locals getLocals() {
 		return locals;
 	}
 	public int getPC() {
-		return pc;
+		return instructions.offset(pc);
 	}
 	public Slot getReturnValue() {
-		return returnValue;
+		return returnType == Slot.EMPTY_TYPE ? null : Slot.of(returnType, returnBits, returnReference);
 	}
 	public Stack getStack() {
 		return stack;
 	}
-	private void invoke(final int index) {
-		final MethodRef methodRef = (MethodRef) pool.getItem(index);
-		final NameAndType nat = (NameAndType) pool.getItem(methodRef.nameAndTypeIndex);
-		final String methodName = pool.getString(nat.nameIndex);
-		final String descriptor = pool.getString(nat.descriptorIndex);
-		final String className = pool.getClassName(methodRef.classIndex);
-		final Slot result = invoke(methodName, descriptor, className, JVMFrame.class.getClassLoader());
-		if (result != null) {
-			stack.pushSlot(result);
+	public JVMThread getThread() {
+		return thread;
+	}
+	// Continues at the handler for an exception thrown by the instruction, with
+	// the exception as the only thing on the stack, or throws it on to the
+	// calling frame as it is, checked or not, if the method does not catch it.
+	// The emulator's own failures are never caught, so they escape the thread.
+	@SuppressWarnings("unchecked")
+	private <T extends Throwable> int handle(final int instruction, final Throwable thrown) throws T {
+		final ExceptionTable exceptions = instructions.exceptions;
+		final int handler = exceptions == null || !isGuest(thrown) ? -1 : exceptions.find(instruction, thrown, pool);
+		if (handler < 0) {
+			throw (T) thrown;
+		}
+		RAISED.remove();
+		stack.clear();
+		stack.push(thrown);
+		return handler;
+	}
+	// Runs a single instruction through the switch, returning the next one or
+	// -1 on return, for instructions that the threaded engine does not handle
+	int interpret(final int instruction) {
+		pc = instruction;
+		return stepInstruction() ? pc : -1;
+	}
+	void invoke(final int index) {
+		invoke(pool.getResolved(index, methodResolver));
+	}
+	private void invoke(final Object method) {
+		if (method instanceof EmulatedMethod) {
+			thread.call((EmulatedMethod) method, stack);
+		} else {
+			((ResolvedMethod) method).invoke(stack);
 		}
 	}
 	Slot invoke(final String methodName, final String descriptor, final String className,
 			final ClassLoader classLoader) {
-		try {
-			final Class<?> clazz = Class.forName(className.replace('/', '.'));
-			final Class<?> types[] = Member.Method.argumentTypes(descriptor, classLoader);
-			final Method method = clazz.getMethod(methodName, types);
-			final boolean isStatic = 0 != (method.getModifiers() & Modifier.STATIC);
-			final Object args[] = new Object[types.length];
-			for (int i = args.length - 1; i >= 0; i--) {
-				args[i] = stack.pop().toObject();
+		final ResolvedMethod method = ResolvedMethod.resolve(methodName, descriptor, className, classLoader);
+		method.invoke(stack);
+		return method.returnsValue() ? stack.pop() : null;
+	}
+	// Calls the target of an invokedynamic call site, which is linked by running
+	// its bootstrap method the first time that the instruction is run
+	void invokeDynamic(final int instruction) {
+		DynamicCallSite site = instructions.callSites[instruction];
+		if (site == null) {
+			site = DynamicCallSite.link(javaClass, operands[instruction],
+					name -> thread.getEmulatedClass(name) != null);
+			instructions.callSites[instruction] = site;
+		}
+		site.invoke(stack);
+	}
+	// Calls a constructor, private method or superclass method, which is found
+	// from the named class rather than the class of the receiver
+	void invokeSpecial(final int index) {
+		final MethodReference reference = pool.getResolved(index, MethodReference::resolve);
+		final Object receiver = nonNull(stack.peekReference(reference.slots));
+		if (receiver instanceof EmulatedObject) {
+			EmulatedClass type = ((EmulatedObject) receiver).type;
+			while (type != null && !type.name.equals(reference.className)) {
+				type = type.superclass;
 			}
-			final Object target = isStatic ? null : stack.pop().toObject();
-			final Object result = method.invoke(target, args);
-			final char last = descriptor.charAt(descriptor.length() - 1);
-			switch (last) {
-			case 'V':
-				// no push
-				return null;
-			case 'I':
-			case 'S':
-			case 'C':
-			case 'Z':
-				return Slot.of((int) result);
-			case 'J':
-				return Slot.of((long) result);
-			case 'F':
-				return Slot.of((float) result);
-			case 'D':
-				return Slot.of((double) result);
-			default:
-				return Slot.of(result);
+			if (type != null) {
+				invoke(type.getMethod(reference.key));
+			} else if (reference.isConstructor()) {
+				// The constructor of java.lang.Object does nothing
+				stack.drop();
+			} else {
+				reference.host().invoke(stack);
 			}
-		} catch (final Exception e) {
-			throw new UnsupportedOperationException("Cannot execute method " + className + ":" + methodName, e);
+		} else if (receiver instanceof Uninitialized) {
+			// The host constructor leaves the new object in place of its arguments,
+			// which then replaces the placeholder wherever it was copied
+			reference.host().invoke(stack);
+			final Object object = stack.popReference();
+			stack.drop();
+			stack.replace(receiver, object);
+		} else {
+			reference.host().invoke(stack);
 		}
 	}
-	private Slot notWide(final Slot slot, final byte opcode) {
-		if (slot.isWide()) {
-			throw new IllegalStateException("Cannot use wide slot for opcode " + opcode);
+	// Calls a method found from the class of the receiver, through the call
+	// site's inline cache for emulated objects
+	void invokeVirtual(final int index, final InlineCache cache) {
+		final MethodReference reference = pool.getResolved(index, MethodReference::resolve);
+		final Object receiver = nonNull(stack.peekReference(reference.slots));
+		if (receiver instanceof EmulatedObject) {
+			invoke(cache.find(((EmulatedObject) receiver).type, reference));
+		} else {
+			reference.host().invoke(stack);
+		}
+	}
+	private boolean isInstance(final Object ref, final int index) {
+		if (ref instanceof EmulatedObject) {
+			return ((EmulatedObject) ref).type.isInstance(pool.getClassName(index));
 		}
-		return slot;
+		return pool.getResolved(index, JVMFrame::resolveClass).isInstance(ref);
 	}
-	private void pushConstant(final int constant) {
+	private void load(final JavaClass javaClass, final Instructions instructions, final Method method) {
+		this.className = javaClass == null ? UNKNOWN : javaClass.this_class;
+		this.instructions = instructions;
+		this.extras = instructions.extras;
+		this.javaClass = javaClass;
+		this.method = method;
+		this.methodKey = method == null ? UNKNOWN_METHOD : method.getKey();
+		this.opcodes = instructions.opcodes;
+		this.operands = instructions.operands;
+		this.pc = 0;
+		this.pool = javaClass == null ? null : javaClass.pool;
+		this.returnReference = null;
+		this.returnType = Slot.EMPTY_TYPE;
+	}
+	// Times a single instruction, including any emulated methods that it calls
+	private boolean profile(final ExecutionListener listener) {
+		final int instruction = pc;
+		final long start = System.nanoTime();
+		try {
+			return stepInstruction();
+		} finally {
+			listener.executed(className, methodKey, instructions.offset(instruction), opcodes[instruction],
+					System.nanoTime() - start);
+		}
+	}
+	void pushConstant(final int constant) {
 		final Item item = pool.getItem(constant);
 		if (item instanceof StringConstant) {
 			final short index = ((StringConstant) item).index;
@@ -199,25 +369,68 @@ public class JVMFrame {
 			throw new UnsupportedOperationException("Unknown item type " + item.type);
 		}
 	}
-	private void putfield(final Slot value, final Object target, final int index) {
-		final FieldRef fieldRef = (FieldRef) pool.getItem(index);
-		final NameAndType nat = (NameAndType) pool.getItem(fieldRef.nameAndTypeIndex);
-		final String fieldName = pool.getString(nat.nameIndex);
+	// Stores the value on top of the stack into the object below it
+	void putfield(final int index) {
+		final FieldReference field = pool.getResolved(index, FieldReference::resolve);
+		final Object target = nonNull(stack.peekReference(field.slots));
+		if (target instanceof EmulatedObject) {
+			((EmulatedObject) target).put(field, stack);
+			stack.drop();
+		} else {
+			final Slot value = stack.pop();
+			field.host().put(value, stack.popReference());
+		}
+	}
+	void putstatic(final int index) {
+		pool.getResolved(index, FieldReference::resolve).host().put(stack.pop(), null);
+	}
+	// Static methods in the same class with bytecode are run in a pooled frame
+	// on this thread rather than being invoked reflectively on the host
+	private Object resolveMethod(final ConstantPool pool, final int index) {
+		final MethodRef methodRef = (MethodRef) pool.getItem(index);
+		final NameAndType nat = (NameAndType) pool.getItem(methodRef.nameAndTypeIndex);
+		final String methodName = pool.getString(nat.nameIndex);
 		final String descriptor = pool.getString(nat.descriptorIndex);
-		final String className = pool.getClassName(fieldRef.classIndex);
-		putfield(value, target, fieldName, descriptor, className, JVMFrame.class.getClassLoader());
+		final String className = pool.getClassName(methodRef.classIndex);
+		if (className.equals(javaClass.this_class)) {
+			final Method method = javaClass.getMethod(methodName, descriptor);
+			if (method != null && (method.flags & (Modifier.STATIC | Modifier.NATIVE)) == Modifier.STATIC) {
+				return new EmulatedMethod(javaClass, method);
+			}
+		}
+		return ResolvedMethod.resolve(methodName, descriptor, className, JVMFrame.class.getClassLoader());
 	}
-	public Slot run() {
-		returnValue = null;
-		while (step())
-			;
-		if (stack.size() != 0) {
-			throw new IllegalStateException("Stack should be empty at return");
+	// Hands the return value to the calling frame's stack
+	void returnTo(final Stack caller) {
+		if (returnType != Slot.EMPTY_TYPE) {
+			caller.push(returnType, returnBits, returnReference);
+			returnReference = null;
 		}
-		return returnValue;
+	}
+	public Slot run() {
+		returnReference = null;
+		returnType = Slot.EMPTY_TYPE;
+		execute();
+		return getReturnValue();
 	}
 	public boolean step() {
-		final byte opcode = bytecode[pc++];
+		final int instruction = pc;
+		try {
+			// PROFILING is a constant to the JIT, so this check is removed when off
+			if (JVMThread.PROFILING && thread.listener != null) {
+				return profile(thread.listener);
+			}
+			return stepInstruction();
+		} catch (final Throwable e) {
+			pc = handle(instruction, e);
+			return true;
+		}
+	}
+	// Exceptions thrown by athrow are thrown as they are, checked or not
+	@SuppressWarnings("unchecked")
+	private <T extends Throwable> boolean stepInstruction() throws T {
+		final int instruction = pc++;
+		final byte opcode = opcodes[instruction];
 		switch (opcode) {
 		case Opcodes.NOP:
 			return true;
@@ -268,10 +481,10 @@ public class JVMFrame {
 			stack.push(1D);
 			return true;
 		case Opcodes.SIPUSH:
-			stack.push(bytecode[pc++] << 8 | bytecode[pc++]);
+			stack.push(operands[instruction]);
 			return true;
 		case Opcodes.BIPUSH:
-			stack.push(bytecode[pc++]);
+			stack.push(operands[instruction]);
 			return true;
 		// Addition
 		case Opcodes.IADD:
@@ -300,44 +513,68 @@ public class JVMFrame {
 			stack.push(stack.popDouble() * stack.popDouble());
 			return true;
 		// Division
-		case Opcodes.IDIV:
-			stack.push(stack.popInt() / stack.popInt());
+		case Opcodes.IDIV: {
+			final int value2 = stack.popInt();
+			stack.push(divide(stack.popInt(), value2));
 			return true;
-		case Opcodes.FDIV:
-			stack.push(stack.popFloat() / stack.popFloat());
+		}
+		case Opcodes.FDIV: {
+			final float value2 = stack.popFloat();
+			stack.push(stack.popFloat() / value2);
 			return true;
-		case Opcodes.LDIV:
-			stack.push(stack.popLong() / stack.popLong());
+		}
+		case Opcodes.LDIV: {
+			final long value2 = stack.popLong();
+			stack.push(divide(stack.popLong(), value2));
 			return true;
-		case Opcodes.DDIV:
-			stack.push(stack.popDouble() / stack.popDouble());
+		}
+		case Opcodes.DDIV: {
+			final double value2 = stack.popDouble();
+			stack.push(stack.popDouble() / value2);
 			return true;
+		}
 		// Remainder
-		case Opcodes.IREM:
-			stack.push(stack.popInt() % stack.popInt());
+		case Opcodes.IREM: {
+			final int value2 = stack.popInt();
+			stack.push(remainder(stack.popInt(), value2));
 			return true;
-		case Opcodes.FREM:
-			stack.push(stack.popFloat() % stack.popFloat());
+		}
+		case Opcodes.FREM: {
+			final float value2 = stack.popFloat();
+			stack.push(stack.popFloat() % value2);
 			return true;
-		case Opcodes.LREM:
-			stack.push(stack.popLong() % stack.popLong());
+		}
+		case Opcodes.LREM: {
+			final long value2 = stack.popLong();
+			stack.push(remainder(stack.popLong(), value2));
 			return true;
-		case Opcodes.DREM:
-			stack.push(stack.popDouble() % stack.popDouble());
+		}
+		case Opcodes.DREM: {
+			final double value2 = stack.popDouble();
+			stack.push(stack.popDouble() % value2);
 			return true;
+		}
 		// Subtraction
-		case Opcodes.ISUB:
-			stack.push(stack.popInt() - stack.popInt());
+		case Opcodes.ISUB: {
+			final int value2 = stack.popInt();
+			stack.push(stack.popInt() - value2);
 			return true;
-		case Opcodes.FSUB:
-			stack.push(stack.popFloat() - stack.popFloat());
+		}
+		case Opcodes.FSUB: {
+			final float value2 = stack.popFloat();
+			stack.push(stack.popFloat() - value2);
 			return true;
-		case Opcodes.LSUB:
-			stack.push(stack.popLong() - stack.popLong());
+		}
+		case Opcodes.LSUB: {
+			final long value2 = stack.popLong();
+			stack.push(stack.popLong() - value2);
 			return true;
-		case Opcodes.DSUB:
-			stack.push(stack.popDouble() - stack.popDouble());
+		}
+		case Opcodes.DSUB: {
+			final double value2 = stack.popDouble();
+			stack.push(stack.popDouble() - value2);
 			return true;
+		}
 		// Negation
 		case Opcodes.INEG:
 			stack.push(0 - stack.popInt());
@@ -352,13 +589,9 @@ public class JVMFrame {
 			stack.push(0.0D - stack.popDouble());
 			return true;
 		// Stack manipulation
-		case Opcodes.SWAP: {
-			final Slot first = notWide(stack.pop(), opcode);
-			final Slot second = notWide(stack.pop(), opcode);
-			stack.pushSlot(first);
-			stack.pushSlot(second);
+		case Opcodes.SWAP:
+			stack.swap();
 			return true;
-		}
 		case Opcodes.DUP:
 			stack.dup();
 			return true;
@@ -378,12 +611,10 @@ public class JVMFrame {
 			stack.dup2_x2();
 			return true;
 		case Opcodes.POP:
-			notWide(stack.pop(), opcode);
+			stack.drop();
 			return true;
 		case Opcodes.POP2:
-			if (!stack.pop().isWide()) {
-				notWide(stack.pop(), opcode);
-			}
+			stack.drop2();
 			return true;
 		// Bitwise and shift operations
 		case Opcodes.ISHL: {
@@ -482,237 +713,223 @@ public class JVMFrame {
 			return true;
 		// Comparisons
 		case Opcodes.LCMP: {
-			final long l1 = stack.popLong();
-			final long l2 = stack.popLong();
-			stack.push((int) l1 == l2 ? 0 : l1 > l2 ? 1 : -1);
+			final long value2 = stack.popLong();
+			stack.push(Long.compare(stack.popLong(), value2));
 			return true;
 		}
+		// The L and G variants differ only in the result for NaN
 		case Opcodes.FCMPL: {
-			final float f1 = stack.popFloat();
-			final float f2 = stack.popFloat();
-			stack.push((int) f1 == f2 ? 0 : f1 > f2 ? 1 : -1);
+			final float value2 = stack.popFloat();
+			final float value1 = stack.popFloat();
+			stack.push(value1 > value2 ? 1 : value1 == value2 ? 0 : -1);
 			return true;
 		}
 		case Opcodes.FCMPG: {
-			final float f1 = stack.popFloat();
-			final float f2 = stack.popFloat();
-			stack.push((int) f1 == f2 ? 0 : f2 > f1 ? -1 : 1);
+			final float value2 = stack.popFloat();
+			final float value1 = stack.popFloat();
+			stack.push(value1 < value2 ? -1 : value1 == value2 ? 0 : 1);
 			return true;
 		}
 		case Opcodes.DCMPL: {
-			final double f1 = stack.popDouble();
-			final double f2 = stack.popDouble();
-			stack.push((int) f1 == f2 ? 0 : f1 > f2 ? 1 : -1);
+			final double value2 = stack.popDouble();
+			final double value1 = stack.popDouble();
+			stack.push(value1 > value2 ? 1 : value1 == value2 ? 0 : -1);
 			return true;
 		}
 		case Opcodes.DCMPG: {
-			final double f1 = stack.popDouble();
-			final double f2 = stack.popDouble();
-			stack.push((int) f1 == f2 ? 0 : f2 > f1 ? -1 : 1);
+			final double value2 = stack.popDouble();
+			final double value1 = stack.popDouble();
+			stack.push(value1 < value2 ? -1 : value1 == value2 ? 0 : 1);
 			return true;
 		}
 		// Branching
 		case Opcodes.RET: {
-			final int local = bytecode[pc++] & 0xff;
-			pc = (int) (locals[local].referenceValue());
+			pc = (int) locals.loadReference(operands[instruction]);
 			return true;
 		}
 		case Opcodes.JSR_W:
-			stack.push((Object) (pc + 4));
-			pc += bytecode[pc++] << 24 | bytecode[pc++] << 16 | bytecode[pc++] << 8 | bytecode[pc++] - 1;
+			stack.push((Object) pc);
+			pc = operands[instruction];
 			return true;
 		case Opcodes.JSR:
-			stack.push((Object) (pc + 2));
-			pc += bytecode[pc++] << 8 | bytecode[pc++] - 1;
+			stack.push((Object) pc);
+			pc = operands[instruction];
+			return true;
+		case Opcodes.TABLESWITCH:
+		case Opcodes.LOOKUPSWITCH:
+			pc = instructions.switches[instruction].target(stack.popInt());
 			return true;
 		case Opcodes.GOTO_W: {
-			pc += bytecode[pc++] << 24 | bytecode[pc++] << 16 | bytecode[pc++] << 8 | bytecode[pc++] - 1;
+			pc = operands[instruction];
+			if (pc <= instruction) {
+				backEdge();
+			}
 			return true;
 		}
 		case Opcodes.GOTO: {
-			pc += bytecode[pc++] << 8 | bytecode[pc++] - 1;
+			pc = operands[instruction];
+			if (pc <= instruction) {
+				backEdge();
+			}
 			return true;
 		}
 		case Opcodes.IFEQ: {
 			if (stack.popInt() == 0) {
-				pc += bytecode[pc++] << 8 | bytecode[pc++] - 1;
-			} else {
-				pc += 2;
+				pc = operands[instruction];
 			}
 			return true;
 		}
 		case Opcodes.IFNE: {
 			if (stack.popInt() != 0) {
-				pc += bytecode[pc++] << 8 | bytecode[pc++] - 1;
-			} else {
-				pc += 2;
+				pc = operands[instruction];
 			}
 			return true;
 		}
 		case Opcodes.IFLT: {
 			if (stack.popInt() < 0) {
-				pc += bytecode[pc++] << 8 | bytecode[pc++] - 1;
-			} else {
-				pc += 2;
+				pc = operands[instruction];
 			}
 			return true;
 		}
 		case Opcodes.IFGE: {
 			if (stack.popInt() >= 0) {
-				pc += bytecode[pc++] << 8 | bytecode[pc++] - 1;
-			} else {
-				pc += 2;
+				pc = operands[instruction];
 			}
 			return true;
 		}
 		case Opcodes.IFGT: {
 			if (stack.popInt() > 0) {
-				pc += bytecode[pc++] << 8 | bytecode[pc++] - 1;
-			} else {
-				pc += 2;
+				pc = operands[instruction];
 			}
 			return true;
 		}
 		case Opcodes.IFLE: {
 			if (stack.popInt() <= 0) {
-				pc += bytecode[pc++] << 8 | bytecode[pc++] - 1;
-			} else {
-				pc += 2;
+				pc = operands[instruction];
 			}
 			return true;
 		}
 		case Opcodes.IF_ICMPEQ: {
-			if (stack.popInt() == stack.popInt()) {
-				pc += bytecode[pc++] << 8 | bytecode[pc++] - 1;
-			} else {
-				pc += 2;
+			final int value2 = stack.popInt();
+			if (stack.popInt() == value2) {
+				pc = operands[instruction];
 			}
 			return true;
 		}
 		case Opcodes.IF_ICMPNE: {
-			if (stack.popInt() != stack.popInt()) {
-				pc += bytecode[pc++] << 8 | bytecode[pc++] - 1;
-			} else {
-				pc += 2;
+			final int value2 = stack.popInt();
+			if (stack.popInt() != value2) {
+				pc = operands[instruction];
 			}
 			return true;
 		}
 		case Opcodes.IF_ICMPLT: {
-			if (stack.popInt() < stack.popInt()) {
-				pc += bytecode[pc++] << 8 | bytecode[pc++] - 1;
-			} else {
-				pc += 2;
+			final int value2 = stack.popInt();
+			if (stack.popInt() < value2) {
+				pc = operands[instruction];
 			}
 			return true;
 		}
 		case Opcodes.IF_ICMPGE: {
-			if (stack.popInt() >= stack.popInt()) {
-				pc += bytecode[pc++] << 8 | bytecode[pc++] - 1;
-			} else {
-				pc += 2;
+			final int value2 = stack.popInt();
+			if (stack.popInt() >= value2) {
+				pc = operands[instruction];
 			}
 			return true;
 		}
 		case Opcodes.IF_ICMPGT: {
-			if (stack.popInt() > stack.popInt()) {
-				pc += bytecode[pc++] << 8 | bytecode[pc++] - 1;
-			} else {
-				pc += 2;
+			final int value2 = stack.popInt();
+			if (stack.popInt() > value2) {
+				pc = operands[instruction];
 			}
 			return true;
 		}
 		case Opcodes.IF_ICMPLE: {
-			if (stack.popInt() <= stack.popInt()) {
-				pc += bytecode[pc++] << 8 | bytecode[pc++] - 1;
-			} else {
-				pc += 2;
+			final int value2 = stack.popInt();
+			if (stack.popInt() <= value2) {
+				pc = operands[instruction];
 			}
 			return true;
 		}
 		case Opcodes.IF_ACMPEQ: {
 			if (stack.popReference() == stack.popReference()) {
-				pc += bytecode[pc++] << 8 | bytecode[pc++] - 1;
-			} else {
-				pc += 2;
+				pc = operands[instruction];
 			}
 			return true;
 		}
 		case Opcodes.IF_ACMPNE: {
 			if (stack.popReference() != stack.popReference()) {
-				pc += bytecode[pc++] << 8 | bytecode[pc++] - 1;
-			} else {
-				pc += 2;
+				pc = operands[instruction];
 			}
 			return true;
 		}
 		case Opcodes.IFNULL: {
 			if (stack.popReference() == null) {
-				pc += bytecode[pc++] << 8 | bytecode[pc++] - 1;
-			} else {
-				pc += 2;
+				pc = operands[instruction];
 			}
 			return true;
 		}
 		case Opcodes.IFNONNULL: {
 			if (stack.popReference() != null) {
-				pc += bytecode[pc++] << 8 | bytecode[pc++] - 1;
-			} else {
-				pc += 2;
+				pc = operands[instruction];
 			}
 			return true;
 		}
 		// Returns
 		case Opcodes.DRETURN:
-			returnValue = stack.pop();
-			returnValue.doubleValue(); // check return type
+			returnBits = Double.doubleToRawLongBits(stack.popDouble());
+			returnType = Slot.DOUBLE_TYPE;
 			return false;
 		case Opcodes.LRETURN:
-			returnValue = stack.pop();
-			returnValue.longValue(); // check return type
+			returnBits = stack.popLong();
+			returnType = Slot.LONG_TYPE;
 			return false;
 		case Opcodes.ARETURN:
-			returnValue = stack.pop();
-			returnValue.referenceValue(); // check return type
+			returnReference = stack.popReference();
+			returnType = Slot.REFERENCE_TYPE;
 			return false;
 		case Opcodes.FRETURN:
-			returnValue = stack.pop();
-			returnValue.floatValue(); // check return type
+			returnBits = Float.floatToRawIntBits(stack.popFloat());
+			returnType = Slot.FLOAT_TYPE;
 			return false;
 		case Opcodes.IRETURN:
-			returnValue = stack.pop();
-			returnValue.intValue(); // check return type
+			returnBits = stack.popInt();
+			returnType = Slot.INT_TYPE;
 			return false;
 		case Opcodes.RETURN:
-			returnValue = null;
+			returnType = Slot.EMPTY_TYPE;
 			return false;
 		// Arrays
 		case Opcodes.NEWARRAY: {
 			final int size = stack.popInt();
-			final char type = (char) bytecode[pc++];
+			final byte type = (byte) operands[instruction];
+			if (size < 0) {
+				throw raise(new NegativeArraySizeException(String.valueOf(size)));
+			}
 			Object array;
 			switch (type) {
-			case 'Z':
+			case Opcodes.T_BOOLEAN:
 				array = new boolean[size];
 				break;
-			case 'B':
+			case Opcodes.T_BYTE:
 				array = new byte[size];
 				break;
-			case 'C':
+			case Opcodes.T_CHAR:
 				array = new char[size];
 				break;
-			case 'S':
+			case Opcodes.T_SHORT:
 				array = new short[size];
 				break;
-			case 'I':
+			case Opcodes.T_INT:
 				array = new int[size];
 				break;
-			case 'L':
+			case Opcodes.T_LONG:
 				array = new long[size];
 				break;
-			case 'F':
+			case Opcodes.T_FLOAT:
 				array = new float[size];
 				break;
-			case 'D':
+			case Opcodes.T_DOUBLE:
 				array = new double[size];
 				break;
 			default:
@@ -722,7 +939,7 @@ public class JVMFrame {
 			return true;
 		}
 		case Opcodes.ARRAYLENGTH: {
-			final Object array = stack.popReference();
+			final Object array = nonNull(stack.popReference());
 			if (array instanceof boolean[]) {
 				stack.push(((boolean[]) array).length);
 			} else if (array instanceof byte[]) {
@@ -763,7 +980,8 @@ public class JVMFrame {
 		case Opcodes.AASTORE: {
 			final Slot value = stack.pop();
 			final int index = stack.popInt();
-			final Object array = stack.popReference();
+			final Object array = nonNull(stack.popReference());
+			checkIndex(array, index);
 			if (array instanceof boolean[] && opcode == Opcodes.BASTORE) {
 				((boolean[]) array)[index] = value.intValue() != 0;
 			} else if (array instanceof byte[] && opcode == Opcodes.BASTORE) {
@@ -803,7 +1021,8 @@ public class JVMFrame {
 			// Fallthrough
 		case Opcodes.AALOAD: {
 			final int index = stack.popInt();
-			final Object array = stack.popReference();
+			final Object array = nonNull(stack.popReference());
+			checkIndex(array, index);
 			if (array instanceof boolean[] && opcode == Opcodes.BALOAD) {
 				stack.push(((boolean[]) array)[index] ? 1 : 0);
 			} else if (array instanceof byte[] && opcode == Opcodes.BALOAD) {
@@ -829,204 +1048,221 @@ public class JVMFrame {
 		}
 		// Locals
 		case Opcodes.IINC: {
-			final int local = bytecode[pc++] & 0xff;
-			locals[local] = Slot.of(locals[local].intValue() + bytecode[pc++]);
+			locals.increment(operands[instruction], extras[instruction]);
 			return true;
 		}
 		case Opcodes.ILOAD:
-			stack.push(locals[bytecode[pc++] & 0xff].intValue());
+			stack.push(locals.loadInt(operands[instruction]));
 			return true;
 		case Opcodes.ILOAD_0:
-			stack.push(locals[0].intValue());
+			stack.push(locals.loadInt(0));
 			return true;
 		case Opcodes.ILOAD_1:
-			stack.push(locals[1].intValue());
+			stack.push(locals.loadInt(1));
 			return true;
 		case Opcodes.ILOAD_2:
-			stack.push(locals[2].intValue());
+			stack.push(locals.loadInt(2));
 			return true;
 		case Opcodes.ILOAD_3:
-			stack.push(locals[3].intValue());
+			stack.push(locals.loadInt(3));
 			return true;
 		case Opcodes.ISTORE:
-			locals[bytecode[pc++] & 0xff] = Slot.of(stack.popInt());
+			locals.store(operands[instruction], stack.popInt());
 			return true;
 		case Opcodes.ISTORE_0:
-			locals[0] = Slot.of(stack.popInt());
+			locals.store(0, stack.popInt());
 			return true;
 		case Opcodes.ISTORE_1:
-			locals[1] = Slot.of(stack.popInt());
+			locals.store(1, stack.popInt());
 			return true;
 		case Opcodes.ISTORE_2:
-			locals[2] = Slot.of(stack.popInt());
+			locals.store(2, stack.popInt());
 			return true;
 		case Opcodes.ISTORE_3:
-			locals[3] = Slot.of(stack.popInt());
+			locals.store(3, stack.popInt());
 			return true;
 		case Opcodes.LLOAD:
-			stack.push(locals[bytecode[pc++] & 0xff].longValue());
+			stack.push(locals.loadLong(operands[instruction]));
 			return true;
 		case Opcodes.LLOAD_0:
-			stack.push(locals[0].longValue());
+			stack.push(locals.loadLong(0));
 			return true;
 		case Opcodes.LLOAD_1:
-			stack.push(locals[1].longValue());
+			stack.push(locals.loadLong(1));
 			return true;
 		case Opcodes.LLOAD_2:
-			stack.push(locals[2].longValue());
+			stack.push(locals.loadLong(2));
 			return true;
 		case Opcodes.LLOAD_3:
-			stack.push(locals[3].longValue());
+			stack.push(locals.loadLong(3));
 			return true;
 		case Opcodes.LSTORE:
-			locals[bytecode[pc++] & 0xff] = Slot.of(stack.popLong());
+			locals.store(operands[instruction], stack.popLong());
 			return true;
 		case Opcodes.LSTORE_0:
-			locals[0] = Slot.of(stack.popLong());
+			locals.store(0, stack.popLong());
 			return true;
 		case Opcodes.LSTORE_1:
-			locals[1] = Slot.of(stack.popLong());
+			locals.store(1, stack.popLong());
 			return true;
 		case Opcodes.LSTORE_2:
-			locals[2] = Slot.of(stack.popLong());
+			locals.store(2, stack.popLong());
 			return true;
 		case Opcodes.LSTORE_3:
-			locals[3] = Slot.of(stack.popLong());
+			locals.store(3, stack.popLong());
 			return true;
 		case Opcodes.FLOAD:
-			stack.push(locals[bytecode[pc++] & 0xff].floatValue());
+			stack.push(locals.loadFloat(operands[instruction]));
 			return true;
 		case Opcodes.FLOAD_0:
-			stack.push(locals[0].floatValue());
+			stack.push(locals.loadFloat(0));
 			return true;
 		case Opcodes.FLOAD_1:
-			stack.push(locals[1].floatValue());
+			stack.push(locals.loadFloat(1));
 			return true;
 		case Opcodes.FLOAD_2:
-			stack.push(locals[2].floatValue());
+			stack.push(locals.loadFloat(2));
 			return true;
 		case Opcodes.FLOAD_3:
-			stack.push(locals[3].floatValue());
+			stack.push(locals.loadFloat(3));
 			return true;
 		case Opcodes.FSTORE:
-			locals[bytecode[pc++] & 0xff] = Slot.of(stack.popFloat());
+			locals.store(operands[instruction], stack.popFloat());
 			return true;
 		case Opcodes.FSTORE_0:
-			locals[0] = Slot.of(stack.popFloat());
+			locals.store(0, stack.popFloat());
 			return true;
 		case Opcodes.FSTORE_1:
-			locals[1] = Slot.of(stack.popFloat());
+			locals.store(1, stack.popFloat());
 			return true;
 		case Opcodes.FSTORE_2:
-			locals[2] = Slot.of(stack.popFloat());
+			locals.store(2, stack.popFloat());
 			return true;
 		case Opcodes.FSTORE_3:
-			locals[3] = Slot.of(stack.popFloat());
+			locals.store(3, stack.popFloat());
 			return true;
 		case Opcodes.DLOAD:
-			stack.push(locals[bytecode[pc++] & 0xff].doubleValue());
+			stack.push(locals.loadDouble(operands[instruction]));
 			return true;
 		case Opcodes.DLOAD_0:
-			stack.push(locals[0].doubleValue());
+			stack.push(locals.loadDouble(0));
 			return true;
 		case Opcodes.DLOAD_1:
-			stack.push(locals[1].doubleValue());
+			stack.push(locals.loadDouble(1));
 			return true;
 		case Opcodes.DLOAD_2:
-			stack.push(locals[2].doubleValue());
+			stack.push(locals.loadDouble(2));
 			return true;
 		case Opcodes.DLOAD_3:
-			stack.push(locals[3].doubleValue());
+			stack.push(locals.loadDouble(3));
 			return true;
 		case Opcodes.DSTORE:
-			locals[bytecode[pc++] & 0xff] = Slot.of(stack.popDouble());
+			locals.store(operands[instruction], stack.popDouble());
 			return true;
 		case Opcodes.DSTORE_0:
-			locals[0] = Slot.of(stack.popDouble());
+			locals.store(0, stack.popDouble());
 			return true;
 		case Opcodes.DSTORE_1:
-			locals[1] = Slot.of(stack.popDouble());
+			locals.store(1, stack.popDouble());
 			return true;
 		case Opcodes.DSTORE_2:
-			locals[2] = Slot.of(stack.popDouble());
+			locals.store(2, stack.popDouble());
 			return true;
 		case Opcodes.DSTORE_3:
-			locals[3] = Slot.of(stack.popDouble());
+			locals.store(3, stack.popDouble());
 			return true;
 		case Opcodes.ALOAD:
-			stack.push(locals[bytecode[pc++] & 0xff].referenceValue());
+			stack.push(locals.loadReference(operands[instruction]));
 			return true;
 		case Opcodes.ALOAD_0:
-			stack.push(locals[0].referenceValue());
+			stack.push(locals.loadReference(0));
 			return true;
 		case Opcodes.ALOAD_1:
-			stack.push(locals[1].referenceValue());
+			stack.push(locals.loadReference(1));
 			return true;
 		case Opcodes.ALOAD_2:
-			stack.push(locals[2].referenceValue());
+			stack.push(locals.loadReference(2));
 			return true;
 		case Opcodes.ALOAD_3:
-			stack.push(locals[3].referenceValue());
+			stack.push(locals.loadReference(3));
 			return true;
 		case Opcodes.ASTORE:
-			locals[bytecode[pc++] & 0xff] = Slot.of(stack.popReference());
+			locals.store(operands[instruction], stack.popReference());
 			return true;
 		case Opcodes.ASTORE_0:
-			locals[0] = Slot.of(stack.popReference());
+			locals.store(0, stack.popReference());
 			return true;
 		case Opcodes.ASTORE_1:
-			locals[1] = Slot.of(stack.popReference());
+			locals.store(1, stack.popReference());
 			return true;
 		case Opcodes.ASTORE_2:
-			locals[2] = Slot.of(stack.popReference());
+			locals.store(2, stack.popReference());
 			return true;
 		case Opcodes.ASTORE_3:
-			locals[3] = Slot.of(stack.popReference());
+			locals.store(3, stack.popReference());
 			return true;
 		case Opcodes.LDC:
-			pushConstant(bytecode[pc++] & 0xff);
+			pushConstant(operands[instruction]);
 			return true;
 		case Opcodes.LDC_W:
-			pushConstant((bytecode[pc++] & 0xff) << 8 | (bytecode[pc++] & 0xff));
+			pushConstant(operands[instruction]);
 			return true;
 		case Opcodes.LDC2_W:
-			pushConstant((bytecode[pc++] & 0xff) << 8 | (bytecode[pc++] & 0xff));
+			pushConstant(operands[instruction]);
 			return true;
 		// Instances
+		case Opcodes.NEW:
+			stack.push(allocate(operands[instruction]));
+			return true;
 		case Opcodes.INSTANCEOF: {
-			final int index = (bytecode[pc++] & 0xff) << 8 | (bytecode[pc++] & 0xff);
 			final Object ref = stack.popReference();
-			if (ref == null) {
-				stack.push(false);
-			} else {
-				stack.push(instanceOf(ref, pool.getClassName(index)));
-			}
+			stack.push(ref != null && isInstance(ref, operands[instruction]));
 			return true;
 		}
+		case Opcodes.CHECKCAST:
+			checkcast(operands[instruction]);
+			return true;
+		// Exceptions
+		case Opcodes.ATHROW: {
+			final Object thrown = stack.popReference();
+			throw (T) raise((Throwable) nonNull(thrown));
+		}
 		// Invoke
 		case Opcodes.INVOKESTATIC: {
-			invoke((bytecode[pc++] & 0xff) << 8 | (bytecode[pc++] & 0xff));
+			invoke(operands[instruction]);
 			return true;
 		}
 		case Opcodes.INVOKEVIRTUAL: {
-			invoke((bytecode[pc++] & 0xff) << 8 | (bytecode[pc++] & 0xff));
+			invokeVirtual(operands[instruction], instructions.getCache(instruction));
+			return true;
+		}
+		case Opcodes.INVOKEINTERFACE: {
+			invokeVirtual(operands[instruction], instructions.getCache(instruction));
+			return true;
+		}
+		case Opcodes.INVOKESPECIAL: {
+			invokeSpecial(operands[instruction]);
+			return true;
+		}
+		case Opcodes.INVOKEDYNAMIC: {
+			invokeDynamic(instruction);
 			return true;
 		}
 		// Field accessors
 		case Opcodes.GETSTATIC: {
-			getfield(null, (bytecode[pc++] & 0xff) << 8 | (bytecode[pc++] & 0xff));
+			getfield(null, operands[instruction]);
 			return true;
 		}
 		case Opcodes.PUTSTATIC: {
-			putfield(stack.pop(), null, (bytecode[pc++] & 0xff) << 8 | (bytecode[pc++] & 0xff));
+			putstatic(operands[instruction]);
 			return true;
 		}
 		case Opcodes.GETFIELD: {
-			getfield(stack.popReference(), (bytecode[pc++] & 0xff) << 8 | (bytecode[pc++] & 0xff));
+			getfield(nonNull(stack.popReference()), operands[instruction]);
 			return true;
 		}
 		case Opcodes.PUTFIELD: {
-			putfield(stack.pop(), stack.popReference(), (bytecode[pc++] & 0xff) << 8 | (bytecode[pc++] & 0xff));
+			putfield(operands[instruction]);
 			return true;
 		}
 		// Miscellaneous
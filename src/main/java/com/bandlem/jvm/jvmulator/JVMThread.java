@@ -0,0 +1,195 @@
+/*
+ * Copyright (c) 2020, Alex Blewitt, Bandlem Ltd
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package com.bandlem.jvm.jvmulator;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.invoke.MethodHandle;
+import java.lang.reflect.Modifier;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import com.bandlem.jvm.jvmulator.classfile.ClassPath;
+import com.bandlem.jvm.jvmulator.classfile.JavaClass;
+import com.bandlem.jvm.jvmulator.classfile.Member.Method;
+public class JVMThread {
+	// SWITCH decodes each instruction in a switch, while THREADED compiles each
+	// method once into an array of handlers that are called in turn. REGISTER
+	// translates each method once into register code, falling back to THREADED
+	// for methods that cannot be translated.
+	public enum Engine {
+		REGISTER, SWITCH, THREADED
+	}
+	// Whether code with proven types checks them anyway, for debugging the inference
+	static final boolean CHECKED = Boolean.getBoolean("jvmulator.checked");
+	// Invocations and back-edges after which a method is compiled to a host class
+	static final int COMPILE_THRESHOLD = Integer.getInteger("jvmulator.compile.threshold", 10_000);
+	private static final int DEFAULT_DEPTH = 16;
+	// Read once so that the JIT can fold away the profiling hooks when disabled
+	static final boolean PROFILING = Boolean.getBoolean("jvmulator.profile");
+	// Exceptions are thrown as they would be from the interpreter, checked or
+	// not, and can be caught by the emulated code that called the method
+	@SuppressWarnings("unchecked")
+	private static <T extends Throwable> void invoke(final MethodHandle compiled, final Stack stack) throws T {
+		try {
+			compiled.invokeExact(stack);
+		} catch (final Throwable e) {
+			throw (T) JVMFrame.raise(e);
+		}
+	}
+	// Emulated classes by internal name, with null for those left to the host
+	private final Map<String, EmulatedClass> classes = new HashMap<>();
+	// Where the class files of emulated classes are found, besides those run
+	private ClassPath classPath;
+	private int compileThreshold = COMPILE_THRESHOLD;
+	// Classes that have been run, which are emulated without needing the class path
+	private final Map<String, JavaClass> defined = new HashMap<>();
+	private int depth;
+	Engine engine = Engine.SWITCH;
+	// Frames are kept once created and reused by later calls at the same depth
+	private JVMFrame[] frames = new JVMFrame[DEFAULT_DEPTH];
+	ExecutionListener listener;
+	private JVMFrame acquire() {
+		if (depth == frames.length) {
+			frames = Arrays.copyOf(frames, depth * 2);
+		}
+		JVMFrame frame = frames[depth];
+		if (frame == null) {
+			frame = new JVMFrame(this);
+			frames[depth] = frame;
+		}
+		depth++;
+		return frame;
+	}
+	// Runs an emulated method with its arguments taken from the caller's stack,
+	// leaving any result in their place
+	void call(final EmulatedMethod method, final Stack caller) {
+		final MethodHandle compiled = compiled(method.javaClass, method.method);
+		if (compiled != null) {
+			invoke(compiled, caller);
+			return;
+		}
+		final JVMFrame frame = acquire();
+		try {
+			frame.enter(method.javaClass, method.code, method.method);
+			caller.popTo(frame.getLocals(), method.slots);
+			frame.execute();
+			frame.returnTo(caller);
+		} finally {
+			depth--;
+		}
+	}
+	// Counts the invocation towards the threshold, returning the compiled method
+	// once it is hot or null if it is to be interpreted. Profiled runs are never
+	// compiled, as the listener needs to see every instruction.
+	private MethodHandle compiled(final JavaClass javaClass, final Method method) {
+		if (compileThreshold <= 0 || PROFILING && listener != null) {
+			return null;
+		}
+		final Instructions instructions = Instructions.of(method.getCodeAttribute());
+		if (instructions.compiled == null && !instructions.uncompilable && ++instructions.heat >= compileThreshold) {
+			instructions.compiled = MethodCompiler.compile(javaClass, method, name -> getEmulatedClass(name) != null);
+			instructions.uncompilable = instructions.compiled == null;
+		}
+		return instructions.compiled;
+	}
+	// Classes that are run have their instances emulated too
+	void define(final JavaClass javaClass) {
+		if (javaClass != null) {
+			defined.putIfAbsent(javaClass.this_class, javaClass);
+		}
+	}
+	private JavaClass find(final String name) {
+		final JavaClass javaClass = defined.get(name);
+		if (javaClass != null || classPath == null) {
+			return javaClass;
+		}
+		try {
+			return classPath.getJavaClass(name);
+		} catch (final IOException e) {
+			throw new UncheckedIOException("Cannot read class " + name, e);
+		}
+	}
+	public ClassPath getClassPath() {
+		return classPath;
+	}
+	public int getCompileThreshold() {
+		return compileThreshold;
+	}
+	public int getDepth() {
+		return depth;
+	}
+	public Engine getEngine() {
+		return engine;
+	}
+	// The emulated class with the given name, or null if its instances are the
+	// host's, which they are unless the class file can be found and every
+	// superclass up to java.lang.Object is emulated as well
+	EmulatedClass getEmulatedClass(final String name) {
+		if (classes.containsKey(name)) {
+			return classes.get(name);
+		}
+		final JavaClass javaClass = name.equals(EmulatedClass.OBJECT) ? null : find(name);
+		EmulatedClass emulated = null;
+		if (javaClass != null && (javaClass.flags & Modifier.INTERFACE) == 0) {
+			if (javaClass.super_class.equals(EmulatedClass.OBJECT)) {
+				emulated = EmulatedClass.of(javaClass, null, this::find);
+			} else {
+				final EmulatedClass superclass = getEmulatedClass(javaClass.super_class);
+				emulated = superclass == null ? null : EmulatedClass.of(javaClass, superclass, this::find);
+			}
+		}
+		classes.put(name, emulated);
+		return emulated;
+	}
+	JVMFrame getFrame(final int index) {
+		return frames[index];
+	}
+	public Slot run(final JavaClass javaClass, final Method method, final Slot... arguments) {
+		final MethodHandle compiled = compiled(javaClass, method);
+		if (compiled != null) {
+			final Stack stack = new Stack();
+			for (final Slot argument : arguments) {
+				stack.pushSlot(argument);
+			}
+			invoke(compiled, stack);
+			return method.getMethodDescriptor().returnKind == 'V' ? null : stack.pop();
+		}
+		define(javaClass);
+		final JVMFrame frame = acquire();
+		try {
+			frame.enter(javaClass, method.getCodeAttribute(), method);
+			final Locals locals = frame.getLocals();
+			int local = 0;
+			for (final Slot argument : arguments) {
+				locals.set(local, argument);
+				local += argument.isWide() ? 2 : 1;
+			}
+			return frame.run();
+		} finally {
+			depth--;
+		}
+	}
+	public void setClassPath(final ClassPath classPath) {
+		this.classPath = classPath;
+		classes.clear();
+	}
+	// A threshold of zero or less keeps every method in the interpreter
+	public void setCompileThreshold(final int compileThreshold) {
+		this.compileThreshold = compileThreshold;
+	}
+	public void setEngine(final Engine engine) {
+		this.engine = engine;
+	}
+	public void setListener(final ExecutionListener listener) {
+		if (!PROFILING) {
+			throw new IllegalStateException("Profiling is disabled; run with -Djvmulator.profile=true");
+		}
+		this.listener = listener;
+	}
+}
@@ -0,0 +1,191 @@
+/*
+ * Copyright (c) 2020, Alex Blewitt, Bandlem Ltd
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package com.bandlem.jvm.jvmulator;
+import java.util.Arrays;
+import java.util.Objects;
+public class Locals {
+	// Laid out in the same way as the Stack; a wide value at index n also
+	// claims n+1, and storing over either half invalidates the other.
+	// There is one spare entry so that a wide value in the last slot of
+	// hand-assembled code does not overflow.
+	private long[] primitives;
+	private Object[] references;
+	private int size;
+	private byte[] types;
+	// The entries in use, including any registers beyond the locals
+	private int used;
+	public Locals(final int size) {
+		this.size = size;
+		this.used = size;
+		primitives = new long[size + 1];
+		references = new Object[size + 1];
+		types = new byte[size + 1];
+	}
+	public Slot at(final int i) {
+		Objects.checkIndex(i, size);
+		return Slot.of(types[i], primitives[i], references[i]);
+	}
+	void check(final int index, final byte type) {
+		if (types[index] != type) {
+			throw new ClassCastException("Cannot load " + Slot.typeName(types[index]) + " as " + Slot.typeName(type)
+					+ " from local " + index);
+		}
+	}
+	private void claim(final int index, final byte type) {
+		if (index > 0 && Slot.isWide(types[index - 1])) {
+			types[index - 1] = Slot.EMPTY_TYPE;
+		}
+		types[index] = type;
+		references[index] = null;
+	}
+	private void claimWide(final int index, final byte type) {
+		claim(index + 1, Slot.EMPTY_TYPE);
+		claim(index, type);
+	}
+	void copy(final byte[] types, final long[] primitives, final Object[] references, final int from, final int to,
+			final int count) {
+		System.arraycopy(types, from, this.types, to, count);
+		System.arraycopy(primitives, from, this.primitives, to, count);
+		System.arraycopy(references, from, this.references, to, count);
+	}
+	// Reads a double without checking its type, for code whose types are proven;
+	// CHECKED is a constant to the JIT, so the check is removed when off
+	double doubleAt(final int index) {
+		if (JVMThread.CHECKED) {
+			check(index, Slot.DOUBLE_TYPE);
+		}
+		return Double.longBitsToDouble(primitives[index]);
+	}
+	float floatAt(final int index) {
+		if (JVMThread.CHECKED) {
+			check(index, Slot.FLOAT_TYPE);
+		}
+		return Float.intBitsToFloat((int) primitives[index]);
+	}
+	public void increment(final int index, final int delta) {
+		check(index, Slot.INT_TYPE);
+		primitives[index] = (int) primitives[index] + delta;
+	}
+	int intAt(final int index) {
+		if (JVMThread.CHECKED) {
+			check(index, Slot.INT_TYPE);
+		}
+		return (int) primitives[index];
+	}
+	public double loadDouble(final int index) {
+		check(index, Slot.DOUBLE_TYPE);
+		return Double.longBitsToDouble(primitives[index]);
+	}
+	public float loadFloat(final int index) {
+		check(index, Slot.FLOAT_TYPE);
+		return Float.intBitsToFloat((int) primitives[index]);
+	}
+	public int loadInt(final int index) {
+		check(index, Slot.INT_TYPE);
+		return (int) primitives[index];
+	}
+	public long loadLong(final int index) {
+		check(index, Slot.LONG_TYPE);
+		return primitives[index];
+	}
+	public Object loadReference(final int index) {
+		check(index, Slot.REFERENCE_TYPE);
+		return references[index];
+	}
+	long longAt(final int index) {
+		if (JVMThread.CHECKED) {
+			check(index, Slot.LONG_TYPE);
+		}
+		return primitives[index];
+	}
+	// Copies a value from one local or register to another without checking its
+	// type, along with the second half of a wide value
+	void move(final int from, final int to) {
+		final byte type = types[from];
+		if (Slot.isWide(type)) {
+			claimWide(to, type);
+		} else {
+			claim(to, type);
+		}
+		primitives[to] = primitives[from];
+		references[to] = references[from];
+	}
+	// Pushes the entries onto the stack as they are, wide values included
+	void pushTo(final Stack stack, final int from, final int count) {
+		stack.push(types, primitives, references, from, count);
+	}
+	Object referenceAt(final int index) {
+		if (JVMThread.CHECKED) {
+			check(index, Slot.REFERENCE_TYPE);
+		}
+		return references[index];
+	}
+	// Makes room for registers beyond the locals, which the register engine
+	// uses for the operand stack
+	void reserve(final int registers) {
+		if (registers >= types.length) {
+			primitives = Arrays.copyOf(primitives, registers + 1);
+			references = Arrays.copyOf(references, registers + 1);
+			types = Arrays.copyOf(types, registers + 1);
+		}
+		used = Math.max(used, registers);
+	}
+	// Empties the locals for reuse by another frame, growing them if needed
+	void reset(final int size) {
+		if (size >= types.length) {
+			primitives = new long[size + 1];
+			references = new Object[size + 1];
+			types = new byte[size + 1];
+		} else {
+			Arrays.fill(references, 0, used + 1, null);
+			Arrays.fill(types, 0, used + 1, Slot.EMPTY_TYPE);
+		}
+		this.size = size;
+		this.used = size;
+	}
+	public void set(final int index, final Slot slot) {
+		Objects.checkIndex(index, size);
+		if (slot.isWide()) {
+			claimWide(index, slot.type());
+		} else {
+			claim(index, slot.type());
+		}
+		primitives[index] = slot.bits();
+		references[index] = slot.reference();
+	}
+	public int size() {
+		return size;
+	}
+	public void store(final int index, final double value) {
+		claimWide(index, Slot.DOUBLE_TYPE);
+		primitives[index] = Double.doubleToRawLongBits(value);
+	}
+	public void store(final int index, final float value) {
+		claim(index, Slot.FLOAT_TYPE);
+		primitives[index] = Float.floatToRawIntBits(value);
+	}
+	public void store(final int index, final int value) {
+		claim(index, Slot.INT_TYPE);
+		primitives[index] = value;
+	}
+	public void store(final int index, final long value) {
+		claimWide(index, Slot.LONG_TYPE);
+		primitives[index] = value;
+	}
+	public void store(final int index, final Object value) {
+		if (value instanceof Slot) {
+			throw new IllegalStateException("Attempted to wrap slot in slot");
+		}
+		claim(index, Slot.REFERENCE_TYPE);
+		references[index] = value;
+	}
+	byte typeAt(final int index) {
+		return types[index];
+	}
+}
@@ -0,0 +1,317 @@
+/*
+ * Copyright (c) 2020, Alex Blewitt, Bandlem Ltd
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package com.bandlem.jvm.jvmulator;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.reflect.Modifier;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Predicate;
+import com.bandlem.jvm.jvmulator.classfile.Attribute.Code;
+import com.bandlem.jvm.jvmulator.classfile.ConstantPool;
+import com.bandlem.jvm.jvmulator.classfile.ConstantPool.ClassConstant;
+import com.bandlem.jvm.jvmulator.classfile.ConstantPool.DoubleConstant;
+import com.bandlem.jvm.jvmulator.classfile.ConstantPool.FieldRef;
+import com.bandlem.jvm.jvmulator.classfile.ConstantPool.FloatConstant;
+import com.bandlem.jvm.jvmulator.classfile.ConstantPool.IntConstant;
+import com.bandlem.jvm.jvmulator.classfile.ConstantPool.InterfaceMethodRef;
+import com.bandlem.jvm.jvmulator.classfile.ConstantPool.Item;
+import com.bandlem.jvm.jvmulator.classfile.ConstantPool.LongConstant;
+import com.bandlem.jvm.jvmulator.classfile.ConstantPool.MethodRef;
+import com.bandlem.jvm.jvmulator.classfile.ConstantPool.NameAndType;
+import com.bandlem.jvm.jvmulator.classfile.ConstantPool.StringConstant;
+import com.bandlem.jvm.jvmulator.classfile.ConstantPool.UTFConstant;
+import com.bandlem.jvm.jvmulator.classfile.JavaClass;
+import com.bandlem.jvm.jvmulator.classfile.Member.Method;
+import com.bandlem.jvm.jvmulator.classfile.MethodDescriptor;
+import com.bandlem.jvm.jvmulator.compiler.InMemoryClassLoader;
+// Copies a hot static method's bytecode into a class of its own, which is
+// defined in a new class loader so that it can be unloaded with the method.
+// Only the constants that the code uses are copied, with the code's indexes
+// rewritten to match, and calls to the method itself are pointed at the copy.
+// Other classes are those of the host, as they are for the interpreter.
+//
+// The class is written as version 49 so that the verifier infers the types
+// rather than needing the stack map frames, which are not parsed yet. Code
+// that cannot be copied this way, or that uses classes or members that are
+// not public, stays in the interpreter, as does code that makes or uses
+// instances of emulated classes, which the host cannot see.
+class MethodCompiler {
+	private static final int ACC_SUPER = 0x20;
+	private static final AtomicInteger COUNT = new AtomicInteger();
+	private static final int FIXED = Modifier.STATIC | Modifier.NATIVE | Modifier.ABSTRACT | Modifier.SYNCHRONIZED;
+	private static final String PREFIX = "jvmulator/compiled/";
+	private static final int VERSION = 49;
+	// Returns a handle taking the arguments from a stack and leaving any result
+	// in their place, or null if the method cannot be compiled
+	static MethodHandle compile(final JavaClass javaClass, final Method method) {
+		return compile(javaClass, method, className -> false);
+	}
+	// Compiles the method unless it uses instances of the emulated classes
+	static MethodHandle compile(final JavaClass javaClass, final Method method, final Predicate<String> emulated) {
+		final Code code = method.getCodeAttribute();
+		if ((method.flags & FIXED) != Modifier.STATIC || method.name.charAt(0) == '<'
+				|| code.getExceptionTableLength() != 0) {
+			return null;
+		}
+		try {
+			return new MethodCompiler(javaClass, method, emulated).define();
+		} catch (final IOException | ReflectiveOperationException | LinkageError | UnsupportedOperationException e) {
+			return null;
+		}
+	}
+	private static void write2(final byte[] bytecode, final int offset, final int value) {
+		bytecode[offset] = (byte) (value >> 8);
+		bytecode[offset + 1] = (byte) value;
+	}
+	private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+	private final Map<Integer, Integer> copied = new HashMap<>();
+	private int count = 1;
+	private final Predicate<String> emulated;
+	private final DataOutputStream entries = new DataOutputStream(bytes);
+	private final JavaClass javaClass;
+	private final ClassLoader loader = JVMFrame.class.getClassLoader();
+	private final Method method;
+	private final String name;
+	private final ConstantPool pool;
+	private final int self;
+	private MethodCompiler(final JavaClass javaClass, final Method method, final Predicate<String> emulated)
+			throws IOException {
+		this.emulated = emulated;
+		this.javaClass = javaClass;
+		this.method = method;
+		this.name = PREFIX + javaClass.this_class + "$" + COUNT.incrementAndGet();
+		this.pool = javaClass.pool;
+		this.self = classConstant(utf(name));
+	}
+	// Checks that the class can be linked to from the compiled class
+	private Class<?> accessible(final String className) throws ReflectiveOperationException {
+		final Class<?> clazz = Class.forName(className.replace('/', '.'), false, loader);
+		Class<?> element = clazz;
+		while (element.isArray()) {
+			element = element.getComponentType();
+		}
+		if (!element.isPrimitive() && !Modifier.isPublic(element.getModifiers())) {
+			throw new UnsupportedOperationException("Class is not public: " + className);
+		}
+		return clazz;
+	}
+	// Checks that the referenced member is public, which getField and getMethod require
+	private void accessible(final String className, final int nameAndType, final boolean field)
+			throws ReflectiveOperationException {
+		final Class<?> clazz = accessible(className);
+		final NameAndType nat = (NameAndType) pool.getItem(nameAndType);
+		final String memberName = pool.getString(nat.nameIndex);
+		final String descriptor = pool.getString(nat.descriptorIndex);
+		if (field) {
+			clazz.getField(memberName);
+		} else if (memberName.equals("<init>")) {
+			clazz.getConstructor(MethodDescriptor.of(descriptor).getArgumentTypes(loader));
+		} else {
+			clazz.getMethod(memberName, MethodDescriptor.of(descriptor).getArgumentTypes(loader));
+		}
+	}
+	private byte[] assemble() throws IOException, ReflectiveOperationException {
+		final int methodName = utf(method.name);
+		final int descriptor = utf(method.descriptor);
+		final int codeName = utf(Code.NAME);
+		final int object = classConstant(utf("java/lang/Object"));
+		final Code code = method.getCodeAttribute();
+		final byte[] bytecode = code.getBytecode().clone();
+		final Instructions instructions = Instructions.of(code);
+		final String signature = method.descriptor;
+		int start = signature.indexOf('L');
+		while (start >= 0) {
+			final int end = signature.indexOf(';', start);
+			host(signature.substring(start + 1, end));
+			start = signature.indexOf('L', end);
+		}
+		for (int i = 0; i < instructions.size(); i++) {
+			final int offset = instructions.offset(i);
+			switch (instructions.opcodes[i]) {
+			case Opcodes.LDC: {
+				final int index = copy(instructions.operands[i]);
+				if (index > 0xff) {
+					throw new UnsupportedOperationException("Constant out of range of ldc");
+				}
+				bytecode[offset + 1] = (byte) index;
+				break;
+			}
+			case Opcodes.ANEWARRAY:
+			case Opcodes.CHECKCAST:
+			case Opcodes.GETFIELD:
+			case Opcodes.INSTANCEOF:
+			case Opcodes.INVOKEINTERFACE:
+			case Opcodes.INVOKESPECIAL:
+			case Opcodes.INVOKEVIRTUAL:
+			case Opcodes.MULTIANEWARRAY:
+			case Opcodes.NEW:
+			case Opcodes.PUTFIELD:
+				host(owner(instructions.operands[i]));
+				write2(bytecode, offset + 1, copy(instructions.operands[i]));
+				break;
+			case Opcodes.GETSTATIC:
+			case Opcodes.INVOKESTATIC:
+			case Opcodes.LDC_W:
+			case Opcodes.LDC2_W:
+			case Opcodes.PUTSTATIC:
+				write2(bytecode, offset + 1, copy(instructions.operands[i]));
+				break;
+			case Opcodes.INVOKEDYNAMIC:
+				throw new UnsupportedOperationException("Cannot compile invokedynamic");
+			default:
+				break;
+			}
+		}
+		// A pool that overflows the count is rejected as a ClassFormatError
+		final ByteArrayOutputStream out = new ByteArrayOutputStream();
+		final DataOutputStream data = new DataOutputStream(out);
+		data.writeInt(0xcafebabe);
+		data.writeShort(0);
+		data.writeShort(VERSION);
+		data.writeShort(count);
+		bytes.writeTo(data);
+		data.writeShort(Modifier.PUBLIC | Modifier.FINAL | ACC_SUPER);
+		data.writeShort(self);
+		data.writeShort(object);
+		data.writeShort(0); // interfaces
+		data.writeShort(0); // fields
+		data.writeShort(1); // methods
+		data.writeShort(Modifier.PUBLIC | Modifier.STATIC | method.flags & Modifier.STRICT);
+		data.writeShort(methodName);
+		data.writeShort(descriptor);
+		data.writeShort(1); // attributes
+		data.writeShort(codeName);
+		data.writeInt(12 + bytecode.length);
+		data.writeShort(code.getMaxStack());
+		data.writeShort(code.getMaxLocals());
+		data.writeInt(bytecode.length);
+		data.write(bytecode);
+		data.writeShort(0); // exception table
+		data.writeShort(0); // code attributes
+		data.writeShort(0); // class attributes
+		return out.toByteArray();
+	}
+	private int classConstant(final int nameIndex) throws IOException {
+		entries.writeByte(ClassConstant.TYPE);
+		entries.writeShort(nameIndex);
+		return count++;
+	}
+	// Copies the entry and those it refers to, returning its index in the new pool
+	private int copy(final int index) throws IOException, ReflectiveOperationException {
+		final Integer existing = copied.get(index);
+		if (existing != null) {
+			return existing;
+		}
+		final Item item = pool.getItem(index);
+		final int result;
+		if (item instanceof UTFConstant) {
+			result = utf(((UTFConstant) item).value);
+		} else if (item instanceof IntConstant) {
+			entries.writeByte(IntConstant.TYPE);
+			entries.writeInt(((IntConstant) item).value);
+			result = count++;
+		} else if (item instanceof FloatConstant) {
+			entries.writeByte(FloatConstant.TYPE);
+			entries.writeFloat(((FloatConstant) item).value);
+			result = count++;
+		} else if (item instanceof LongConstant) {
+			entries.writeByte(LongConstant.TYPE);
+			entries.writeLong(((LongConstant) item).value);
+			result = count;
+			count += 2;
+		} else if (item instanceof DoubleConstant) {
+			entries.writeByte(DoubleConstant.TYPE);
+			entries.writeDouble(((DoubleConstant) item).value);
+			result = count;
+			count += 2;
+		} else if (item instanceof ClassConstant) {
+			accessible(pool.getClassName(index));
+			result = classConstant(copy(((ClassConstant) item).index));
+		} else if (item instanceof StringConstant) {
+			final int string = copy(((StringConstant) item).index);
+			entries.writeByte(StringConstant.TYPE);
+			entries.writeShort(string);
+			result = count++;
+		} else if (item instanceof FieldRef) {
+			final FieldRef ref = (FieldRef) item;
+			accessible(pool.getClassName(ref.classIndex), ref.nameAndTypeIndex, true);
+			result = reference(FieldRef.TYPE, copy(ref.classIndex), copy(ref.nameAndTypeIndex));
+		} else if (item instanceof MethodRef) {
+			final MethodRef ref = (MethodRef) item;
+			final int classIndex;
+			if (isSelf(ref)) {
+				classIndex = self;
+			} else {
+				accessible(pool.getClassName(ref.classIndex), ref.nameAndTypeIndex, false);
+				classIndex = copy(ref.classIndex);
+			}
+			result = reference(MethodRef.TYPE, classIndex, copy(ref.nameAndTypeIndex));
+		} else if (item instanceof InterfaceMethodRef) {
+			final InterfaceMethodRef ref = (InterfaceMethodRef) item;
+			accessible(pool.getClassName(ref.classIndex), ref.nameAndTypeIndex, false);
+			result = reference(InterfaceMethodRef.TYPE, copy(ref.classIndex), copy(ref.nameAndTypeIndex));
+		} else if (item instanceof NameAndType) {
+			final NameAndType nat = (NameAndType) item;
+			result = reference(NameAndType.TYPE, copy(nat.nameIndex), copy(nat.descriptorIndex));
+		} else {
+			throw new UnsupportedOperationException("Cannot compile constant of type " + item.type);
+		}
+		copied.put(index, result);
+		return result;
+	}
+	private MethodHandle define() throws IOException, ReflectiveOperationException {
+		final String binaryName = name.replace('/', '.');
+		final ClassLoader classLoader = new InMemoryClassLoader(Map.of(binaryName, assemble()), loader);
+		// Initializing the class links it, so that it is verified before it is used
+		final Class<?> clazz = Class.forName(binaryName, true, classLoader);
+		final java.lang.reflect.Method compiled = clazz.getMethod(method.name,
+				method.getMethodDescriptor().getArgumentTypes(loader));
+		return ResolvedMethod.adapt(MethodHandles.publicLookup().unreflect(compiled));
+	}
+	// Emulated objects cannot be made or used by host code
+	private void host(final String className) {
+		if (emulated.test(className.replaceAll("^\\[+L|;$", ""))) {
+			throw new UnsupportedOperationException("Class is emulated: " + className);
+		}
+	}
+	private boolean isSelf(final MethodRef ref) {
+		final NameAndType nat = (NameAndType) pool.getItem(ref.nameAndTypeIndex);
+		return pool.getClassName(ref.classIndex).equals(javaClass.this_class)
+				&& pool.getString(nat.nameIndex).equals(method.name)
+				&& pool.getString(nat.descriptorIndex).equals(method.descriptor);
+	}
+	// The class of a class constant or of a member reference
+	private String owner(final int index) {
+		final Item item = pool.getItem(index);
+		if (item instanceof FieldRef) {
+			return pool.getClassName(((FieldRef) item).classIndex);
+		} else if (item instanceof MethodRef) {
+			return pool.getClassName(((MethodRef) item).classIndex);
+		} else if (item instanceof InterfaceMethodRef) {
+			return pool.getClassName(((InterfaceMethodRef) item).classIndex);
+		}
+		return pool.getClassName(index);
+	}
+	private int reference(final int type, final int first, final int second) throws IOException {
+		entries.writeByte(type);
+		entries.writeShort(first);
+		entries.writeShort(second);
+		return count++;
+	}
+	private int utf(final String value) throws IOException {
+		entries.writeByte(UTFConstant.TYPE);
+		entries.writeUTF(value);
+		return count++;
+	}
+}
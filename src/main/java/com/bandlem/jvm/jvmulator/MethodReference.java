@@ -0,0 +1,82 @@
+/*
+ * Copyright (c) 2020, Alex Blewitt, Bandlem Ltd
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package com.bandlem.jvm.jvmulator;
+import com.bandlem.jvm.jvmulator.classfile.ConstantPool;
+import com.bandlem.jvm.jvmulator.classfile.ConstantPool.InterfaceMethodRef;
+import com.bandlem.jvm.jvmulator.classfile.ConstantPool.Item;
+import com.bandlem.jvm.jvmulator.classfile.ConstantPool.MethodRef;
+import com.bandlem.jvm.jvmulator.classfile.ConstantPool.NameAndType;
+import com.bandlem.jvm.jvmulator.classfile.MemberKey;
+import com.bandlem.jvm.jvmulator.classfile.MethodDescriptor;
+// An instance method named by the constant pool. Calls on emulated objects are
+// found in their class, while calls on host objects are resolved to the host's
+// method or constructor on first use.
+class MethodReference {
+	private static final ClassLoader LOADER = JVMFrame.class.getClassLoader();
+	static MethodReference resolve(final ConstantPool pool, final int index) {
+		final Item item = pool.getItem(index);
+		final int classIndex;
+		final int nameAndTypeIndex;
+		if (item instanceof InterfaceMethodRef) {
+			classIndex = ((InterfaceMethodRef) item).classIndex;
+			nameAndTypeIndex = ((InterfaceMethodRef) item).nameAndTypeIndex;
+		} else {
+			classIndex = ((MethodRef) item).classIndex;
+			nameAndTypeIndex = ((MethodRef) item).nameAndTypeIndex;
+		}
+		final NameAndType nat = (NameAndType) pool.getItem(nameAndTypeIndex);
+		final String methodName = pool.getString(nat.nameIndex);
+		final String descriptor = pool.getString(nat.descriptorIndex);
+		return new MethodReference(pool.getClassName(classIndex), MemberKey.of(methodName, descriptor),
+				item instanceof InterfaceMethodRef);
+	}
+	final String className;
+	private ResolvedMethod host;
+	// The emulated class named by the reference, once resolved, with the
+	// vtable index of the method in that class and its subclasses, or -1 if it
+	// is not in the vtable
+	private EmulatedClass.Indexed indexed;
+	final MemberKey key;
+	// The slots taken by the arguments, not counting the receiver
+	final int slots;
+	// Whether the method is found in the vtable, rather than being one of an
+	// interface or of java.lang.Object that no emulated class is named for
+	private final boolean virtual;
+	MethodReference(final String className, final MemberKey key, final boolean interfaceMethod) {
+		this.className = className;
+		this.key = key;
+		this.slots = MethodDescriptor.of(key.descriptor).slots;
+		this.virtual = !interfaceMethod && !className.equals(EmulatedClass.OBJECT);
+	}
+	// The method called on an object of an emulated class, found at the vtable
+	// index resolved once from the named class, or by key in the class's table
+	// for interface methods and those that no emulated class declares
+	Object dispatch(final EmulatedClass type) {
+		if (!virtual) {
+			return type.getMethod(key);
+		}
+		EmulatedClass.Indexed indexed = this.indexed;
+		if (indexed == null || !type.isSubclassOf(indexed.layout)) {
+			final EmulatedClass layout = type.getSuperclass(className);
+			indexed = new EmulatedClass.Indexed(layout, layout.getVirtual(key));
+			this.indexed = indexed;
+		}
+		return indexed.index < 0 ? type.getMethod(key) : type.vtable[indexed.index];
+	}
+	ResolvedMethod host() {
+		if (host == null) {
+			host = isConstructor() ? ResolvedMethod.constructor(key.descriptor, className, LOADER)
+					: ResolvedMethod.resolve(key.name, key.descriptor, className, LOADER);
+		}
+		return host;
+	}
+	boolean isConstructor() {
+		return key.name.equals("<init>");
+	}
+}
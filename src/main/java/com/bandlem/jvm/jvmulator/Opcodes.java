@@ -470,6 +470,14 @@ public interface Opcodes {
 	public static final byte SIPUSH = (byte) 17;
 	public static final byte SWAP = (byte) 95;
 	public static final byte TABLESWITCH = (byte) 170;
+	public static final byte T_BOOLEAN = (byte) 4;
+	public static final byte T_BYTE = (byte) 8;
+	public static final byte T_CHAR = (byte) 5;
+	public static final byte T_DOUBLE = (byte) 7;
+	public static final byte T_FLOAT = (byte) 6;
+	public static final byte T_INT = (byte) 10;
+	public static final byte T_LONG = (byte) 11;
+	public static final byte T_SHORT = (byte) 9;
 	public static final byte WIDE = (byte) 196;
 	public static String name(final byte i) {
 		return name[i & 0xff];
@@ -511,6 +519,7 @@ public interface Opcodes {
 		case IFGT:
 		case IFLE:
 		case IFLT:
+		case IFNE:
 		case IFNONNULL:
 		case IFNULL:
 		case IINC:
@@ -540,6 +549,7 @@ public interface Opcodes {
 		case TABLESWITCH:
 		case LOOKUPSWITCH:
 			operands = -1;
+			break;
 		default:
 			operands = 0;
 		}
@@ -0,0 +1,74 @@
+/*
+ * Copyright (c) 2020, Alex Blewitt, Bandlem Ltd
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package com.bandlem.jvm.jvmulator;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import com.bandlem.jvm.jvmulator.Profiler.Counts;
+public class ProfileSnapshot {
+	private static final int BAR = 40;
+	private final Map<String, Counts> methods;
+	private final Counts opcodes;
+	ProfileSnapshot(final Counts opcodes, final Map<String, Counts> methods) {
+		this.methods = methods;
+		this.opcodes = opcodes;
+	}
+	public long getCount(final byte opcode) {
+		return opcodes.count(opcode & 0xff);
+	}
+	// Methods are named as class:name(descriptor), as returned by getMethods
+	public long getCount(final String method, final int offset) {
+		final Counts counts = methods.get(method);
+		return counts == null ? 0 : counts.count(offset);
+	}
+	public Set<String> getMethods() {
+		return Collections.unmodifiableSet(methods.keySet());
+	}
+	public long getNanos(final byte opcode) {
+		return opcodes.nanos(opcode & 0xff);
+	}
+	public long getNanos(final String method, final int offset) {
+		final Counts counts = methods.get(method);
+		return counts == null ? 0 : counts.nanos(offset);
+	}
+	// Opcodes by descending time with a bar for their share of the total,
+	// followed by the per-offset counts of each method
+	public String histogram() {
+		final StringBuilder builder = new StringBuilder();
+		final List<Integer> executed = new ArrayList<>();
+		long total = 0;
+		for (int i = 0; i < opcodes.counts.length; i++) {
+			if (opcodes.counts[i] > 0) {
+				executed.add(i);
+				total += opcodes.nanos[i];
+			}
+		}
+		executed.sort(Comparator.comparingLong((final Integer i) -> opcodes.nanos[i]).reversed());
+		final long divisor = Math.max(total, 1);
+		builder.append(String.format("%-16s %12s %14s %7s%n", "opcode", "count", "nanos", "time"));
+		for (final int i : executed) {
+			final long nanos = opcodes.nanos[i];
+			builder.append(String.format("%-16s %12d %14d %6.2f%% %s%n", Opcodes.name[i], opcodes.counts[i], nanos,
+					nanos * 100.0 / divisor, "#".repeat((int) (nanos * BAR / divisor))));
+		}
+		methods.forEach((method, counts) -> {
+			builder.append(String.format("%n%s%n", method));
+			for (int offset = 0; offset < counts.counts.length; offset++) {
+				if (counts.counts[offset] > 0) {
+					builder.append(String.format("%8d %-16s %12d %14d%n", offset, Opcodes.name(counts.opcodes[offset]),
+							counts.counts[offset], counts.nanos[offset]));
+				}
+			}
+		});
+		return builder.toString();
+	}
+}
@@ -0,0 +1,72 @@
+/*
+ * Copyright (c) 2020, Alex Blewitt, Bandlem Ltd
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package com.bandlem.jvm.jvmulator;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import com.bandlem.jvm.jvmulator.classfile.MemberKey;
+public class Profiler implements ExecutionListener {
+	// Execution counts and times indexed by opcode or bytecode offset
+	static class Counts {
+		long[] counts;
+		long[] nanos;
+		byte[] opcodes;
+		Counts(final int size) {
+			counts = new long[size];
+			nanos = new long[size];
+			opcodes = new byte[size];
+		}
+		void add(final int index, final byte opcode, final long elapsed) {
+			if (index >= counts.length) {
+				final int size = Math.max(counts.length * 2, index + 1);
+				counts = Arrays.copyOf(counts, size);
+				nanos = Arrays.copyOf(nanos, size);
+				opcodes = Arrays.copyOf(opcodes, size);
+			}
+			counts[index]++;
+			nanos[index] += elapsed;
+			opcodes[index] = opcode;
+		}
+		Counts copy() {
+			final Counts copy = new Counts(0);
+			copy.counts = counts.clone();
+			copy.nanos = nanos.clone();
+			copy.opcodes = opcodes.clone();
+			return copy;
+		}
+		long count(final int index) {
+			return index < counts.length ? counts[index] : 0;
+		}
+		long nanos(final int index) {
+			return index < nanos.length ? nanos[index] : 0;
+		}
+	}
+	private static final int OPCODES = 256;
+	// Keyed by class then method so that no key is built per instruction
+	private final Map<String, Map<MemberKey, Counts>> methods = new HashMap<>();
+	private Counts opcodes = new Counts(OPCODES);
+	@Override
+	public void executed(final String className, final MemberKey method, final int offset, final byte opcode,
+			final long nanos) {
+		opcodes.add(opcode & 0xff, opcode, nanos);
+		methods.computeIfAbsent(className, k -> new HashMap<>()).computeIfAbsent(method, k -> new Counts(16))
+				.add(offset, opcode, nanos);
+	}
+	public void reset() {
+		methods.clear();
+		opcodes = new Counts(OPCODES);
+	}
+	public ProfileSnapshot snapshot() {
+		final Map<String, Counts> copies = new TreeMap<>();
+		methods.forEach((className, counts) -> counts
+				.forEach((key, method) -> copies.put(className + ":" + key, method.copy())));
+		return new ProfileSnapshot(opcodes.copy(), copies);
+	}
+}
@@ -0,0 +1,816 @@
+/*
+ * Copyright (c) 2020, Alex Blewitt, Bandlem Ltd
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package com.bandlem.jvm.jvmulator;
+import java.util.Arrays;
+import com.bandlem.jvm.jvmulator.classfile.ConstantPool;
+import com.bandlem.jvm.jvmulator.classfile.Member.Method;
+// Decoded instructions translated from the stack machine into a register
+// machine, where each instruction names the registers that it reads and the
+// one that it writes. The locals are the first registers, followed by one for
+// each slot of the operand stack at its deepest, so a value at stack depth d
+// lives in register locals + d. Loads, dups and pops are folded away by having
+// later instructions read the local or stack register directly, and a store
+// of a computed value retargets the instruction that computed it, so that
+// i = j + k becomes a single add rather than four stack operations.
+//
+// Instructions reuse the JVM opcodes where they have the same meaning, with
+// operands in registers rather than on the stack: int constants are all
+// sipush, and branches target instruction indexes. Instructions without a
+// register form are handed back to the switch, with the stack slots that they
+// use spilled to the frame's stack and the results copied back.
+//
+// Only code whose types TypeInference has proven is translated, so registers
+// are read without checking their types. The exceptions are checked on their
+// own: the arguments once on entry, and loads of locals that the inference
+// could not prove. Running with -Djvmulator.checked=true checks every read as
+// well, for debugging the inference.
+class RegisterCode {
+	// Translates in a single pass, tracking where the value in each stack slot
+	// can be found. A slot's source is a local while it holds a load that has
+	// not been copied, another stack register below it after a dup, or its own
+	// register once the value is there. Every slot is copied to its own register
+	// before a branch and at the start of a block, so that all paths into an
+	// instruction agree on where the values are.
+	private static class Translator {
+		private final int base;
+		private int count;
+		private int depth;
+		private final byte[] entry;
+		private int[] firsts;
+		private final TypeInference inference;
+		private final Instructions instructions;
+		// The register written by the last instruction, if a store can retarget it
+		private int last = -1;
+		private byte[] opcodes;
+		private final ConstantPool pool;
+		private int[] results;
+		private int[] seconds;
+		private final int[] sources;
+		private final int[] starts;
+		Translator(final Instructions instructions, final ConstantPool pool, final TypeInference inference,
+				final byte[] entry) {
+			this.instructions = instructions;
+			this.pool = pool;
+			this.inference = inference;
+			this.entry = entry;
+			this.base = entry.length;
+			this.sources = new int[inference.maxDepth];
+			this.starts = new int[instructions.size()];
+			final int capacity = starts.length + 4;
+			this.opcodes = new byte[capacity];
+			this.results = new int[capacity];
+			this.firsts = new int[capacity];
+			this.seconds = new int[capacity];
+		}
+		private void binary(final byte opcode, final int width, final int result) {
+			final int b = sources[depth - width];
+			final int a = sources[depth - 2 * width];
+			depth -= 2 * width;
+			value(opcode, result, a, b);
+		}
+		private void branch(final byte opcode, final int target, final int a, final int b) {
+			materialize(0);
+			emit(opcode, target, a, b);
+		}
+		// Checks the type of a local before it is loaded, unless it has been proven
+		private void check(final int instruction, final int local, final byte type) {
+			if (inference.type(instruction, local) != type) {
+				emit(CHECK, 0, local, type);
+			}
+		}
+		private void emit(final byte opcode, final int result, final int first, final int second) {
+			if (count == opcodes.length) {
+				opcodes = Arrays.copyOf(opcodes, count * 2);
+				results = Arrays.copyOf(results, count * 2);
+				firsts = Arrays.copyOf(firsts, count * 2);
+				seconds = Arrays.copyOf(seconds, count * 2);
+			}
+			opcodes[count] = opcode;
+			results[count] = result;
+			firsts[count] = first;
+			seconds[count++] = second;
+			last = -1;
+		}
+		// Copies any slots that hold a load of the local, before it is overwritten
+		private void hazard(final int local, final int width) {
+			for (int k = 0; k < depth; k++) {
+				if (sources[k] >= local - 1 && sources[k] < local + width) {
+					move(k);
+				}
+			}
+		}
+		private void interpret(final int instruction) {
+			final byte opcode = instructions.opcodes[instruction];
+			final int operand = instructions.operands[instruction];
+			final int pops = TypeInference.pops(opcode, operand, pool);
+			final int from = depth - pops;
+			materialize(from);
+			emit(INTERPRET, base + from, instruction, pops);
+			depth = from + TypeInference.pushes(opcode, operand, pool);
+			for (int k = from; k < depth; k++) {
+				sources[k] = base + k;
+			}
+		}
+		// Copies the slots from the given depth up into their own registers
+		private void materialize(final int from) {
+			for (int k = from; k < depth; k++) {
+				move(k);
+			}
+		}
+		private void move(final int k) {
+			final int source = sources[k];
+			if (source != SECOND && source != base + k) {
+				emit(MOVE, base + k, source, 0);
+				sources[k] = base + k;
+			}
+		}
+		private void push(final int source, final int width) {
+			sources[depth++] = source;
+			if (width == 2) {
+				sources[depth++] = SECOND;
+			}
+		}
+		private void reset(final int depth) {
+			this.depth = depth;
+			for (int k = 0; k < depth; k++) {
+				sources[k] = base + k;
+			}
+			last = -1;
+		}
+		private void store(final int local, final int width) {
+			final int q = depth - width;
+			final int value = sources[q];
+			depth = q;
+			hazard(local, width);
+			if (value == base + q && last == value) {
+				// The instruction that computed the value writes the local instead
+				results[count - 1] = local;
+				last = -1;
+			} else {
+				emit(MOVE, local, value, 0);
+			}
+		}
+		RegisterCode translate() {
+			boolean reachable = false;
+			for (int i = 0; i < starts.length; i++) {
+				final int depth = inference.depth(i);
+				if (depth >= 0 && (!reachable || inference.isTarget(i))) {
+					if (reachable) {
+						materialize(0);
+					}
+					reset(depth);
+				}
+				starts[i] = count;
+				reachable = depth >= 0 && translate(i);
+			}
+			// Branches are resolved from instructions to their translations
+			for (int k = 0; k < count; k++) {
+				if (TypeInference.isBranch(opcodes[k]) || opcodes[k] == Opcodes.GOTO) {
+					results[k] = starts[results[k]];
+				}
+			}
+			return new RegisterCode(Arrays.copyOf(opcodes, count), Arrays.copyOf(results, count),
+					Arrays.copyOf(firsts, count), Arrays.copyOf(seconds, count), base + sources.length, entry);
+		}
+		// Translates an instruction, returning whether it can continue with the next one
+		private boolean translate(final int instruction) {
+			final byte opcode = instructions.opcodes[instruction];
+			final int operand = instructions.operands[instruction];
+			switch (opcode) {
+			case Opcodes.NOP:
+				break;
+			// Constants
+			case Opcodes.ACONST_NULL:
+				value(opcode, 1, 0, 0);
+				break;
+			case Opcodes.ICONST_M1:
+			case Opcodes.ICONST_0:
+			case Opcodes.ICONST_1:
+			case Opcodes.ICONST_2:
+			case Opcodes.ICONST_3:
+			case Opcodes.ICONST_4:
+			case Opcodes.ICONST_5:
+				value(Opcodes.SIPUSH, 1, opcode - Opcodes.ICONST_0, 0);
+				break;
+			case Opcodes.BIPUSH:
+			case Opcodes.SIPUSH:
+				value(Opcodes.SIPUSH, 1, operand, 0);
+				break;
+			case Opcodes.LCONST_0:
+			case Opcodes.LCONST_1:
+				value(opcode, 2, 0, 0);
+				break;
+			case Opcodes.FCONST_0:
+			case Opcodes.FCONST_1:
+			case Opcodes.FCONST_2:
+				value(opcode, 1, 0, 0);
+				break;
+			case Opcodes.DCONST_0:
+			case Opcodes.DCONST_1:
+				value(opcode, 2, 0, 0);
+				break;
+			// Loads and stores
+			case Opcodes.ILOAD:
+			case Opcodes.LLOAD:
+			case Opcodes.FLOAD:
+			case Opcodes.DLOAD:
+			case Opcodes.ALOAD:
+			case Opcodes.ILOAD_0:
+			case Opcodes.ILOAD_1:
+			case Opcodes.ILOAD_2:
+			case Opcodes.ILOAD_3:
+			case Opcodes.LLOAD_0:
+			case Opcodes.LLOAD_1:
+			case Opcodes.LLOAD_2:
+			case Opcodes.LLOAD_3:
+			case Opcodes.FLOAD_0:
+			case Opcodes.FLOAD_1:
+			case Opcodes.FLOAD_2:
+			case Opcodes.FLOAD_3:
+			case Opcodes.DLOAD_0:
+			case Opcodes.DLOAD_1:
+			case Opcodes.DLOAD_2:
+			case Opcodes.DLOAD_3:
+			case Opcodes.ALOAD_0:
+			case Opcodes.ALOAD_1:
+			case Opcodes.ALOAD_2:
+			case Opcodes.ALOAD_3: {
+				final int local = TypeInference.local(opcode, operand);
+				check(instruction, local, TypeInference.localType(opcode));
+				push(local, TypeInference.width(opcode));
+				break;
+			}
+			case Opcodes.ISTORE:
+			case Opcodes.LSTORE:
+			case Opcodes.FSTORE:
+			case Opcodes.DSTORE:
+			case Opcodes.ASTORE:
+			case Opcodes.ISTORE_0:
+			case Opcodes.ISTORE_1:
+			case Opcodes.ISTORE_2:
+			case Opcodes.ISTORE_3:
+			case Opcodes.LSTORE_0:
+			case Opcodes.LSTORE_1:
+			case Opcodes.LSTORE_2:
+			case Opcodes.LSTORE_3:
+			case Opcodes.FSTORE_0:
+			case Opcodes.FSTORE_1:
+			case Opcodes.FSTORE_2:
+			case Opcodes.FSTORE_3:
+			case Opcodes.DSTORE_0:
+			case Opcodes.DSTORE_1:
+			case Opcodes.DSTORE_2:
+			case Opcodes.DSTORE_3:
+			case Opcodes.ASTORE_0:
+			case Opcodes.ASTORE_1:
+			case Opcodes.ASTORE_2:
+			case Opcodes.ASTORE_3:
+				store(TypeInference.local(opcode, operand), TypeInference.width(opcode));
+				break;
+			case Opcodes.IINC:
+				check(instruction, operand, Slot.INT_TYPE);
+				hazard(operand, 1);
+				emit(opcode, operand, instructions.extras[instruction], 0);
+				break;
+			// Arithmetic and comparisons
+			case Opcodes.IADD:
+			case Opcodes.ISUB:
+			case Opcodes.IMUL:
+			case Opcodes.IDIV:
+			case Opcodes.IREM:
+			case Opcodes.ISHL:
+			case Opcodes.ISHR:
+			case Opcodes.IUSHR:
+			case Opcodes.IAND:
+			case Opcodes.IOR:
+			case Opcodes.IXOR:
+			case Opcodes.FCMPL:
+			case Opcodes.FCMPG:
+				binary(opcode, 1, 1);
+				break;
+			case Opcodes.FADD:
+			case Opcodes.FSUB:
+			case Opcodes.FMUL:
+			case Opcodes.FDIV:
+			case Opcodes.FREM:
+				binary(opcode, 1, 1);
+				break;
+			case Opcodes.LADD:
+			case Opcodes.LSUB:
+			case Opcodes.LMUL:
+			case Opcodes.LDIV:
+			case Opcodes.LREM:
+			case Opcodes.LAND:
+			case Opcodes.LOR:
+			case Opcodes.LXOR:
+				binary(opcode, 2, 2);
+				break;
+			case Opcodes.DADD:
+			case Opcodes.DSUB:
+			case Opcodes.DMUL:
+			case Opcodes.DDIV:
+			case Opcodes.DREM:
+				binary(opcode, 2, 2);
+				break;
+			case Opcodes.LCMP:
+			case Opcodes.DCMPL:
+			case Opcodes.DCMPG:
+				binary(opcode, 2, 1);
+				break;
+			case Opcodes.LSHL:
+			case Opcodes.LSHR:
+			case Opcodes.LUSHR: {
+				final int b = sources[depth - 1];
+				final int a = sources[depth - 3];
+				depth -= 3;
+				value(opcode, 2, a, b);
+				break;
+			}
+			// Negation and conversions
+			case Opcodes.INEG:
+			case Opcodes.I2B:
+			case Opcodes.I2C:
+			case Opcodes.I2S:
+			case Opcodes.F2I:
+				unary(opcode, 1, 1);
+				break;
+			case Opcodes.I2L:
+			case Opcodes.F2L:
+				unary(opcode, 1, 2);
+				break;
+			case Opcodes.I2F:
+			case Opcodes.FNEG:
+				unary(opcode, 1, 1);
+				break;
+			case Opcodes.I2D:
+			case Opcodes.F2D:
+				unary(opcode, 1, 2);
+				break;
+			case Opcodes.L2I:
+			case Opcodes.D2I:
+				unary(opcode, 2, 1);
+				break;
+			case Opcodes.LNEG:
+			case Opcodes.D2L:
+				unary(opcode, 2, 2);
+				break;
+			case Opcodes.L2F:
+			case Opcodes.D2F:
+				unary(opcode, 2, 1);
+				break;
+			case Opcodes.L2D:
+			case Opcodes.DNEG:
+				unary(opcode, 2, 2);
+				break;
+			// Stack manipulation, where the pops and the dups that add to the top
+			// only change where the slots are found
+			case Opcodes.DUP:
+				sources[depth] = sources[depth - 1];
+				depth++;
+				break;
+			case Opcodes.DUP2:
+				sources[depth] = sources[depth - 2];
+				sources[depth + 1] = sources[depth - 1];
+				depth += 2;
+				break;
+			case Opcodes.POP:
+				depth--;
+				break;
+			case Opcodes.POP2:
+				depth -= 2;
+				break;
+			// Branching
+			case Opcodes.IFEQ:
+			case Opcodes.IFNE:
+			case Opcodes.IFLT:
+			case Opcodes.IFGE:
+			case Opcodes.IFGT:
+			case Opcodes.IFLE:
+			case Opcodes.IFNULL:
+			case Opcodes.IFNONNULL:
+				branch(opcode, operand, sources[--depth], 0);
+				break;
+			case Opcodes.IF_ICMPEQ:
+			case Opcodes.IF_ICMPNE:
+			case Opcodes.IF_ICMPLT:
+			case Opcodes.IF_ICMPGE:
+			case Opcodes.IF_ICMPGT:
+			case Opcodes.IF_ICMPLE:
+			case Opcodes.IF_ACMPEQ:
+			case Opcodes.IF_ACMPNE: {
+				final int b = sources[--depth];
+				branch(opcode, operand, sources[--depth], b);
+				break;
+			}
+			case Opcodes.GOTO:
+			case Opcodes.GOTO_W:
+				branch(Opcodes.GOTO, operand, 0, 0);
+				return false;
+			// Return, which leaves the stack empty
+			case Opcodes.IRETURN:
+			case Opcodes.FRETURN:
+			case Opcodes.ARETURN:
+			case Opcodes.LRETURN:
+			case Opcodes.DRETURN:
+				emit(opcode, 0, sources[0], 0);
+				return false;
+			case Opcodes.RETURN:
+				emit(opcode, 0, 0, 0);
+				return false;
+			default:
+				interpret(instruction);
+				break;
+			}
+			return true;
+		}
+		private void unary(final byte opcode, final int width, final int result) {
+			final int a = sources[depth - width];
+			depth -= width;
+			value(opcode, result, a, 0);
+		}
+		// Computes a value of the given width into the register for the next stack slot
+		private void value(final byte opcode, final int width, final int a, final int b) {
+			emit(opcode, base + depth, a, b);
+			last = base + depth;
+			push(base + depth, width);
+		}
+	}
+	// Reserved by the JVM specification for use inside an implementation
+	static final byte CHECK = Opcodes.BREAKPOINT;
+	static final byte INTERPRET = Opcodes.IMPDEP2;
+	static final byte MOVE = Opcodes.IMPDEP1;
+	// Marks the second stack slot of a wide value, which moves with the first
+	private static final int SECOND = -1;
+	// Translates the instructions of a method, or code without a method, for a
+	// frame with the given number of locals, or returns null if their types
+	// cannot be proven. Methods with exception handlers are not translated, as
+	// a handler can be entered from anywhere in its range with the stack
+	// replaced by the exception, which the registers do not model.
+	static RegisterCode translate(final Instructions instructions, final ConstantPool pool, final int locals,
+			final Method method) {
+		if (instructions.exceptions != null) {
+			return null;
+		}
+		final byte[] entry = TypeInference.entry(method, locals);
+		final TypeInference inference = TypeInference.infer(instructions, pool, entry);
+		return inference == null ? null : new Translator(instructions, pool, inference, entry).translate();
+	}
+	// The types that the locals must have on entry, or empty where they are not known
+	private final byte[] entry;
+	private final int[] firsts;
+	private final byte[] opcodes;
+	// Registers in use, for the locals and the operand stack
+	final int maxRegisters;
+	// The register written, or the target instruction for a branch
+	private final int[] results;
+	private final int[] seconds;
+	RegisterCode(final byte[] opcodes, final int[] results, final int[] firsts, final int[] seconds,
+			final int maxRegisters, final byte[] entry) {
+		this.opcodes = opcodes;
+		this.results = results;
+		this.firsts = firsts;
+		this.seconds = seconds;
+		this.maxRegisters = maxRegisters;
+		this.entry = entry;
+	}
+	// Runs the code, or returns false without running it if the arguments do not
+	// have the types that it was translated for
+	boolean execute(final JVMFrame frame) {
+		final Locals registers = frame.locals;
+		for (int i = 0; i < entry.length; i++) {
+			if (entry[i] != Slot.EMPTY_TYPE && registers.typeAt(i) != entry[i]) {
+				return false;
+			}
+		}
+		registers.reserve(maxRegisters);
+		int pc = 0;
+		while (true) {
+			final int instruction = pc++;
+			final int result = results[instruction];
+			final int a = firsts[instruction];
+			final int b = seconds[instruction];
+			switch (opcodes[instruction]) {
+			// Copies and checks
+			case MOVE:
+				registers.move(a, result);
+				break;
+			case CHECK:
+				registers.check(a, (byte) b);
+				break;
+			// Constants
+			case Opcodes.ACONST_NULL:
+				registers.store(result, (Object) null);
+				break;
+			case Opcodes.SIPUSH:
+				registers.store(result, a);
+				break;
+			case Opcodes.LCONST_0:
+				registers.store(result, 0L);
+				break;
+			case Opcodes.LCONST_1:
+				registers.store(result, 1L);
+				break;
+			case Opcodes.FCONST_0:
+				registers.store(result, 0F);
+				break;
+			case Opcodes.FCONST_1:
+				registers.store(result, 1F);
+				break;
+			case Opcodes.FCONST_2:
+				registers.store(result, 2F);
+				break;
+			case Opcodes.DCONST_0:
+				registers.store(result, 0D);
+				break;
+			case Opcodes.DCONST_1:
+				registers.store(result, 1D);
+				break;
+			// Arithmetic
+			case Opcodes.IADD:
+				registers.store(result, registers.intAt(a) + registers.intAt(b));
+				break;
+			case Opcodes.LADD:
+				registers.store(result, registers.longAt(a) + registers.longAt(b));
+				break;
+			case Opcodes.FADD:
+				registers.store(result, registers.floatAt(a) + registers.floatAt(b));
+				break;
+			case Opcodes.DADD:
+				registers.store(result, registers.doubleAt(a) + registers.doubleAt(b));
+				break;
+			case Opcodes.ISUB:
+				registers.store(result, registers.intAt(a) - registers.intAt(b));
+				break;
+			case Opcodes.LSUB:
+				registers.store(result, registers.longAt(a) - registers.longAt(b));
+				break;
+			case Opcodes.FSUB:
+				registers.store(result, registers.floatAt(a) - registers.floatAt(b));
+				break;
+			case Opcodes.DSUB:
+				registers.store(result, registers.doubleAt(a) - registers.doubleAt(b));
+				break;
+			case Opcodes.IMUL:
+				registers.store(result, registers.intAt(a) * registers.intAt(b));
+				break;
+			case Opcodes.LMUL:
+				registers.store(result, registers.longAt(a) * registers.longAt(b));
+				break;
+			case Opcodes.FMUL:
+				registers.store(result, registers.floatAt(a) * registers.floatAt(b));
+				break;
+			case Opcodes.DMUL:
+				registers.store(result, registers.doubleAt(a) * registers.doubleAt(b));
+				break;
+			case Opcodes.IDIV:
+				registers.store(result, JVMFrame.divide(registers.intAt(a), registers.intAt(b)));
+				break;
+			case Opcodes.LDIV:
+				registers.store(result, JVMFrame.divide(registers.longAt(a), registers.longAt(b)));
+				break;
+			case Opcodes.FDIV:
+				registers.store(result, registers.floatAt(a) / registers.floatAt(b));
+				break;
+			case Opcodes.DDIV:
+				registers.store(result, registers.doubleAt(a) / registers.doubleAt(b));
+				break;
+			case Opcodes.IREM:
+				registers.store(result, JVMFrame.remainder(registers.intAt(a), registers.intAt(b)));
+				break;
+			case Opcodes.LREM:
+				registers.store(result, JVMFrame.remainder(registers.longAt(a), registers.longAt(b)));
+				break;
+			case Opcodes.FREM:
+				registers.store(result, registers.floatAt(a) % registers.floatAt(b));
+				break;
+			case Opcodes.DREM:
+				registers.store(result, registers.doubleAt(a) % registers.doubleAt(b));
+				break;
+			case Opcodes.INEG:
+				registers.store(result, 0 - registers.intAt(a));
+				break;
+			case Opcodes.LNEG:
+				registers.store(result, 0L - registers.longAt(a));
+				break;
+			case Opcodes.FNEG:
+				registers.store(result, 0.0F - registers.floatAt(a));
+				break;
+			case Opcodes.DNEG:
+				registers.store(result, 0.0D - registers.doubleAt(a));
+				break;
+			case Opcodes.IINC:
+				registers.increment(result, a);
+				break;
+			// Bitwise and shift operations
+			case Opcodes.ISHL:
+				registers.store(result, registers.intAt(a) << registers.intAt(b));
+				break;
+			case Opcodes.LSHL:
+				registers.store(result, registers.longAt(a) << registers.intAt(b));
+				break;
+			case Opcodes.ISHR:
+				registers.store(result, registers.intAt(a) >> registers.intAt(b));
+				break;
+			case Opcodes.LSHR:
+				registers.store(result, registers.longAt(a) >> registers.intAt(b));
+				break;
+			case Opcodes.IUSHR:
+				registers.store(result, registers.intAt(a) >>> registers.intAt(b));
+				break;
+			case Opcodes.LUSHR:
+				registers.store(result, registers.longAt(a) >>> registers.intAt(b));
+				break;
+			case Opcodes.IAND:
+				registers.store(result, registers.intAt(a) & registers.intAt(b));
+				break;
+			case Opcodes.LAND:
+				registers.store(result, registers.longAt(a) & registers.longAt(b));
+				break;
+			case Opcodes.IOR:
+				registers.store(result, registers.intAt(a) | registers.intAt(b));
+				break;
+			case Opcodes.LOR:
+				registers.store(result, registers.longAt(a) | registers.longAt(b));
+				break;
+			case Opcodes.IXOR:
+				registers.store(result, registers.intAt(a) ^ registers.intAt(b));
+				break;
+			case Opcodes.LXOR:
+				registers.store(result, registers.longAt(a) ^ registers.longAt(b));
+				break;
+			// Conversions
+			case Opcodes.I2B:
+				registers.store(result, (byte) registers.intAt(a));
+				break;
+			case Opcodes.I2C:
+				registers.store(result, (char) registers.intAt(a));
+				break;
+			case Opcodes.I2S:
+				registers.store(result, (short) registers.intAt(a));
+				break;
+			case Opcodes.I2L:
+				registers.store(result, (long) registers.intAt(a));
+				break;
+			case Opcodes.I2F:
+				registers.store(result, (float) registers.intAt(a));
+				break;
+			case Opcodes.I2D:
+				registers.store(result, (double) registers.intAt(a));
+				break;
+			case Opcodes.F2I:
+				registers.store(result, (int) registers.floatAt(a));
+				break;
+			case Opcodes.F2L:
+				registers.store(result, (long) registers.floatAt(a));
+				break;
+			case Opcodes.F2D:
+				registers.store(result, (double) registers.floatAt(a));
+				break;
+			case Opcodes.D2I:
+				registers.store(result, (int) registers.doubleAt(a));
+				break;
+			case Opcodes.D2L:
+				registers.store(result, (long) registers.doubleAt(a));
+				break;
+			case Opcodes.D2F:
+				registers.store(result, (float) registers.doubleAt(a));
+				break;
+			case Opcodes.L2I:
+				registers.store(result, (int) registers.longAt(a));
+				break;
+			case Opcodes.L2F:
+				registers.store(result, (float) registers.longAt(a));
+				break;
+			case Opcodes.L2D:
+				registers.store(result, (double) registers.longAt(a));
+				break;
+			// Comparisons, where the L and G variants differ only in the result for NaN
+			case Opcodes.LCMP:
+				registers.store(result, Long.compare(registers.longAt(a), registers.longAt(b)));
+				break;
+			case Opcodes.FCMPL: {
+				final float value1 = registers.floatAt(a);
+				final float value2 = registers.floatAt(b);
+				registers.store(result, value1 > value2 ? 1 : value1 == value2 ? 0 : -1);
+				break;
+			}
+			case Opcodes.FCMPG: {
+				final float value1 = registers.floatAt(a);
+				final float value2 = registers.floatAt(b);
+				registers.store(result, value1 < value2 ? -1 : value1 == value2 ? 0 : 1);
+				break;
+			}
+			case Opcodes.DCMPL: {
+				final double value1 = registers.doubleAt(a);
+				final double value2 = registers.doubleAt(b);
+				registers.store(result, value1 > value2 ? 1 : value1 == value2 ? 0 : -1);
+				break;
+			}
+			case Opcodes.DCMPG: {
+				final double value1 = registers.doubleAt(a);
+				final double value2 = registers.doubleAt(b);
+				registers.store(result, value1 < value2 ? -1 : value1 == value2 ? 0 : 1);
+				break;
+			}
+			// Branching
+			case Opcodes.GOTO:
+				if (result <= instruction) {
+					frame.backEdge();
+				}
+				pc = result;
+				break;
+			case Opcodes.IFEQ:
+				pc = registers.intAt(a) == 0 ? result : pc;
+				break;
+			case Opcodes.IFNE:
+				pc = registers.intAt(a) != 0 ? result : pc;
+				break;
+			case Opcodes.IFLT:
+				pc = registers.intAt(a) < 0 ? result : pc;
+				break;
+			case Opcodes.IFGE:
+				pc = registers.intAt(a) >= 0 ? result : pc;
+				break;
+			case Opcodes.IFGT:
+				pc = registers.intAt(a) > 0 ? result : pc;
+				break;
+			case Opcodes.IFLE:
+				pc = registers.intAt(a) <= 0 ? result : pc;
+				break;
+			case Opcodes.IF_ICMPEQ:
+				pc = registers.intAt(a) == registers.intAt(b) ? result : pc;
+				break;
+			case Opcodes.IF_ICMPNE:
+				pc = registers.intAt(a) != registers.intAt(b) ? result : pc;
+				break;
+			case Opcodes.IF_ICMPLT:
+				pc = registers.intAt(a) < registers.intAt(b) ? result : pc;
+				break;
+			case Opcodes.IF_ICMPGE:
+				pc = registers.intAt(a) >= registers.intAt(b) ? result : pc;
+				break;
+			case Opcodes.IF_ICMPGT:
+				pc = registers.intAt(a) > registers.intAt(b) ? result : pc;
+				break;
+			case Opcodes.IF_ICMPLE:
+				pc = registers.intAt(a) <= registers.intAt(b) ? result : pc;
+				break;
+			case Opcodes.IF_ACMPEQ:
+				pc = registers.referenceAt(a) == registers.referenceAt(b) ? result : pc;
+				break;
+			case Opcodes.IF_ACMPNE:
+				pc = registers.referenceAt(a) != registers.referenceAt(b) ? result : pc;
+				break;
+			case Opcodes.IFNULL:
+				pc = registers.referenceAt(a) == null ? result : pc;
+				break;
+			case Opcodes.IFNONNULL:
+				pc = registers.referenceAt(a) != null ? result : pc;
+				break;
+			// Return
+			case Opcodes.IRETURN:
+				frame.returnBits = registers.intAt(a);
+				frame.returnType = Slot.INT_TYPE;
+				return true;
+			case Opcodes.LRETURN:
+				frame.returnBits = registers.longAt(a);
+				frame.returnType = Slot.LONG_TYPE;
+				return true;
+			case Opcodes.FRETURN:
+				frame.returnBits = Float.floatToRawIntBits(registers.floatAt(a));
+				frame.returnType = Slot.FLOAT_TYPE;
+				return true;
+			case Opcodes.DRETURN:
+				frame.returnBits = Double.doubleToRawLongBits(registers.doubleAt(a));
+				frame.returnType = Slot.DOUBLE_TYPE;
+				return true;
+			case Opcodes.ARETURN:
+				frame.returnReference = registers.referenceAt(a);
+				frame.returnType = Slot.REFERENCE_TYPE;
+				return true;
+			case Opcodes.RETURN:
+				frame.returnType = Slot.EMPTY_TYPE;
+				return true;
+			default:
+				// INTERPRET runs the bytecode instruction a through the switch,
+				// with b stack slots from the result register as its operands
+				registers.pushTo(frame.stack, result, b);
+				frame.interpret(a);
+				frame.stack.popTo(registers, result, frame.stack.size());
+				break;
+			}
+		}
+	}
+	byte opcode(final int index) {
+		return opcodes[index];
+	}
+	int size() {
+		return opcodes.length;
+	}
+}
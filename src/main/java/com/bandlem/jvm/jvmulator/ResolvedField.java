@@ -0,0 +1,103 @@
+/*
+ * Copyright (c) 2020, Alex Blewitt, Bandlem Ltd
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package com.bandlem.jvm.jvmulator;
+import java.lang.reflect.Field;
+class ResolvedField {
+	// Finds a field declared by the class or a superclass whether it is public
+	// or not, as the bytecode has already been compiled against it, falling
+	// back to the public fields of interfaces
+	private static Field find(final Class<?> clazz, final String fieldName) throws NoSuchFieldException {
+		for (Class<?> type = clazz; type != null; type = type.getSuperclass()) {
+			for (final Field field : type.getDeclaredFields()) {
+				if (field.getName().equals(fieldName)) {
+					return field;
+				}
+			}
+		}
+		return clazz.getField(fieldName);
+	}
+	static ResolvedField resolve(final String className, final String fieldName, final String descriptor) {
+		try {
+			final Class<?> clazz = Class.forName(className.replace('/', '.'));
+			final Field field = find(clazz, fieldName);
+			field.setAccessible(true);
+			return new ResolvedField(field, descriptor.charAt(0));
+		} catch (final Exception e) {
+			throw new UnsupportedOperationException("Cannot access field " + className + ":" + fieldName, e);
+		}
+	}
+	private final Field field;
+	private final char type;
+	ResolvedField(final Field field, final char type) {
+		this.field = field;
+		this.type = type;
+	}
+	Slot get(final Object target) {
+		try {
+			final Object result = field.get(target);
+			switch (type) {
+			case 'Z':
+			case 'B':
+			case 'S':
+			case 'C':
+			case 'I':
+				return Slot.of((int) result);
+			case 'J':
+				return Slot.of((long) result);
+			case 'F':
+				return Slot.of((float) result);
+			case 'D':
+				return Slot.of((double) result);
+			default:
+				return Slot.of(result);
+			}
+		} catch (final Exception e) {
+			throw new UnsupportedOperationException("Cannot access field " + this, e);
+		}
+	}
+	void put(final Slot value, final Object target) {
+		try {
+			switch (type) {
+			case 'Z':
+				field.setBoolean(target, value.booleanValue());
+				return;
+			case 'B':
+				field.setByte(target, (byte) value.intValue());
+				return;
+			case 'S':
+				field.setShort(target, (short) value.intValue());
+				return;
+			case 'C':
+				field.setChar(target, (char) value.intValue());
+				return;
+			case 'I':
+				field.setInt(target, value.intValue());
+				return;
+			case 'J':
+				field.setLong(target, value.longValue());
+				return;
+			case 'F':
+				field.setFloat(target, value.floatValue());
+				return;
+			case 'D':
+				field.setDouble(target, value.doubleValue());
+				return;
+			default:
+				field.set(target, value.referenceValue());
+				return;
+			}
+		} catch (final Exception e) {
+			throw new UnsupportedOperationException("Cannot access field " + this, e);
+		}
+	}
+	@Override
+	public String toString() {
+		return field.getDeclaringClass().getName() + ":" + field.getName();
+	}
+}
@@ -0,0 +1,119 @@
+/*
+ * Copyright (c) 2020, Alex Blewitt, Bandlem Ltd
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package com.bandlem.jvm.jvmulator;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Executable;
+import java.lang.reflect.Method;
+import com.bandlem.jvm.jvmulator.classfile.MethodDescriptor;
+class ResolvedMethod {
+	private static final MethodHandles.Lookup LOOKUP = MethodHandles.lookup();
+	// Adapts the target to (Stack)V, popping the arguments last first and
+	// pushing any result, so that primitives are never boxed on the way.
+	static MethodHandle adapt(final MethodHandle target) throws ReflectiveOperationException {
+		final MethodType type = target.type();
+		final Class<?> result = type.returnType();
+		MethodHandle invoker;
+		if (result == void.class) {
+			invoker = MethodHandles.dropArguments(target, 0, Stack.class);
+		} else {
+			invoker = MethodHandles.collectArguments(push(result), 1, target);
+		}
+		// Reorder (Stack, P1..Pk) to (Pk..P1, Stack) so each pop can be folded
+		// in ahead of the stack, starting with the last argument
+		final int count = type.parameterCount();
+		final Class<?>[] reversed = new Class<?>[count + 1];
+		final int[] reorder = new int[count + 1];
+		reversed[count] = Stack.class;
+		reorder[0] = count;
+		for (int i = 1; i <= count; i++) {
+			reversed[count - i] = type.parameterType(i - 1);
+			reorder[i] = count - i;
+		}
+		invoker = MethodHandles.permuteArguments(invoker, MethodType.methodType(void.class, reversed), reorder);
+		for (int i = 1; i <= count; i++) {
+			invoker = MethodHandles.foldArguments(invoker, count - i, pop(type.parameterType(i - 1)));
+		}
+		return invoker;
+	}
+	// Resolves a host constructor, which leaves the new instance on the stack
+	static ResolvedMethod constructor(final String descriptor, final String className,
+			final ClassLoader classLoader) {
+		try {
+			final Class<?> clazz = Class.forName(className.replace('/', '.'));
+			final Class<?>[] types = MethodDescriptor.of(descriptor).getArgumentTypes(classLoader);
+			final Constructor<?> constructor = clazz.getConstructor(types);
+			return new ResolvedMethod(constructor, adapt(LOOKUP.unreflectConstructor(constructor)));
+		} catch (final Exception e) {
+			throw new UnsupportedOperationException("Cannot construct " + className, e);
+		}
+	}
+	private static Class<?> kind(final Class<?> type) {
+		if (type == long.class || type == float.class || type == double.class) {
+			return type;
+		} else if (type.isPrimitive()) {
+			return int.class;
+		} else {
+			return Object.class;
+		}
+	}
+	private static MethodHandle pop(final Class<?> type) throws ReflectiveOperationException {
+		final Class<?> kind = kind(type);
+		final String name;
+		if (kind == Object.class) {
+			name = "popReference";
+		} else {
+			name = "pop" + Character.toUpperCase(kind.getName().charAt(0)) + kind.getName().substring(1);
+		}
+		final MethodHandle pop = LOOKUP.findVirtual(Stack.class, name, MethodType.methodType(kind));
+		return MethodHandles.explicitCastArguments(pop, MethodType.methodType(type, Stack.class));
+	}
+	private static MethodHandle push(final Class<?> type) throws ReflectiveOperationException {
+		final MethodHandle push = LOOKUP.findVirtual(Stack.class, "push",
+				MethodType.methodType(void.class, kind(type)));
+		return MethodHandles.explicitCastArguments(push, MethodType.methodType(void.class, Stack.class, type));
+	}
+	static ResolvedMethod resolve(final String methodName, final String descriptor, final String className,
+			final ClassLoader classLoader) {
+		try {
+			final Class<?> clazz = Class.forName(className.replace('/', '.'));
+			final Class<?>[] types = MethodDescriptor.of(descriptor).getArgumentTypes(classLoader);
+			final Method method = clazz.getMethod(methodName, types);
+			return new ResolvedMethod(method, adapt(LOOKUP.unreflect(method)));
+		} catch (final Exception e) {
+			throw new UnsupportedOperationException("Cannot execute method " + className + ":" + methodName, e);
+		}
+	}
+	private final MethodHandle invoker;
+	private final Executable method;
+	ResolvedMethod(final Executable method, final MethodHandle invoker) {
+		this.invoker = invoker;
+		this.method = method;
+	}
+	// Exceptions are thrown as they are, checked or not, as they would be from
+	// the emulated code, whose handlers can catch them
+	@SuppressWarnings("unchecked")
+	<T extends Throwable> void invoke(final Stack stack) throws T {
+		try {
+			invoker.invokeExact(stack);
+		} catch (final Throwable e) {
+			throw (T) JVMFrame.raise(e);
+		}
+	}
+	// Constructors leave the new instance
+	boolean returnsValue() {
+		return !(method instanceof Method) || ((Method) method).getReturnType() != void.class;
+	}
+	@Override
+	public String toString() {
+		return method.getDeclaringClass().getName() + ":" + (method instanceof Method ? method.getName() : "<init>");
+	}
+}
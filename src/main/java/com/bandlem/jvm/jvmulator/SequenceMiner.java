@@ -0,0 +1,166 @@
+/*
+ * Copyright (c) 2020, Alex Blewitt, Bandlem Ltd
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package com.bandlem.jvm.jvmulator;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import com.bandlem.jvm.jvmulator.classfile.Attribute.Code;
+import com.bandlem.jvm.jvmulator.classfile.ClassIndex;
+import com.bandlem.jvm.jvmulator.classfile.ClassPath;
+import com.bandlem.jvm.jvmulator.classfile.JavaClass;
+import com.bandlem.jvm.jvmulator.classfile.Member.Method;
+// Counts how often each short sequence of opcodes occurs in a corpus of
+// classes, which is used to choose the sequences that the threaded engine
+// fuses. Opcodes are counted in their general form, so iload_1 is counted as
+// iload and bipush as iconst, and a sequence ends at the first instruction
+// that can transfer control. Run with the jars and class directories to mine:
+//
+// $ java -cp target/classes com.bandlem.jvm.jvmulator.SequenceMiner some.jar
+public class SequenceMiner {
+	private static final int DEFAULT_LIMIT = 20;
+	public static final int MAX_LENGTH = 4;
+	private static final int MIN_LENGTH = 2;
+	static String general(final byte opcode) {
+		switch (opcode) {
+		case Opcodes.ICONST_M1:
+		case Opcodes.ICONST_0:
+		case Opcodes.ICONST_1:
+		case Opcodes.ICONST_2:
+		case Opcodes.ICONST_3:
+		case Opcodes.ICONST_4:
+		case Opcodes.ICONST_5:
+		case Opcodes.BIPUSH:
+		case Opcodes.SIPUSH:
+			return "iconst";
+		default:
+			final String name = Opcodes.name(opcode);
+			// Loads and stores of locals 0 to 3, such as aload_0 and istore_3
+			if (name.charAt(name.length() - 2) == '_' && (name.contains("load") || name.contains("store"))) {
+				return name.substring(0, name.length() - 2);
+			}
+			return name;
+		}
+	}
+	static boolean isTransfer(final byte opcode) {
+		switch (opcode) {
+		case Opcodes.GOTO:
+		case Opcodes.GOTO_W:
+		case Opcodes.IF_ACMPEQ:
+		case Opcodes.IF_ACMPNE:
+		case Opcodes.IF_ICMPEQ:
+		case Opcodes.IF_ICMPGE:
+		case Opcodes.IF_ICMPGT:
+		case Opcodes.IF_ICMPLE:
+		case Opcodes.IF_ICMPLT:
+		case Opcodes.IF_ICMPNE:
+		case Opcodes.IFEQ:
+		case Opcodes.IFGE:
+		case Opcodes.IFGT:
+		case Opcodes.IFLE:
+		case Opcodes.IFLT:
+		case Opcodes.IFNE:
+		case Opcodes.IFNONNULL:
+		case Opcodes.IFNULL:
+		case Opcodes.JSR:
+		case Opcodes.JSR_W:
+		case Opcodes.RET:
+		case Opcodes.TABLESWITCH:
+		case Opcodes.LOOKUPSWITCH:
+		case Opcodes.IRETURN:
+		case Opcodes.LRETURN:
+		case Opcodes.FRETURN:
+		case Opcodes.DRETURN:
+		case Opcodes.ARETURN:
+		case Opcodes.RETURN:
+		case Opcodes.ATHROW:
+			return true;
+		default:
+			return false;
+		}
+	}
+	public static void main(final String[] args) throws IOException {
+		if (args.length == 0) {
+			System.err.println("Usage: SequenceMiner path...");
+			return;
+		}
+		final Path[] paths = new Path[args.length];
+		for (int i = 0; i < args.length; i++) {
+			paths[i] = Path.of(args[i]);
+		}
+		final ClassIndex index = new ClassPath(paths).index();
+		final SequenceMiner miner = new SequenceMiner();
+		for (final String name : index.getClassNames()) {
+			miner.add(index.getJavaClass(name));
+		}
+		System.out.print(miner.report(DEFAULT_LIMIT));
+	}
+	private final Map<String, Integer> counts = new HashMap<>();
+	private long instructions;
+	public void add(final Instructions instructions) {
+		final String[] names = new String[instructions.size()];
+		for (int i = 0; i < names.length; i++) {
+			names[i] = general(instructions.opcode(i));
+		}
+		this.instructions += names.length;
+		for (int i = 0; i < names.length; i++) {
+			final StringBuilder sequence = new StringBuilder(names[i]);
+			for (int length = MIN_LENGTH; length <= MAX_LENGTH && i + length <= names.length; length++) {
+				if (isTransfer(instructions.opcode(i + length - 2))) {
+					break;
+				}
+				sequence.append(' ').append(names[i + length - 1]);
+				counts.merge(sequence.toString(), 1, Integer::sum);
+			}
+		}
+	}
+	public void add(final JavaClass javaClass) {
+		for (final Method method : javaClass.methods) {
+			final Code code = method.getCodeAttribute();
+			if (code != null) {
+				add(Instructions.of(code));
+			}
+		}
+	}
+	// The number of times that the sequence of general opcodes, separated by spaces, was seen
+	public int getCount(final String sequence) {
+		return counts.getOrDefault(sequence, 0);
+	}
+	public long getInstructions() {
+		return instructions;
+	}
+	public String report(final int limit) {
+		final StringBuilder report = new StringBuilder();
+		report.append(instructions).append(" instructions\n");
+		for (int length = MIN_LENGTH; length <= MAX_LENGTH; length++) {
+			report.append("\nlength ").append(length).append('\n');
+			for (final String sequence : top(length, limit)) {
+				final int count = counts.get(sequence);
+				report.append(String.format("%10d %5.2f%% %s%n", count, 100.0 * count / instructions, sequence));
+			}
+		}
+		return report.toString();
+	}
+	// The most frequent sequences of the given length, most frequent first
+	public List<String> top(final int length, final int limit) {
+		final List<String> sequences = new ArrayList<>();
+		for (final String sequence : counts.keySet()) {
+			if (sequence.split(" ").length == length) {
+				sequences.add(sequence);
+			}
+		}
+		sequences.sort((a, b) -> {
+			final int result = Integer.compare(counts.get(b), counts.get(a));
+			return result != 0 ? result : a.compareTo(b);
+		});
+		return sequences.size() > limit ? sequences.subList(0, limit) : sequences;
+	}
+}
@@ -7,12 +7,17 @@
  * http://www.eclipse.org/legal/epl-v10.html
  */
 package com.bandlem.jvm.jvmulator;
+import java.util.Objects;
 public abstract class Slot {
 	private static class DoubleSlot extends Slot {
 		public DoubleSlot(final double value) {
 			super(value, true);
 		}
 		@Override
+		long bits() {
+			return Double.doubleToRawLongBits((double) value);
+		}
+		@Override
 		protected Object toObject() {
 			return value;
 		}
@@ -20,6 +25,10 @@ public abstract class Slot {
 		public String toString() {
 			return String.valueOf(value);
 		}
+		@Override
+		byte type() {
+			return DOUBLE_TYPE;
+		}
 	}
 	public static class Empty extends Slot {
 		protected Empty() {
@@ -29,50 +38,113 @@ public abstract class Slot {
 		public String toString() {
 			return "---";
 		}
+		@Override
+		byte type() {
+			return EMPTY_TYPE;
+		}
 	}
 	private static class FloatSlot extends Slot {
 		public FloatSlot(final float value) {
 			super(value, false);
 		}
 		@Override
+		long bits() {
+			return Float.floatToRawIntBits((float) value);
+		}
+		@Override
 		public String toString() {
 			return String.valueOf(value);
 		}
+		@Override
+		byte type() {
+			return FLOAT_TYPE;
+		}
 	}
 	private static class IntSlot extends Slot {
 		public IntSlot(final int value) {
 			super(value, false);
 		}
 		@Override
+		long bits() {
+			return (int) value;
+		}
+		@Override
 		public String toString() {
 			return String.valueOf(value);
 		}
+		@Override
+		byte type() {
+			return INT_TYPE;
+		}
 	}
 	private static class LongSlot extends Slot {
 		public LongSlot(final long value) {
 			super(value, true);
 		}
 		@Override
+		long bits() {
+			return (long) value;
+		}
+		@Override
 		public String toString() {
 			return String.valueOf(value);
 		}
+		@Override
+		byte type() {
+			return LONG_TYPE;
+		}
 	}
 	private static class ReferenceSlot extends Slot {
 		public ReferenceSlot(final Object value) {
 			super(value, false);
 		}
 		@Override
+		Object reference() {
+			return value;
+		}
+		@Override
 		public String toString() {
 			return String.valueOf(value);
 		}
+		@Override
+		byte type() {
+			return REFERENCE_TYPE;
+		}
 	}
+	static final byte DOUBLE_TYPE = 4;
 	private static final Slot EMPTY = new Empty();
+	static final byte EMPTY_TYPE = 0;
+	static final byte FLOAT_TYPE = 2;
+	static final byte INT_TYPE = 1;
+	static final byte LONG_TYPE = 3;
+	static final byte REFERENCE_TYPE = 5;
 	public static Slot empty() {
 		return EMPTY;
 	}
+	static boolean isWide(final byte type) {
+		return type == LONG_TYPE || type == DOUBLE_TYPE;
+	}
 	public static Slot of(final boolean b) {
 		return new IntSlot(b ? 1 : 0);
 	}
+	// Materializes a slot from the unboxed form held by Stack; floats and
+	// doubles are held as their raw bits
+	static Slot of(final byte type, final long bits, final Object reference) {
+		switch (type) {
+		case INT_TYPE:
+			return of((int) bits);
+		case FLOAT_TYPE:
+			return of(Float.intBitsToFloat((int) bits));
+		case LONG_TYPE:
+			return of(bits);
+		case DOUBLE_TYPE:
+			return of(Double.longBitsToDouble(bits));
+		case REFERENCE_TYPE:
+			return of(reference);
+		default:
+			return EMPTY;
+		}
+	}
 	public static Slot of(final double d) {
 		return new DoubleSlot(d);
 	}
@@ -91,21 +163,48 @@ public abstract class Slot {
 		}
 		return new ReferenceSlot(object);
 	}
+	static String typeName(final byte type) {
+		switch (type) {
+		case INT_TYPE:
+			return "int";
+		case FLOAT_TYPE:
+			return "float";
+		case LONG_TYPE:
+			return "long";
+		case DOUBLE_TYPE:
+			return "double";
+		case REFERENCE_TYPE:
+			return "reference";
+		default:
+			return "empty";
+		}
+	}
 	protected final Object value;
 	private final boolean wide;
 	protected Slot(final Object value, final boolean wide) {
 		this.value = value;
 		this.wide = wide;
 	}
+	long bits() {
+		return 0;
+	}
 	public boolean booleanValue() {
 		return 0 != (int) ((IntSlot) this).value;
 	}
 	public double doubleValue() {
 		return (double) ((DoubleSlot) this).value;
 	}
+	@Override
+	public boolean equals(final Object other) {
+		return other instanceof Slot && ((Slot) other).type() == type() && Objects.equals(((Slot) other).value, value);
+	}
 	public float floatValue() {
 		return (float) ((FloatSlot) this).value;
 	}
+	@Override
+	public int hashCode() {
+		return Objects.hashCode(value);
+	}
 	public int intValue() {
 		return (int) ((IntSlot) this).value;
 	}
@@ -115,6 +214,9 @@ public abstract class Slot {
 	public long longValue() {
 		return (long) ((LongSlot) this).value;
 	}
+	Object reference() {
+		return null;
+	}
 	public Object referenceValue() {
 		// The cast to reference slot ensures this is a reference
 		// The code could be changed to 'return this.value' but then
@@ -124,4 +226,5 @@ public abstract class Slot {
 	protected Object toObject() {
 		return value;
 	}
+	abstract byte type();
 }
@@ -7,96 +7,252 @@
  * http://www.eclipse.org/legal/epl-v10.html
  */
 package com.bandlem.jvm.jvmulator;
-import java.util.ArrayList;
-import java.util.List;
-import java.util.function.IntFunction;
+import java.util.Arrays;
+import java.util.Objects;
 public class Stack {
-	private final List<Slot> internal = new ArrayList<>();
+	private static final int DEFAULT_SIZE = 16;
+	// Primitives are held unboxed (floats and doubles as raw bits) with
+	// references in a parallel array; the types array records which is live.
+	// Wide values occupy two entries, the second of which is empty.
+	private long[] primitives;
+	private Object[] references;
+	private int size;
+	private byte[] types;
+	public Stack() {
+		this(DEFAULT_SIZE);
+	}
+	public Stack(final int maxStack) {
+		primitives = new long[maxStack];
+		references = new Object[maxStack];
+		types = new byte[maxStack];
+	}
 	public Slot at(final int i) {
-		return internal.get(i);
+		Objects.checkIndex(i, size);
+		return Slot.of(types[i], primitives[i], references[i]);
+	}
+	void clear() {
+		Arrays.fill(references, 0, size, null);
+		size = 0;
+	}
+	public void drop() {
+		final int pos = top();
+		if (pos != size - 1) {
+			throw new IllegalStateException("Cannot drop a wide slot");
+		}
+		references[pos] = null;
+		size = pos;
+	}
+	public void drop2() {
+		final int pos = top();
+		references[pos] = null;
+		size = pos;
+		if (!Slot.isWide(types[pos])) {
+			drop();
+		}
 	}
+	// Wide values take two slots, so each form of a dup is the same move of
+	// slots whichever of its values are wide
 	public void dup() {
-		internal.add(internal.get(internal.size() - 1));
+		insert(1, 1);
 	}
 	public void dup_x1() {
-		internal.add(internal.get(internal.size() - 2));
+		insert(1, 2);
 	}
 	public void dup_x2() {
-		internal.add(internal.get(internal.size() - 3));
+		insert(1, 3);
 	}
 	public void dup2() {
-		internal.add(internal.get(internal.size() - 2));
-		internal.add(internal.get(internal.size() - 2));
+		insert(2, 2);
 	}
 	public void dup2_x1() {
-		internal.add(internal.get(internal.size() - 3));
-		internal.add(internal.get(internal.size() - 3));
+		insert(2, 3);
 	}
 	public void dup2_x2() {
-		internal.add(internal.get(internal.size() - 4));
-		internal.add(internal.get(internal.size() - 4));
+		insert(2, 4);
+	}
+	private void ensureCapacity(final int slots) {
+		if (size + slots > types.length) {
+			final int capacity = Math.max(types.length * 2, size + slots);
+			primitives = Arrays.copyOf(primitives, capacity);
+			references = Arrays.copyOf(references, capacity);
+			types = Arrays.copyOf(types, capacity);
+		}
+	}
+	// Copies the top slots to below the given depth of slots, which includes them
+	private void insert(final int slots, final int depth) {
+		final int from = size - depth;
+		if (from < 0) {
+			throw new IllegalStateException("Cannot dup " + depth + " slots from a stack of " + size);
+		}
+		if (types[size - slots] == Slot.EMPTY_TYPE || types[from] == Slot.EMPTY_TYPE) {
+			throw new IllegalStateException("Cannot dup part of a wide slot");
+		}
+		ensureCapacity(slots);
+		System.arraycopy(types, from, types, from + slots, depth);
+		System.arraycopy(primitives, from, primitives, from + slots, depth);
+		System.arraycopy(references, from, references, from + slots, depth);
+		size += slots;
+		System.arraycopy(types, size - slots, types, from, slots);
+		System.arraycopy(primitives, size - slots, primitives, from, slots);
+		System.arraycopy(references, size - slots, references, from, slots);
 	}
 	public Slot peek() {
-		return top(internal::get);
+		final int pos = top();
+		return Slot.of(types[pos], primitives[pos], references[pos]);
 	}
 	public Slot pop() {
-		return top(internal::remove);
+		final int pos = top();
+		final Slot slot = Slot.of(types[pos], primitives[pos], references[pos]);
+		references[pos] = null;
+		size = pos;
+		return slot;
+	}
+	// The reference below the given number of slots, such as the receiver of a call
+	Object peekReference(final int slots) {
+		final int pos = size - slots - 1;
+		if (types[pos] != Slot.REFERENCE_TYPE) {
+			throw new ClassCastException("Cannot peek " + Slot.typeName(types[pos]) + " as reference at " + pos);
+		}
+		return references[pos];
+	}
+	// Pops a primitive as it is held, with floats and doubles as their raw bits
+	long popBits(final byte type) {
+		return primitives[pop(type)];
+	}
+	private int pop(final byte type) {
+		final int pos = top();
+		size = pos;
+		if (types[pos] != type) {
+			references[pos] = null;
+			throw new ClassCastException(
+					"Cannot pop " + Slot.typeName(types[pos]) + " as " + Slot.typeName(type) + " at " + pos);
+		}
+		return pos;
 	}
 	public double popDouble() {
-		return pop().doubleValue();
+		return Double.longBitsToDouble(primitives[pop(Slot.DOUBLE_TYPE)]);
 	}
 	public float popFloat() {
-		return pop().floatValue();
+		return Float.intBitsToFloat((int) primitives[pop(Slot.FLOAT_TYPE)]);
 	}
 	public int popInt() {
-		return pop().intValue();
+		return (int) primitives[pop(Slot.INT_TYPE)];
 	}
 	public long popLong() {
-		return pop().longValue();
+		return primitives[pop(Slot.LONG_TYPE)];
 	}
 	public Object popReference() {
-		return pop().referenceValue();
+		final int pos = pop(Slot.REFERENCE_TYPE);
+		final Object reference = references[pos];
+		references[pos] = null;
+		return reference;
+	}
+	// Moves the top slots into the start of the locals, as for method arguments
+	void popTo(final Locals locals, final int slots) {
+		popTo(locals, 0, slots);
+	}
+	// Moves the top slots into the locals or registers from the given index
+	void popTo(final Locals locals, final int to, final int slots) {
+		final int base = size - slots;
+		if (base < 0) {
+			throw new IllegalStateException("Cannot pop " + slots + " slots from a stack of " + size);
+		}
+		locals.copy(types, primitives, references, base, to, slots);
+		Arrays.fill(references, base, size, null);
+		size = base;
 	}
 	public void push(final boolean b) {
-		pushSlot(Slot.of(b));
+		push(b ? 1 : 0);
 	}
 	public void push(final double d) {
-		pushSlot(Slot.of(d));
+		ensureCapacity(2);
+		types[size] = Slot.DOUBLE_TYPE;
+		primitives[size++] = Double.doubleToRawLongBits(d);
+		types[size++] = Slot.EMPTY_TYPE;
 	}
 	public void push(final float f) {
-		pushSlot(Slot.of(f));
+		ensureCapacity(1);
+		types[size] = Slot.FLOAT_TYPE;
+		primitives[size++] = Float.floatToRawIntBits(f);
 	}
 	public void push(final int i) {
-		pushSlot(Slot.of(i));
+		ensureCapacity(1);
+		types[size] = Slot.INT_TYPE;
+		primitives[size++] = i;
 	}
 	public void push(final long l) {
-		pushSlot(Slot.of(l));
+		ensureCapacity(2);
+		types[size] = Slot.LONG_TYPE;
+		primitives[size++] = l;
+		types[size++] = Slot.EMPTY_TYPE;
+	}
+	// Pushes entries copied as they are from the locals or registers
+	void push(final byte[] types, final long[] primitives, final Object[] references, final int from,
+			final int count) {
+		ensureCapacity(count);
+		System.arraycopy(types, from, this.types, size, count);
+		System.arraycopy(primitives, from, this.primitives, size, count);
+		System.arraycopy(references, from, this.references, size, count);
+		size += count;
+	}
+	void push(final byte type, final long bits, final Object reference) {
+		ensureCapacity(2);
+		types[size] = type;
+		primitives[size] = bits;
+		references[size++] = reference;
+		if (Slot.isWide(type)) {
+			types[size++] = Slot.EMPTY_TYPE;
+		}
 	}
 	public void push(final Object value) {
-		pushSlot(Slot.of(value));
+		if (value instanceof Slot) {
+			throw new IllegalStateException("Attempted to wrap slot in slot");
+		}
+		ensureCapacity(1);
+		types[size] = Slot.REFERENCE_TYPE;
+		references[size++] = value;
 	}
 	void pushSlot(final Slot s) {
 		if (s == null) {
 			throw new IllegalArgumentException("Cannot push a null slot");
 		} else {
-			internal.add(s);
-			if (s.isWide()) {
-				internal.add(Slot.empty());
+			push(s.type(), s.bits(), s.reference());
+		}
+	}
+	// Replaces every copy of a reference, as for an object once it is constructed
+	void replace(final Object from, final Object to) {
+		for (int i = 0; i < size; i++) {
+			if (references[i] == from) {
+				references[i] = to;
 			}
 		}
 	}
 	public int size() {
-		return internal.size();
-	}
-	private Slot top(final IntFunction<Slot> op) {
-		final int pos = internal.size() - 1;
-		Slot topslot = op.apply(pos);
-		if (topslot == Slot.empty()) {
-			topslot = op.apply(pos - 1);
-			if (!topslot.isWide()) {
+		return size;
+	}
+	public void swap() {
+		final int pos = size - 1;
+		final byte type = types[pos];
+		if (type == Slot.EMPTY_TYPE || types[pos - 1] == Slot.EMPTY_TYPE) {
+			throw new IllegalStateException("Cannot swap a wide slot");
+		}
+		final long primitive = primitives[pos];
+		final Object reference = references[pos];
+		types[pos] = types[pos - 1];
+		primitives[pos] = primitives[pos - 1];
+		references[pos] = references[pos - 1];
+		types[pos - 1] = type;
+		primitives[pos - 1] = primitive;
+		references[pos - 1] = reference;
+	}
+	private int top() {
+		int pos = size - 1;
+		if (types[pos] == Slot.EMPTY_TYPE) {
+			pos--;
+			if (!Slot.isWide(types[pos])) {
 				throw new IllegalStateException("Top slot was empty, but next was not wide");
 			}
 		}
-		return topslot;
+		return pos;
 	}
 }
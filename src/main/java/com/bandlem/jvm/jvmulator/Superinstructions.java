@@ -0,0 +1,217 @@
+/*
+ * Copyright (c) 2020, Alex Blewitt, Bandlem Ltd
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package com.bandlem.jvm.jvmulator;
+import com.bandlem.jvm.jvmulator.Threaded.Handler;
+// A peephole pass over decoded code that fuses common sequences into a single
+// handler for the threaded engine, which works on the locals directly rather
+// than going through the stack. The sequences were chosen from the counts of
+// SequenceMiner over a corpus of library jars, along with the loop tests and
+// increments that dominate at run time:
+//
+// aload getfield
+// aload ifnull, aload ifnonnull
+// iload if<cond>
+// iload iload if_icmp<cond>, iload iconst if_icmp<cond>
+// iload iload iadd istore, iload iconst iadd istore (and isub, imul)
+// iinc goto, where the goto closes a loop
+//
+// Every instruction keeps its own handler, so a branch into the middle of a
+// fused sequence runs the rest of it one instruction at a time.
+class Superinstructions {
+	private static Handler arithmetic(final byte opcode, final int a, final int b, final int store, final int next) {
+		switch (opcode) {
+		case Opcodes.IADD:
+			return frame -> {
+				frame.locals.store(store, frame.locals.loadInt(a) + frame.locals.loadInt(b));
+				return next;
+			};
+		case Opcodes.ISUB:
+			return frame -> {
+				frame.locals.store(store, frame.locals.loadInt(a) - frame.locals.loadInt(b));
+				return next;
+			};
+		case Opcodes.IMUL:
+			return frame -> {
+				frame.locals.store(store, frame.locals.loadInt(a) * frame.locals.loadInt(b));
+				return next;
+			};
+		default:
+			return null;
+		}
+	}
+	private static Handler arithmeticConstant(final byte opcode, final int a, final int value, final int store,
+			final int next) {
+		switch (opcode) {
+		case Opcodes.IADD:
+			return frame -> {
+				frame.locals.store(store, frame.locals.loadInt(a) + value);
+				return next;
+			};
+		case Opcodes.ISUB:
+			return frame -> {
+				frame.locals.store(store, frame.locals.loadInt(a) - value);
+				return next;
+			};
+		case Opcodes.IMUL:
+			return frame -> {
+				frame.locals.store(store, frame.locals.loadInt(a) * value);
+				return next;
+			};
+		default:
+			return null;
+		}
+	}
+	private static Handler compare(final byte opcode, final int a, final int b, final int target, final int next) {
+		switch (opcode) {
+		case Opcodes.IF_ICMPEQ:
+			return frame -> frame.locals.loadInt(a) == frame.locals.loadInt(b) ? target : next;
+		case Opcodes.IF_ICMPNE:
+			return frame -> frame.locals.loadInt(a) != frame.locals.loadInt(b) ? target : next;
+		case Opcodes.IF_ICMPLT:
+			return frame -> frame.locals.loadInt(a) < frame.locals.loadInt(b) ? target : next;
+		case Opcodes.IF_ICMPGE:
+			return frame -> frame.locals.loadInt(a) >= frame.locals.loadInt(b) ? target : next;
+		case Opcodes.IF_ICMPGT:
+			return frame -> frame.locals.loadInt(a) > frame.locals.loadInt(b) ? target : next;
+		case Opcodes.IF_ICMPLE:
+			return frame -> frame.locals.loadInt(a) <= frame.locals.loadInt(b) ? target : next;
+		default:
+			return null;
+		}
+	}
+	private static Handler compareConstant(final byte opcode, final int a, final int value, final int target,
+			final int next) {
+		switch (opcode) {
+		case Opcodes.IF_ICMPEQ:
+			return frame -> frame.locals.loadInt(a) == value ? target : next;
+		case Opcodes.IF_ICMPNE:
+			return frame -> frame.locals.loadInt(a) != value ? target : next;
+		case Opcodes.IF_ICMPLT:
+			return frame -> frame.locals.loadInt(a) < value ? target : next;
+		case Opcodes.IF_ICMPGE:
+			return frame -> frame.locals.loadInt(a) >= value ? target : next;
+		case Opcodes.IF_ICMPGT:
+			return frame -> frame.locals.loadInt(a) > value ? target : next;
+		case Opcodes.IF_ICMPLE:
+			return frame -> frame.locals.loadInt(a) <= value ? target : next;
+		default:
+			return null;
+		}
+	}
+	private static Handler compareZero(final byte opcode, final int a, final int target, final int next) {
+		switch (opcode) {
+		case Opcodes.IFEQ:
+			return frame -> frame.locals.loadInt(a) == 0 ? target : next;
+		case Opcodes.IFNE:
+			return frame -> frame.locals.loadInt(a) != 0 ? target : next;
+		case Opcodes.IFLT:
+			return frame -> frame.locals.loadInt(a) < 0 ? target : next;
+		case Opcodes.IFGE:
+			return frame -> frame.locals.loadInt(a) >= 0 ? target : next;
+		case Opcodes.IFGT:
+			return frame -> frame.locals.loadInt(a) > 0 ? target : next;
+		case Opcodes.IFLE:
+			return frame -> frame.locals.loadInt(a) <= 0 ? target : next;
+		default:
+			return null;
+		}
+	}
+	// Returns the value pushed by an int constant instruction, or null for other instructions
+	private static Integer constant(final byte opcode, final int operand) {
+		switch (opcode) {
+		case Opcodes.ICONST_M1:
+		case Opcodes.ICONST_0:
+		case Opcodes.ICONST_1:
+		case Opcodes.ICONST_2:
+		case Opcodes.ICONST_3:
+		case Opcodes.ICONST_4:
+		case Opcodes.ICONST_5:
+			return opcode - Opcodes.ICONST_0;
+		case Opcodes.BIPUSH:
+		case Opcodes.SIPUSH:
+			return operand;
+		default:
+			return null;
+		}
+	}
+	// Returns a handler for the sequence starting at the instruction, or null
+	// if it does not start one of the fused sequences
+	static Handler fuse(final Instructions instructions, final int instruction) {
+		final int size = instructions.size();
+		if (instruction + 1 >= size) {
+			return null;
+		}
+		final byte[] opcodes = instructions.opcodes;
+		final int[] operands = instructions.operands;
+		final byte second = opcodes[instruction + 1];
+		final int operand = operands[instruction + 1];
+		final int reference = local(opcodes[instruction], operands[instruction], Opcodes.ALOAD, Opcodes.ALOAD_0);
+		if (reference >= 0) {
+			switch (second) {
+			case Opcodes.GETFIELD:
+				return frame -> {
+					frame.getfield(frame.locals.loadReference(reference), operand);
+					return instruction + 2;
+				};
+			case Opcodes.IFNULL:
+				return frame -> frame.locals.loadReference(reference) == null ? operand : instruction + 2;
+			case Opcodes.IFNONNULL:
+				return frame -> frame.locals.loadReference(reference) != null ? operand : instruction + 2;
+			default:
+				return null;
+			}
+		}
+		if (opcodes[instruction] == Opcodes.IINC && second == Opcodes.GOTO && operand <= instruction + 1) {
+			final int increment = operands[instruction];
+			final int delta = instructions.extras[instruction];
+			return frame -> {
+				frame.locals.increment(increment, delta);
+				frame.backEdge();
+				return operand;
+			};
+		}
+		final int a = local(opcodes[instruction], operands[instruction], Opcodes.ILOAD, Opcodes.ILOAD_0);
+		if (a < 0) {
+			return null;
+		}
+		final Handler zero = compareZero(second, a, operand, instruction + 2);
+		if (zero != null || instruction + 2 >= size) {
+			return zero;
+		}
+		final byte third = opcodes[instruction + 2];
+		final int target = operands[instruction + 2];
+		final int store = instruction + 3 < size
+				? local(opcodes[instruction + 3], operands[instruction + 3], Opcodes.ISTORE, Opcodes.ISTORE_0)
+				: -1;
+		final int b = local(second, operand, Opcodes.ILOAD, Opcodes.ILOAD_0);
+		if (b >= 0) {
+			final Handler compare = compare(third, a, b, target, instruction + 3);
+			return compare != null || store < 0 ? compare : arithmetic(third, a, b, store, instruction + 4);
+		}
+		final Integer value = constant(second, operand);
+		if (value != null) {
+			final Handler compare = compareConstant(third, a, value, target, instruction + 3);
+			return compare != null || store < 0 ? compare
+					: arithmeticConstant(third, a, value, store, instruction + 4);
+		}
+		return null;
+	}
+	// Returns the local used by a load or store with the given general opcode
+	// or first short form, such as iload and iload_0, or -1 for other instructions
+	private static int local(final byte opcode, final int operand, final byte general, final byte first) {
+		if (opcode == general) {
+			return operand;
+		} else if (opcode >= first && opcode <= first + 3) {
+			return opcode - first;
+		}
+		return -1;
+	}
+	private Superinstructions() {
+	}
+}
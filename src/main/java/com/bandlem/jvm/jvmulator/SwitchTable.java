@@ -0,0 +1,43 @@
+/*
+ * Copyright (c) 2020, Alex Blewitt, Bandlem Ltd
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package com.bandlem.jvm.jvmulator;
+import java.util.Arrays;
+// The jump table of a tableswitch or lookupswitch, decoded once with its
+// targets as instruction indexes. A tableswitch indexes its targets by the key
+// less the low value, while a lookupswitch binary searches its keys, which the
+// class file keeps in increasing order. It is the threaded engine's handler for
+// the instruction as well.
+class SwitchTable implements Threaded.Handler {
+	private final int defaultTarget;
+	// The keys of a lookupswitch, or null for a tableswitch
+	private final int[] keys;
+	private final int low;
+	private final int[] targets;
+	SwitchTable(final int low, final int[] keys, final int[] targets, final int defaultTarget) {
+		this.low = low;
+		this.keys = keys;
+		this.targets = targets;
+		this.defaultTarget = defaultTarget;
+	}
+	@Override
+	public int execute(final JVMFrame frame) {
+		return target(frame.stack.popInt());
+	}
+	int target(final int key) {
+		final int index;
+		if (keys == null) {
+			// The difference wraps for keys far from the low value, but only ever
+			// to an index outside the targets
+			index = key - low;
+			return index >= 0 && index < targets.length ? targets[index] : defaultTarget;
+		}
+		index = Arrays.binarySearch(keys, key);
+		return index >= 0 ? targets[index] : defaultTarget;
+	}
+}
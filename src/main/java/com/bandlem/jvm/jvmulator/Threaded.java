@@ -0,0 +1,657 @@
+/*
+ * Copyright (c) 2020, Alex Blewitt, Bandlem Ltd
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package com.bandlem.jvm.jvmulator;
+// Compiles decoded instructions into one handler per instruction, with the
+// operands and the index of the following instruction captured up front. Each
+// handler returns the index of the next instruction to run, or -1 on return.
+// Less common instructions are handed back to the switch in JVMFrame.
+class Threaded {
+	interface Handler {
+		int execute(JVMFrame frame);
+	}
+	private static Handler aload(final int local, final int next) {
+		return frame -> {
+			frame.stack.push(frame.locals.loadReference(local));
+			return next;
+		};
+	}
+	private static Handler astore(final int local, final int next) {
+		return frame -> {
+			frame.locals.store(local, frame.stack.popReference());
+			return next;
+		};
+	}
+	static Handler[] compile(final Instructions instructions) {
+		final Handler[] handlers = new Handler[instructions.size()];
+		for (int i = 0; i < handlers.length; i++) {
+			final Handler fused = crossesRange(instructions, i) ? null : Superinstructions.fuse(instructions, i);
+			if (fused != null) {
+				handlers[i] = fused;
+			} else if (instructions.switches != null && instructions.switches[i] != null) {
+				// The jump table is a handler of its own
+				handlers[i] = instructions.switches[i];
+			} else {
+				handlers[i] = handler(instructions, i, instructions.opcodes[i], instructions.operands[i],
+						instructions.extras[i]);
+			}
+		}
+		return handlers;
+	}
+	private static Handler constant(final double value, final int next) {
+		return frame -> {
+			frame.stack.push(value);
+			return next;
+		};
+	}
+	private static Handler constant(final float value, final int next) {
+		return frame -> {
+			frame.stack.push(value);
+			return next;
+		};
+	}
+	private static Handler constant(final int value, final int next) {
+		return frame -> {
+			frame.stack.push(value);
+			return next;
+		};
+	}
+	private static Handler constant(final long value, final int next) {
+		return frame -> {
+			frame.stack.push(value);
+			return next;
+		};
+	}
+	// A fused sequence throws as its first instruction, so it must not cross
+	// the start or end of a protected range, which covers up to three more
+	private static boolean crossesRange(final Instructions instructions, final int instruction) {
+		if (instructions.exceptions != null) {
+			for (int i = instruction + 1; i <= instruction + 3; i++) {
+				if (instructions.exceptions.isBoundary(i)) {
+					return true;
+				}
+			}
+		}
+		return false;
+	}
+	private static Handler dload(final int local, final int next) {
+		return frame -> {
+			frame.stack.push(frame.locals.loadDouble(local));
+			return next;
+		};
+	}
+	private static Handler dstore(final int local, final int next) {
+		return frame -> {
+			frame.locals.store(local, frame.stack.popDouble());
+			return next;
+		};
+	}
+	private static Handler fload(final int local, final int next) {
+		return frame -> {
+			frame.stack.push(frame.locals.loadFloat(local));
+			return next;
+		};
+	}
+	private static Handler fstore(final int local, final int next) {
+		return frame -> {
+			frame.locals.store(local, frame.stack.popFloat());
+			return next;
+		};
+	}
+	private static Handler handler(final Instructions instructions, final int instruction, final byte opcode,
+			final int operand, final int extra) {
+		final int next = instruction + 1;
+		switch (opcode) {
+		case Opcodes.NOP:
+			return frame -> next;
+		// Constants
+		case Opcodes.ACONST_NULL:
+			return frame -> {
+				frame.stack.push(null);
+				return next;
+			};
+		case Opcodes.ICONST_M1:
+		case Opcodes.ICONST_0:
+		case Opcodes.ICONST_1:
+		case Opcodes.ICONST_2:
+		case Opcodes.ICONST_3:
+		case Opcodes.ICONST_4:
+		case Opcodes.ICONST_5:
+			return constant(opcode - Opcodes.ICONST_0, next);
+		case Opcodes.LCONST_0:
+		case Opcodes.LCONST_1:
+			return constant((long) (opcode - Opcodes.LCONST_0), next);
+		case Opcodes.FCONST_0:
+		case Opcodes.FCONST_1:
+		case Opcodes.FCONST_2:
+			return constant((float) (opcode - Opcodes.FCONST_0), next);
+		case Opcodes.DCONST_0:
+		case Opcodes.DCONST_1:
+			return constant((double) (opcode - Opcodes.DCONST_0), next);
+		case Opcodes.BIPUSH:
+		case Opcodes.SIPUSH:
+			return constant(operand, next);
+		case Opcodes.LDC:
+		case Opcodes.LDC_W:
+		case Opcodes.LDC2_W:
+			return frame -> {
+				frame.pushConstant(operand);
+				return next;
+			};
+		// Arithmetic
+		case Opcodes.IADD:
+			return frame -> {
+				frame.stack.push(frame.stack.popInt() + frame.stack.popInt());
+				return next;
+			};
+		case Opcodes.LADD:
+			return frame -> {
+				frame.stack.push(frame.stack.popLong() + frame.stack.popLong());
+				return next;
+			};
+		case Opcodes.FADD:
+			return frame -> {
+				frame.stack.push(frame.stack.popFloat() + frame.stack.popFloat());
+				return next;
+			};
+		case Opcodes.DADD:
+			return frame -> {
+				frame.stack.push(frame.stack.popDouble() + frame.stack.popDouble());
+				return next;
+			};
+		case Opcodes.ISUB:
+			return frame -> {
+				final int value2 = frame.stack.popInt();
+				frame.stack.push(frame.stack.popInt() - value2);
+				return next;
+			};
+		case Opcodes.LSUB:
+			return frame -> {
+				final long value2 = frame.stack.popLong();
+				frame.stack.push(frame.stack.popLong() - value2);
+				return next;
+			};
+		case Opcodes.FSUB:
+			return frame -> {
+				final float value2 = frame.stack.popFloat();
+				frame.stack.push(frame.stack.popFloat() - value2);
+				return next;
+			};
+		case Opcodes.DSUB:
+			return frame -> {
+				final double value2 = frame.stack.popDouble();
+				frame.stack.push(frame.stack.popDouble() - value2);
+				return next;
+			};
+		case Opcodes.IMUL:
+			return frame -> {
+				frame.stack.push(frame.stack.popInt() * frame.stack.popInt());
+				return next;
+			};
+		case Opcodes.LMUL:
+			return frame -> {
+				frame.stack.push(frame.stack.popLong() * frame.stack.popLong());
+				return next;
+			};
+		case Opcodes.FMUL:
+			return frame -> {
+				frame.stack.push(frame.stack.popFloat() * frame.stack.popFloat());
+				return next;
+			};
+		case Opcodes.DMUL:
+			return frame -> {
+				frame.stack.push(frame.stack.popDouble() * frame.stack.popDouble());
+				return next;
+			};
+		case Opcodes.IDIV:
+			return frame -> {
+				final int value2 = frame.stack.popInt();
+				frame.stack.push(JVMFrame.divide(frame.stack.popInt(), value2));
+				return next;
+			};
+		case Opcodes.LDIV:
+			return frame -> {
+				final long value2 = frame.stack.popLong();
+				frame.stack.push(JVMFrame.divide(frame.stack.popLong(), value2));
+				return next;
+			};
+		case Opcodes.FDIV:
+			return frame -> {
+				final float value2 = frame.stack.popFloat();
+				frame.stack.push(frame.stack.popFloat() / value2);
+				return next;
+			};
+		case Opcodes.DDIV:
+			return frame -> {
+				final double value2 = frame.stack.popDouble();
+				frame.stack.push(frame.stack.popDouble() / value2);
+				return next;
+			};
+		case Opcodes.IREM:
+			return frame -> {
+				final int value2 = frame.stack.popInt();
+				frame.stack.push(JVMFrame.remainder(frame.stack.popInt(), value2));
+				return next;
+			};
+		case Opcodes.LREM:
+			return frame -> {
+				final long value2 = frame.stack.popLong();
+				frame.stack.push(JVMFrame.remainder(frame.stack.popLong(), value2));
+				return next;
+			};
+		case Opcodes.FREM:
+			return frame -> {
+				final float value2 = frame.stack.popFloat();
+				frame.stack.push(frame.stack.popFloat() % value2);
+				return next;
+			};
+		case Opcodes.DREM:
+			return frame -> {
+				final double value2 = frame.stack.popDouble();
+				frame.stack.push(frame.stack.popDouble() % value2);
+				return next;
+			};
+		case Opcodes.INEG:
+			return frame -> {
+				frame.stack.push(0 - frame.stack.popInt());
+				return next;
+			};
+		case Opcodes.LNEG:
+			return frame -> {
+				frame.stack.push(0L - frame.stack.popLong());
+				return next;
+			};
+		case Opcodes.FNEG:
+			return frame -> {
+				frame.stack.push(0.0F - frame.stack.popFloat());
+				return next;
+			};
+		case Opcodes.DNEG:
+			return frame -> {
+				frame.stack.push(0.0D - frame.stack.popDouble());
+				return next;
+			};
+		// Bitwise and shift operations
+		case Opcodes.ISHL:
+			return frame -> {
+				final int shift = frame.stack.popInt();
+				frame.stack.push(frame.stack.popInt() << shift);
+				return next;
+			};
+		case Opcodes.LSHL:
+			return frame -> {
+				final int shift = frame.stack.popInt();
+				frame.stack.push(frame.stack.popLong() << shift);
+				return next;
+			};
+		case Opcodes.ISHR:
+			return frame -> {
+				final int shift = frame.stack.popInt();
+				frame.stack.push(frame.stack.popInt() >> shift);
+				return next;
+			};
+		case Opcodes.LSHR:
+			return frame -> {
+				final int shift = frame.stack.popInt();
+				frame.stack.push(frame.stack.popLong() >> shift);
+				return next;
+			};
+		case Opcodes.IUSHR:
+			return frame -> {
+				final int shift = frame.stack.popInt();
+				frame.stack.push(frame.stack.popInt() >>> shift);
+				return next;
+			};
+		case Opcodes.LUSHR:
+			return frame -> {
+				final int shift = frame.stack.popInt();
+				frame.stack.push(frame.stack.popLong() >>> shift);
+				return next;
+			};
+		case Opcodes.IAND:
+			return frame -> {
+				frame.stack.push(frame.stack.popInt() & frame.stack.popInt());
+				return next;
+			};
+		case Opcodes.LAND:
+			return frame -> {
+				frame.stack.push(frame.stack.popLong() & frame.stack.popLong());
+				return next;
+			};
+		case Opcodes.IOR:
+			return frame -> {
+				frame.stack.push(frame.stack.popInt() | frame.stack.popInt());
+				return next;
+			};
+		case Opcodes.LOR:
+			return frame -> {
+				frame.stack.push(frame.stack.popLong() | frame.stack.popLong());
+				return next;
+			};
+		case Opcodes.IXOR:
+			return frame -> {
+				frame.stack.push(frame.stack.popInt() ^ frame.stack.popInt());
+				return next;
+			};
+		case Opcodes.LXOR:
+			return frame -> {
+				frame.stack.push(frame.stack.popLong() ^ frame.stack.popLong());
+				return next;
+			};
+		// Conversions
+		case Opcodes.I2L:
+			return frame -> {
+				frame.stack.push((long) frame.stack.popInt());
+				return next;
+			};
+		case Opcodes.L2I:
+			return frame -> {
+				frame.stack.push((int) frame.stack.popLong());
+				return next;
+			};
+		case Opcodes.I2D:
+			return frame -> {
+				frame.stack.push((double) frame.stack.popInt());
+				return next;
+			};
+		case Opcodes.D2I:
+			return frame -> {
+				frame.stack.push((int) frame.stack.popDouble());
+				return next;
+			};
+		// Stack manipulation
+		case Opcodes.POP:
+			return frame -> {
+				frame.stack.drop();
+				return next;
+			};
+		case Opcodes.POP2:
+			return frame -> {
+				frame.stack.drop2();
+				return next;
+			};
+		case Opcodes.DUP:
+			return frame -> {
+				frame.stack.dup();
+				return next;
+			};
+		case Opcodes.DUP2:
+			return frame -> {
+				frame.stack.dup2();
+				return next;
+			};
+		case Opcodes.SWAP:
+			return frame -> {
+				frame.stack.swap();
+				return next;
+			};
+		// Comparisons and branches
+		case Opcodes.LCMP:
+			return frame -> {
+				final long value2 = frame.stack.popLong();
+				frame.stack.push(Long.compare(frame.stack.popLong(), value2));
+				return next;
+			};
+		case Opcodes.GOTO:
+		case Opcodes.GOTO_W:
+			if (operand <= instruction) {
+				return frame -> {
+					frame.backEdge();
+					return operand;
+				};
+			}
+			return frame -> operand;
+		case Opcodes.IFEQ:
+			return frame -> frame.stack.popInt() == 0 ? operand : next;
+		case Opcodes.IFNE:
+			return frame -> frame.stack.popInt() != 0 ? operand : next;
+		case Opcodes.IFLT:
+			return frame -> frame.stack.popInt() < 0 ? operand : next;
+		case Opcodes.IFGE:
+			return frame -> frame.stack.popInt() >= 0 ? operand : next;
+		case Opcodes.IFGT:
+			return frame -> frame.stack.popInt() > 0 ? operand : next;
+		case Opcodes.IFLE:
+			return frame -> frame.stack.popInt() <= 0 ? operand : next;
+		case Opcodes.IF_ICMPEQ:
+			return frame -> {
+				final int value2 = frame.stack.popInt();
+				return frame.stack.popInt() == value2 ? operand : next;
+			};
+		case Opcodes.IF_ICMPNE:
+			return frame -> {
+				final int value2 = frame.stack.popInt();
+				return frame.stack.popInt() != value2 ? operand : next;
+			};
+		case Opcodes.IF_ICMPLT:
+			return frame -> {
+				final int value2 = frame.stack.popInt();
+				return frame.stack.popInt() < value2 ? operand : next;
+			};
+		case Opcodes.IF_ICMPGE:
+			return frame -> {
+				final int value2 = frame.stack.popInt();
+				return frame.stack.popInt() >= value2 ? operand : next;
+			};
+		case Opcodes.IF_ICMPGT:
+			return frame -> {
+				final int value2 = frame.stack.popInt();
+				return frame.stack.popInt() > value2 ? operand : next;
+			};
+		case Opcodes.IF_ICMPLE:
+			return frame -> {
+				final int value2 = frame.stack.popInt();
+				return frame.stack.popInt() <= value2 ? operand : next;
+			};
+		case Opcodes.IF_ACMPEQ:
+			return frame -> frame.stack.popReference() == frame.stack.popReference() ? operand : next;
+		case Opcodes.IF_ACMPNE:
+			return frame -> frame.stack.popReference() != frame.stack.popReference() ? operand : next;
+		case Opcodes.IFNULL:
+			return frame -> frame.stack.popReference() == null ? operand : next;
+		case Opcodes.IFNONNULL:
+			return frame -> frame.stack.popReference() != null ? operand : next;
+		// Locals
+		case Opcodes.ILOAD:
+			return iload(operand, next);
+		case Opcodes.ILOAD_0:
+		case Opcodes.ILOAD_1:
+		case Opcodes.ILOAD_2:
+		case Opcodes.ILOAD_3:
+			return iload(opcode - Opcodes.ILOAD_0, next);
+		case Opcodes.LLOAD:
+			return lload(operand, next);
+		case Opcodes.LLOAD_0:
+		case Opcodes.LLOAD_1:
+		case Opcodes.LLOAD_2:
+		case Opcodes.LLOAD_3:
+			return lload(opcode - Opcodes.LLOAD_0, next);
+		case Opcodes.FLOAD:
+			return fload(operand, next);
+		case Opcodes.FLOAD_0:
+		case Opcodes.FLOAD_1:
+		case Opcodes.FLOAD_2:
+		case Opcodes.FLOAD_3:
+			return fload(opcode - Opcodes.FLOAD_0, next);
+		case Opcodes.DLOAD:
+			return dload(operand, next);
+		case Opcodes.DLOAD_0:
+		case Opcodes.DLOAD_1:
+		case Opcodes.DLOAD_2:
+		case Opcodes.DLOAD_3:
+			return dload(opcode - Opcodes.DLOAD_0, next);
+		case Opcodes.ALOAD:
+			return aload(operand, next);
+		case Opcodes.ALOAD_0:
+		case Opcodes.ALOAD_1:
+		case Opcodes.ALOAD_2:
+		case Opcodes.ALOAD_3:
+			return aload(opcode - Opcodes.ALOAD_0, next);
+		case Opcodes.ISTORE:
+			return istore(operand, next);
+		case Opcodes.ISTORE_0:
+		case Opcodes.ISTORE_1:
+		case Opcodes.ISTORE_2:
+		case Opcodes.ISTORE_3:
+			return istore(opcode - Opcodes.ISTORE_0, next);
+		case Opcodes.LSTORE:
+			return lstore(operand, next);
+		case Opcodes.LSTORE_0:
+		case Opcodes.LSTORE_1:
+		case Opcodes.LSTORE_2:
+		case Opcodes.LSTORE_3:
+			return lstore(opcode - Opcodes.LSTORE_0, next);
+		case Opcodes.FSTORE:
+			return fstore(operand, next);
+		case Opcodes.FSTORE_0:
+		case Opcodes.FSTORE_1:
+		case Opcodes.FSTORE_2:
+		case Opcodes.FSTORE_3:
+			return fstore(opcode - Opcodes.FSTORE_0, next);
+		case Opcodes.DSTORE:
+			return dstore(operand, next);
+		case Opcodes.DSTORE_0:
+		case Opcodes.DSTORE_1:
+		case Opcodes.DSTORE_2:
+		case Opcodes.DSTORE_3:
+			return dstore(opcode - Opcodes.DSTORE_0, next);
+		case Opcodes.ASTORE:
+			return astore(operand, next);
+		case Opcodes.ASTORE_0:
+		case Opcodes.ASTORE_1:
+		case Opcodes.ASTORE_2:
+		case Opcodes.ASTORE_3:
+			return astore(opcode - Opcodes.ASTORE_0, next);
+		case Opcodes.IINC:
+			return frame -> {
+				frame.locals.increment(operand, extra);
+				return next;
+			};
+		// Returns
+		case Opcodes.IRETURN:
+			return frame -> {
+				frame.returnBits = frame.stack.popInt();
+				frame.returnType = Slot.INT_TYPE;
+				return -1;
+			};
+		case Opcodes.LRETURN:
+			return frame -> {
+				frame.returnBits = frame.stack.popLong();
+				frame.returnType = Slot.LONG_TYPE;
+				return -1;
+			};
+		case Opcodes.FRETURN:
+			return frame -> {
+				frame.returnBits = Float.floatToRawIntBits(frame.stack.popFloat());
+				frame.returnType = Slot.FLOAT_TYPE;
+				return -1;
+			};
+		case Opcodes.DRETURN:
+			return frame -> {
+				frame.returnBits = Double.doubleToRawLongBits(frame.stack.popDouble());
+				frame.returnType = Slot.DOUBLE_TYPE;
+				return -1;
+			};
+		case Opcodes.ARETURN:
+			return frame -> {
+				frame.returnReference = frame.stack.popReference();
+				frame.returnType = Slot.REFERENCE_TYPE;
+				return -1;
+			};
+		case Opcodes.RETURN:
+			return frame -> {
+				frame.returnType = Slot.EMPTY_TYPE;
+				return -1;
+			};
+		// Fields and methods
+		case Opcodes.GETSTATIC:
+			return frame -> {
+				frame.getfield(null, operand);
+				return next;
+			};
+		case Opcodes.PUTSTATIC:
+			return frame -> {
+				frame.putstatic(operand);
+				return next;
+			};
+		case Opcodes.GETFIELD:
+			return frame -> {
+				frame.getfield(JVMFrame.nonNull(frame.stack.popReference()), operand);
+				return next;
+			};
+		case Opcodes.PUTFIELD:
+			return frame -> {
+				frame.putfield(operand);
+				return next;
+			};
+		case Opcodes.INVOKESTATIC:
+			return frame -> {
+				frame.invoke(operand);
+				return next;
+			};
+		case Opcodes.INVOKEVIRTUAL:
+		case Opcodes.INVOKEINTERFACE:
+			return invokeVirtual(instructions.getCache(instruction), operand, next);
+		case Opcodes.INVOKESPECIAL:
+			return frame -> {
+				frame.invokeSpecial(operand);
+				return next;
+			};
+		case Opcodes.INVOKEDYNAMIC:
+			return frame -> {
+				frame.invokeDynamic(instruction);
+				return next;
+			};
+		case Opcodes.NEW:
+			return frame -> {
+				frame.stack.push(frame.allocate(operand));
+				return next;
+			};
+		case Opcodes.CHECKCAST:
+			return frame -> {
+				frame.checkcast(operand);
+				return next;
+			};
+		default:
+			return frame -> frame.interpret(instruction);
+		}
+	}
+	private static Handler iload(final int local, final int next) {
+		return frame -> {
+			frame.stack.push(frame.locals.loadInt(local));
+			return next;
+		};
+	}
+	// Each call site has an inline cache of its own, which the other engines share
+	private static Handler invokeVirtual(final InlineCache cache, final int operand, final int next) {
+		return frame -> {
+			frame.invokeVirtual(operand, cache);
+			return next;
+		};
+	}
+	private static Handler istore(final int local, final int next) {
+		return frame -> {
+			frame.locals.store(local, frame.stack.popInt());
+			return next;
+		};
+	}
+	private static Handler lload(final int local, final int next) {
+		return frame -> {
+			frame.stack.push(frame.locals.loadLong(local));
+			return next;
+		};
+	}
+	private static Handler lstore(final int local, final int next) {
+		return frame -> {
+			frame.locals.store(local, frame.stack.popLong());
+			return next;
+		};
+	}
+	private Threaded() {
+	}
+}
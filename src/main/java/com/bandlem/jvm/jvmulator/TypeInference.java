@@ -0,0 +1,500 @@
+/*
+ * Copyright (c) 2020, Alex Blewitt, Bandlem Ltd
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package com.bandlem.jvm.jvmulator;
+import java.lang.reflect.Modifier;
+import java.util.Arrays;
+import com.bandlem.jvm.jvmulator.classfile.ConstantPool;
+import com.bandlem.jvm.jvmulator.classfile.ConstantPool.DoubleConstant;
+import com.bandlem.jvm.jvmulator.classfile.ConstantPool.FieldRef;
+import com.bandlem.jvm.jvmulator.classfile.ConstantPool.FloatConstant;
+import com.bandlem.jvm.jvmulator.classfile.ConstantPool.IntConstant;
+import com.bandlem.jvm.jvmulator.classfile.ConstantPool.Item;
+import com.bandlem.jvm.jvmulator.classfile.ConstantPool.LongConstant;
+import com.bandlem.jvm.jvmulator.classfile.ConstantPool.MethodRef;
+import com.bandlem.jvm.jvmulator.classfile.ConstantPool.NameAndType;
+import com.bandlem.jvm.jvmulator.classfile.ConstantPool.StringConstant;
+import com.bandlem.jvm.jvmulator.classfile.Member.Method;
+import com.bandlem.jvm.jvmulator.classfile.MethodDescriptor;
+// A verifier-style dataflow pass over decoded instructions, which proves the
+// type of every local and stack slot before each instruction. Types are the
+// Slot types that Locals and Stack hold, laid out in the same way with the
+// locals first and an empty entry after each wide value.
+//
+// The locals start with the types of the method's arguments, or empty when
+// there is no method. A local is also empty where the paths into an
+// instruction disagree on its type, and a load of an empty local is proven by
+// the check that it needs at run time. Everything on the stack must have a
+// single type, so code that mixes types on the stack, pops a value as the
+// wrong type or uses an unsupported instruction is rejected, and left to the
+// engines that check every operation.
+class TypeInference {
+	// The types popped and pushed by each instruction as descriptor kinds, with A
+	// for any reference; pops and dups, which move slots of any type, only have
+	// the number of slots popped and pushed
+	private static final String[] POPPED = new String[256];
+	private static final byte[] POPS = new byte[256];
+	private static final String[] PUSHED = new String[256];
+	private static final byte[] PUSHES = new byte[256];
+	// The Slot type of each kind of local load, in the order iload to aload
+	private static final byte[] TYPES = {
+			Slot.INT_TYPE, Slot.LONG_TYPE, Slot.FLOAT_TYPE, Slot.DOUBLE_TYPE, Slot.REFERENCE_TYPE
+	};
+	static {
+		Arrays.fill(POPS, (byte) -1);
+		effect("", "", Opcodes.NOP, Opcodes.IINC, Opcodes.GOTO, Opcodes.GOTO_W, Opcodes.RETURN);
+		effect("", "A", Opcodes.ACONST_NULL, Opcodes.ALOAD, Opcodes.ALOAD_0, Opcodes.ALOAD_1, Opcodes.ALOAD_2,
+				Opcodes.ALOAD_3);
+		effect("", "I", Opcodes.ICONST_M1, Opcodes.ICONST_0, Opcodes.ICONST_1, Opcodes.ICONST_2, Opcodes.ICONST_3,
+				Opcodes.ICONST_4, Opcodes.ICONST_5, Opcodes.BIPUSH, Opcodes.SIPUSH, Opcodes.ILOAD, Opcodes.ILOAD_0,
+				Opcodes.ILOAD_1, Opcodes.ILOAD_2, Opcodes.ILOAD_3);
+		effect("", "J", Opcodes.LCONST_0, Opcodes.LCONST_1, Opcodes.LLOAD, Opcodes.LLOAD_0, Opcodes.LLOAD_1,
+				Opcodes.LLOAD_2, Opcodes.LLOAD_3);
+		effect("", "F", Opcodes.FCONST_0, Opcodes.FCONST_1, Opcodes.FCONST_2, Opcodes.FLOAD, Opcodes.FLOAD_0,
+				Opcodes.FLOAD_1, Opcodes.FLOAD_2, Opcodes.FLOAD_3);
+		effect("", "D", Opcodes.DCONST_0, Opcodes.DCONST_1, Opcodes.DLOAD, Opcodes.DLOAD_0, Opcodes.DLOAD_1,
+				Opcodes.DLOAD_2, Opcodes.DLOAD_3);
+		effect("I", "", Opcodes.ISTORE, Opcodes.ISTORE_0, Opcodes.ISTORE_1, Opcodes.ISTORE_2, Opcodes.ISTORE_3,
+				Opcodes.IFEQ, Opcodes.IFNE, Opcodes.IFLT, Opcodes.IFGE, Opcodes.IFGT, Opcodes.IFLE, Opcodes.IRETURN);
+		effect("J", "", Opcodes.LSTORE, Opcodes.LSTORE_0, Opcodes.LSTORE_1, Opcodes.LSTORE_2, Opcodes.LSTORE_3,
+				Opcodes.LRETURN);
+		effect("F", "", Opcodes.FSTORE, Opcodes.FSTORE_0, Opcodes.FSTORE_1, Opcodes.FSTORE_2, Opcodes.FSTORE_3,
+				Opcodes.FRETURN);
+		effect("D", "", Opcodes.DSTORE, Opcodes.DSTORE_0, Opcodes.DSTORE_1, Opcodes.DSTORE_2, Opcodes.DSTORE_3,
+				Opcodes.DRETURN);
+		effect("A", "", Opcodes.ASTORE, Opcodes.ASTORE_0, Opcodes.ASTORE_1, Opcodes.ASTORE_2, Opcodes.ASTORE_3,
+				Opcodes.IFNULL, Opcodes.IFNONNULL, Opcodes.ARETURN);
+		effect("II", "", Opcodes.IF_ICMPEQ, Opcodes.IF_ICMPNE, Opcodes.IF_ICMPLT, Opcodes.IF_ICMPGE,
+				Opcodes.IF_ICMPGT, Opcodes.IF_ICMPLE);
+		effect("AA", "", Opcodes.IF_ACMPEQ, Opcodes.IF_ACMPNE);
+		effect("I", "I", Opcodes.INEG, Opcodes.I2B, Opcodes.I2C, Opcodes.I2S);
+		effect("I", "J", Opcodes.I2L);
+		effect("I", "F", Opcodes.I2F);
+		effect("I", "D", Opcodes.I2D);
+		effect("I", "A", Opcodes.NEWARRAY);
+		effect("J", "I", Opcodes.L2I);
+		effect("J", "J", Opcodes.LNEG);
+		effect("J", "F", Opcodes.L2F);
+		effect("J", "D", Opcodes.L2D);
+		effect("F", "I", Opcodes.F2I);
+		effect("F", "J", Opcodes.F2L);
+		effect("F", "F", Opcodes.FNEG);
+		effect("F", "D", Opcodes.F2D);
+		effect("D", "I", Opcodes.D2I);
+		effect("D", "J", Opcodes.D2L);
+		effect("D", "F", Opcodes.D2F);
+		effect("D", "D", Opcodes.DNEG);
+		effect("A", "I", Opcodes.ARRAYLENGTH, Opcodes.INSTANCEOF);
+		effect("A", "A", Opcodes.CHECKCAST);
+		effect("II", "I", Opcodes.IADD, Opcodes.ISUB, Opcodes.IMUL, Opcodes.IDIV, Opcodes.IREM, Opcodes.ISHL,
+				Opcodes.ISHR, Opcodes.IUSHR, Opcodes.IAND, Opcodes.IOR, Opcodes.IXOR);
+		effect("JJ", "J", Opcodes.LADD, Opcodes.LSUB, Opcodes.LMUL, Opcodes.LDIV, Opcodes.LREM, Opcodes.LAND,
+				Opcodes.LOR, Opcodes.LXOR);
+		effect("JI", "J", Opcodes.LSHL, Opcodes.LSHR, Opcodes.LUSHR);
+		effect("FF", "F", Opcodes.FADD, Opcodes.FSUB, Opcodes.FMUL, Opcodes.FDIV, Opcodes.FREM);
+		effect("DD", "D", Opcodes.DADD, Opcodes.DSUB, Opcodes.DMUL, Opcodes.DDIV, Opcodes.DREM);
+		effect("JJ", "I", Opcodes.LCMP);
+		effect("FF", "I", Opcodes.FCMPL, Opcodes.FCMPG);
+		effect("DD", "I", Opcodes.DCMPL, Opcodes.DCMPG);
+		effect("AI", "I", Opcodes.IALOAD, Opcodes.BALOAD, Opcodes.CALOAD, Opcodes.SALOAD);
+		effect("AI", "J", Opcodes.LALOAD);
+		effect("AI", "F", Opcodes.FALOAD);
+		effect("AI", "D", Opcodes.DALOAD);
+		effect("AI", "A", Opcodes.AALOAD);
+		effect("AII", "", Opcodes.IASTORE, Opcodes.BASTORE, Opcodes.CASTORE, Opcodes.SASTORE);
+		effect("AIJ", "", Opcodes.LASTORE);
+		effect("AIF", "", Opcodes.FASTORE);
+		effect("AID", "", Opcodes.DASTORE);
+		effect("AIA", "", Opcodes.AASTORE);
+		moves(1, 0, Opcodes.POP);
+		moves(2, 0, Opcodes.POP2);
+		moves(2, 2, Opcodes.SWAP);
+		moves(1, 2, Opcodes.DUP);
+		moves(2, 3, Opcodes.DUP_X1);
+		moves(3, 4, Opcodes.DUP_X2);
+		moves(2, 4, Opcodes.DUP2);
+		moves(3, 5, Opcodes.DUP2_X1);
+		moves(4, 6, Opcodes.DUP2_X2);
+	}
+	// The argument kinds of a method descriptor
+	private static String arguments(final MethodDescriptor descriptor) {
+		final StringBuilder kinds = new StringBuilder();
+		for (int i = 0; i < descriptor.getArgumentCount(); i++) {
+			kinds.append(descriptor.getArgumentKind(i));
+		}
+		return kinds.toString();
+	}
+	// Sets the type of a local as Locals does, emptying a wide value that it overlaps
+	private static void claim(final byte[] types, final int index, final byte type) {
+		if (index > 0 && Slot.isWide(types[index - 1])) {
+			types[index - 1] = Slot.EMPTY_TYPE;
+		}
+		types[index] = type;
+		if (Slot.isWide(type)) {
+			types[index + 1] = Slot.EMPTY_TYPE;
+		}
+	}
+	// The kind of a constant that ldc can load, or 0 for other constants
+	private static char constant(final Item item) {
+		if (item instanceof StringConstant) {
+			return 'A';
+		} else if (item instanceof IntConstant) {
+			return 'I';
+		} else if (item instanceof FloatConstant) {
+			return 'F';
+		} else if (item instanceof LongConstant) {
+			return 'J';
+		} else if (item instanceof DoubleConstant) {
+			return 'D';
+		}
+		return 0;
+	}
+	// The descriptor of a field or method reference
+	private static String descriptor(final ConstantPool pool, final int index) {
+		final Item item = pool.getItem(index);
+		final int nameAndType = item instanceof FieldRef ? ((FieldRef) item).nameAndTypeIndex
+				: ((MethodRef) item).nameAndTypeIndex;
+		return pool.getString(((NameAndType) pool.getItem(nameAndType)).descriptorIndex);
+	}
+	private static void effect(final String popped, final String pushed, final byte... opcodes) {
+		for (final byte opcode : opcodes) {
+			POPPED[opcode & 0xff] = popped;
+			PUSHED[opcode & 0xff] = pushed;
+		}
+	}
+	// The types of the locals on entry to the method, which are its arguments
+	// after the receiver of an instance method, or all empty without a method
+	static byte[] entry(final Method method, final int locals) {
+		final byte[] types = new byte[locals];
+		if (method != null) {
+			final int first = (method.flags & Modifier.STATIC) == 0 ? 1 : 0;
+			if (first > 0) {
+				types[0] = Slot.REFERENCE_TYPE;
+			}
+			final MethodDescriptor descriptor = method.getMethodDescriptor();
+			for (int i = 0; i < descriptor.getArgumentCount(); i++) {
+				types[first + descriptor.getArgumentSlot(i)] = type(descriptor.getArgumentKind(i));
+			}
+		}
+		return types;
+	}
+	// Infers the types for code run with the given types in its locals, or
+	// returns null if the code cannot be proven
+	static TypeInference infer(final Instructions instructions, final ConstantPool pool, final byte[] entry) {
+		final TypeInference inference = new TypeInference(instructions, pool, entry);
+		return inference.run() ? inference : null;
+	}
+	static boolean isBranch(final byte opcode) {
+		return opcode >= Opcodes.IFEQ && opcode <= Opcodes.IF_ACMPNE || opcode == Opcodes.IFNULL
+				|| opcode == Opcodes.IFNONNULL;
+	}
+	static boolean isReturn(final byte opcode) {
+		return opcode >= Opcodes.IRETURN && opcode <= Opcodes.RETURN;
+	}
+	// The load that has the same type as a load or store, such as iload for istore_1
+	static byte kind(final byte opcode) {
+		if (opcode >= Opcodes.ILOAD_0 && opcode <= Opcodes.ALOAD_3) {
+			return (byte) (Opcodes.ILOAD + (opcode - Opcodes.ILOAD_0) / 4);
+		} else if (opcode >= Opcodes.ISTORE_0 && opcode <= Opcodes.ASTORE_3) {
+			return (byte) (Opcodes.ILOAD + (opcode - Opcodes.ISTORE_0) / 4);
+		} else if (opcode >= Opcodes.ISTORE && opcode <= Opcodes.ASTORE) {
+			return (byte) (Opcodes.ILOAD + opcode - Opcodes.ISTORE);
+		}
+		return opcode;
+	}
+	// The local read or written by a load, store or iinc, or -1 for other instructions
+	static int local(final byte opcode, final int operand) {
+		switch (opcode) {
+		case Opcodes.ILOAD:
+		case Opcodes.LLOAD:
+		case Opcodes.FLOAD:
+		case Opcodes.DLOAD:
+		case Opcodes.ALOAD:
+		case Opcodes.ISTORE:
+		case Opcodes.LSTORE:
+		case Opcodes.FSTORE:
+		case Opcodes.DSTORE:
+		case Opcodes.ASTORE:
+		case Opcodes.IINC:
+			return operand;
+		default:
+			if (opcode >= Opcodes.ILOAD_0 && opcode <= Opcodes.ALOAD_3) {
+				return (opcode - Opcodes.ILOAD_0) % 4;
+			} else if (opcode >= Opcodes.ISTORE_0 && opcode <= Opcodes.ASTORE_3) {
+				return (opcode - Opcodes.ISTORE_0) % 4;
+			}
+			return -1;
+		}
+	}
+	// The type of the local read or written by a load, store or iinc
+	static byte localType(final byte opcode) {
+		return opcode == Opcodes.IINC ? Slot.INT_TYPE : TYPES[kind(opcode) - Opcodes.ILOAD];
+	}
+	private static void moves(final int pops, final int pushes, final byte opcode) {
+		POPS[opcode & 0xff] = (byte) pops;
+		PUSHES[opcode & 0xff] = (byte) pushes;
+	}
+	// The kinds popped by the instruction, or null if it only moves slots or is not supported
+	private static String popped(final byte opcode, final int operand, final ConstantPool pool) {
+		switch (opcode) {
+		case Opcodes.GETSTATIC:
+		case Opcodes.GETFIELD:
+		case Opcodes.PUTSTATIC:
+		case Opcodes.PUTFIELD:
+		case Opcodes.INVOKESTATIC:
+		case Opcodes.INVOKEVIRTUAL:
+		case Opcodes.LDC:
+		case Opcodes.LDC_W:
+		case Opcodes.LDC2_W:
+			return pool == null ? null : poppedConstant(opcode, operand, pool);
+		default:
+			return POPPED[opcode & 0xff];
+		}
+	}
+	// The kinds popped by an instruction that refers to the constant pool
+	private static String poppedConstant(final byte opcode, final int operand, final ConstantPool pool) {
+		switch (opcode) {
+		case Opcodes.GETSTATIC:
+			return "";
+		case Opcodes.GETFIELD:
+			return "A";
+		case Opcodes.PUTSTATIC:
+			return descriptor(pool, operand).substring(0, 1);
+		case Opcodes.PUTFIELD:
+			return "A" + descriptor(pool, operand).charAt(0);
+		case Opcodes.INVOKESTATIC:
+			return arguments(MethodDescriptor.of(descriptor(pool, operand)));
+		case Opcodes.INVOKEVIRTUAL:
+			return "A" + arguments(MethodDescriptor.of(descriptor(pool, operand)));
+		default:
+			return constant(pool.getItem(operand)) == 0 ? null : "";
+		}
+	}
+	// The slots popped by the instruction, or -1 if it is not supported
+	static int pops(final byte opcode, final int operand, final ConstantPool pool) {
+		final String popped = popped(opcode, operand, pool);
+		return popped == null ? POPS[opcode & 0xff] : slots(popped);
+	}
+	// The kinds pushed by an instruction that pops a known list of kinds
+	private static String pushed(final byte opcode, final int operand, final ConstantPool pool) {
+		switch (opcode) {
+		case Opcodes.GETSTATIC:
+		case Opcodes.GETFIELD:
+			return descriptor(pool, operand).substring(0, 1);
+		case Opcodes.PUTSTATIC:
+		case Opcodes.PUTFIELD:
+			return "";
+		case Opcodes.INVOKESTATIC:
+		case Opcodes.INVOKEVIRTUAL: {
+			final char kind = MethodDescriptor.of(descriptor(pool, operand)).returnKind;
+			return kind == 'V' ? "" : String.valueOf(kind);
+		}
+		case Opcodes.LDC:
+		case Opcodes.LDC_W:
+		case Opcodes.LDC2_W:
+			return String.valueOf(constant(pool.getItem(operand)));
+		default:
+			return PUSHED[opcode & 0xff];
+		}
+	}
+	// The slots pushed by the instruction, which pops has found to be supported
+	static int pushes(final byte opcode, final int operand, final ConstantPool pool) {
+		final String popped = popped(opcode, operand, pool);
+		return popped == null ? PUSHES[opcode & 0xff] : slots(pushed(opcode, operand, pool));
+	}
+	private static int slots(final String kinds) {
+		int slots = 0;
+		for (int i = 0; i < kinds.length(); i++) {
+			slots += width(kinds.charAt(i));
+		}
+		return slots;
+	}
+	// The Slot type of a descriptor kind
+	static byte type(final char kind) {
+		switch (kind) {
+		case 'J':
+			return Slot.LONG_TYPE;
+		case 'F':
+			return Slot.FLOAT_TYPE;
+		case 'D':
+			return Slot.DOUBLE_TYPE;
+		case 'A':
+		case 'L':
+		case '[':
+			return Slot.REFERENCE_TYPE;
+		default:
+			return Slot.INT_TYPE;
+		}
+	}
+	static int width(final byte opcode) {
+		final byte kind = kind(opcode);
+		return kind == Opcodes.LLOAD || kind == Opcodes.DLOAD ? 2 : 1;
+	}
+	private static int width(final char kind) {
+		return kind == 'J' || kind == 'D' ? 2 : 1;
+	}
+	// Instructions to run the transfer for, after their types have changed
+	private final boolean[] dirty;
+	// The types before each instruction, locals first then the stack, or null if unreachable
+	private final byte[][] frames;
+	private final Instructions instructions;
+	private final int locals;
+	int maxDepth;
+	private final ConstantPool pool;
+	private final boolean[] targets;
+	private TypeInference(final Instructions instructions, final ConstantPool pool, final byte[] entry) {
+		this.instructions = instructions;
+		this.pool = pool;
+		this.locals = entry.length;
+		this.frames = new byte[instructions.size()][];
+		this.dirty = new boolean[frames.length];
+		this.targets = new boolean[frames.length];
+		frames[0] = entry.clone();
+		dirty[0] = true;
+	}
+	// The stack depth before the instruction, or -1 if it cannot be reached
+	int depth(final int instruction) {
+		return frames[instruction] == null ? -1 : frames[instruction].length - locals;
+	}
+	boolean isTarget(final int instruction) {
+		return targets[instruction];
+	}
+	// Whether the stack is made of whole values, with an empty slot after each wide one
+	private boolean isWhole(final byte[] types) {
+		for (int k = locals; k < types.length; k += Slot.isWide(types[k]) ? 2 : 1) {
+			if (types[k] == Slot.EMPTY_TYPE || Slot.isWide(types[k]) && k + 1 == types.length) {
+				return false;
+			}
+		}
+		return true;
+	}
+	// Merges the types into those before the instruction, returning false if the stacks differ
+	private boolean merge(final int instruction, final byte[] types) {
+		final byte[] frame = frames[instruction];
+		if (frame == null) {
+			frames[instruction] = types.clone();
+			dirty[instruction] = true;
+			maxDepth = Math.max(maxDepth, types.length - locals);
+			return true;
+		} else if (frame.length != types.length) {
+			return false;
+		}
+		for (int k = 0; k < frame.length; k++) {
+			if (frame[k] != types[k] && k >= locals) {
+				return false;
+			} else if (frame[k] != types[k] && frame[k] != Slot.EMPTY_TYPE) {
+				// A local with a different type on each path cannot be used without a check
+				frame[k] = Slot.EMPTY_TYPE;
+				dirty[instruction] = true;
+			}
+		}
+		return true;
+	}
+	// Runs the transfer for each changed instruction in order until nothing changes
+	private boolean run() {
+		final int size = frames.length;
+		boolean changed = true;
+		while (changed) {
+			changed = false;
+			for (int instruction = 0; instruction < size; instruction++) {
+				if (dirty[instruction]) {
+					dirty[instruction] = false;
+					changed = true;
+					final byte[] types = transfer(instruction, frames[instruction]);
+					if (types == null) {
+						return false;
+					}
+					final byte opcode = instructions.opcodes[instruction];
+					final int operand = instructions.operands[instruction];
+					final int[] successors = {
+							isBranch(opcode) || opcode == Opcodes.GOTO || opcode == Opcodes.GOTO_W ? operand : -1,
+							isReturn(opcode) || opcode == Opcodes.GOTO || opcode == Opcodes.GOTO_W ? -1
+									: instruction + 1
+					};
+					if (successors[0] >= 0) {
+						targets[successors[0]] = true;
+					}
+					for (final int successor : successors) {
+						if (successor >= size || successor >= 0 && !merge(successor, types)) {
+							return false;
+						}
+					}
+				}
+			}
+		}
+		return true;
+	}
+	// The types after a pop, swap or dup, which move slots as Stack does
+	private byte[] shuffle(final byte opcode, final byte[] types, final int pops) {
+		final int top = types.length - 1;
+		final byte[] after;
+		switch (opcode) {
+		case Opcodes.POP:
+		case Opcodes.POP2:
+			after = Arrays.copyOf(types, types.length - pops);
+			break;
+		case Opcodes.SWAP:
+			after = types.clone();
+			after[top] = types[top - 1];
+			after[top - 1] = types[top];
+			break;
+		default:
+			// Each dup copies the top slots below all of those that it pops
+			final int copies = PUSHES[opcode & 0xff] - pops;
+			final int from = types.length - pops;
+			after = Arrays.copyOf(types, types.length + copies);
+			System.arraycopy(types, from, after, from + copies, pops);
+			System.arraycopy(types, types.length - copies, after, from, copies);
+			break;
+		}
+		return isWhole(after) ? after : null;
+	}
+	// The types after the instruction, or null if its operands cannot be proven
+	private byte[] transfer(final int instruction, final byte[] types) {
+		final byte opcode = instructions.opcodes[instruction];
+		final int operand = instructions.operands[instruction];
+		final int pops = pops(opcode, operand, pool);
+		final int local = local(opcode, operand);
+		if (pops < 0 || pops > types.length - locals || local + width(opcode) > locals) {
+			return null;
+		}
+		final String popped = popped(opcode, operand, pool);
+		if (popped == null) {
+			return shuffle(opcode, types, pops);
+		}
+		final int from = types.length - pops;
+		int k = from;
+		for (int i = 0; i < popped.length(); i++) {
+			if (types[k] != type(popped.charAt(i))) {
+				return null;
+			}
+			k += width(popped.charAt(i));
+		}
+		final String pushed = pushed(opcode, operand, pool);
+		final byte[] after = Arrays.copyOf(types, from + slots(pushed));
+		k = from;
+		for (int i = 0; i < pushed.length(); i++) {
+			after[k] = type(pushed.charAt(i));
+			k += width(pushed.charAt(i));
+		}
+		if (local >= 0) {
+			// A load or iinc of a local that is not known to have the type is checked
+			final byte type = localType(opcode);
+			if (popped.isEmpty() && types[local] != type && types[local] != Slot.EMPTY_TYPE) {
+				return null;
+			}
+			claim(after, local, type);
+		}
+		// The switch requires the stack to be empty after a return
+		return isReturn(opcode) && after.length != locals ? null : after;
+	}
+	// The type of a local, or of a stack slot after the locals, before the instruction
+	byte type(final int instruction, final int slot) {
+		return frames[instruction][slot];
+	}
+}
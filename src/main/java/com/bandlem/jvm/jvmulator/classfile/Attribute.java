@@ -7,27 +7,110 @@
  * http://www.eclipse.org/legal/epl-v10.html
  */
 package com.bandlem.jvm.jvmulator.classfile;
-import java.io.ByteArrayInputStream;
-import java.io.DataInputStream;
-import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.function.Function;
 public abstract class Attribute {
+	public static class BootstrapMethods extends Attribute {
+		public static final String NAME = "BootstrapMethods";
+		// The constant pool indexes of the static arguments of each bootstrap method
+		public final int[][] arguments;
+		// The constant pool index of the method handle of each bootstrap method
+		public final int[] handles;
+		public BootstrapMethods(final ByteBuffer data) {
+			super(NAME);
+			final ByteBuffer buffer = data.duplicate();
+			handles = new int[buffer.getShort() & 0xffff];
+			arguments = new int[handles.length][];
+			for (int i = 0; i < handles.length; i++) {
+				handles[i] = buffer.getShort() & 0xffff;
+				arguments[i] = new int[buffer.getShort() & 0xffff];
+				for (int k = 0; k < arguments[i].length; k++) {
+					arguments[i][k] = buffer.getShort() & 0xffff;
+				}
+			}
+		}
+	}
 	public static class Code extends Attribute {
 		public static final String NAME = "Code";
+		// Parsed from the data on first use, so that methods which are never run
+		// only pay for their bytecode
+		private Attribute[] attributes;
 		private final byte[] bytecode;
+		private final ByteBuffer data;
+		// Cache for the interpreter's decoded form, built on first use
+		private Object decoded;
+		private int[] exceptionTable;
+		private final int exceptionTableLength;
 		private final short maxLocals;
 		private final short maxStack;
-		public Code(final DataInputStream dis) throws IOException {
+		private final ConstantPool pool;
+		public Code(final ByteBuffer data, final ConstantPool pool) {
 			super(NAME);
-			maxStack = dis.readShort();
-			maxLocals = dis.readShort();
-			bytecode = new byte[dis.readInt()];
-			dis.readFully(bytecode);
-			// exception table
-			// code attributes
+			this.data = data;
+			this.pool = pool;
+			maxStack = data.getShort(0);
+			maxLocals = data.getShort(2);
+			bytecode = new byte[data.getInt(4)];
+			data.duplicate().position(8).get(bytecode);
+			// The exception table and attributes may be left off where the code is
+			// given on its own
+			final int table = 8 + bytecode.length;
+			exceptionTableLength = data.limit() >= table + 2 ? data.getShort(table) & 0xffff : 0;
+		}
+		public Attribute getAttribute(final String name) {
+			for (final Attribute attribute : getAttributes()) {
+				if (name.equals(attribute.attributeName)) {
+					return attribute;
+				}
+			}
+			return null;
+		}
+		public Attribute[] getAttributes() {
+			if (attributes == null) {
+				final int table = 10 + bytecode.length + exceptionTableLength * 8;
+				attributes = data.limit() >= table + 2 ? read(data.duplicate().position(table).slice(), pool)
+						: new Attribute[0];
+			}
+			return attributes;
 		}
 		public byte[] getBytecode() {
 			return bytecode;
 		}
+		@SuppressWarnings("unchecked")
+		public <T> T getDecoded(final Function<? super Code, T> decoder) {
+			if (decoded == null) {
+				decoded = decoder.apply(this);
+			}
+			return (T) decoded;
+		}
+		// The start pc, end pc, handler pc and catch type index of each handler in
+		// turn, where a catch type of zero catches everything
+		public int[] getExceptionTable() {
+			if (exceptionTable == null) {
+				exceptionTable = new int[exceptionTableLength * 4];
+				for (int i = 0; i < exceptionTable.length; i++) {
+					exceptionTable[i] = data.getShort(10 + bytecode.length + i * 2) & 0xffff;
+				}
+			}
+			return exceptionTable;
+		}
+		public int getExceptionTableLength() {
+			return exceptionTableLength;
+		}
+		// The source line of the instruction at the pc, or -1 if it is not known
+		public int getLineNumber(final int pc) {
+			for (final Attribute attribute : getAttributes()) {
+				if (attribute instanceof LineNumberTable) {
+					final int line = ((LineNumberTable) attribute).getLine(pc);
+					if (line >= 0) {
+						return line;
+					}
+				}
+			}
+			return -1;
+		}
 		public short getMaxLocals() {
 			return maxLocals;
 		}
@@ -35,18 +118,174 @@ public abstract class Attribute {
 			return maxStack;
 		}
 	}
+	public static class LineNumberTable extends Attribute {
+		public static final String NAME = "LineNumberTable";
+		// The start pc and line number of each entry in turn
+		public final int[] entries;
+		public LineNumberTable(final ByteBuffer data) {
+			super(NAME);
+			entries = new int[(data.getShort(0) & 0xffff) * 2];
+			for (int i = 0; i < entries.length; i++) {
+				entries[i] = data.getShort(2 + i * 2) & 0xffff;
+			}
+		}
+		// The line of the entry that starts closest before the pc, or -1 if there is none
+		public int getLine(final int pc) {
+			int start = -1;
+			int line = -1;
+			for (int i = 0; i < entries.length; i += 2) {
+				if (entries[i] <= pc && entries[i] > start) {
+					start = entries[i];
+					line = entries[i + 1];
+				}
+			}
+			return line;
+		}
+	}
+	public static class LocalVariableTable extends Attribute {
+		public static final String NAME = "LocalVariableTable";
+		// The start pc, length, name index, descriptor index and local index of
+		// each entry in turn
+		public final int[] entries;
+		private final ConstantPool pool;
+		public LocalVariableTable(final ByteBuffer data, final ConstantPool pool) {
+			super(NAME);
+			this.pool = pool;
+			entries = new int[(data.getShort(0) & 0xffff) * 5];
+			for (int i = 0; i < entries.length; i++) {
+				entries[i] = data.getShort(2 + i * 2) & 0xffff;
+			}
+		}
+		// The name of the local in scope at the pc, or null if it is not known
+		public String getName(final int pc, final int local) {
+			for (int i = 0; i < entries.length; i += 5) {
+				if (entries[i + 4] == local && entries[i] <= pc && pc < entries[i] + entries[i + 1]) {
+					return pool.getString(entries[i + 2]);
+				}
+			}
+			return null;
+		}
+	}
 	public static class SourceFile extends Attribute {
 		public static final String NAME = "SourceFile";
 		public final String file;
-		public SourceFile(final DataInputStream dis, final ConstantPool pool) throws IOException {
+		public SourceFile(final ByteBuffer data, final ConstantPool pool) {
 			super(NAME);
-			this.file = pool.getString(dis.readShort());
+			this.file = pool.getString(data.getShort(0));
 		}
 		@Override
 		public String toString() {
 			return file;
 		}
 	}
+	public static class StackMapTable extends Attribute {
+		// Verification types have the tag in the low byte, with the constant pool
+		// index of an object's class or the pc of an uninitialized new above it
+		public static final int DOUBLE = 3;
+		public static final int FLOAT = 2;
+		public static final int INTEGER = 1;
+		public static final int LONG = 4;
+		public static final String NAME = "StackMapTable";
+		public static final int NULL = 5;
+		public static final int OBJECT = 7;
+		public static final int TOP = 0;
+		public static final int UNINITIALIZED = 8;
+		public static final int UNINITIALIZED_THIS = 6;
+		// Stores a type, growing the array if it is full
+		private static int[] add(final int[] types, final int index, final int type) {
+			final int[] grown = index < types.length ? types : Arrays.copyOf(types, index * 2 + 1);
+			grown[index] = type;
+			return grown;
+		}
+		// Reads a verification type, moving the buffer past it
+		private static int type(final ByteBuffer buffer) {
+			final int tag = buffer.get();
+			if (tag == OBJECT || tag == UNINITIALIZED) {
+				return tag | (buffer.getShort() & 0xffff) << 8;
+			} else if (tag < TOP || tag > UNINITIALIZED) {
+				throw new IllegalArgumentException("Unknown verification type " + tag);
+			}
+			return tag;
+		}
+		// Frames are kept in the compressed form that the class file uses: each
+		// removes some locals from the previous frame, or -1 to replace them all,
+		// and then adds locals and a stack, which are the types from starts[i] up
+		// to starts[i + 1]
+		private final int[] appends;
+		private final int[] chops;
+		// The pc of each frame
+		public final int[] offsets;
+		private final int[] stacks;
+		private final int[] starts;
+		private final int[] types;
+		public StackMapTable(final ByteBuffer data) {
+			super(NAME);
+			final ByteBuffer buffer = data.duplicate();
+			final int count = buffer.getShort() & 0xffff;
+			offsets = new int[count];
+			chops = new int[count];
+			appends = new int[count];
+			stacks = new int[count];
+			starts = new int[count + 1];
+			int[] types = new int[count];
+			int size = 0;
+			for (int i = 0; i < count; i++) {
+				final int frameType = buffer.get() & 0xff;
+				final int delta;
+				if (frameType < 64) {
+					delta = frameType;
+				} else if (frameType < 128) {
+					delta = frameType - 64;
+					stacks[i] = 1;
+				} else if (frameType < 247) {
+					throw new IllegalArgumentException("Unknown stack map frame type " + frameType);
+				} else {
+					delta = buffer.getShort() & 0xffff;
+				}
+				if (frameType == 247) {
+					stacks[i] = 1;
+				} else if (frameType >= 248 && frameType <= 250) {
+					chops[i] = 251 - frameType;
+				} else if (frameType >= 252 && frameType <= 254) {
+					appends[i] = frameType - 251;
+				} else if (frameType == 255) {
+					chops[i] = -1;
+					appends[i] = buffer.getShort() & 0xffff;
+				}
+				offsets[i] = i == 0 ? delta : offsets[i - 1] + delta + 1;
+				for (int k = 0; k < appends[i]; k++) {
+					types = add(types, size++, type(buffer));
+				}
+				if (frameType == 255) {
+					stacks[i] = buffer.getShort() & 0xffff;
+				}
+				for (int k = 0; k < stacks[i]; k++) {
+					types = add(types, size++, type(buffer));
+				}
+				starts[i + 1] = size;
+			}
+			this.types = Arrays.copyOf(types, size);
+		}
+		// Expands the locals of every frame, given those of the implicit first frame
+		// that the method's arguments describe
+		public int[][] getLocals(final int[] initial) {
+			final int[][] locals = new int[offsets.length][];
+			int[] previous = initial;
+			for (int i = 0; i < offsets.length; i++) {
+				final int kept = chops[i] < 0 ? 0 : previous.length - chops[i];
+				if (kept < 0) {
+					throw new IllegalArgumentException("Frame at " + offsets[i] + " removes missing locals");
+				}
+				locals[i] = Arrays.copyOf(previous, kept + appends[i]);
+				System.arraycopy(types, starts[i], locals[i], kept, appends[i]);
+				previous = locals[i];
+			}
+			return locals;
+		}
+		public int[] getStack(final int frame) {
+			return Arrays.copyOfRange(types, starts[frame + 1] - stacks[frame], starts[frame + 1]);
+		}
+	}
 	public static class Unknown extends Attribute {
 		public final byte[] data;
 		public Unknown(final String attributeName, final byte[] data) {
@@ -55,19 +294,54 @@ public abstract class Attribute {
 		}
 	}
 	public static Attribute of(final String attributeName, final ConstantPool pool, final byte[] data) {
+		return of(attributeName, pool, ByteBuffer.wrap(data));
+	}
+	public static Attribute of(final String attributeName, final ConstantPool pool, final ByteBuffer data) {
 		try {
-			final DataInputStream dis = new DataInputStream(new ByteArrayInputStream(data));
-			if (Code.NAME.equals(attributeName)) {
-				return new Code(dis);
+			if (BootstrapMethods.NAME.equals(attributeName)) {
+				return new BootstrapMethods(data);
+			} else if (Code.NAME.equals(attributeName)) {
+				return new Code(data, pool);
+			} else if (LineNumberTable.NAME.equals(attributeName)) {
+				return new LineNumberTable(data);
+			} else if (LocalVariableTable.NAME.equals(attributeName)) {
+				return new LocalVariableTable(data, pool);
 			} else if (SourceFile.NAME.equals(attributeName)) {
-				return new SourceFile(dis, pool);
+				return new SourceFile(data, pool);
+			} else if (StackMapTable.NAME.equals(attributeName)) {
+				return new StackMapTable(data);
 			} else {
-				return new Unknown(attributeName, data);
+				final byte[] bytes = new byte[data.remaining()];
+				data.duplicate().get(bytes);
+				return new Unknown(attributeName, bytes);
 			}
-		} catch (final IOException e) {
+		} catch (final BufferUnderflowException | IndexOutOfBoundsException e) {
 			throw new IllegalArgumentException("Unable to parse " + attributeName, e);
 		}
 	}
+	// Parses an attribute table previously found by skip
+	static Attribute[] read(final ByteBuffer table, final ConstantPool pool) {
+		final ByteBuffer buffer = table.duplicate();
+		final Attribute[] attributes = new Attribute[buffer.getShort() & 0xffff];
+		for (int i = 0; i < attributes.length; i++) {
+			final String name = pool.getString(buffer.getShort());
+			final int length = buffer.getInt();
+			attributes[i] = of(name, pool, buffer.slice().limit(length));
+			buffer.position(buffer.position() + length);
+		}
+		return attributes;
+	}
+	// Steps over an attribute table, returning it as a slice for later parsing
+	static ByteBuffer skip(final ByteBuffer buffer) {
+		final int start = buffer.position();
+		final int count = buffer.getShort() & 0xffff;
+		for (int i = 0; i < count; i++) {
+			buffer.getShort();
+			final int length = buffer.getInt();
+			buffer.position(buffer.position() + length);
+		}
+		return buffer.duplicate().position(start).limit(buffer.position()).slice();
+	}
 	public final String attributeName;
 	public Attribute(final String attributeName) {
 		this.attributeName = attributeName;
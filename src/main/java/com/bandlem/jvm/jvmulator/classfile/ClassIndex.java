@@ -0,0 +1,27 @@
+/*
+ * Copyright (c) 2020, Alex Blewitt, Bandlem Ltd
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package com.bandlem.jvm.jvmulator.classfile;
+import java.util.Map;
+import java.util.Set;
+// An immutable set of parsed classes, which can be read from any thread
+public class ClassIndex {
+	private final Map<String, JavaClass> classes;
+	ClassIndex(final Map<String, JavaClass> classes) {
+		this.classes = Map.copyOf(classes);
+	}
+	public Set<String> getClassNames() {
+		return classes.keySet();
+	}
+	public JavaClass getJavaClass(final String name) {
+		return classes.get(name);
+	}
+	public int size() {
+		return classes.size();
+	}
+}
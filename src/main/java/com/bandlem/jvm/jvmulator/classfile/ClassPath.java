@@ -0,0 +1,235 @@
+/*
+ * Copyright (c) 2020, Alex Blewitt, Bandlem Ltd
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package com.bandlem.jvm.jvmulator.classfile;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.stream.Stream;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+import java.util.zip.ZipException;
+// Indexes the classes in jars and class directories by internal name. Jars are
+// memory-mapped and only their central directory is read when opened; classes
+// are parsed lazily over the mapped content and the most recent are cached.
+public class ClassPath {
+	// Parses a range of classes, splitting it in half while it is above the threshold
+	private static class Parse extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+		private final JavaClass[] classes;
+		private final ClassPath classPath;
+		private final int from;
+		private final String[] names;
+		private final int to;
+		Parse(final ClassPath classPath, final String[] names, final JavaClass[] classes, final int from, final int to) {
+			this.classPath = classPath;
+			this.names = names;
+			this.classes = classes;
+			this.from = from;
+			this.to = to;
+		}
+		@Override
+		protected void compute() {
+			if (to - from <= THRESHOLD) {
+				for (int i = from; i < to; i++) {
+					try {
+						classes[i] = classPath.parse(names[i]);
+					} catch (final IOException e) {
+						throw new UncheckedIOException(e);
+					}
+				}
+			} else {
+				final int middle = (from + to) >>> 1;
+				invokeAll(new Parse(classPath, names, classes, from, middle),
+						new Parse(classPath, names, classes, middle, to));
+			}
+		}
+	}
+	private interface Resource {
+		ByteBuffer read() throws IOException;
+	}
+	// A class in a jar, either stored as a slice of the mapping or inflated on read
+	private static class ZipResource implements Resource {
+		private final int compressed;
+		private final ByteBuffer jar;
+		private final int method;
+		private final int offset;
+		private final int size;
+		ZipResource(final ByteBuffer jar, final int offset, final int method, final int compressed, final int size) {
+			this.jar = jar;
+			this.offset = offset;
+			this.method = method;
+			this.compressed = compressed;
+			this.size = size;
+		}
+		@Override
+		public ByteBuffer read() {
+			// The local header's extra field can differ from the central directory's
+			final int start = offset + 30 + (jar.getShort(offset + 26) & 0xffff) + (jar.getShort(offset + 28) & 0xffff);
+			final ByteBuffer data = jar.duplicate().position(start).limit(start + compressed).slice();
+			if (method == STORED) {
+				return data;
+			}
+			final Inflater inflater = new Inflater(true);
+			try {
+				inflater.setInput(data);
+				// A spare byte shows where a class inflates to more than the central
+				// directory says, rather than filling the buffer and stopping there
+				final ByteBuffer bytes = ByteBuffer.allocate(size + 1);
+				while (!inflater.finished() && !inflater.needsInput() && bytes.hasRemaining()) {
+					inflater.inflate(bytes);
+				}
+				if (!inflater.finished() || bytes.position() != size) {
+					throw new IllegalArgumentException(
+							"Class inflated to " + bytes.position() + " bytes rather than " + size);
+				}
+				return bytes.flip();
+			} catch (final DataFormatException e) {
+				throw new IllegalArgumentException("Unable to inflate class", e);
+			} finally {
+				inflater.end();
+			}
+		}
+	}
+	private static final int CENTRAL = 0x02014b50;
+	public static final int DEFAULT_CAPACITY = 256;
+	private static final int DEFLATED = 8;
+	private static final int END = 0x06054b50;
+	private static final int STORED = 0;
+	private static final String SUFFIX = ".class";
+	private static final int THRESHOLD = 64;
+	private static ByteBuffer map(final Path path) throws IOException {
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+			return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+		}
+	}
+	private final Map<String, JavaClass> classes;
+	private final Map<String, Resource> resources = new HashMap<>();
+	// Earlier paths take precedence when a class is present more than once
+	public ClassPath(final int capacity, final Path... paths) throws IOException {
+		if (capacity < 1) {
+			throw new IllegalArgumentException("Capacity must be positive: " + capacity);
+		}
+		classes = new LinkedHashMap<>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+			@Override
+			protected boolean removeEldestEntry(final Map.Entry<String, JavaClass> eldest) {
+				return size() > capacity;
+			}
+		};
+		for (final Path path : paths) {
+			if (Files.isDirectory(path)) {
+				indexDirectory(path);
+			} else {
+				indexJar(path);
+			}
+		}
+	}
+	public ClassPath(final Path... paths) throws IOException {
+		this(DEFAULT_CAPACITY, paths);
+	}
+	public ByteBuffer getBytes(final String name) throws IOException {
+		final Resource resource = resources.get(name);
+		return resource == null ? null : resource.read();
+	}
+	public Set<String> getClassNames() {
+		return Collections.unmodifiableSet(resources.keySet());
+	}
+	public synchronized JavaClass getJavaClass(final String name) throws IOException {
+		JavaClass javaClass = classes.get(name);
+		if (javaClass == null) {
+			javaClass = parse(name);
+			if (javaClass != null) {
+				classes.put(name, javaClass);
+			}
+		}
+		return javaClass;
+	}
+	public ClassIndex index() throws IOException {
+		return index(ForkJoinPool.commonPool(), getClassNames());
+	}
+	// Parses the named classes on the pool without going through the cache
+	public ClassIndex index(final ForkJoinPool pool, final Collection<String> names) throws IOException {
+		final String[] array = names.toArray(new String[0]);
+		final JavaClass[] parsed = new JavaClass[array.length];
+		try {
+			pool.invoke(new Parse(this, array, parsed, 0, array.length));
+		} catch (final UncheckedIOException e) {
+			throw e.getCause();
+		}
+		final Map<String, JavaClass> map = new HashMap<>();
+		for (int i = 0; i < array.length; i++) {
+			if (parsed[i] == null) {
+				throw new IllegalArgumentException("Class not found: " + array[i]);
+			}
+			map.put(array[i], parsed[i]);
+		}
+		return new ClassIndex(map);
+	}
+	private void indexDirectory(final Path directory) throws IOException {
+		try (Stream<Path> files = Files.walk(directory)) {
+			final Iterator<Path> iterator = files.iterator();
+			while (iterator.hasNext()) {
+				final Path file = iterator.next();
+				final String name = directory.relativize(file).toString().replace(file.getFileSystem().getSeparator(),
+						"/");
+				if (name.endsWith(SUFFIX) && Files.isRegularFile(file)) {
+					resources.putIfAbsent(name.substring(0, name.length() - SUFFIX.length()), () -> map(file));
+				}
+			}
+		}
+	}
+	JavaClass parse(final String name) throws IOException {
+		final ByteBuffer bytes = getBytes(name);
+		return bytes == null ? null : new JavaClass(bytes);
+	}
+	// Zip64 jars, with more than 65535 entries or over 4GB, are not supported
+	private void indexJar(final Path path) throws IOException {
+		final ByteBuffer jar = map(path).order(ByteOrder.LITTLE_ENDIAN);
+		final int first = Math.max(0, jar.limit() - 22 - 0xffff);
+		int end = jar.limit() - 22;
+		while (end >= first && jar.getInt(end) != END) {
+			end--;
+		}
+		if (end < first) {
+			throw new ZipException("No central directory in " + path);
+		}
+		final int count = jar.getShort(end + 10) & 0xffff;
+		int offset = jar.getInt(end + 16);
+		for (int i = 0; i < count; i++) {
+			if (jar.getInt(offset) != CENTRAL) {
+				throw new ZipException("Invalid central directory in " + path);
+			}
+			final int method = jar.getShort(offset + 10) & 0xffff;
+			final int length = jar.getShort(offset + 28) & 0xffff;
+			final byte[] bytes = new byte[length];
+			jar.duplicate().position(offset + 46).get(bytes);
+			final String name = new String(bytes, StandardCharsets.UTF_8);
+			if (name.endsWith(SUFFIX) && (method == STORED || method == DEFLATED)) {
+				resources.putIfAbsent(name.substring(0, name.length() - SUFFIX.length()), new ZipResource(jar,
+						jar.getInt(offset + 42), method, jar.getInt(offset + 20), jar.getInt(offset + 24)));
+			}
+			offset += 46 + length + (jar.getShort(offset + 30) & 0xffff) + (jar.getShort(offset + 32) & 0xffff);
+		}
+	}
+}
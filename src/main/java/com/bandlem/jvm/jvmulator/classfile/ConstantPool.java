@@ -9,6 +9,7 @@
 package com.bandlem.jvm.jvmulator.classfile;
 import java.io.DataInput;
 import java.io.IOException;
+import java.nio.ByteBuffer;
 public class ConstantPool {
 	public static class ClassConstant extends Item {
 		public static final int TYPE = 7;
@@ -77,6 +78,46 @@ public class ConstantPool {
 		}
 	}
 	public static class Item {
+		// Reads the entry at the given offset without moving the buffer
+		static Item read(final ByteBuffer buffer, final int offset) {
+			final byte type = buffer.get(offset);
+			switch (type) {
+			case UTFConstant.TYPE: // 1
+				return new UTFConstant(utf(buffer, offset + 3, buffer.getShort(offset + 1) & 0xffff));
+			case IntConstant.TYPE: // 3
+				return new IntConstant(buffer.getInt(offset + 1));
+			case FloatConstant.TYPE: // 4
+				return new FloatConstant(buffer.getFloat(offset + 1));
+			case LongConstant.TYPE: // 5
+				return new LongConstant(buffer.getLong(offset + 1));
+			case DoubleConstant.TYPE: // 6
+				return new DoubleConstant(buffer.getDouble(offset + 1));
+			case ClassConstant.TYPE: // 7
+				return new ClassConstant(buffer.getShort(offset + 1));
+			case StringConstant.TYPE: // 8
+				return new StringConstant(buffer.getShort(offset + 1));
+			case FieldRef.TYPE: // 9
+				return new FieldRef(buffer.getShort(offset + 1), buffer.getShort(offset + 3));
+			case MethodRef.TYPE: // 10
+				return new MethodRef(buffer.getShort(offset + 1), buffer.getShort(offset + 3));
+			case InterfaceMethodRef.TYPE: // 11
+				return new InterfaceMethodRef(buffer.getShort(offset + 1), buffer.getShort(offset + 3));
+			case NameAndType.TYPE: // 12
+				return new NameAndType(buffer.getShort(offset + 1), buffer.getShort(offset + 3));
+			case MethodHandle.TYPE: // 15
+				return new MethodHandle(buffer.get(offset + 1), buffer.getShort(offset + 2));
+			case MethodType.TYPE: // 16
+				return new MethodType(buffer.getShort(offset + 1));
+			case InvokeDynamic.TYPE: // 18
+				return new InvokeDynamic(buffer.getShort(offset + 1), buffer.getShort(offset + 3));
+			case Module.TYPE: // 19
+				return new Module(buffer.getShort(offset + 1));
+			case Package.TYPE: // 20
+				return new Package(buffer.getShort(offset + 1));
+			default:
+				throw new IllegalArgumentException("Unknown type " + type);
+			}
+		}
 		public static Item read(final DataInput di) throws IOException {
 			final byte type = di.readByte();
 			switch (type) {
@@ -116,6 +157,53 @@ public class ConstantPool {
 				throw new IllegalArgumentException("Unknown type " + type);
 			}
 		}
+		// Size of the entry at the given offset, including its type
+		static int size(final ByteBuffer buffer, final int offset) {
+			final byte type = buffer.get(offset);
+			switch (type) {
+			case UTFConstant.TYPE:
+				return 3 + (buffer.getShort(offset + 1) & 0xffff);
+			case ClassConstant.TYPE:
+			case StringConstant.TYPE:
+			case MethodType.TYPE:
+			case Module.TYPE:
+			case Package.TYPE:
+				return 3;
+			case MethodHandle.TYPE:
+				return 4;
+			case IntConstant.TYPE:
+			case FloatConstant.TYPE:
+			case FieldRef.TYPE:
+			case MethodRef.TYPE:
+			case InterfaceMethodRef.TYPE:
+			case NameAndType.TYPE:
+			case InvokeDynamic.TYPE:
+				return 5;
+			case LongConstant.TYPE:
+			case DoubleConstant.TYPE:
+				return 9;
+			default:
+				throw new IllegalArgumentException("Unknown type " + type);
+			}
+		}
+		// Decodes the modified UTF-8 used by class files, which has no four byte form
+		static String utf(final ByteBuffer buffer, final int offset, final int length) {
+			final char[] chars = new char[length];
+			int count = 0;
+			int i = offset;
+			final int end = offset + length;
+			while (i < end) {
+				final int b = buffer.get(i++) & 0xff;
+				if (b < 0x80) {
+					chars[count++] = (char) b;
+				} else if (b < 0xe0) {
+					chars[count++] = (char) ((b & 0x1f) << 6 | buffer.get(i++) & 0x3f);
+				} else {
+					chars[count++] = (char) ((b & 0x0f) << 12 | (buffer.get(i++) & 0x3f) << 6 | buffer.get(i++) & 0x3f);
+				}
+			}
+			return new String(chars, 0, count);
+		}
 		public final int type;
 		Item(final int type) {
 			this.type = type;
@@ -193,6 +281,9 @@ public class ConstantPool {
 			this.nameIndex = nameIndex;
 		}
 	}
+	public interface Resolver<T> {
+		T resolve(ConstantPool pool, int index);
+	}
 	public static class StringConstant extends Item {
 		public static final int TYPE = 8;
 		public final short index;
@@ -213,9 +304,34 @@ public class ConstantPool {
 			return value;
 		}
 	}
+	// When parsed from a buffer only the offsets are recorded up front, and
+	// items are read the first time they are requested
+	private final ByteBuffer buffer;
 	private final Item[] items;
+	private final int[] offsets;
+	// Resolved forms of entries, filled in by the interpreter on first use
+	private final Object[] resolved;
+	// Reads from the buffer's position, leaving it after the last entry
+	public ConstantPool(final ByteBuffer buffer) {
+		this.buffer = buffer.duplicate();
+		items = new Item[buffer.getShort() & 0xffff];
+		offsets = new int[items.length];
+		resolved = new Object[items.length];
+		for (int i = 1; i < items.length; i++) {
+			final int offset = buffer.position();
+			offsets[i] = offset;
+			final byte type = buffer.get(offset);
+			buffer.position(offset + Item.size(buffer, offset));
+			if (type == LongConstant.TYPE || type == DoubleConstant.TYPE) {
+				i++;
+			}
+		}
+	}
 	public ConstantPool(final short size, final DataInput di) throws IOException {
+		buffer = null;
 		items = new Item[size & 0xffff];
+		offsets = null;
+		resolved = new Object[items.length];
 		for (int i = 1; i < items.length; i++) {
 			items[i] = Item.read(di);
 			if (items[i].isWide()) {
@@ -230,7 +346,23 @@ public class ConstantPool {
 		if (index == 0) {
 			throw new IllegalArgumentException("Constant Pool is 1-indexed");
 		}
-		return items[index & 0xfff];
+		final int i = index & 0xffff;
+		Item item = items[i];
+		// The second slot of a wide entry has no offset and stays empty
+		if (item == null && buffer != null && offsets[i] != 0) {
+			item = Item.read(buffer, offsets[i]);
+			items[i] = item;
+		}
+		return item;
+	}
+	@SuppressWarnings("unchecked")
+	public <T> T getResolved(final int index, final Resolver<T> resolver) {
+		Object value = resolved[index & 0xffff];
+		if (value == null) {
+			value = resolver.resolve(this, index);
+			resolved[index & 0xffff] = value;
+		}
+		return (T) value;
 	}
 	public String getString(final int index) {
 		return getItem(index).stringValue();
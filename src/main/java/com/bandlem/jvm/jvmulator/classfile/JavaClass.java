@@ -9,14 +9,41 @@
 package com.bandlem.jvm.jvmulator.classfile;
 import java.io.DataInput;
 import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.Map;
 import com.bandlem.jvm.jvmulator.classfile.Member.Field;
 import com.bandlem.jvm.jvmulator.classfile.Member.Method;
 public class JavaClass {
-	public final Attribute[] classAttributes;
+	// The first member wins where a name or key is repeated
+	private static <M extends Member> Map<MemberKey, M> byKey(final M[] members) {
+		final Map<MemberKey, M> map = new HashMap<>();
+		for (final M member : members) {
+			map.putIfAbsent(member.getKey(), member);
+		}
+		return Map.copyOf(map);
+	}
+	private static <M extends Member> Map<String, M> byName(final M[] members) {
+		final Map<String, M> map = new HashMap<>();
+		for (final M member : members) {
+			map.putIfAbsent(member.name, member);
+		}
+		return Map.copyOf(map);
+	}
+	// Either read up front, or parsed from the table on first use
+	private Attribute[] attributes;
+	private final ByteBuffer attributeTable;
+	// Lookup tables are built on first use; being immutable they can be
+	// published without locking, at worst being built twice
+	private Map<MemberKey, Field> fieldKeys;
+	private Map<String, Field> fieldNames;
 	public final Field[] fields;
 	public final short flags;
 	public final String[] interfaces;
 	public final short major;
+	private Map<MemberKey, Method> methodKeys;
+	private Map<String, Method> methodNames;
 	public final Method[] methods;
 	public final short minor;
 	public final ConstantPool pool;
@@ -51,34 +78,104 @@ public class JavaClass {
 				final String descriptor = pool.getString(di.readShort());
 				methods[i] = new Method(flags, name, descriptor, readAttributes(di, pool));
 			}
-			this.classAttributes = readAttributes(di, pool);
+			this.attributes = readAttributes(di, pool);
+			this.attributeTable = null;
 		} catch (final IOException e) {
 			throw new IllegalArgumentException("Unable to parse bytecode", e);
 		}
 	}
+	// Records where the constant pool entries and attributes are in the buffer
+	// and reads them when they are first used, so the content must not change.
+	// The buffer's own position is not moved.
+	public JavaClass(final ByteBuffer bytes) throws IllegalArgumentException {
+		final ByteBuffer buffer = bytes.duplicate();
+		try {
+			if (buffer.getInt() != 0xcafebabe) {
+				throw new IllegalArgumentException("Content is not a class file");
+			}
+			this.minor = buffer.getShort();
+			this.major = buffer.getShort();
+			this.pool = new ConstantPool(buffer);
+			this.flags = buffer.getShort();
+			this.this_class = pool.getClassName(buffer.getShort());
+			this.super_class = pool.getClassName(buffer.getShort());
+			this.interfaces = new String[buffer.getShort() & 0xffff];
+			for (int i = 0; i < interfaces.length; i++) {
+				interfaces[i] = pool.getClassName(buffer.getShort());
+			}
+			this.fields = new Field[buffer.getShort() & 0xffff];
+			for (int i = 0; i < fields.length; i++) {
+				final short flags = buffer.getShort();
+				final String name = pool.getString(buffer.getShort());
+				final String descriptor = pool.getString(buffer.getShort());
+				fields[i] = new Field(flags, name, descriptor, pool, Attribute.skip(buffer));
+			}
+			this.methods = new Method[buffer.getShort() & 0xffff];
+			for (int i = 0; i < methods.length; i++) {
+				final short flags = buffer.getShort();
+				final String name = pool.getString(buffer.getShort());
+				final String descriptor = pool.getString(buffer.getShort());
+				methods[i] = new Method(flags, name, descriptor, pool, Attribute.skip(buffer));
+			}
+			this.attributeTable = Attribute.skip(buffer);
+		} catch (final BufferUnderflowException | IndexOutOfBoundsException e) {
+			throw new IllegalArgumentException("Unable to parse bytecode", e);
+		}
+	}
 	public Attribute getAttribute(final String name) {
-		for (final var attribute : classAttributes) {
+		for (final var attribute : getAttributes()) {
 			if (name.equals(attribute.attributeName)) {
 				return attribute;
 			}
 		}
 		return null;
 	}
+	public Attribute[] getAttributes() {
+		if (attributes == null) {
+			attributes = Attribute.read(attributeTable, pool);
+		}
+		return attributes;
+	}
+	// The class attributes were a public field before they were parsed lazily
+	@Deprecated
+	public Attribute[] getClassAttributes() {
+		return getAttributes();
+	}
+	public Field getField(final MemberKey key) {
+		Map<MemberKey, Field> map = fieldKeys;
+		if (map == null) {
+			map = fieldKeys = byKey(fields);
+		}
+		return map.get(key);
+	}
+	// Returns the first field with the name, whatever its descriptor
 	public Field getField(final String name) {
-		for (final Field field : fields) {
-			if (name.equals(field.name)) {
-				return field;
-			}
+		Map<String, Field> map = fieldNames;
+		if (map == null) {
+			map = fieldNames = byName(fields);
 		}
-		return null;
+		return map.get(name);
+	}
+	public Field getField(final String name, final String descriptor) {
+		return getField(new MemberKey(name, descriptor));
+	}
+	public Method getMethod(final MemberKey key) {
+		Map<MemberKey, Method> map = methodKeys;
+		if (map == null) {
+			map = methodKeys = byKey(methods);
+		}
+		return map.get(key);
 	}
+	// Returns the first method with the name, so overloads need the descriptor
 	public Method getMethod(final String name) {
-		for (final Method method : methods) {
-			if (name.equals(method.name)) {
-				return method;
-			}
+		Map<String, Method> map = methodNames;
+		if (map == null) {
+			map = methodNames = byName(methods);
 		}
-		return null;
+		return map.get(name);
+	}
+	public Method getMethod(final String name, final String descriptor) {
+		return getMethod(new MemberKey(name, descriptor));
 	}
 	private Attribute[] readAttributes(final DataInput di, final ConstantPool pool) throws IOException {
 		final Attribute[] attributes = new Attribute[di.readShort()];
@@ -7,96 +7,84 @@
  * http://www.eclipse.org/legal/epl-v10.html
  */
 package com.bandlem.jvm.jvmulator.classfile;
-import java.util.ArrayList;
-import java.util.List;
+import java.nio.ByteBuffer;
 import com.bandlem.jvm.jvmulator.classfile.Attribute.Code;
 public abstract class Member {
 	public static class Field extends Member {
 		public Field(final short flags, final String name, final String descriptor, final Attribute[] attributes) {
 			super(flags, name, descriptor, attributes);
 		}
+		Field(final short flags, final String name, final String descriptor, final ConstantPool pool,
+				final ByteBuffer table) {
+			super(flags, name, descriptor, pool, table);
+		}
 	}
 	public static class Method extends Member {
-		public static Class<?>[] argumentTypes(final String descriptor, ClassLoader loader) {
-			if (loader == null) {
-				loader = Method.class.getClassLoader();
-			}
-			final byte[] bytes = descriptor.getBytes();
-			final List<Class<?>> types = new ArrayList<>();
-			for (int i = 0; i < bytes.length; i++) {
-				switch (bytes[i]) {
-				case '(':
-					continue;
-				case ')':
-					return types.toArray(new Class[0]);
-				case 'Z':
-					types.add(Boolean.TYPE);
-					break;
-				case 'S':
-					types.add(Short.TYPE);
-					break;
-				case 'C':
-					types.add(Character.TYPE);
-					break;
-				case 'I':
-					types.add(Integer.TYPE);
-					break;
-				case 'J':
-					types.add(Long.TYPE);
-					break;
-				case 'F':
-					types.add(Float.TYPE);
-					break;
-				case 'D':
-					types.add(Double.TYPE);
-					break;
-				case 'L':
-					final int start = i + 1;
-					// Converts java/lang/String to java.lang.String
-					while (bytes[i] != ';') {
-						if (bytes[i] == '/')
-							bytes[i] = '.';
-						i++;
-					}
-					final String clazz = new String(bytes, start, i - start);
-					try {
-						types.add(loader.loadClass(clazz));
-					} catch (final ClassNotFoundException e) {
-						throw new RuntimeException("Cannot load class " + clazz, e);
-					}
-					break;
-				default:
-					throw new IllegalArgumentException("Unknown type " + (char) bytes[i]);
-				}
-			}
-			throw new IllegalStateException("Read to end of " + descriptor + " without closing )");
+		public static int argumentSlots(final String descriptor) {
+			return MethodDescriptor.of(descriptor).slots;
+		}
+		public static Class<?>[] argumentTypes(final String descriptor, final ClassLoader loader) {
+			return MethodDescriptor.of(descriptor).getArgumentTypes(loader);
 		}
+		private MethodDescriptor methodDescriptor;
 		public Method(final short flags, final String name, final String descriptor, final Attribute[] attributes) {
 			super(flags, name, descriptor, attributes);
 		}
+		Method(final short flags, final String name, final String descriptor, final ConstantPool pool,
+				final ByteBuffer table) {
+			super(flags, name, descriptor, pool, table);
+		}
 		public Class<?>[] argumentTypes(final ClassLoader classLoader) {
-			return argumentTypes(descriptor, classLoader);
+			return getMethodDescriptor().getArgumentTypes(classLoader);
+		}
+		public MethodDescriptor getMethodDescriptor() {
+			if (methodDescriptor == null) {
+				methodDescriptor = MethodDescriptor.of(descriptor);
+			}
+			return methodDescriptor;
 		}
 	}
-	public final Attribute[] attributes;
+	// Either given up front, or parsed from the table on first use
+	private Attribute[] attributes;
 	public final String descriptor;
 	public final short flags;
+	private MemberKey key;
 	public final String name;
+	private final ConstantPool pool;
+	private final ByteBuffer table;
 	public Member(final short flags, final String name, final String descriptor, final Attribute[] attributes) {
+		this(flags, name, descriptor, null, null);
+		this.attributes = attributes;
+	}
+	Member(final short flags, final String name, final String descriptor, final ConstantPool pool,
+			final ByteBuffer table) {
 		this.flags = flags;
 		this.name = name;
 		this.descriptor = descriptor;
-		this.attributes = attributes;
+		this.pool = pool;
+		this.table = table;
 	}
 	public Attribute getAttribute(final String name) {
-		for (final Attribute attribute : attributes) {
+		for (final Attribute attribute : getAttributes()) {
 			if (name.equals(attribute.attributeName)) {
 				return attribute;
 			}
 		}
 		return null;
 	}
+	public Attribute[] getAttributes() {
+		if (attributes == null) {
+			attributes = Attribute.read(table, pool);
+		}
+		return attributes;
+	}
 	public Code getCodeAttribute() {
 		return (Code) getAttribute(Code.NAME);
 	}
+	public MemberKey getKey() {
+		if (key == null) {
+			key = MemberKey.of(name, descriptor);
+		}
+		return key;
+	}
 }
@@ -0,0 +1,62 @@
+/*
+ * Copyright (c) 2020, Alex Blewitt, Bandlem Ltd
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package com.bandlem.jvm.jvmulator.classfile;
+import java.lang.ref.WeakReference;
+import java.util.Map;
+import java.util.WeakHashMap;
+// The name and descriptor of a field or method. Keys from of() are interned,
+// so equal keys are usually the same instance and compare by identity first.
+public class MemberKey {
+	// Interned weakly, so that keys are dropped along with the classes that use
+	// them. The map may still hold a reference whose key has been collected
+	// but not yet expunged, in which case the new key replaces it.
+	static final Map<MemberKey, WeakReference<MemberKey>> KEYS = new WeakHashMap<>();
+	public static MemberKey of(final String name, final String descriptor) {
+		final MemberKey key = new MemberKey(name, descriptor);
+		synchronized (KEYS) {
+			final WeakReference<MemberKey> existing = KEYS.get(key);
+			final MemberKey interned = existing == null ? null : existing.get();
+			if (interned != null) {
+				return interned;
+			}
+			// Drop any stale entry, which would otherwise keep its own map key
+			KEYS.remove(key);
+			KEYS.put(key, new WeakReference<>(key));
+		}
+		return key;
+	}
+	public final String descriptor;
+	private final int hash;
+	public final String name;
+	// Used for one-off lookups that should not be interned
+	MemberKey(final String name, final String descriptor) {
+		this.name = name;
+		this.descriptor = descriptor;
+		this.hash = 31 * name.hashCode() + descriptor.hashCode();
+	}
+	@Override
+	public boolean equals(final Object object) {
+		if (this == object) {
+			return true;
+		}
+		if (!(object instanceof MemberKey)) {
+			return false;
+		}
+		final MemberKey other = (MemberKey) object;
+		return hash == other.hash && name.equals(other.name) && descriptor.equals(other.descriptor);
+	}
+	@Override
+	public int hashCode() {
+		return hash;
+	}
+	@Override
+	public String toString() {
+		return name + descriptor;
+	}
+}
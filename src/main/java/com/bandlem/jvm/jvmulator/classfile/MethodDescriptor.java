@@ -0,0 +1,184 @@
+/*
+ * Copyright (c) 2020, Alex Blewitt, Bandlem Ltd
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package com.bandlem.jvm.jvmulator.classfile;
+import java.lang.ref.SoftReference;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+// A parsed method descriptor such as (ILjava/lang/String;)V. Each argument has
+// a kind, which is the first character of its type ('[' for arrays and 'L' for
+// other references) and the local variable slot it is passed in.
+public class MethodDescriptor {
+	// Classes as resolved by a particular class loader
+	private static class Resolved {
+		private final Class<?>[] arguments;
+		private final Class<?> result;
+		Resolved(final Class<?>[] arguments, final Class<?> result) {
+			this.arguments = arguments;
+			this.result = result;
+		}
+	}
+	// The number of descriptors that are shared, the oldest being dropped first.
+	// Lookups do not lock, so that classes can be indexed in parallel.
+	static final int CAPACITY = 4096;
+	private static final Map<String, MethodDescriptor> DESCRIPTORS = new ConcurrentHashMap<>();
+	// The shared descriptors in the order that they were added
+	private static final Queue<String> ORDER = new ConcurrentLinkedQueue<>();
+	// Index just after the field type starting at the given index
+	private static int end(final String descriptor, final int start) {
+		int i = start;
+		while (descriptor.charAt(i) == '[') {
+			i++;
+		}
+		switch (descriptor.charAt(i)) {
+		case 'Z':
+		case 'B':
+		case 'S':
+		case 'C':
+		case 'I':
+		case 'J':
+		case 'F':
+		case 'D':
+			return i + 1;
+		case 'L':
+			final int end = descriptor.indexOf(';', i);
+			if (end < 0) {
+				throw new IllegalArgumentException("Unterminated class name in " + descriptor);
+			}
+			return end + 1;
+		default:
+			throw new IllegalArgumentException("Unknown type " + descriptor.charAt(i));
+		}
+	}
+	public static MethodDescriptor of(final String descriptor) {
+		final MethodDescriptor result = DESCRIPTORS.computeIfAbsent(descriptor, key -> {
+			final MethodDescriptor parsed = new MethodDescriptor(key);
+			ORDER.add(key);
+			return parsed;
+		});
+		// Every shared descriptor was queued before it was added, so the queue is
+		// not empty while there are too many
+		while (DESCRIPTORS.size() > CAPACITY) {
+			DESCRIPTORS.remove(ORDER.poll());
+		}
+		return result;
+	}
+	private static Class<?> type(final String type, final ClassLoader loader) {
+		switch (type.charAt(0)) {
+		case 'Z':
+			return Boolean.TYPE;
+		case 'B':
+			return Byte.TYPE;
+		case 'S':
+			return Short.TYPE;
+		case 'C':
+			return Character.TYPE;
+		case 'I':
+			return Integer.TYPE;
+		case 'J':
+			return Long.TYPE;
+		case 'F':
+			return Float.TYPE;
+		case 'D':
+			return Double.TYPE;
+		case 'V':
+			return Void.TYPE;
+		default:
+			// Converts java/lang/String to java.lang.String, and leaves arrays in their descriptor form
+			final String name = type.charAt(0) == 'L' ? type.substring(1, type.length() - 1) : type;
+			try {
+				return Class.forName(name.replace('/', '.'), false, loader);
+			} catch (final ClassNotFoundException e) {
+				throw new RuntimeException("Cannot load class " + name, e);
+			}
+		}
+	}
+	private final String[] arguments;
+	public final String descriptor;
+	private final char[] kinds;
+	// Classes by the loader that resolved them, held softly so that the classes
+	// do not keep a loader that is otherwise unused alive when memory runs short
+	private final Map<ClassLoader, SoftReference<Resolved>> resolved = new WeakHashMap<>();
+	public final char returnKind;
+	private final String returnType;
+	// Number of local variable slots taken by the arguments, excluding this
+	public final int slots;
+	private final int[] starts;
+	private MethodDescriptor(final String descriptor) {
+		if (descriptor.isEmpty() || descriptor.charAt(0) != '(') {
+			throw new IllegalArgumentException("Not a method descriptor: " + descriptor);
+		}
+		final List<String> types = new ArrayList<>();
+		int i = 1;
+		while (i < descriptor.length() && descriptor.charAt(i) != ')') {
+			final int end = end(descriptor, i);
+			types.add(descriptor.substring(i, end));
+			i = end;
+		}
+		if (i == descriptor.length()) {
+			throw new IllegalArgumentException("Read to end of " + descriptor + " without closing )");
+		}
+		this.descriptor = descriptor;
+		this.arguments = types.toArray(new String[0]);
+		this.kinds = new char[arguments.length];
+		this.starts = new int[arguments.length];
+		int slot = 0;
+		for (int a = 0; a < arguments.length; a++) {
+			kinds[a] = arguments[a].charAt(0);
+			starts[a] = slot;
+			slot += kinds[a] == 'J' || kinds[a] == 'D' ? 2 : 1;
+		}
+		this.slots = slot;
+		this.returnType = descriptor.substring(i + 1);
+		if (returnType.isEmpty() || !returnType.equals("V") && end(descriptor, i + 1) != descriptor.length()) {
+			throw new IllegalArgumentException("Invalid return type in " + descriptor);
+		}
+		this.returnKind = returnType.charAt(0);
+	}
+	public int getArgumentCount() {
+		return arguments.length;
+	}
+	public char getArgumentKind(final int index) {
+		return kinds[index];
+	}
+	// The local variable slot that the argument is passed in, excluding this
+	public int getArgumentSlot(final int index) {
+		return starts[index];
+	}
+	public Class<?>[] getArgumentTypes(final ClassLoader loader) {
+		return resolve(loader).arguments.clone();
+	}
+	public Class<?> getReturnType(final ClassLoader loader) {
+		return resolve(loader).result;
+	}
+	private Resolved resolve(final ClassLoader classLoader) {
+		final ClassLoader loader = classLoader == null ? MethodDescriptor.class.getClassLoader() : classLoader;
+		synchronized (resolved) {
+			final SoftReference<Resolved> reference = resolved.get(loader);
+			Resolved classes = reference == null ? null : reference.get();
+			if (classes == null) {
+				final Class<?>[] types = new Class<?>[arguments.length];
+				for (int i = 0; i < types.length; i++) {
+					types[i] = type(arguments[i], loader);
+				}
+				classes = new Resolved(types, type(returnType, loader));
+				resolved.put(loader, new SoftReference<>(classes));
+			}
+			return classes;
+		}
+	}
+	@Override
+	public String toString() {
+		return descriptor;
+	}
+}
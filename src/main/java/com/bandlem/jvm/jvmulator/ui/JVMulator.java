@@ -7,7 +7,9 @@ import javax.swing.JButton;
 import javax.swing.JOptionPane;
 import javax.swing.JPanel;
 import javax.swing.JTextArea;
+import com.bandlem.jvm.jvmulator.Instructions;
 import com.bandlem.jvm.jvmulator.JVMFrame;
+import com.bandlem.jvm.jvmulator.Locals;
 import com.bandlem.jvm.jvmulator.Opcodes;
 import com.bandlem.jvm.jvmulator.Slot;
 import com.bandlem.jvm.jvmulator.Stack;
@@ -49,25 +51,22 @@ public class JVMulator extends JPanel {
 	}
 	private void displayCode() {
 		final StringBuilder builder = new StringBuilder(code.length * 10);
-		int i = 0;
-		while (i < code.length) {
-			final byte opcode = code[i];
-			builder.append(String.format("%3s%3d: %2x %s\n", pc == i ? "=>" : "", i, opcode, Opcodes.name(opcode)));
-			i++;
-			final int operands = Opcodes.operands(opcode);
-			if (operands < 0) {
-				throw new UnsupportedOperationException("Unknown opcode " + opcode);
-			} else {
-				i += operands;
-			}
+		// Decoded to find where each instruction starts, as switches and wide
+		// instructions vary in length
+		final Instructions instructions = new Instructions(code);
+		for (int i = 0; i < instructions.size(); i++) {
+			final int offset = instructions.offset(i);
+			final byte opcode = code[offset];
+			builder.append(
+					String.format("%3s%3d: %2x %s\n", pc == offset ? "=>" : "", offset, opcode, Opcodes.name(opcode)));
 		}
 		bytecode.setText(builder.toString());
 	}
 	private void displayLocals() {
-		final Slot[] l = frame.getLocals();
-		final StringBuilder builder = new StringBuilder(l.length * 10);
-		for (int s = 0; s < l.length; s++) {
-			builder.append(String.format("[%02d] %s\n", s, l[s].toString()));
+		final Locals l = frame.getLocals();
+		final StringBuilder builder = new StringBuilder(l.size() * 10);
+		for (int s = 0; s < l.size(); s++) {
+			builder.append(String.format("[%02d] %s\n", s, l.at(s).toString()));
 		}
 		locals.setText(builder.toString());
 	}
@@ -96,7 +95,7 @@ public class JVMulator extends JPanel {
 		} else {
 			final Code codeAttribute = method.getCodeAttribute();
 			code = codeAttribute.getBytecode();
-			frame = new JVMFrame(javaClass, codeAttribute.getMaxLocals(), code);
+			frame = new JVMFrame(javaClass, codeAttribute);
 			getArguments(name, method);
 			displayCode();
 			displayLocals();
@@ -106,9 +105,12 @@ public class JVMulator extends JPanel {
 	private void getArguments(final String name, final Method method) {
 		final Class<?>[] types = Method.argumentTypes(method.descriptor, frame.getClass().getClassLoader());
 		final String[] values = getValues(name, types);
-		final Slot[] l = frame.getLocals();
-		for (int i = 0; i < l.length; i++) {
-			l[l.length - i - 1] = toSlot(types[i], values[i]);
+		final Locals l = frame.getLocals();
+		int local = 0;
+		for (int i = 0; i < types.length; i++) {
+			final Slot slot = toSlot(types[i], values[i]);
+			l.set(local, slot);
+			local += slot.isWide() ? 2 : 1;
 		}
 	}
 	public void step() {
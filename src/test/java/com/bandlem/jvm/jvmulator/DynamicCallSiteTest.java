@@ -0,0 +1,81 @@
+/*
+ * Copyright (c) 2020, Alex Blewitt, Bandlem Ltd
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package com.bandlem.jvm.jvmulator;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import java.lang.invoke.MethodHandles;
+import java.nio.ByteBuffer;
+import org.junit.jupiter.api.Test;
+import com.bandlem.jvm.jvmulator.classfile.ConstantPool;
+import com.bandlem.jvm.jvmulator.classfile.JavaClass;
+import com.bandlem.jvm.jvmulator.compiler.JavaC;
+import com.bandlem.jvm.jvmulator.compiler.SourceFile;
+class DynamicCallSiteTest {
+	@Test
+	void testConstants() throws Exception {
+		final ConstantPool pool = new ConstantPool(ByteBuffer.wrap(new byte[] {
+				0x00, 0x0a, // Count
+				0x05, 0x00, 0x00, 0x00, 0x00, 0x00, 0x00, 0x00, 0x03, // Long item
+				0x04, 0x3f, (byte) 0xc0, 0x00, 0x00, // Float item
+				0x06, 0x40, 0x04, 0x00, 0x00, 0x00, 0x00, 0x00, 0x00, // Double item
+				0x0c, 0x00, 0x01, 0x00, 0x01, // Name and type item
+				0x0f, 0x01, 0x00, 0x06, // Method handle item for a getfield
+				0x01, 0x00, 0x10, 'j', 'a', 'v', 'a', '/', 'l', 'a', 'n', 'g', // UTF-8 item
+				'/', 'S', 't', 'r', 'i', 'n', 'g',
+				0x07, 0x00, 0x08 // Class item
+		}));
+		final MethodHandles.Lookup lookup = MethodHandles.lookup();
+		assertEquals(3L, DynamicCallSite.constant(pool, 1, lookup));
+		assertEquals(1.5F, DynamicCallSite.constant(pool, 3, lookup));
+		assertEquals(2.5D, DynamicCallSite.constant(pool, 4, lookup));
+		assertEquals(String.class, DynamicCallSite.constant(pool, 9, lookup));
+		assertThrows(IllegalArgumentException.class, () -> DynamicCallSite.constant(pool, 6, lookup));
+		assertThrows(IllegalArgumentException.class, () -> DynamicCallSite.constant(pool, 7, lookup));
+	}
+	@Test
+	void testInvoke() {
+		// Exceptions from the target are thrown as they are
+		final IllegalStateException exception = new IllegalStateException();
+		final DynamicCallSite site = new DynamicCallSite(MethodHandles.dropArguments(
+				MethodHandles.throwException(void.class, IllegalStateException.class).bindTo(exception), 0,
+				Stack.class));
+		assertSame(exception, assertThrows(IllegalStateException.class, () -> site.invoke(new Stack())));
+	}
+	@Test
+	void testUnloadedClass() {
+		final JavaC javac = new JavaC();
+		assertTrue(javac.compile(new SourceFile("Example", //
+				"public class Example {" //
+						+ " public static String concat(String value) {" //
+						+ "   return value + \"!\";" //
+						+ " }" //
+						+ " public static Runnable lambda() {" //
+						+ "   return () -> {};" //
+						+ " }" //
+						+ " public static int supply(int n) {" //
+						+ "   try {" //
+						+ "     java.util.function.IntSupplier supplier = () -> n * 2;" //
+						+ "     return supplier.getAsInt();" //
+						+ "   } catch (RuntimeException e) {" //
+						+ "     return -1;" //
+						+ "   }" //
+						+ " }" //
+						+ "}")));
+		final JavaClass javaClass = new JavaClass(ByteBuffer.wrap(javac.getBytes("Example")));
+		final JVMThread thread = new JVMThread();
+		// Concatenation only needs a lookup, but lambdas need the calling class
+		assertEquals("value!", thread.run(javaClass, javaClass.getMethod("concat"), Slot.of("value")).reference());
+		assertThrows(UnsupportedOperationException.class, () -> thread.run(javaClass, javaClass.getMethod("lambda")));
+		// Failing to link is not an exception that the emulated code can catch
+		assertThrows(UnsupportedOperationException.class,
+				() -> thread.run(javaClass, javaClass.getMethod("supply"), Slot.of(3)));
+	}
+}
@@ -0,0 +1,149 @@
+/*
+ * Copyright (c) 2020, Alex Blewitt, Bandlem Ltd
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package com.bandlem.jvm.jvmulator;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import java.io.DataInputStream;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import org.junit.jupiter.api.Test;
+import com.bandlem.jvm.jvmulator.classfile.JavaClass;
+import com.bandlem.jvm.jvmulator.classfile.MemberKey;
+import com.bandlem.jvm.jvmulator.compiler.JavaC;
+import com.bandlem.jvm.jvmulator.compiler.SourceFile;
+class EmulatedClassTest {
+	public static class Point implements Shape {
+		static int count;
+		static Point origin() {
+			return new Point();
+		}
+		Object label;
+		int x;
+		public int getX() {
+			return x;
+		}
+		private int getY() {
+			return 0;
+		}
+	}
+	public static class Point3 extends Point implements Cloneable, Runnable, Sized {
+		Object owner;
+		long z;
+		@Override
+		public int getX() {
+			return -x;
+		}
+		@Override
+		public void run() {
+			z++;
+		}
+	}
+	public interface Shape {
+	}
+	public interface Sized extends Shape {
+	}
+	static JavaClass load(final Class<?> type) {
+		final InputStream in = type.getResourceAsStream("/" + type.getName().replace('.', '/') + ".class");
+		return new JavaClass(new DataInputStream(in));
+	}
+	private final EmulatedClass point = new EmulatedClass(load(Point.class), null, name -> null);
+	private final EmulatedClass point3 = new EmulatedClass(load(Point3.class), point, name -> null);
+	@Test
+	void testFields() {
+		// Static fields are not laid out, and inherited fields keep their index
+		assertEquals(1, point.primitives);
+		assertEquals(1, point.references);
+		assertEquals(2, point3.primitives);
+		assertEquals(2, point3.references);
+		assertEquals(0, point3.getField(MemberKey.of("x", "I")));
+		assertEquals(~0, point3.getField(MemberKey.of("label", "Ljava/lang/Object;")));
+		assertEquals(1, point3.getField(MemberKey.of("z", "J")));
+		assertEquals(~1, point3.getField(MemberKey.of("owner", "Ljava/lang/Object;")));
+		assertThrows(NoSuchFieldError.class, () -> point.getField(MemberKey.of("z", "J")));
+		assertThrows(NoSuchFieldError.class, () -> point.getField(MemberKey.of("count", "I")));
+	}
+	@Test
+	void testHierarchy() {
+		assertSame(point, point3.getSuperclass(point.name));
+		assertSame(point3, point3.getSuperclass(point3.name));
+		assertThrows(IncompatibleClassChangeError.class, () -> point.getSuperclass(point3.name));
+		assertTrue(point3.isSubclassOf(point));
+		assertTrue(point3.isSubclassOf(point3));
+		assertFalse(point.isSubclassOf(point3));
+		assertFalse(point.isSubclassOf(null));
+		assertFalse(point3.isSubclassOf(new EmulatedClass(load(Point.class), null, name -> null)));
+	}
+	@Test
+	void testInstance() {
+		assertTrue(point3.isInstance(EmulatedClass.OBJECT));
+		assertTrue(point3.isInstance(point.name));
+		assertTrue(point3.isInstance("java/lang/Runnable"));
+		assertTrue(point3.isInstance("java/lang/Cloneable"));
+		assertFalse(point3.isInstance("java/lang/Comparable"));
+		assertFalse(point.isInstance(point3.name));
+		// Interfaces that interfaces extend are found through the host's classes
+		assertTrue(point3.isInstance(Shape.class.getName().replace('.', '/')));
+		assertTrue(point3.isInstance(Sized.class.getName().replace('.', '/')));
+		assertFalse(point.isInstance(Sized.class.getName().replace('.', '/')));
+	}
+	@Test
+	void testInstanceEmulated() {
+		// Interfaces that the host cannot load are found through their class files
+		final JavaC javac = new JavaC();
+		assertTrue(javac.compile(new SourceFile("Missing", "interface Missing {}"),
+				new SourceFile("Named", "interface Named extends Missing {}"),
+				new SourceFile("Square", "class Square implements Named {}")));
+		final JavaClass named = new JavaClass(ByteBuffer.wrap(javac.getBytes("Named")));
+		final EmulatedClass square = new EmulatedClass(new JavaClass(ByteBuffer.wrap(javac.getBytes("Square"))), null,
+				name -> name.equals("Named") ? named : null);
+		assertTrue(square.isInstance("Named"));
+		assertTrue(square.isInstance("Missing"));
+		assertFalse(square.isInstance("Circle"));
+	}
+	@Test
+	void testMethods() {
+		// Overrides are found first, and methods of java.lang.Object are left to the host
+		final MemberKey getX = MemberKey.of("getX", "()I");
+		assertEquals(point3.name, ((EmulatedMethod) point3.getMethod(getX)).toString().split(":")[0]);
+		assertEquals(point.name, ((EmulatedMethod) point.getMethod(getX)).toString().split(":")[0]);
+		assertSame(point3.getMethod(getX), point3.getMethod(getX));
+		assertTrue(point3.getMethod(MemberKey.of("hashCode", "()I")) instanceof ResolvedMethod);
+	}
+	@Test
+	void testShared() {
+		// Classes are shared unless their superclass came from another class file
+		final JavaClass javaClass = load(Point3.class);
+		final EmulatedClass shared = EmulatedClass.of(javaClass, point, name -> null);
+		assertSame(shared, EmulatedClass.of(javaClass, point, name -> null));
+		final EmulatedClass superclass = new EmulatedClass(load(Point.class), null, name -> null);
+		final EmulatedClass other = EmulatedClass.of(javaClass, superclass, name -> null);
+		assertNotSame(shared, other);
+		assertSame(other, EmulatedClass.of(javaClass, superclass, name -> null));
+	}
+	@Test
+	void testVtable() {
+		// Overrides take the index of the method they override, and only
+		// overridable methods are in the vtable
+		final MemberKey getX = MemberKey.of("getX", "()I");
+		final int index = point.getVirtual(getX);
+		assertEquals(index, point3.getVirtual(getX));
+		assertEquals(point.vtable.length + 1, point3.vtable.length);
+		assertEquals(point3.name + ":getX", point3.vtable[index].toString());
+		assertEquals(point.name + ":getX", point.vtable[index].toString());
+		assertEquals(point3.name + ":run", point3.vtable[point3.getVirtual(MemberKey.of("run", "()V"))].toString());
+		assertEquals(-1, point.getVirtual(MemberKey.of("run", "()V")));
+		assertEquals(-1, point.getVirtual(MemberKey.of("getY", "()I")));
+		assertEquals(-1, point.getVirtual(MemberKey.of("origin", "()L" + point.name + ";")));
+		assertEquals(-1, point.getVirtual(MemberKey.of("<init>", "()V")));
+	}
+}
@@ -0,0 +1,68 @@
+/*
+ * Copyright (c) 2020, Alex Blewitt, Bandlem Ltd
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package com.bandlem.jvm.jvmulator;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.Test;
+import com.bandlem.jvm.jvmulator.EmulatedClassTest.Point;
+import com.bandlem.jvm.jvmulator.EmulatedClassTest.Point3;
+import com.bandlem.jvm.jvmulator.classfile.MemberKey;
+class EmulatedObjectTest {
+	private static final String POINT = Point.class.getName().replace('.', '/');
+	private final EmulatedClass point = new EmulatedClass(EmulatedClassTest.load(Point.class), null, name -> null);
+	private final EmulatedObject object = new EmulatedObject(point);
+	private final Stack stack = new Stack();
+	@Test
+	void testFields() {
+		final FieldReference x = new FieldReference(POINT, MemberKey.of("x", "I"));
+		final FieldReference label = new FieldReference(POINT, MemberKey.of("label", "Ljava/lang/Object;"));
+		stack.push(42);
+		object.put(x, stack);
+		stack.push("label");
+		object.put(label, stack);
+		object.get(x, stack);
+		object.get(label, stack);
+		assertEquals("label", stack.popReference());
+		assertEquals(42, stack.popInt());
+		// Values must have the type of the field
+		stack.push(1L);
+		assertThrows(ClassCastException.class, () -> object.put(x, stack));
+		stack.push(1);
+		assertThrows(ClassCastException.class, () -> object.put(label, stack));
+		assertEquals(0, stack.size());
+		assertTrue(object.toString().startsWith(Point.class.getName() + "@"));
+	}
+	@Test
+	void testLayout() {
+		// The index resolved from the named class holds for its subclasses
+		final FieldReference x = new FieldReference(POINT, MemberKey.of("x", "I"));
+		final EmulatedClass point3 = new EmulatedClass(EmulatedClassTest.load(Point3.class), point, name -> null);
+		final EmulatedObject other = new EmulatedObject(point3);
+		assertEquals(0, x.index(point));
+		assertEquals(0, x.index(point3));
+		stack.push(3);
+		other.put(x, stack);
+		other.get(x, stack);
+		assertEquals(3, stack.popInt());
+		// Classes loaded again have layouts of their own
+		assertEquals(0, x.index(new EmulatedClass(EmulatedClassTest.load(Point.class), null, name -> null)));
+		assertEquals(2, new FieldReference(POINT, MemberKey.of("z", "J")).slots);
+		assertThrows(IncompatibleClassChangeError.class,
+				() -> new FieldReference(point3.name, MemberKey.of("x", "I")).index(point));
+	}
+	@Test
+	void testNarrow() {
+		assertEquals(1, new FieldReference(POINT, MemberKey.of("z", "Z")).narrow(3));
+		assertEquals(-1, new FieldReference(POINT, MemberKey.of("b", "B")).narrow(255));
+		assertEquals(0xffff, new FieldReference(POINT, MemberKey.of("c", "C")).narrow(-1));
+		assertEquals(-1, new FieldReference(POINT, MemberKey.of("s", "S")).narrow(0xffff));
+		assertEquals(-1, new FieldReference(POINT, MemberKey.of("i", "I")).narrow(-1));
+	}
+}
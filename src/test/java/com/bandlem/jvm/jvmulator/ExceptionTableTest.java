@@ -0,0 +1,66 @@
+/*
+ * Copyright (c) 2020, Alex Blewitt, Bandlem Ltd
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package com.bandlem.jvm.jvmulator;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.Test;
+class ExceptionTableTest {
+	private static final Throwable THROWN = new IllegalStateException();
+	// An inner range of 2 to 4 handled at 10, and an outer range of 1 to 6
+	// handled at 20, both catching everything
+	private final ExceptionTable nested = new ExceptionTable(new int[] {
+			2, 1
+	}, new int[] {
+			4, 6
+	}, new int[] {
+			10, 20
+	}, new int[2]);
+	@Test
+	void testBoundaries() {
+		assertFalse(nested.isBoundary(0));
+		assertTrue(nested.isBoundary(1));
+		assertTrue(nested.isBoundary(2));
+		assertFalse(nested.isBoundary(3));
+		assertTrue(nested.isBoundary(4));
+		assertTrue(nested.isBoundary(6));
+		assertFalse(nested.isBoundary(10));
+	}
+	@Test
+	void testFind() {
+		assertEquals(-1, nested.find(0, THROWN, null));
+		assertEquals(20, nested.find(1, THROWN, null));
+		assertEquals(10, nested.find(2, THROWN, null));
+		assertEquals(10, nested.find(3, THROWN, null));
+		assertEquals(20, nested.find(4, THROWN, null));
+		assertEquals(20, nested.find(5, THROWN, null));
+		assertEquals(-1, nested.find(6, THROWN, null));
+		assertEquals(-1, nested.find(7, THROWN, null));
+		// The first handler in the table is taken where ranges are the same
+		final ExceptionTable shared = new ExceptionTable(new int[] {
+				0, 0, 0
+		}, new int[] {
+				2, 2, 2
+		}, new int[] {
+				5, 6, 7
+		}, new int[3]);
+		assertEquals(5, shared.find(1, THROWN, null));
+		// Nothing covers the gap between ranges
+		final ExceptionTable apart = new ExceptionTable(new int[] {
+				0, 4
+		}, new int[] {
+				2, 6
+		}, new int[] {
+				8, 9
+		}, new int[2]);
+		assertEquals(8, apart.find(1, THROWN, null));
+		assertEquals(-1, apart.find(3, THROWN, null));
+		assertEquals(9, apart.find(4, THROWN, null));
+	}
+}
@@ -0,0 +1,64 @@
+/*
+ * Copyright (c) 2020, Alex Blewitt, Bandlem Ltd
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package com.bandlem.jvm.jvmulator;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.Test;
+import com.bandlem.jvm.jvmulator.EmulatedClassTest.Point;
+import com.bandlem.jvm.jvmulator.EmulatedClassTest.Point3;
+import com.bandlem.jvm.jvmulator.classfile.MemberKey;
+class InlineCacheTest {
+	private static final MemberKey GET_X = MemberKey.of("getX", "()I");
+	private static final String POINT = Point.class.getName().replace('.', '/');
+	private static EmulatedClass point() {
+		return new EmulatedClass(EmulatedClassTest.load(Point.class), null, name -> null);
+	}
+	private final InlineCache cache = new InlineCache();
+	private final EmulatedClass point = point();
+	private final EmulatedClass point3 = new EmulatedClass(EmulatedClassTest.load(Point3.class), point, name -> null);
+	@Test
+	void testDispatch() {
+		// Interface methods and those of java.lang.Object are found by key
+		final MethodReference run = new MethodReference("java/lang/Runnable", MemberKey.of("run", "()V"), true);
+		assertEquals(point3.name + ":run", run.dispatch(point3).toString());
+		final MemberKey hashCode = MemberKey.of("hashCode", "()I");
+		assertTrue(
+				new MethodReference(EmulatedClass.OBJECT, hashCode, false).dispatch(point3) instanceof ResolvedMethod);
+		assertTrue(new MethodReference(POINT, hashCode, false).dispatch(point3) instanceof ResolvedMethod);
+		// Other methods are found through the vtable of the named class
+		final MethodReference getX = new MethodReference(POINT, GET_X, false);
+		assertEquals(point.name + ":getX", getX.dispatch(point).toString());
+		assertEquals(point3.name + ":getX", getX.dispatch(point3).toString());
+		assertEquals(point.name + ":getX", getX.dispatch(point()).toString());
+		assertThrows(IncompatibleClassChangeError.class,
+				() -> new MethodReference(point3.name, GET_X, false).dispatch(point));
+	}
+	@Test
+	void testMonomorphic() {
+		final MethodReference getX = new MethodReference(POINT, GET_X, false);
+		final Object method = cache.find(point3, getX);
+		assertSame(method, cache.find(point3, getX));
+		assertEquals(1, cache.size());
+		assertEquals(point3.name + ":getX", method.toString());
+	}
+	@Test
+	void testPolymorphic() {
+		// Classes beyond the limit are still dispatched, but no longer cached
+		final MethodReference getX = new MethodReference(POINT, GET_X, false);
+		assertEquals(point3.name + ":getX", cache.find(point3, getX).toString());
+		for (int i = 1; i <= InlineCache.LIMIT; i++) {
+			assertEquals(point.name + ":getX", cache.find(point(), getX).toString());
+			assertEquals(Math.min(i + 1, InlineCache.LIMIT), cache.size());
+		}
+		assertEquals(point3.name + ":getX", cache.find(point3, getX).toString());
+		assertEquals(InlineCache.LIMIT, cache.size());
+	}
+}
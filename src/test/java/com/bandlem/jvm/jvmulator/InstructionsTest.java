@@ -0,0 +1,166 @@
+/*
+ * Copyright (c) 2020, Alex Blewitt, Bandlem Ltd
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package com.bandlem.jvm.jvmulator;
+import static com.bandlem.jvm.jvmulator.Opcodes.*;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import org.junit.jupiter.api.Test;
+import com.bandlem.jvm.jvmulator.classfile.Attribute;
+import com.bandlem.jvm.jvmulator.classfile.Attribute.Code;
+public class InstructionsTest {
+	@Test
+	void testBranches() {
+		final Instructions instructions = new Instructions(new byte[] {
+				NOP, GOTO, 0x00, 0x0b, IFNULL, (byte) 0xff, (byte) 0xfd, JSR_W, (byte) 0xff, (byte) 0xff, (byte) 0xff,
+				(byte) 0xf9, RETURN
+		});
+		assertEquals(5, instructions.size());
+		assertEquals(4, instructions.operands[1]);
+		assertEquals(1, instructions.operands[2]);
+		assertEquals(0, instructions.operands[3]);
+		assertEquals(12, instructions.offset(4));
+		assertEquals(13, instructions.offset(5));
+		assertThrows(IllegalArgumentException.class, () -> new Instructions(new byte[] {
+				GOTO, 0x00, 0x02, RETURN
+		}));
+		assertThrows(IllegalArgumentException.class, () -> new Instructions(new byte[] {
+				GOTO, (byte) 0xff, (byte) 0xff, RETURN
+		}));
+		assertThrows(IllegalArgumentException.class, () -> new Instructions(new byte[] {
+				GOTO, 0x00, 0x04, RETURN
+		}));
+	}
+	@Test
+	void testCached() {
+		final Code code = (Code) Attribute.of(Code.NAME, null, new byte[] {
+				0x00, 0x01, 0x00, 0x00, 0x00, 0x00, 0x00, 0x01, RETURN
+		});
+		final Instructions instructions = Instructions.of(code);
+		assertSame(instructions, Instructions.of(code));
+		assertEquals(RETURN, instructions.opcode(0));
+	}
+	@Test
+	void testExceptions() {
+		final byte[] code = {
+				ICONST_0, ICONST_0, IDIV, IRETURN, POP, BIPUSH, -1, IRETURN
+		};
+		// A range can end at the end of the code, but a handler cannot start there
+		final Instructions instructions = new Instructions(code, new int[] {
+				0, 3, 4, 0, 0, 8, 4, 0
+		});
+		assertEquals(4, instructions.exceptions.find(2, new ArithmeticException(), null));
+		assertNull(new Instructions(code).exceptions);
+		for (final int[] table : new int[][] {
+				{
+						0, 6, 4, 0
+				}, {
+						0, 9, 4, 0
+				}, {
+						8, 8, 4, 0
+				}, {
+						0, 3, 8, 0
+				}
+		}) {
+			assertThrows(IllegalArgumentException.class, () -> new Instructions(code, table));
+		}
+	}
+	@Test
+	void testOperands() {
+		final Instructions instructions = new Instructions(new byte[] {
+				BIPUSH, (byte) 0xff, SIPUSH, (byte) 0xff, 0x00, LDC, (byte) 0xff, IINC, 0x02, (byte) 0xfe,
+				INVOKEINTERFACE, 0x01, 0x02, 0x03, 0x00, MULTIANEWARRAY, 0x00, 0x04, 0x02, INVOKESTATIC, (byte) 0x80,
+				0x00, ATHROW
+		});
+		assertEquals(8, instructions.size());
+		assertEquals(-1, instructions.operands[0]);
+		assertEquals(-256, instructions.operands[1]);
+		assertEquals(255, instructions.operands[2]);
+		assertEquals(2, instructions.operands[3]);
+		assertEquals(-2, instructions.extras[3]);
+		assertEquals(0x102, instructions.operands[4]);
+		assertEquals(3, instructions.extras[4]);
+		assertEquals(4, instructions.operands[5]);
+		assertEquals(2, instructions.extras[5]);
+		assertEquals(0x8000, instructions.operands[6]);
+		assertEquals(ATHROW, instructions.opcode(7));
+		assertEquals(22, instructions.offset(7));
+	}
+	@Test
+	void testSwitches() {
+		final Instructions instructions = new Instructions(new byte[] {
+				TABLESWITCH, 0, 0, 0, //
+				0, 0, 0, 0, // default
+				0, 0, 0, 0, // low
+				0, 0, 0, 1, // high
+				0, 0, 0, 0, //
+				0, 0, 0, 0, //
+				NOP, LOOKUPSWITCH, 0, 0, //
+				0, 0, 0, 0, // default
+				0, 0, 0, 1, // pairs
+				0, 0, 0, 0, //
+				0, 0, 0, 0, //
+				RETURN
+		});
+		assertEquals(4, instructions.size());
+		assertEquals(24, instructions.offset(1));
+		assertEquals(25, instructions.offset(2));
+		assertEquals(44, instructions.offset(3));
+		assertEquals(LOOKUPSWITCH, instructions.opcode(2));
+		// Targets are decoded once into instruction indexes
+		assertEquals(0, instructions.switches[0].target(1));
+		assertEquals(2, instructions.switches[2].target(0));
+		assertNull(instructions.switches[1]);
+		assertNull(new Instructions(new byte[] {
+				RETURN
+		}).switches);
+		for (final byte[] code : new byte[][] {
+				{
+						// High below low
+						TABLESWITCH, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 1, 0, 0, 0, 0, RETURN
+				}, {
+						// Targets beyond the end of the code
+						TABLESWITCH, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 9, RETURN
+				}, {
+						LOOKUPSWITCH, 0, 0, 0, 0, 0, 0, 0, (byte) 0xff, (byte) 0xff, (byte) 0xff, (byte) 0xff, RETURN
+				}, {
+						LOOKUPSWITCH, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 1, RETURN
+				}, {
+						// Keys out of order
+						LOOKUPSWITCH, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 2, 0, 0, 0, 1, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0,
+						RETURN
+				}
+		}) {
+			assertThrows(IllegalArgumentException.class, () -> new Instructions(code));
+		}
+	}
+	@Test
+	void testTruncated() {
+		assertThrows(IllegalArgumentException.class, () -> new Instructions(new byte[] {
+				BIPUSH
+		}));
+		assertThrows(IllegalArgumentException.class, () -> new Instructions(new byte[] {
+				WIDE, IINC, 0x00, 0x01
+		}));
+	}
+	@Test
+	void testWide() {
+		final Instructions instructions = new Instructions(new byte[] {
+				WIDE, ILOAD, 0x01, 0x00, WIDE, IINC, 0x01, 0x01, (byte) 0xff, (byte) 0xfe, RETURN
+		});
+		assertEquals(3, instructions.size());
+		assertEquals(ILOAD, instructions.opcode(0));
+		assertEquals(256, instructions.operands[0]);
+		assertEquals(IINC, instructions.opcode(1));
+		assertEquals(257, instructions.operands[1]);
+		assertEquals(-2, instructions.extras[1]);
+		assertEquals(10, instructions.offset(2));
+	}
+}
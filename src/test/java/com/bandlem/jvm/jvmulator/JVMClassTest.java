@@ -9,6 +9,7 @@
 package com.bandlem.jvm.jvmulator;
 import static com.bandlem.jvm.jvmulator.Opcodes.ACONST_NULL;
 import static com.bandlem.jvm.jvmulator.Opcodes.ARETURN;
+import static com.bandlem.jvm.jvmulator.Opcodes.CHECKCAST;
 import static com.bandlem.jvm.jvmulator.Opcodes.DCONST_1;
 import static com.bandlem.jvm.jvmulator.Opcodes.DRETURN;
 import static com.bandlem.jvm.jvmulator.Opcodes.FCONST_1;
@@ -167,12 +168,14 @@ class JVMClassTest {
 		pool = javaClass.pool;
 		// If the pool is above 256 we have problems with constant resolution
 		assertTrue(pool.size() < 256);
-		constant_email_utf = (byte) find(Sample.ss, UTFConstant.class);
-		constant_email = (byte) find(Sample.ss, StringConstant.class);
-		constant_int = (byte) find(Sample.ii, IntConstant.class);
-		constant_long = (byte) find(Sample.ll, LongConstant.class);
-		constant_float = (byte) find(Sample.ff, FloatConstant.class);
-		constant_double = (byte) find(Sample.dd, DoubleConstant.class);
+		// Uses instance values, as other tests change the static fields
+		final Sample sample = new Sample();
+		constant_email_utf = (byte) find(sample.s, UTFConstant.class);
+		constant_email = (byte) find(sample.s, StringConstant.class);
+		constant_int = (byte) find(sample.i, IntConstant.class);
+		constant_long = (byte) find(sample.l, LongConstant.class);
+		constant_float = (byte) find(sample.f, FloatConstant.class);
+		constant_double = (byte) find(sample.d, DoubleConstant.class);
 		constant_object = (byte) find("java/lang/Object", ClassConstant.class);
 		constant_system = (byte) find("java/lang/System", ClassConstant.class);
 		constant_gc = (byte) find("gc", MethodRef.class);
@@ -190,7 +193,7 @@ class JVMClassTest {
 	}
 	private void expect(final Class<? extends Throwable> expected, final JavaClass javaClass, final int locals,
 			final Slot slot, final byte[] code) {
-		final JVMFrame frame = new JVMFrame(javaClass, locals, code);
+		final JVMFrame frame = frame(javaClass, locals, code);
 		if (slot != null) {
 			frame.stack.pushSlot(slot);
 		}
@@ -198,7 +201,7 @@ class JVMClassTest {
 	}
 	private void expect(final double result, final JavaClass javaClass, final int locals, final Slot slot,
 			final byte[] code) {
-		final JVMFrame frame = new JVMFrame(javaClass, locals, code);
+		final JVMFrame frame = frame(javaClass, locals, code);
 		if (slot != null) {
 			frame.stack.pushSlot(slot);
 		}
@@ -207,7 +210,7 @@ class JVMClassTest {
 	}
 	private void expect(final float result, final JavaClass javaClass, final int locals, final Slot slot,
 			final byte[] code) {
-		final JVMFrame frame = new JVMFrame(javaClass, locals, code);
+		final JVMFrame frame = frame(javaClass, locals, code);
 		if (slot != null) {
 			frame.stack.pushSlot(slot);
 		}
@@ -216,7 +219,7 @@ class JVMClassTest {
 	}
 	private void expect(final int result, final JavaClass javaClass, final int locals, final Slot slot,
 			final byte[] code) {
-		final JVMFrame frame = new JVMFrame(javaClass, locals, code);
+		final JVMFrame frame = frame(javaClass, locals, code);
 		if (slot != null) {
 			frame.stack.pushSlot(slot);
 		}
@@ -225,7 +228,7 @@ class JVMClassTest {
 	}
 	private void expect(final long result, final JavaClass javaClass, final int locals, final Slot slot,
 			final byte[] code) {
-		final JVMFrame frame = new JVMFrame(javaClass, locals, code);
+		final JVMFrame frame = frame(javaClass, locals, code);
 		if (slot != null) {
 			frame.stack.pushSlot(slot);
 		}
@@ -234,7 +237,7 @@ class JVMClassTest {
 	}
 	private void expect(final Object result, final JavaClass javaClass, final int locals, final Slot slot,
 			final byte[] code) {
-		final JVMFrame frame = new JVMFrame(javaClass, locals, code);
+		final JVMFrame frame = frame(javaClass, locals, code);
 		if (slot != null) {
 			frame.stack.pushSlot(slot);
 		}
@@ -245,6 +248,23 @@ class JVMClassTest {
 		assertEquals(answer, frame.getReturnValue());
 		assertThrows(IndexOutOfBoundsException.class, frame.stack::peek);
 	}
+	// Overridden to run the same tests with another engine
+	JVMFrame frame(final JavaClass javaClass, final int locals, final byte[] code) {
+		return new JVMFrame(javaClass, locals, code);
+	}
+	@Test
+	void testCheckCast() {
+		// Null passes any cast, and a failed cast leaves the reference unchanged
+		expect((Object) null, javaClass, 0, null, new byte[] {
+				ACONST_NULL, CHECKCAST, 0x00, constant_system, ARETURN
+		});
+		expect(new Sample().s, javaClass, 0, null, new byte[] {
+				LDC, constant_email, CHECKCAST, 0x00, constant_object, ARETURN
+		});
+		expect(ClassCastException.class, javaClass, 0, null, new byte[] {
+				LDC, constant_email, CHECKCAST, 0x00, constant_system, ARETURN
+		});
+	}
 	@Test
 	void testClassData() {
 		new Sample().reset();
@@ -372,29 +392,31 @@ class JVMClassTest {
 	}
 	@Test
 	void testInstanceOf() {
-		assertEquals(0, new JVMFrame(javaClass, 0, new byte[] {
+		assertEquals(0, frame(javaClass, 0, new byte[] {
 				ACONST_NULL, INSTANCEOF, 0x00, constant_object, IRETURN
 		}).run().intValue());
-		assertEquals(1, new JVMFrame(javaClass, 0, new byte[] {
+		assertEquals(1, frame(javaClass, 0, new byte[] {
 				LDC, constant_email, INSTANCEOF, 0x00, constant_object, IRETURN
 		}).run().intValue());
-		assertEquals(0, new JVMFrame(javaClass, 0, new byte[] {
+		assertEquals(0, frame(javaClass, 0, new byte[] {
 				LDC, constant_email, INSTANCEOF, 0x00, constant_system, IRETURN
 		}).run().intValue());
+		assertTrue(JVMFrame.instanceOf("foobar", "java/lang/String"));
 		assertThrows(UnsupportedOperationException.class, () -> JVMFrame.instanceOf("foobar", "foobar"));
 	}
 	@Test
 	void testInvoke() {
-		assertNotNull(new JVMFrame(javaClass, 0, new byte[] {
+		assertNotNull(frame(javaClass, 0, new byte[] {
 				INVOKESTATIC, 0x00, constant_random, DRETURN
 		}).run());
-		assertNull(new JVMFrame(javaClass, 0, new byte[] {
-				INVOKEVIRTUAL, 0x00, constant_gc, RETURN
+		// System.gc is static, so it cannot be called as a virtual method with a receiver
+		assertNull(frame(javaClass, 0, new byte[] {
+				INVOKESTATIC, 0x00, constant_gc, RETURN
 		}).run());
 	}
 	@Test
 	void testInvokeDirect() {
-		final JVMFrame frame = new JVMFrame(javaClass, 0, new byte[] {
+		final JVMFrame frame = frame(javaClass, 0, new byte[] {
 				RETURN
 		});
 		final ClassLoader classLoader = getClass().getClassLoader();
@@ -423,6 +445,7 @@ class JVMClassTest {
 		frame.stack.push(123);
 		final Slot negatedSlot = frame.invoke("negateExact", "(I)I", Math.class.getName(), classLoader);
 		assertEquals(-123, negatedSlot.intValue());
+		assertNull(frame.invoke("gc", "()V", System.class.getName(), classLoader));
 	}
 	@Test
 	void testPut() {
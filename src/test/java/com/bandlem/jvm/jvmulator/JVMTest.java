@@ -16,35 +16,37 @@ import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.junit.jupiter.api.Assertions.fail;
 import org.junit.jupiter.api.Test;
+import com.bandlem.jvm.jvmulator.classfile.Attribute;
+import com.bandlem.jvm.jvmulator.classfile.Attribute.Code;
 import com.bandlem.jvm.jvmulator.classfile.JavaClass;
 class JVMTest {
 	private void expect(final Class<? extends Throwable> expected, final JavaClass javaClass, final int locals,
 			final byte[] code) {
-		final JVMFrame frame = new JVMFrame(javaClass, locals, code);
+		final JVMFrame frame = frame(javaClass, locals, code);
 		assertThrows(expected, frame::run);
 	}
 	private void expect(final double result, final JavaClass javaClass, final int locals, final byte[] code) {
-		final JVMFrame frame = new JVMFrame(javaClass, locals, code);
+		final JVMFrame frame = frame(javaClass, locals, code);
 		assertEquals(result, frame.run().doubleValue());
 		assertThrows(IndexOutOfBoundsException.class, frame.stack::peek);
 	}
 	private void expect(final float result, final JavaClass javaClass, final int locals, final byte[] code) {
-		final JVMFrame frame = new JVMFrame(javaClass, locals, code);
+		final JVMFrame frame = frame(javaClass, locals, code);
 		assertEquals(result, frame.run().floatValue());
 		assertThrows(IndexOutOfBoundsException.class, frame.stack::peek);
 	}
 	private void expect(final int result, final JavaClass javaClass, final int locals, final byte[] code) {
-		final JVMFrame frame = new JVMFrame(javaClass, locals, code);
+		final JVMFrame frame = frame(javaClass, locals, code);
 		assertEquals(result, frame.run().intValue());
 		assertThrows(IndexOutOfBoundsException.class, frame.stack::peek);
 	}
 	private void expect(final long result, final JavaClass javaClass, final int locals, final byte[] code) {
-		final JVMFrame frame = new JVMFrame(javaClass, locals, code);
+		final JVMFrame frame = frame(javaClass, locals, code);
 		assertEquals(result, frame.run().longValue());
 		assertThrows(IndexOutOfBoundsException.class, frame.stack::peek);
 	}
 	private void expect(final Object result, final JavaClass javaClass, final int locals, final byte[] code) {
-		final JVMFrame frame = new JVMFrame(javaClass, locals, code);
+		final JVMFrame frame = frame(javaClass, locals, code);
 		final Slot slot = frame.run();
 		if (slot != null) {
 			assertEquals(result, slot.referenceValue());
@@ -52,62 +54,81 @@ class JVMTest {
 		assertEquals(slot, frame.getReturnValue());
 		assertThrows(IndexOutOfBoundsException.class, frame.stack::peek);
 	}
+	// Overridden to run the same tests with another engine
+	JVMFrame frame(final JavaClass javaClass, final int locals, final byte[] code) {
+		return new JVMFrame(javaClass, locals, code);
+	}
 	@Test
 	void testArray() {
 		for (final byte b : new byte[] {
-				'Z', 'B', 'S', 'C', 'I', 'L', 'F', 'D'
+				T_BOOLEAN, T_BYTE, T_SHORT, T_CHAR, T_INT, T_LONG, T_FLOAT, T_DOUBLE
 		}) {
 			expect(2, null, 0, new byte[] {
 					ICONST_2, NEWARRAY, b, ARRAYLENGTH, IRETURN
 			});
 		}
 		expect(1, null, 0, new byte[] {
-				ICONST_1, NEWARRAY, 'Z', DUP, ICONST_0, ICONST_1, BASTORE, ICONST_0, BALOAD, IRETURN
+				ICONST_1, NEWARRAY, T_BOOLEAN, DUP, ICONST_0, ICONST_1, BASTORE, ICONST_0, BALOAD, IRETURN
 		});
 		expect(0, null, 0, new byte[] {
-				ICONST_1, NEWARRAY, 'Z', DUP, ICONST_0, ICONST_0, BASTORE, ICONST_0, BALOAD, IRETURN
+				ICONST_1, NEWARRAY, T_BOOLEAN, DUP, ICONST_0, ICONST_0, BASTORE, ICONST_0, BALOAD, IRETURN
 		});
 		expect(1, null, 0, new byte[] {
-				ICONST_1, NEWARRAY, 'B', DUP, ICONST_0, ICONST_1, BASTORE, ICONST_0, BALOAD, IRETURN
+				ICONST_1, NEWARRAY, T_BYTE, DUP, ICONST_0, ICONST_1, BASTORE, ICONST_0, BALOAD, IRETURN
 		});
 		expect(1, null, 0, new byte[] {
-				ICONST_1, NEWARRAY, 'S', DUP, ICONST_0, ICONST_1, SASTORE, ICONST_0, SALOAD, IRETURN
+				ICONST_1, NEWARRAY, T_SHORT, DUP, ICONST_0, ICONST_1, SASTORE, ICONST_0, SALOAD, IRETURN
 		});
 		expect(1, null, 0, new byte[] {
-				ICONST_1, NEWARRAY, 'C', DUP, ICONST_0, ICONST_1, CASTORE, ICONST_0, CALOAD, IRETURN
+				ICONST_1, NEWARRAY, T_CHAR, DUP, ICONST_0, ICONST_1, CASTORE, ICONST_0, CALOAD, IRETURN
 		});
 		expect(1, null, 0, new byte[] {
-				ICONST_1, NEWARRAY, 'I', DUP, ICONST_0, ICONST_1, IASTORE, ICONST_0, IALOAD, IRETURN
+				ICONST_1, NEWARRAY, T_INT, DUP, ICONST_0, ICONST_1, IASTORE, ICONST_0, IALOAD, IRETURN
 		});
 		expect(1L, null, 0, new byte[] {
-				ICONST_1, NEWARRAY, 'L', DUP, ICONST_0, LCONST_1, LASTORE, ICONST_0, LALOAD, LRETURN
+				ICONST_1, NEWARRAY, T_LONG, DUP, ICONST_0, LCONST_1, LASTORE, ICONST_0, LALOAD, LRETURN
 		});
 		expect(1F, null, 0, new byte[] {
-				ICONST_1, NEWARRAY, 'F', DUP, ICONST_0, FCONST_1, FASTORE, ICONST_0, FALOAD, FRETURN
+				ICONST_1, NEWARRAY, T_FLOAT, DUP, ICONST_0, FCONST_1, FASTORE, ICONST_0, FALOAD, FRETURN
 		});
 		expect(1D, null, 0, new byte[] {
-				ICONST_1, NEWARRAY, 'D', DUP, ICONST_0, DCONST_1, DASTORE, ICONST_0, DALOAD, DRETURN
+				ICONST_1, NEWARRAY, T_DOUBLE, DUP, ICONST_0, DCONST_1, DASTORE, ICONST_0, DALOAD, DRETURN
 		});
 		expect(IllegalStateException.class, null, 0, new byte[] {
 				ICONST_0, NEWARRAY, '?'
 		});
-		expect(IllegalStateException.class, null, 0, new byte[] {
+		expect(NullPointerException.class, null, 0, new byte[] {
 				ACONST_NULL, ARRAYLENGTH
 		});
-		expect(IllegalStateException.class, null, 0, new byte[] {
+		// Other references fail in the emulator rather than raising an exception
+		final JVMFrame frame = frame(null, 1, new byte[] {
+				ALOAD_0, ARRAYLENGTH, IRETURN
+		});
+		frame.locals.store(0, "array");
+		assertThrows(IllegalStateException.class, frame::run);
+		expect(NullPointerException.class, null, 0, new byte[] {
 				ACONST_NULL, ICONST_0, AALOAD
 		});
-		expect(IllegalStateException.class, null, 0, new byte[] {
+		expect(NullPointerException.class, null, 0, new byte[] {
 				ACONST_NULL, ICONST_0, ICONST_1, AASTORE
 		});
+		expect(NegativeArraySizeException.class, null, 0, new byte[] {
+				ICONST_M1, NEWARRAY, T_INT
+		});
+		expect(ArrayIndexOutOfBoundsException.class, null, 0, new byte[] {
+				ICONST_1, NEWARRAY, T_INT, ICONST_1, IALOAD
+		});
+		expect(ArrayIndexOutOfBoundsException.class, null, 0, new byte[] {
+				ICONST_1, NEWARRAY, T_INT, ICONST_M1, ICONST_0, IASTORE
+		});
 		expect(2, null, 0, new byte[] {
-				ICONST_1, NEWARRAY, 'I', DUP, ICONST_0, ICONST_2, IASTORE, ICONST_0, IALOAD, IRETURN
+				ICONST_1, NEWARRAY, T_INT, DUP, ICONST_0, ICONST_2, IASTORE, ICONST_0, IALOAD, IRETURN
 		});
 	}
 	@Test
 	void testBadArrayCombinations() {
 		final byte[] types = new byte[] {
-				'Z', 'B', 'S', 'C', 'I', 'L', 'F', 'D'
+				T_BOOLEAN, T_BYTE, T_SHORT, T_CHAR, T_INT, T_LONG, T_FLOAT, T_DOUBLE
 		};
 		final byte[] load = new byte[] {
 				BALOAD, BALOAD, SALOAD, CALOAD, IALOAD, LALOAD, FALOAD, DALOAD
@@ -173,23 +194,32 @@ class JVMTest {
 		});
 	}
 	@Test
+	void testCodeAttribute() {
+		final Code code = (Code) Attribute.of(Code.NAME, null, new byte[] {
+				0x00, 0x02, 0x00, 0x01, 0x00, 0x00, 0x00, 0x04, ICONST_2, ISTORE_0, ILOAD_0, IRETURN
+		});
+		final JVMFrame frame = new JVMFrame(null, code);
+		assertEquals(2, frame.run().intValue());
+		assertEquals(1, frame.getLocals().size());
+	}
+	@Test
 	void testComparisons() {
 		expect(0, null, 0, new byte[] {
 				LCONST_1, LCONST_1, LCMP, IRETURN
 		});
-		expect(1, null, 0, new byte[] {
+		expect(-1, null, 0, new byte[] {
 				LCONST_0, LCONST_1, LCMP, IRETURN
 		});
-		expect(-1, null, 0, new byte[] {
+		expect(1, null, 0, new byte[] {
 				LCONST_1, LCONST_0, LCMP, IRETURN
 		});
 		expect(0, null, 0, new byte[] {
 				FCONST_1, FCONST_1, FCMPL, IRETURN
 		});
-		expect(1, null, 0, new byte[] {
+		expect(-1, null, 0, new byte[] {
 				FCONST_0, FCONST_1, FCMPL, IRETURN
 		});
-		expect(-1, null, 0, new byte[] {
+		expect(1, null, 0, new byte[] {
 				FCONST_1, FCONST_0, FCMPL, IRETURN
 		});
 		expect(-1, null, 0, new byte[] {
@@ -198,10 +228,10 @@ class JVMTest {
 		expect(0, null, 0, new byte[] {
 				DCONST_1, DCONST_1, DCMPL, IRETURN
 		});
-		expect(1, null, 0, new byte[] {
+		expect(-1, null, 0, new byte[] {
 				DCONST_0, DCONST_1, DCMPL, IRETURN
 		});
-		expect(-1, null, 0, new byte[] {
+		expect(1, null, 0, new byte[] {
 				DCONST_1, DCONST_0, DCMPL, IRETURN
 		});
 		expect(-1, null, 0, new byte[] {
@@ -210,10 +240,10 @@ class JVMTest {
 		expect(0, null, 0, new byte[] {
 				FCONST_1, FCONST_1, FCMPG, IRETURN
 		});
-		expect(1, null, 0, new byte[] {
+		expect(-1, null, 0, new byte[] {
 				FCONST_0, FCONST_1, FCMPG, IRETURN
 		});
-		expect(-1, null, 0, new byte[] {
+		expect(1, null, 0, new byte[] {
 				FCONST_1, FCONST_0, FCMPG, IRETURN
 		});
 		expect(1, null, 0, new byte[] {
@@ -222,10 +252,10 @@ class JVMTest {
 		expect(0, null, 0, new byte[] {
 				DCONST_1, DCONST_1, DCMPG, IRETURN
 		});
-		expect(1, null, 0, new byte[] {
+		expect(-1, null, 0, new byte[] {
 				DCONST_0, DCONST_1, DCMPG, IRETURN
 		});
-		expect(-1, null, 0, new byte[] {
+		expect(1, null, 0, new byte[] {
 				DCONST_1, DCONST_0, DCMPG, IRETURN
 		});
 		expect(1, null, 0, new byte[] {
@@ -294,7 +324,7 @@ class JVMTest {
 		expect(1.0D, null, 0, new byte[] {
 				DCONST_0, DCONST_1, DADD, DRETURN
 		});
-		expect(-1.0D, null, 0, new byte[] {
+		expect(1.0D, null, 0, new byte[] {
 				DCONST_1, DCONST_0, DSUB, DRETURN
 		});
 		expect(4.0D, null, 0, new byte[] {
@@ -306,7 +336,7 @@ class JVMTest {
 		expect(0.0D, null, 0, new byte[] {
 				DCONST_1, DCONST_1, DADD, DCONST_1, DCONST_1, DADD, DREM, DRETURN
 		});
-		expect(1.0D, null, 0, new byte[] {
+		expect(-1.0D, null, 0, new byte[] {
 				DCONST_1, DCONST_1, DADD, DCONST_1, DSUB, DNEG, DRETURN
 		});
 	}
@@ -324,7 +354,7 @@ class JVMTest {
 		expect(0.0F, null, 0, new byte[] {
 				FCONST_1, FCONST_1, FADD, FCONST_1, FCONST_1, FADD, FREM, FRETURN
 		});
-		expect(1.0F, null, 0, new byte[] {
+		expect(-1.0F, null, 0, new byte[] {
 				FCONST_1, FCONST_1, FADD, FCONST_1, FSUB, FNEG, FRETURN
 		});
 	}
@@ -414,11 +444,11 @@ class JVMTest {
 		expect(3, null, 0, new byte[] {
 				ICONST_0, ICONST_0, IF_ICMPLT, 0x00, 0x07, ICONST_3, GOTO, 0x00, 0x04, ICONST_2, ICONST_0, IADD, IRETURN
 		});
-		expect(3, null, 0, new byte[] {
+		expect(2, null, 0, new byte[] {
 				ICONST_M1, ICONST_0, IF_ICMPLE, 0x00, 0x07, ICONST_3, GOTO, 0x00, 0x04, ICONST_2, ICONST_0, IADD,
 				IRETURN
 		});
-		expect(2, null, 0, new byte[] {
+		expect(3, null, 0, new byte[] {
 				ICONST_1, ICONST_0, IF_ICMPLT, 0x00, 0x07, ICONST_3, GOTO, 0x00, 0x04, ICONST_2, ICONST_0, IADD, IRETURN
 		});
 		expect(2, null, 0, new byte[] {
@@ -427,10 +457,19 @@ class JVMTest {
 		expect(3, null, 0, new byte[] {
 				ICONST_0, ICONST_0, IF_ICMPGT, 0x00, 0x07, ICONST_3, GOTO, 0x00, 0x04, ICONST_2, ICONST_0, IADD, IRETURN
 		});
+		expect(2, null, 0, new byte[] {
+				ICONST_0, ICONST_1, IF_ICMPLT, 0x00, 0x07, ICONST_3, GOTO, 0x00, 0x04, ICONST_2, ICONST_0, IADD, IRETURN
+		});
+		expect(2, null, 0, new byte[] {
+				ICONST_1, ICONST_0, IF_ICMPGT, 0x00, 0x07, ICONST_3, GOTO, 0x00, 0x04, ICONST_2, ICONST_0, IADD, IRETURN
+		});
 		expect(3, null, 0, new byte[] {
-				ICONST_1, ICONST_0, IF_ICMPGE, 0x00, 0x07, ICONST_3, GOTO, 0x00, 0x04, ICONST_2, ICONST_0, IADD, IRETURN
+				ICONST_1, ICONST_0, IF_ICMPLE, 0x00, 0x07, ICONST_3, GOTO, 0x00, 0x04, ICONST_2, ICONST_0, IADD, IRETURN
 		});
 		expect(2, null, 0, new byte[] {
+				ICONST_1, ICONST_0, IF_ICMPGE, 0x00, 0x07, ICONST_3, GOTO, 0x00, 0x04, ICONST_2, ICONST_0, IADD, IRETURN
+		});
+		expect(3, null, 0, new byte[] {
 				ICONST_M1, ICONST_0, IF_ICMPGT, 0x00, 0x07, ICONST_3, GOTO, 0x00, 0x04, ICONST_2, ICONST_0, IADD,
 				IRETURN
 		});
@@ -439,7 +478,7 @@ class JVMTest {
 				IRETURN
 		});
 		expect(3, null, 0, new byte[] {
-				ICONST_0, NEWARRAY, 'Z', ACONST_NULL, IF_ACMPEQ, 0x00, 0x07, ICONST_3, GOTO, 0x00, 0x04, ICONST_2,
+				ICONST_0, NEWARRAY, T_BOOLEAN, ACONST_NULL, IF_ACMPEQ, 0x00, 0x07, ICONST_3, GOTO, 0x00, 0x04, ICONST_2,
 				ICONST_0, IADD, IRETURN
 		});
 		expect(3, null, 0, new byte[] {
@@ -447,7 +486,7 @@ class JVMTest {
 				IRETURN
 		});
 		expect(2, null, 0, new byte[] {
-				ICONST_0, NEWARRAY, 'Z', ACONST_NULL, IF_ACMPNE, 0x00, 0x07, ICONST_3, GOTO, 0x00, 0x04, ICONST_2,
+				ICONST_0, NEWARRAY, T_BOOLEAN, ACONST_NULL, IF_ACMPNE, 0x00, 0x07, ICONST_3, GOTO, 0x00, 0x04, ICONST_2,
 				ICONST_0, IADD, IRETURN
 		});
 		expect(2, null, 0, new byte[] {
@@ -457,31 +496,37 @@ class JVMTest {
 				ACONST_NULL, IFNONNULL, 0x00, 0x07, ICONST_3, GOTO, 0x00, 0x04, ICONST_2, ICONST_0, IADD, IRETURN
 		});
 		expect(3, null, 0, new byte[] {
-				ICONST_0, NEWARRAY, 'Z', IFNULL, 0x00, 0x07, ICONST_3, GOTO, 0x00, 0x04, ICONST_2, ICONST_0, IADD,
+				ICONST_0, NEWARRAY, T_BOOLEAN, IFNULL, 0x00, 0x07, ICONST_3, GOTO, 0x00, 0x04, ICONST_2, ICONST_0, IADD,
 				IRETURN
 		});
 		expect(2, null, 0, new byte[] {
-				ICONST_0, NEWARRAY, 'Z', IFNONNULL, 0x00, 0x07, ICONST_3, GOTO, 0x00, 0x04, ICONST_2, ICONST_0, IADD,
-				IRETURN
+				ICONST_0, NEWARRAY, T_BOOLEAN, IFNONNULL, 0x00, 0x07, ICONST_3, GOTO, 0x00, 0x04, ICONST_2, ICONST_0,
+				IADD, IRETURN
 		});
 	}
 	@Test
 	void testInteger() {
-		expect(24, null, 0, new byte[] {
+		expect(-24, null, 0, new byte[] {
 				ICONST_4, ICONST_3, ICONST_1, ICONST_0, ICONST_M1, IADD, ISUB, IMUL, IMUL, INEG, IRETURN
 		});
-		expect(2, null, 0, new byte[] {
+		expect(1, null, 0, new byte[] {
 				ICONST_5, NOP, ICONST_2, IREM, IRETURN
 		});
-		expect(1, null, 0, new byte[] {
+		expect(2, null, 0, new byte[] {
 				ICONST_2, ICONST_5, IREM, IRETURN
 		});
-		expect(0, null, 0, new byte[] {
+		expect(2, null, 0, new byte[] {
 				ICONST_5, ICONST_2, IDIV, IRETURN
 		});
-		expect(2, null, 0, new byte[] {
+		expect(0, null, 0, new byte[] {
 				ICONST_2, ICONST_5, IDIV, IRETURN
 		});
+		expect(ArithmeticException.class, null, 0, new byte[] {
+				ICONST_1, ICONST_0, IDIV, IRETURN
+		});
+		expect(ArithmeticException.class, null, 0, new byte[] {
+				ICONST_1, ICONST_0, IREM, IRETURN
+		});
 		expect(2, null, 0, new byte[] {
 				ICONST_1, ICONST_1, ISHL, IRETURN
 		});
@@ -525,6 +570,10 @@ class JVMTest {
 		expect(0, null, 1, new byte[] {
 				ICONST_1, ISTORE_0, IINC, 0, (byte) 0xff, ILOAD_0, IRETURN
 		});
+		expect(258, null, 0x101, new byte[] {
+				SIPUSH, 0x01, 0x00, WIDE, ISTORE, 0x01, 0x00, WIDE, IINC, 0x01, 0x00, 0x00, 0x02, WIDE, ILOAD, 0x01,
+				0x00, IRETURN
+		});
 		expect(1L, null, 5, new byte[] {
 				LCONST_1, LSTORE_0, LLOAD_0, LSTORE_1, LLOAD_1, LSTORE_2, LLOAD_2, LSTORE_3, LLOAD_3, LSTORE, 4, LLOAD,
 				4, LRETURN
@@ -568,7 +617,13 @@ class JVMTest {
 		expect(0L, null, 0, new byte[] {
 				LCONST_1, LCONST_1, LADD, LCONST_1, LCONST_1, LADD, LREM, LRETURN
 		});
-		expect(1L, null, 0, new byte[] {
+		expect(ArithmeticException.class, null, 0, new byte[] {
+				LCONST_1, LCONST_0, LDIV, LRETURN
+		});
+		expect(ArithmeticException.class, null, 0, new byte[] {
+				LCONST_1, LCONST_0, LREM, LRETURN
+		});
+		expect(-1L, null, 0, new byte[] {
 				LCONST_1, LCONST_1, LADD, LCONST_1, LSUB, LNEG, LRETURN
 		});
 		expect(2L, null, 0, new byte[] {
@@ -604,6 +659,9 @@ class JVMTest {
 		expect(IllegalStateException.class, null, 0, new byte[] {
 				(byte) 0xf0
 		});
+		expect(NullPointerException.class, null, 0, new byte[] {
+				ACONST_NULL, ATHROW
+		});
 	}
 	@Test
 	void testReturn() {
@@ -637,17 +695,18 @@ class JVMTest {
 		expect(1.0D, null, 0, new byte[] {
 				DCONST_1, DCONST_0, POP2, DRETURN
 		});
-		expect(-1, null, 0, new byte[] {
+		expect(1, null, 0, new byte[] {
 				ICONST_0, ICONST_1, SWAP, ISUB, IRETURN
 		});
 		expect(2, null, 0, new byte[] {
 				ICONST_1, DUP, IADD, IRETURN
 		});
-		expect(2, null, 0, new byte[] {
-				ICONST_1, ICONST_0, DUP_X1, IADD, IADD, IRETURN
+		// The dups with an _x copy the top below the values that they skip
+		expect(0, null, 0, new byte[] {
+				ICONST_2, ICONST_1, DUP_X1, ISUB, ISUB, IRETURN
 		});
-		expect(2, null, 0, new byte[] {
-				ICONST_1, ICONST_0, ICONST_0, DUP_X2, IADD, IADD, IADD, IRETURN
+		expect(-1, null, 0, new byte[] {
+				ICONST_3, ICONST_2, ICONST_1, DUP_X2, ISUB, ISUB, ISUB, IRETURN
 		});
 		expect(2.0D, null, 0, new byte[] {
 				DCONST_1, DUP2, DADD, DRETURN
@@ -655,11 +714,11 @@ class JVMTest {
 		expect(4, null, 0, new byte[] {
 				ICONST_1, ICONST_1, DUP2, IADD, IADD, IADD, IRETURN
 		});
-		expect(1.0D, null, 0, new byte[] {
-				DCONST_1, ICONST_5, DUP2_X1, POP2, POP, DRETURN
+		expect(0.0D, null, 0, new byte[] {
+				ICONST_5, DCONST_0, DUP2_X1, POP2, POP, DRETURN
 		});
-		expect(2.0D, null, 0, new byte[] {
-				DCONST_1, DCONST_0, DUP2_X2, DADD, DADD, DRETURN
+		expect(-1.0D, null, 0, new byte[] {
+				DCONST_1, DCONST_0, DUP2_X2, DSUB, DSUB, DRETURN
 		});
 	}
 	@Test
@@ -667,12 +726,12 @@ class JVMTest {
 		final JVMFrame frame = new JVMFrame(null, 0, new byte[] {
 				ICONST_1, IRETURN
 		});
-		assertEquals(0, frame.getLocals().length);
+		assertEquals(0, frame.getLocals().size());
 		assertEquals(0, frame.getStack().size());
 		assertEquals(0, frame.getPC());
 		assertNull(frame.getReturnValue());
 		assertTrue(frame.step());
-		assertEquals(0, frame.getLocals().length);
+		assertEquals(0, frame.getLocals().size());
 		assertEquals(1, frame.getStack().size());
 		assertEquals(1, frame.getPC());
 		assertNull(frame.getReturnValue());
@@ -712,7 +771,8 @@ class JVMTest {
 				assertTrue(frame.getPC() > 0);
 			} catch (final Exception e) {
 				final String message = e.getMessage();
-				final boolean unsupported = message.startsWith("Unknown opcode:");
+				// Exceptions thrown often enough may be preallocated without a message
+				final boolean unsupported = message != null && message.startsWith("Unknown opcode:");
 				if (unsupported) {
 					fail(message);
 				}
@@ -0,0 +1,659 @@
+/*
+ * Copyright (c) 2020, Alex Blewitt, Bandlem Ltd
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package com.bandlem.jvm.jvmulator;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Serializable;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.IntSupplier;
+import java.util.function.IntUnaryOperator;
+import java.util.function.ToIntFunction;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.DisabledIfSystemProperty;
+import org.junit.jupiter.api.io.TempDir;
+import com.bandlem.jvm.jvmulator.classfile.ClassPath;
+import com.bandlem.jvm.jvmulator.classfile.JavaClass;
+import com.bandlem.jvm.jvmulator.classfile.Member.Method;
+import com.bandlem.jvm.jvmulator.compiler.JavaC;
+import com.bandlem.jvm.jvmulator.compiler.SourceFile;
+class JVMThreadTest {
+	public static class Base {
+		public static int base() {
+			return 3;
+		}
+	}
+	public static class Buffer {
+		final int[] data;
+		int last;
+		int size;
+		public Buffer(final int capacity) {
+			data = new int[capacity];
+		}
+		public void add(final int value) {
+			data[size++] = value;
+		}
+		public int assign(final int value) {
+			return last = size = value;
+		}
+		public int next() {
+			return size++;
+		}
+	}
+	public static class Counter {
+		private int count;
+		private final String name;
+		public Counter(final String name) {
+			this.name = name;
+		}
+		private int add(final int delta) {
+			count += delta;
+			return count;
+		}
+		public String getName() {
+			return name;
+		}
+		public int identity() {
+			return super.hashCode();
+		}
+		public int increment() {
+			return add(1);
+		}
+	}
+	public static class Named extends Exception {
+		private static final long serialVersionUID = 1L;
+		public Named(final String message) {
+			super(message);
+		}
+		public String describe() {
+			return super.getMessage();
+		}
+	}
+	public static class Recursive extends Base {
+		public static int apply(final int n) {
+			final IntUnaryOperator times = x -> x * n;
+			return times.applyAsInt(n) + 1;
+		}
+		public static int callDivide() {
+			return divide(1, 0);
+		}
+		public static native int callNative();
+		public static int callNothing() {
+			nothing();
+			return 1;
+		}
+		public static double callScale() {
+			return scale(64L, 0.5D, 2);
+		}
+		public static int catchCallee(final int b) {
+			try {
+				return divide(1, b);
+			} catch (final ArithmeticException e) {
+				return -2;
+			}
+		}
+		public static int catchDivide(final int b) {
+			try {
+				return 10 / b;
+			} catch (final ArithmeticException e) {
+				return -1;
+			}
+		}
+		public static int catchHost(final String value) {
+			try {
+				return Integer.parseInt(value);
+			} catch (final NumberFormatException e) {
+				return -3;
+			}
+		}
+		public static int chained(final int value) {
+			final Buffer buffer = new Buffer(0);
+			return buffer.assign(value) + buffer.last * 10 + buffer.size * 100;
+		}
+		public static int command(final String command) {
+			switch (command) {
+			case "start":
+				return 1;
+			case "stop":
+				return 2;
+			default:
+				return 0;
+			}
+		}
+		public static String concat(final int n) {
+			return new StringBuilder("n=").append(n).toString();
+		}
+		public static int countFailures(final int n) {
+			int count = 0;
+			for (int i = -n; i < n; i++) {
+				try {
+					count += 10 / i;
+				} catch (final ArithmeticException e) {
+					count += 100;
+				}
+			}
+			return count;
+		}
+		public static int counted(final int n) {
+			final Buffer buffer = new Buffer(0);
+			for (int i = 0; i < n; i++) {
+				buffer.next();
+			}
+			return buffer.next() + buffer.size * 100;
+		}
+		public static Object counter() {
+			return new Counter("counter");
+		}
+		public static int countTo(final int n) {
+			final Counter counter = new Counter("count");
+			int total = 0;
+			for (int i = 0; i < n; i++) {
+				total += counter.increment();
+			}
+			return total;
+		}
+		public static int dense(final int n) {
+			switch (n) {
+			case 1:
+				return 10;
+			case 2:
+				return 20;
+			case 3:
+				return 30;
+			default:
+				return -1;
+			}
+		}
+		public static int divide(final int a, final int b) {
+			return a / b;
+		}
+		public static int fib(final int n) {
+			return n < 2 ? n : fib(n - 1) + fib(n - 2);
+		}
+		public static int filled(final int n) {
+			final Buffer buffer = new Buffer(n);
+			for (int i = 0; i < n; i++) {
+				buffer.add(i * 3);
+			}
+			return buffer.data[n - 1] + buffer.size * 100;
+		}
+		public static String greet(final String name, final int n) {
+			return "Hello " + name + " #" + n;
+		}
+		public static int guard(final Exception exception) throws Exception {
+			try {
+				throw exception;
+			} catch (final RuntimeException e) {
+				return -5;
+			}
+		}
+		public static boolean hash() {
+			final Counter counter = new Counter("hash");
+			return counter.hashCode() == counter.identity() && counter.equals(counter);
+		}
+		public static int host(final Recursive recursive) {
+			return recursive.value() + base();
+		}
+		public static int invokeNative() {
+			return callNative();
+		}
+		public static boolean isCounter(final Object object) {
+			return object instanceof Counter;
+		}
+		public static boolean isRunnable(final Object object) {
+			return object instanceof Runnable;
+		}
+		public static boolean isShape(final Object object) {
+			return object instanceof Shape;
+		}
+		public static String label() {
+			return "[" + new Counter("label") + "]";
+		}
+		public static String name() {
+			return new Counter("name").getName();
+		}
+		public static String named() {
+			return new Named("named").describe();
+		}
+		public static int nested(final int a, final int b) {
+			try {
+				try {
+					return a / b;
+				} catch (final ArithmeticException e) {
+					return 10 / a;
+				}
+			} catch (final ArithmeticException e) {
+				return -4;
+			}
+		}
+		public static void nothing() {
+		}
+		public static int nullReceiver(final Buffer buffer, final int kind) {
+			try {
+				switch (kind) {
+				case 0:
+					return buffer.size;
+				case 1:
+					buffer.size = 1;
+					return 1;
+				default:
+					return buffer.next();
+				}
+			} catch (final NullPointerException e) {
+				return -1;
+			}
+		}
+		public static int polymorphic(final int n) {
+			int total = 0;
+			for (int i = 0; i < n; i++) {
+				final Counter counter = i % 2 == 0 ? new Counter("even") : new Values();
+				total += counter.increment();
+			}
+			return total;
+		}
+		public static int references(final String value) {
+			final ToIntFunction<String> length = String::length;
+			final ToIntFunction<CharSequence> chars = CharSequence::length;
+			final Consumer<String> builder = StringBuilder::new;
+			builder.accept(value);
+			return length.applyAsInt(value) + chars.applyAsInt(value);
+		}
+		public static void run(final Runnable runnable) {
+			runnable.run();
+		}
+		public static double scale(final long value, final double factor, final int shift) {
+			return (value >> shift) * factor;
+		}
+		public static int serializable() {
+			final Serial supplier = () -> 42;
+			return supplier.getAsInt();
+		}
+		public static int sparse(final int n) {
+			switch (n) {
+			case -1000:
+				return 1;
+			case 7:
+				return 2;
+			case 100000:
+				return 3;
+			default:
+				return 0;
+			}
+		}
+		public static Sized sized(final Object object) {
+			return (Sized) object;
+		}
+		public static Object square() {
+			return new Square();
+		}
+		public static String string() {
+			return String.valueOf(new Counter("string"));
+		}
+		public static int swallow() {
+			try {
+				final Object[] array = new Object[2];
+				return array.length;
+			} catch (final RuntimeException e) {
+				return -99;
+			}
+		}
+		public static void throwArgument(final RuntimeException exception) {
+			throw exception;
+		}
+		public static int underflow() {
+			try {
+				return 1;
+			} catch (final ArrayIndexOutOfBoundsException e) {
+				return -1;
+			}
+		}
+		public static int units(final TimeUnit unit) {
+			switch (unit) {
+			case SECONDS:
+				return 1;
+			case MINUTES:
+				return 60;
+			default:
+				return 0;
+			}
+		}
+		public static double values() {
+			final Values values = new Values();
+			run(values);
+			return values.total() + values.increment();
+		}
+		public static int withFinally(final int b) {
+			int result = 0;
+			try {
+				result = 10 / b;
+			} finally {
+				result++;
+			}
+			return result;
+		}
+		public int twice() {
+			final IntSupplier supplier = () -> value() * 2;
+			return supplier.getAsInt();
+		}
+		public int value() {
+			return 7;
+		}
+	}
+	// Lambdas of serializable interfaces are created by the alternative metafactory
+	public interface Serial extends IntSupplier, Serializable {
+	}
+	public interface Shape {
+	}
+	public interface Sized extends Shape {
+	}
+	public static class Square implements Sized {
+	}
+	public static class Values extends Counter implements Runnable {
+		byte b;
+		char c;
+		double d;
+		float f;
+		long j;
+		Object o;
+		short s;
+		boolean z;
+		public Values() {
+			super("values");
+		}
+		@Override
+		public int increment() {
+			return super.increment() * 10;
+		}
+		@Override
+		public void run() {
+			b = -2;
+			c = 'A';
+			d = 0.5D;
+			f = 0.25F;
+			j = 1L << 40;
+			o = this;
+			s = -300;
+			z = true;
+		}
+		public double total() {
+			return b + c + d + f + j + s + (z && o == this ? 1 : 0);
+		}
+	}
+	private static JavaClass javaClass;
+	private static JavaClass load(final Class<?> type) {
+		final InputStream in = type.getResourceAsStream("/" + type.getName().replace('.', '/') + ".class");
+		return new JavaClass(new DataInputStream(in));
+	}
+	@BeforeAll
+	static void setup() {
+		javaClass = load(Recursive.class);
+	}
+	private static ClassPath testClasses() throws Exception {
+		return new ClassPath(Path.of(Counter.class.getProtectionDomain().getCodeSource().getLocation().toURI()),
+				Path.of(JVMThread.class.getProtectionDomain().getCodeSource().getLocation().toURI()));
+	}
+	final JVMThread thread = new JVMThread();
+	private Slot run(final String name, final Slot... arguments) {
+		return thread.run(javaClass, javaClass.getMethod(name), arguments);
+	}
+	@Test
+	void testArguments() {
+		assertEquals(8D, run("callScale").doubleValue());
+		assertEquals(1, run("callNothing").intValue());
+		assertNull(run("nothing"));
+		assertEquals(10, run("host", Slot.of(new Recursive())).intValue());
+		assertEquals(8D, run("scale", Slot.of(64L), Slot.of(0.5D), Slot.of(2)).doubleValue());
+	}
+	@Test
+	void testExceptions() {
+		// Caught in the method that throws, or in an emulated caller
+		assertEquals(5, run("catchDivide", Slot.of(2)).intValue());
+		assertEquals(-1, run("catchDivide", Slot.of(0)).intValue());
+		assertEquals(-2, run("catchCallee", Slot.of(0)).intValue());
+		assertEquals(0, thread.getDepth());
+		// Exceptions from host methods are caught like any other
+		assertEquals(42, run("catchHost", Slot.of("42")).intValue());
+		assertEquals(-3, run("catchHost", Slot.of("x")).intValue());
+		assertEquals(97, run("countFailures", Slot.of(3)).intValue());
+		// A handler's own code is covered by the outer handler
+		assertEquals(2, run("nested", Slot.of(4), Slot.of(2)).intValue());
+		assertEquals(10, run("nested", Slot.of(1), Slot.of(0)).intValue());
+		assertEquals(-4, run("nested", Slot.of(0), Slot.of(0)).intValue());
+		// Checked exceptions are thrown as they are, past handlers for other types
+		assertEquals(-5, run("guard", Slot.of(new IllegalStateException())).intValue());
+		assertThrows(IOException.class, () -> run("guard", Slot.of(new IOException())));
+		assertThrows(NullPointerException.class, () -> run("throwArgument", Slot.of((Object) null)));
+		// A finally block catches everything and throws it again
+		assertEquals(6, run("withFinally", Slot.of(2)).intValue());
+		assertThrows(ArithmeticException.class, () -> run("withFinally", Slot.of(0)));
+		// Null receivers raise exceptions that handlers catch
+		for (int kind = 0; kind < 3; kind++) {
+			assertEquals(-1, run("nullReceiver", Slot.of((Object) null), Slot.of(kind)).intValue());
+		}
+		// The emulator's own failures are not caught, such as unsupported instructions,
+		// even where the host throws the same class of exception
+		assertThrows(IllegalStateException.class, () -> run("swallow"));
+		final JavaClass corrupt = load(Recursive.class);
+		final byte[] bytecode = corrupt.getMethod("underflow").getCodeAttribute().getBytecode();
+		assertEquals(Opcodes.ICONST_1, bytecode[0]);
+		bytecode[0] = Opcodes.POP;
+		assertThrows(ArrayIndexOutOfBoundsException.class, () -> thread.run(corrupt, corrupt.getMethod("underflow")));
+		assertEquals(0, thread.getDepth());
+	}
+	@Test
+	void testFailure() {
+		assertThrows(ArithmeticException.class, () -> run("callDivide"));
+		assertEquals(0, thread.getDepth());
+		assertThrows(UnsatisfiedLinkError.class, () -> run("invokeNative"));
+		assertEquals(0, thread.getDepth());
+	}
+	@Test
+	void testFieldUpdates() throws Exception {
+		// Post-increments and chained assignments of fields copy the value below
+		// the object with dup_x1
+		thread.setClassPath(testClasses());
+		assertTrue(run("counter").reference() instanceof EmulatedObject);
+		assertEquals(3 + 4 * 100, run("counted", Slot.of(3)).intValue());
+		assertEquals(9 + 4 * 100, run("filled", Slot.of(4)).intValue());
+		assertEquals(5 * 111, run("chained", Slot.of(5)).intValue());
+		for (int kind = 0; kind < 3; kind++) {
+			assertEquals(-1, run("nullReceiver", Slot.of((Object) null), Slot.of(kind)).intValue());
+		}
+	}
+	@Test
+	void testInvokeDynamic() throws Exception {
+		// Each call site is linked once, and then calls the target it was given
+		assertEquals("Hello world #3", run("greet", Slot.of("world"), Slot.of(3)).reference());
+		final Instructions greet = Instructions.of(javaClass.getMethod("greet").getCodeAttribute());
+		int index = 0;
+		while (greet.opcode(index) != Opcodes.INVOKEDYNAMIC) {
+			index++;
+		}
+		final DynamicCallSite site = greet.callSites[index];
+		assertEquals("Hello again #4", run("greet", Slot.of("again"), Slot.of(4)).reference());
+		assertSame(site, greet.callSites[index]);
+		assertNull(Instructions.of(javaClass.getMethod("fib").getCodeAttribute()).callSites);
+		// Lambdas and method references are created and run by the host
+		assertEquals(26, run("apply", Slot.of(5)).intValue());
+		assertEquals(42, run("serializable").intValue());
+		assertEquals(10, run("references", Slot.of("hello")).intValue());
+		assertEquals(14, thread.run(javaClass, javaClass.getMethod("twice"), Slot.of(new Recursive())).intValue());
+		// Emulated objects are passed to the host as Object
+		thread.setClassPath(testClasses());
+		assertTrue(((String) run("label").reference()).startsWith("[" + Counter.class.getName() + "@"));
+	}
+	@Test
+	@DisabledIfSystemProperty(named = "jvmulator.profile", matches = "true")
+	void testListener() {
+		assertThrows(IllegalStateException.class, () -> thread.setListener(new Profiler()));
+	}
+	@Test
+	void testObjects() throws Exception {
+		// Without a class path only the classes that are run are emulated, so
+		// other classes are created on the host
+		assertTrue(run("counter").reference() instanceof Counter);
+		assertNull(thread.getClassPath());
+		thread.setClassPath(testClasses());
+		assertTrue(run("counter").reference() instanceof EmulatedObject);
+		assertEquals(15, run("countTo", Slot.of(5)).intValue());
+		// The call site sees both classes, dispatched through their vtables
+		assertEquals(22, run("polymorphic", Slot.of(4)).intValue());
+		assertEquals("name", run("name").reference());
+		assertEquals(-2 + 'A' + 0.5D + 0.25F + (1L << 40) - 300 + 1 + 10, run("values").doubleValue());
+		// Methods of java.lang.Object run on the host, with the emulated object
+		assertEquals(1, run("hash").intValue());
+		assertTrue(((String) run("string").reference()).startsWith(Counter.class.getName() + "@"));
+		assertEquals(1, run("isCounter", Slot.of(run("counter").reference())).intValue());
+		assertEquals(0, run("isCounter", Slot.of("counter")).intValue());
+		assertEquals(0, run("isRunnable", Slot.of(run("counter").reference())).intValue());
+		// Interfaces that the class implements through other interfaces count too
+		assertEquals(1, run("isShape", Slot.of(run("square").reference())).intValue());
+		assertEquals(0, run("isShape", Slot.of(run("counter").reference())).intValue());
+		final Object square = run("square").reference();
+		assertSame(square, run("sized", Slot.of(square)).reference());
+		assertNull(run("sized", Slot.of((Object) null)).reference());
+		assertThrows(ClassCastException.class, () -> run("sized", Slot.of(run("counter").reference())));
+		assertThrows(ClassCastException.class, () -> run("sized", Slot.of("square")));
+		assertEquals(1, run("isRunnable", Slot.of(new Thread())).intValue());
+		// Host classes are created on the host, with the placeholder for new
+		// replaced by the object that the constructor returns
+		assertEquals("n=3", run("concat", Slot.of(3)).reference());
+		assertEquals("n=4", run("concat", Slot.of(4)).reference());
+		assertEquals("named", run("named").reference());
+		final JavaClass named = load(Named.class);
+		assertEquals("host", thread.run(named, named.getMethod("describe"), Slot.of(new Named("host"))).reference());
+		// Interfaces and classes with host superclasses are not emulated
+		assertNull(thread.getEmulatedClass(Runnable.class.getName().replace('.', '/')));
+		assertNull(thread.getEmulatedClass(ExecutionListener.class.getName().replace('.', '/')));
+		assertNull(thread.getEmulatedClass(named.this_class));
+		assertNull(thread.getEmulatedClass(EmulatedClass.OBJECT));
+		assertFalse(thread.getEmulatedClass(javaClass.this_class).isInstance(Runnable.class.getName()));
+	}
+	@Test
+	void testObjectsCompiled() throws Exception {
+		// Methods that create emulated objects stay in the interpreter
+		thread.setClassPath(testClasses());
+		thread.setCompileThreshold(1);
+		assertEquals(3, run("countTo", Slot.of(2)).intValue());
+		assertEquals(3, run("countTo", Slot.of(2)).intValue());
+		assertTrue(Instructions.of(javaClass.getMethod("countTo").getCodeAttribute()).uncompilable);
+	}
+	@Test
+	void testRecursion() {
+		assertEquals(6765, run("fib", Slot.of(20)).intValue());
+		assertEquals(0, thread.getDepth());
+		final JVMFrame frame = thread.getFrame(19);
+		assertEquals(55, run("fib", Slot.of(10)).intValue());
+		assertSame(frame, thread.getFrame(19));
+		assertEquals("com/bandlem/jvm/jvmulator/JVMThreadTest$Recursive:fib",
+				new EmulatedMethod(javaClass, javaClass.getMethod("fib")).toString());
+	}
+	@Test
+	void testSharedClasses() throws Exception {
+		// Threads running the same class files share their emulated classes, so
+		// call sites see the same classes however many threads run them
+		final JavaClass recursive = load(Recursive.class);
+		final Method polymorphic = recursive.getMethod("polymorphic");
+		final String values = Values.class.getName().replace('.', '/');
+		thread.setClassPath(testClasses());
+		for (int i = 0; i <= InlineCache.LIMIT; i++) {
+			final JVMThread other = new JVMThread();
+			other.setClassPath(thread.getClassPath());
+			assertEquals(22, other.run(recursive, polymorphic, Slot.of(4)).intValue());
+			assertSame(thread.getEmulatedClass(values), other.getEmulatedClass(values));
+		}
+		final Instructions instructions = Instructions.of(polymorphic.getCodeAttribute());
+		for (int i = 0; i < instructions.opcodes.length; i++) {
+			if (instructions.opcodes[i] == Opcodes.INVOKEVIRTUAL) {
+				assertEquals(2, instructions.getCache(i).size());
+			}
+		}
+		// The threaded engine fills the same cache as the switch does
+		final JavaClass threaded = load(Recursive.class);
+		final JVMThread other = new JVMThread();
+		other.setClassPath(thread.getClassPath());
+		other.setEngine(JVMThread.Engine.THREADED);
+		assertEquals(22, other.run(threaded, threaded.getMethod("polymorphic"), Slot.of(4)).intValue());
+		final Instructions code = Instructions.of(threaded.getMethod("polymorphic").getCodeAttribute());
+		for (int i = 0; i < code.opcodes.length; i++) {
+			if (code.opcodes[i] == Opcodes.INVOKEVIRTUAL) {
+				assertEquals(2, code.getCache(i).size());
+			}
+		}
+	}
+	@Test
+	void testSwitches() {
+		for (int n = 0; n <= 4; n++) {
+			assertEquals(Recursive.dense(n), run("dense", Slot.of(n)).intValue());
+		}
+		for (final int n : new int[] {
+				-1000, 0, 7, 100000, Integer.MIN_VALUE
+		}) {
+			assertEquals(Recursive.sparse(n), run("sparse", Slot.of(n)).intValue());
+		}
+		// Strings switch on their hash code, and enums on a table of ordinals
+		assertEquals(1, run("command", Slot.of("start")).intValue());
+		assertEquals(2, run("command", Slot.of("stop")).intValue());
+		assertEquals(0, run("command", Slot.of("pause")).intValue());
+		assertEquals(60, run("units", Slot.of(TimeUnit.MINUTES)).intValue());
+		assertEquals(0, run("units", Slot.of(TimeUnit.DAYS)).intValue());
+	}
+	@Test
+	void testUnloadedClass() {
+		// Host objects are not instances of classes that the host cannot load, so
+		// handlers for them catch nothing
+		final JavaC javac = new JavaC();
+		assertTrue(javac.compile(new SourceFile("Shapes", //
+				"class Square {}" //
+						+ "class Unsquare extends RuntimeException {}" //
+						+ "public class Shapes {" //
+						+ " public static int divide(int b) {" //
+						+ "   try {" //
+						+ "     return 10 / b;" //
+						+ "   } catch (Unsquare e) {" //
+						+ "     return -1;" //
+						+ "   } catch (ArithmeticException e) {" //
+						+ "     return -2;" //
+						+ "   }" //
+						+ " }" //
+						+ " public static boolean isSquare(Object object) {" //
+						+ "   return object instanceof Square;" //
+						+ " }" //
+						+ " public static Object toSquare(Object object) {" //
+						+ "   return (Square) object;" //
+						+ " }" //
+						+ "}")));
+		final JavaClass shapes = new JavaClass(ByteBuffer.wrap(javac.getBytes("Shapes")));
+		assertEquals(0, thread.run(shapes, shapes.getMethod("isSquare"), Slot.of("square")).intValue());
+		assertEquals(-2, thread.run(shapes, shapes.getMethod("divide"), Slot.of(0)).intValue());
+		assertThrows(ClassCastException.class,
+				() -> thread.run(shapes, shapes.getMethod("toSquare"), Slot.of("square")));
+	}
+	@Test
+	void testUnreadableClassPath(@TempDir final Path directory) throws Exception {
+		final Path file = Files.write(directory.resolve("Missing.class"), new byte[0]);
+		final ClassPath classPath = new ClassPath(directory);
+		thread.setClassPath(classPath);
+		assertSame(classPath, thread.getClassPath());
+		Files.delete(file);
+		assertThrows(UncheckedIOException.class, () -> thread.getEmulatedClass("Missing"));
+	}
+}
@@ -0,0 +1,111 @@
+/*
+ * Copyright (c) 2020, Alex Blewitt, Bandlem Ltd
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package com.bandlem.jvm.jvmulator;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+public class LocalsTest {
+	private Locals locals;
+	@BeforeEach
+	void newLocals() {
+		locals = new Locals(4);
+	}
+	@Test
+	void testIncrement() {
+		locals.store(0, 41);
+		locals.increment(0, 1);
+		assertEquals(42, locals.loadInt(0));
+		locals.increment(0, -50);
+		assertEquals(-8, locals.loadInt(0));
+		locals.store(1, 1F);
+		assertThrows(ClassCastException.class, () -> locals.increment(1, 1));
+	}
+	@Test
+	void testLoadStore() {
+		assertEquals(4, locals.size());
+		locals.store(0, 1);
+		locals.store(1, 2F);
+		locals.store(2, "three");
+		locals.store(3, (Object) null);
+		assertEquals(1, locals.loadInt(0));
+		assertEquals(2F, locals.loadFloat(1));
+		assertEquals("three", locals.loadReference(2));
+		assertNull(locals.loadReference(3));
+		locals.store(0, 4L);
+		locals.store(2, 5D);
+		assertEquals(4L, locals.loadLong(0));
+		assertEquals(5D, locals.loadDouble(2));
+		// A wide value in the last slot is tolerated
+		locals.store(3, 6L);
+		assertEquals(6L, locals.loadLong(3));
+		assertThrows(ClassCastException.class, () -> locals.loadInt(3));
+		assertThrows(IllegalStateException.class, () -> locals.store(0, Slot.of(1)));
+	}
+	@Test
+	void testReset() {
+		locals.store(0, "zero");
+		locals.store(3, 6L);
+		locals.reset(2);
+		assertEquals(2, locals.size());
+		assertTrue(locals.at(0) == Slot.empty());
+		assertThrows(ClassCastException.class, () -> locals.loadLong(3));
+		locals.reset(8);
+		assertEquals(8, locals.size());
+		locals.store(7, 9D);
+		assertEquals(9D, locals.loadDouble(7));
+	}
+	@Test
+	void testUninitialized() {
+		assertTrue(locals.at(0) == Slot.empty());
+		assertThrows(ClassCastException.class, () -> locals.loadInt(0));
+		assertThrows(ClassCastException.class, () -> locals.loadReference(0));
+		assertThrows(IndexOutOfBoundsException.class, () -> locals.at(4));
+		assertThrows(IndexOutOfBoundsException.class, () -> locals.at(-1));
+	}
+	@Test
+	void testView() {
+		locals.set(0, Slot.of(1L));
+		locals.set(2, Slot.of("two"));
+		locals.set(3, Slot.of(3F));
+		assertEquals(Slot.of(1L), locals.at(0));
+		assertTrue(locals.at(1) == Slot.empty());
+		assertEquals(Slot.of("two"), locals.at(2));
+		assertEquals(Slot.of(3F), locals.at(3));
+		assertEquals(1L, locals.loadLong(0));
+		assertEquals("two", locals.loadReference(2));
+		assertThrows(IndexOutOfBoundsException.class, () -> locals.set(4, Slot.of(0)));
+	}
+	@Test
+	void testWide() {
+		// Storing into the upper half of a wide value invalidates it
+		locals.store(0, 1L);
+		locals.store(1, 2);
+		assertTrue(locals.at(0) == Slot.empty());
+		assertThrows(ClassCastException.class, () -> locals.loadLong(0));
+		assertEquals(2, locals.loadInt(1));
+		// Storing a wide value over the upper half of another invalidates it
+		locals.store(0, 3D);
+		locals.store(1, 4L);
+		assertTrue(locals.at(0) == Slot.empty());
+		assertTrue(locals.at(2) == Slot.empty());
+		assertEquals(4L, locals.loadLong(1));
+		// Storing over the lower half leaves the upper half empty
+		locals.store(1, "five");
+		assertEquals("five", locals.loadReference(1));
+		assertTrue(locals.at(2) == Slot.empty());
+		// Storing a wide value clears any reference it replaces
+		locals.store(2, "six");
+		locals.store(2, 7D);
+		assertEquals(7D, locals.loadDouble(2));
+		assertTrue(locals.at(3) == Slot.empty());
+	}
+}
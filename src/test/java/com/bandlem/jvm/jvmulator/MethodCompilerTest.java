@@ -0,0 +1,240 @@
+/*
+ * Copyright (c) 2020, Alex Blewitt, Bandlem Ltd
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package com.bandlem.jvm.jvmulator;
+import static com.bandlem.jvm.jvmulator.Opcodes.*;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.IntSupplier;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import com.bandlem.jvm.jvmulator.classfile.ConstantPool.IntConstant;
+import com.bandlem.jvm.jvmulator.classfile.ConstantPool.MethodType;
+import com.bandlem.jvm.jvmulator.classfile.ConstantPool.UTFConstant;
+import com.bandlem.jvm.jvmulator.classfile.JavaClass;
+import com.bandlem.jvm.jvmulator.classfile.Member.Method;
+class MethodCompilerTest {
+	public static class Compiled {
+		public static int counter;
+		private static int hidden;
+		static {
+			hidden = 1;
+		}
+		public static int callsFib(final int n) {
+			return fib(n);
+		}
+		public static int catching(final int a) {
+			try {
+				return 1 / a;
+			} catch (final ArithmeticException e) {
+				return 0;
+			}
+		}
+		public static double constants(final int i) {
+			return i * 123456 + i * 12345678901L + i * 1.5f + i * 2.5d + "text".length()
+					+ Compiled.class.getName().length();
+		}
+		public static int divide(final int a, final int b) {
+			return a / b;
+		}
+		public static int fib(final int n) {
+			return n < 2 ? n : fib(n - 1) + fib(n - 2);
+		}
+		public static int hidden() {
+			return hidden;
+		}
+		public static int host(final List<String> list) {
+			final List<String> copy = new ArrayList<>(list);
+			final Object object = copy;
+			final String[] strings = copy.toArray(new String[copy.size()]);
+			final int[][] grid = new int[2][3];
+			final Compiled compiled = new Compiled();
+			compiled.value = grid[1].length;
+			counter++;
+			return object instanceof ArrayList ? ((ArrayList<?>) object).size() + strings.length + compiled.value : -1;
+		}
+		public static void increment() {
+			counter++;
+		}
+		public static int lambda() {
+			final IntSupplier supplier = () -> 1;
+			return supplier.getAsInt();
+		}
+		public static Class<?> load() throws ClassNotFoundException {
+			return Class.forName("missing.Class");
+		}
+		public static synchronized int locked() {
+			return 1;
+		}
+		public static int loop(final int n) {
+			int total = 0;
+			for (int i = 0; i < n; i++) {
+				total += i;
+			}
+			return total;
+		}
+		public static int packagePrivate() {
+			return new PackagePrivate().hashCode();
+		}
+		public static int square(final int n) {
+			return n * n;
+		}
+		public static long square(final long n) {
+			return square((int) n);
+		}
+		public int value;
+		public int instance() {
+			return value;
+		}
+	}
+	static class PackagePrivate {
+	}
+	// A class whose method loads the given number of int constants with ldc_w,
+	// then returns a constant of the given type loaded with ldc
+	private static JavaClass constants(final int count, final int type) throws IOException {
+		final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		final DataOutputStream out = new DataOutputStream(bytes);
+		out.writeInt(0xcafebabe);
+		out.writeShort(0);
+		out.writeShort(49);
+		out.writeShort(9 + count);
+		out.writeByte(UTFConstant.TYPE);
+		out.writeUTF("Generated");
+		out.writeByte(7);
+		out.writeShort(1);
+		out.writeByte(UTFConstant.TYPE);
+		out.writeUTF("run");
+		out.writeByte(UTFConstant.TYPE);
+		out.writeUTF("()I");
+		out.writeByte(UTFConstant.TYPE);
+		out.writeUTF("Code");
+		out.writeByte(UTFConstant.TYPE);
+		out.writeUTF("java/lang/Object");
+		out.writeByte(7);
+		out.writeShort(6);
+		out.writeByte(type);
+		if (type == MethodType.TYPE) {
+			out.writeShort(4);
+		} else {
+			out.writeInt(-1);
+		}
+		for (int i = 0; i < count; i++) {
+			out.writeByte(IntConstant.TYPE);
+			out.writeInt(i);
+		}
+		out.writeShort(0x21);
+		out.writeShort(2);
+		out.writeShort(7);
+		out.writeShort(0);
+		out.writeShort(0);
+		out.writeShort(1);
+		out.writeShort(0x9);
+		out.writeShort(3);
+		out.writeShort(4);
+		out.writeShort(1);
+		out.writeShort(5);
+		final int length = 4 * count + 3;
+		out.writeInt(12 + length);
+		out.writeShort(1);
+		out.writeShort(0);
+		out.writeInt(length);
+		for (int i = 0; i < count; i++) {
+			out.writeByte(LDC_W);
+			out.writeShort(9 + i);
+			out.writeByte(POP);
+		}
+		out.writeByte(LDC);
+		out.writeByte(8);
+		out.writeByte(IRETURN);
+		out.writeShort(0);
+		out.writeShort(0);
+		out.writeShort(0);
+		return new JavaClass(ByteBuffer.wrap(bytes.toByteArray()));
+	}
+	// Parsed for each test, as the heat and compiled code are kept with the methods
+	private JavaClass javaClass;
+	private final JVMThread thread = new JVMThread();
+	private Slot run(final String name, final Slot... arguments) {
+		return thread.run(javaClass, javaClass.getMethod(name), arguments);
+	}
+	@BeforeEach
+	void setup() {
+		final InputStream in = Compiled.class
+				.getResourceAsStream("/" + Compiled.class.getName().replace('.', '/') + ".class");
+		javaClass = new JavaClass(new DataInputStream(in));
+	}
+	@Test
+	void testCompile() {
+		thread.setCompileThreshold(1);
+		assertEquals(6765, run("fib", Slot.of(20)).intValue());
+		assertEquals(0, thread.getDepth());
+		assertNotNull(Instructions.of(javaClass.getMethod("fib").getCodeAttribute()).compiled);
+		assertEquals(Compiled.constants(3), run("constants", Slot.of(3)).doubleValue());
+		final int counter = Compiled.counter;
+		assertEquals(7, run("host", Slot.of(List.of("a", "b"))).intValue());
+		assertNull(run("increment"));
+		assertEquals(counter + 2, Compiled.counter);
+		// Calls to other methods of the class, including overloads, go to the host class
+		assertEquals(55, run("callsFib", Slot.of(10)).intValue());
+		assertEquals(9L, thread.run(javaClass, javaClass.getMethod("square", "(J)J"), Slot.of(3L)).longValue());
+		// Exceptions are thrown as the interpreter would
+		assertThrows(ArithmeticException.class, () -> run("divide", Slot.of(1), Slot.of(0)));
+		assertThrows(ClassNotFoundException.class, () -> run("load"));
+	}
+	@Test
+	void testHeat() {
+		final Instructions instructions = Instructions.of(javaClass.getMethod("loop").getCodeAttribute());
+		assertEquals(JVMThread.COMPILE_THRESHOLD, thread.getCompileThreshold());
+		thread.setCompileThreshold(0);
+		assertEquals(45, run("loop", Slot.of(10)).intValue());
+		assertEquals(10, instructions.heat);
+		assertNull(instructions.compiled);
+		// The back-edges of the first run make the second one hot
+		thread.setCompileThreshold(12);
+		assertEquals(45, run("loop", Slot.of(10)).intValue());
+		assertNull(instructions.compiled);
+		assertEquals(45, run("loop", Slot.of(10)).intValue());
+		assertNotNull(instructions.compiled);
+		assertEquals(22, instructions.heat);
+		// Calls from interpreted methods go to the compiled method too
+		thread.setCompileThreshold(100);
+		assertEquals(6765, run("fib", Slot.of(20)).intValue());
+		assertNotNull(Instructions.of(javaClass.getMethod("fib").getCodeAttribute()).compiled);
+	}
+	@Test
+	void testUncompilable() throws IOException {
+		for (final String name : new String[] {
+				"catching", "hidden", "instance", "lambda", "locked", "packagePrivate", "<clinit>"
+		}) {
+			assertNull(MethodCompiler.compile(javaClass, javaClass.getMethod(name)), name);
+		}
+		final JavaClass generated = constants(10, IntConstant.TYPE);
+		thread.setCompileThreshold(1);
+		assertEquals(-1, thread.run(generated, generated.getMethod("run")).intValue());
+		assertNotNull(Instructions.of(generated.getMethod("run").getCodeAttribute()).compiled);
+		// The constant for ldc is copied after the others, beyond its reach
+		final JavaClass outOfRange = constants(300, IntConstant.TYPE);
+		final Method method = outOfRange.getMethod("run");
+		assertEquals(-1, thread.run(outOfRange, method).intValue());
+		assertTrue(Instructions.of(method.getCodeAttribute()).uncompilable);
+		assertEquals(-1, thread.run(outOfRange, method).intValue());
+		final JavaClass methodType = constants(1, MethodType.TYPE);
+		assertNull(MethodCompiler.compile(methodType, methodType.getMethod("run")));
+	}
+}
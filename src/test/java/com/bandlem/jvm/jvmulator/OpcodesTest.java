@@ -25,6 +25,7 @@ import static com.bandlem.jvm.jvmulator.Opcodes.IFGE;
 import static com.bandlem.jvm.jvmulator.Opcodes.IFGT;
 import static com.bandlem.jvm.jvmulator.Opcodes.IFLE;
 import static com.bandlem.jvm.jvmulator.Opcodes.IFLT;
+import static com.bandlem.jvm.jvmulator.Opcodes.IFNE;
 import static com.bandlem.jvm.jvmulator.Opcodes.IFNONNULL;
 import static com.bandlem.jvm.jvmulator.Opcodes.IFNULL;
 import static com.bandlem.jvm.jvmulator.Opcodes.IF_ACMPEQ;
@@ -316,6 +317,7 @@ class OpcodesTest {
 			case IFGT:
 			case IFLE:
 			case IFLT:
+			case IFNE:
 			case IFNONNULL:
 			case IFNULL:
 			case IINC:
@@ -345,6 +347,7 @@ class OpcodesTest {
 			case TABLESWITCH:
 			case LOOKUPSWITCH:
 				operands = -1;
+				break;
 			default:
 				operands = 0;
 			}
@@ -0,0 +1,127 @@
+/*
+ * Copyright (c) 2020, Alex Blewitt, Bandlem Ltd
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package com.bandlem.jvm.jvmulator;
+import static com.bandlem.jvm.jvmulator.Opcodes.*;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import java.io.DataInputStream;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.Set;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import com.bandlem.jvm.jvmulator.JVMThreadTest.Recursive;
+import com.bandlem.jvm.jvmulator.classfile.JavaClass;
+@EnabledIfSystemProperty(named = "jvmulator.profile", matches = "true")
+public class ProfilerTest {
+	public static class Overloads {
+		public static int twice(final int value) {
+			return value * 2;
+		}
+		public static long twice(final long value) {
+			return value * 2;
+		}
+	}
+	private static final String UNKNOWN = "<unknown>:<unknown>";
+	private final Profiler profiler = new Profiler();
+	private JVMFrame frame(final byte... code) {
+		final JVMFrame frame = new JVMFrame(null, 0, code);
+		frame.getThread().setListener(profiler);
+		return frame;
+	}
+	@Test
+	void testCounts() {
+		assertEquals(3, frame(ICONST_1, ICONST_2, IADD, IRETURN).run().intValue());
+		assertEquals(3, frame(ICONST_1, ICONST_2, IADD, IRETURN).run().intValue());
+		final ProfileSnapshot snapshot = profiler.snapshot();
+		assertEquals(2, snapshot.getCount(IADD));
+		assertEquals(0, snapshot.getCount(ISUB));
+		assertTrue(snapshot.getNanos(IADD) >= 0);
+		assertEquals(Set.of(UNKNOWN), snapshot.getMethods());
+		assertEquals(2, snapshot.getCount(UNKNOWN, 3));
+		assertEquals(0, snapshot.getCount(UNKNOWN, 100));
+		assertEquals(0, snapshot.getCount("missing", 0));
+		assertTrue(snapshot.getNanos(UNKNOWN, 0) >= 0);
+		assertEquals(0, snapshot.getNanos(UNKNOWN, 100));
+		assertEquals(0, snapshot.getNanos("missing", 0));
+		profiler.reset();
+		assertEquals(0, profiler.snapshot().getCount(IADD));
+		assertEquals(2, snapshot.getCount(IADD));
+	}
+	@Test
+	void testDisabled() {
+		assertEquals(1, new JVMFrame(null, 0, new byte[] {
+				ICONST_1, IRETURN
+		}).run().intValue());
+	}
+	@Test
+	void testEngine() {
+		// The threaded engine has no per-instruction hook, so profiled runs use the switch
+		final JVMFrame frame = frame(ICONST_1, ICONST_2, IADD, IRETURN);
+		frame.getThread().setEngine(JVMThread.Engine.THREADED);
+		assertEquals(3, frame.run().intValue());
+		assertEquals(1, profiler.snapshot().getCount(IADD));
+		final JVMFrame unprofiled = new JVMFrame(null, 0, new byte[] {
+				ICONST_1, IRETURN
+		});
+		unprofiled.getThread().setEngine(JVMThread.Engine.THREADED);
+		assertEquals(1, unprofiled.run().intValue());
+	}
+	@Test
+	void testFailure() {
+		assertThrows(ArithmeticException.class, () -> frame(ICONST_1, ICONST_0, IDIV, IRETURN).run());
+		assertEquals(1, profiler.snapshot().getCount(IDIV));
+	}
+	@Test
+	void testHistogram() {
+		final byte[] code = new byte[33];
+		Arrays.fill(code, NOP);
+		code[32] = RETURN;
+		frame(code).run();
+		final String histogram = profiler.snapshot().histogram();
+		assertTrue(histogram.startsWith("opcode"));
+		assertTrue(histogram.contains("nop                        32"));
+		assertTrue(histogram.contains(UNKNOWN));
+		assertTrue(histogram.contains("      32 return                      1"));
+	}
+	@Test
+	void testOverloads() {
+		final InputStream in = Overloads.class
+				.getResourceAsStream("/" + Overloads.class.getName().replace('.', '/') + ".class");
+		final JavaClass javaClass = new JavaClass(new DataInputStream(in));
+		final JVMThread thread = new JVMThread();
+		thread.setListener(profiler);
+		assertEquals(4, thread.run(javaClass, javaClass.getMethod("twice", "(I)I"), Slot.of(2)).intValue());
+		assertEquals(6L, thread.run(javaClass, javaClass.getMethod("twice", "(J)J"), Slot.of(3L)).longValue());
+		assertEquals(6L, thread.run(javaClass, javaClass.getMethod("twice", "(J)J"), Slot.of(3L)).longValue());
+		// Overloads are profiled apart, by their descriptors
+		final ProfileSnapshot snapshot = profiler.snapshot();
+		assertEquals(Set.of(javaClass.this_class + ":twice(I)I", javaClass.this_class + ":twice(J)J"),
+				snapshot.getMethods());
+		assertEquals(1, snapshot.getCount(javaClass.this_class + ":twice(I)I", 0));
+		assertEquals(2, snapshot.getCount(javaClass.this_class + ":twice(J)J", 0));
+	}
+	@Test
+	void testRecursion() {
+		final InputStream in = Recursive.class
+				.getResourceAsStream("/" + Recursive.class.getName().replace('.', '/') + ".class");
+		final JavaClass javaClass = new JavaClass(new DataInputStream(in));
+		final JVMThread thread = new JVMThread();
+		thread.setListener(profiler);
+		// Profiled methods are never compiled, so that every instruction is seen
+		thread.setCompileThreshold(1);
+		assertEquals(5, thread.run(javaClass, javaClass.getMethod("fib"), Slot.of(5)).intValue());
+		assertEquals(15, profiler.snapshot().getCount(javaClass.this_class + ":fib(I)I", 0));
+		final JVMThread unprofiled = new JVMThread();
+		unprofiled.setCompileThreshold(1);
+		assertEquals(5, unprofiled.run(javaClass, javaClass.getMethod("fib"), Slot.of(5)).intValue());
+		assertEquals(15, profiler.snapshot().getCount(javaClass.this_class + ":fib(I)I", 0));
+	}
+}
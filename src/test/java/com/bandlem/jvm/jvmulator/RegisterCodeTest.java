@@ -0,0 +1,215 @@
+/*
+ * Copyright (c) 2020, Alex Blewitt, Bandlem Ltd
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package com.bandlem.jvm.jvmulator;
+import static com.bandlem.jvm.jvmulator.Opcodes.*;
+import static com.bandlem.jvm.jvmulator.RegisterCode.CHECK;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import java.io.DataInputStream;
+import java.io.InputStream;
+import java.util.function.Consumer;
+import org.junit.jupiter.api.Test;
+import com.bandlem.jvm.jvmulator.classfile.Attribute.Code;
+import com.bandlem.jvm.jvmulator.classfile.JavaClass;
+class RegisterCodeTest {
+	public static class Loop {
+		public static int loop(final int n) {
+			int total = 0;
+			for (int i = 0; i < n; i++) {
+				total += i;
+			}
+			return total;
+		}
+	}
+	// Runs the code with the register and switch engines, which must give the same result
+	private static void expect(final byte[] code, final Consumer<Locals> locals) {
+		assertEquals(frame(code, JVMThread.Engine.SWITCH, locals).run(),
+				frame(code, JVMThread.Engine.REGISTER, locals).run());
+	}
+	// Runs the code with the register and switch engines, which must fail in the same way
+	private static void fails(final byte[] code) {
+		final Class<?> expected = assertThrows(RuntimeException.class,
+				() -> frame(code, JVMThread.Engine.SWITCH, locals -> {
+				}).run()).getClass();
+		assertEquals(expected, assertThrows(RuntimeException.class,
+				() -> frame(code, JVMThread.Engine.REGISTER, locals -> {
+				}).run()).getClass());
+	}
+	private static JVMFrame frame(final byte[] code, final JVMThread.Engine engine, final Consumer<Locals> locals) {
+		final JVMFrame frame = new JVMFrame(null, 4, code);
+		frame.getThread().setEngine(engine);
+		locals.accept(frame.getLocals());
+		return frame;
+	}
+	private static RegisterCode translate(final byte[] code) {
+		return new Instructions(code).getRegisterCode(null, 4, null);
+	}
+	@Test
+	void testCopies() {
+		// A load is copied before the local is overwritten
+		expect(new byte[] {
+				ILOAD_0, ICONST_5, ISTORE_0, IRETURN
+		}, locals -> locals.store(0, 3));
+		expect(new byte[] {
+				ILOAD_0, ICONST_5, ISTORE_2, IRETURN
+		}, locals -> locals.store(0, 3));
+		expect(new byte[] {
+				ILOAD_2, ICONST_5, ISTORE_0, IRETURN
+		}, locals -> locals.store(2, 3));
+		// Stores that cannot retarget the instruction computing the value
+		expect(new byte[] {
+				ICONST_1, ICONST_2, ISTORE_0, ISTORE_1, ILOAD_0, ILOAD_1, ISUB, IRETURN
+		}, locals -> {
+		});
+		expect(new byte[] {
+				ILOAD_1, ISTORE_0, ILOAD_0, IRETURN
+		}, locals -> locals.store(1, 7));
+		expect(new byte[] {
+				LLOAD_0, LSTORE_2, LLOAD_2, LRETURN
+		}, locals -> locals.store(0, 5L));
+		// Dups are moved into their own registers before a branch
+		expect(new byte[] {
+				ICONST_2, DUP, ICONST_0, IFEQ, 0, 3, IADD, IRETURN
+		}, locals -> {
+		});
+		expect(new byte[] {
+				LCONST_1, DUP2, ICONST_0, IFEQ, 0, 3, LADD, LRETURN
+		}, locals -> {
+		});
+		// Loads are copied with their type before a branch
+		expect(new byte[] {
+				ILOAD_0, ICONST_0, IFEQ, 0, 3, IRETURN
+		}, locals -> locals.store(0, 1));
+		expect(new byte[] {
+				LLOAD_0, ICONST_0, IFEQ, 0, 3, LRETURN
+		}, locals -> locals.store(0, 5L));
+		expect(new byte[] {
+				FLOAD_0, ICONST_0, IFEQ, 0, 3, FRETURN
+		}, locals -> locals.store(0, 1.5F));
+		expect(new byte[] {
+				DLOAD_0, ICONST_0, IFEQ, 0, 3, DRETURN
+		}, locals -> locals.store(0, 2.5));
+		expect(new byte[] {
+				ALOAD_0, ICONST_0, IFEQ, 0, 3, ARETURN
+		}, locals -> locals.store(0, "value"));
+		// Copies of loads before a branch
+		expect(new byte[] {
+				ILOAD_0, ILOAD_0, DUP2, DUP2, DUP2, DUP2, DUP2, DUP2, ICONST_0, IFEQ, 0, 3, POP2, POP2, POP2, POP2,
+				POP2, POP2, POP2, ILOAD_0, IRETURN
+		}, locals -> locals.store(0, 9));
+		// Enough copies to outgrow the initial capacity
+		expect(new byte[] {
+				ILOAD_0, DUP, DUP2, DUP2, DUP2, DUP2, DUP2, DUP2, DUP2, ICONST_0, IFEQ, 0, 3, IADD, IADD, IADD, IADD,
+				IADD, IADD, IADD, IADD, IADD, IADD, IADD, IADD, IADD, IADD, IADD, IRETURN
+		}, locals -> locals.store(0, 1));
+	}
+	@Test
+	void testFailures() {
+		// Locals that are not proven are checked when they are loaded
+		assertEquals(CHECK, translate(new byte[] {
+				ILOAD_0, IRETURN
+		}).opcode(0));
+		fails(new byte[] {
+				ILOAD_0, IRETURN
+		});
+		fails(new byte[] {
+				IINC, 0, 1, RETURN
+		});
+		fails(new byte[] {
+				FCONST_0, ISTORE_0, RETURN
+		});
+		fails(new byte[] {
+				ICONST_0, ICONST_0, IDIV, IRETURN
+		});
+		fails(new byte[] {
+				ICONST_0, ICONST_0, IREM, IRETURN
+		});
+		fails(new byte[] {
+				LCONST_0, LCONST_0, LDIV, LRETURN
+		});
+		fails(new byte[] {
+				LCONST_0, LCONST_0, LREM, LRETURN
+		});
+	}
+	@Test
+	void testLoop() {
+		final InputStream in = Loop.class.getResourceAsStream("/" + Loop.class.getName().replace('.', '/') + ".class");
+		final JavaClass javaClass = new JavaClass(new DataInputStream(in));
+		final Code code = javaClass.getMethod("loop").getCodeAttribute();
+		final Instructions instructions = Instructions.of(code);
+		final RegisterCode registerCode = instructions.getRegisterCode(javaClass.pool, code.getMaxLocals(),
+				javaClass.getMethod("loop"));
+		// The constants are stored directly, and the loads and stores of the loop
+		// are folded into the test and the add
+		assertEquals(15, instructions.size());
+		assertEquals(7, registerCode.size());
+		assertEquals(SIPUSH, registerCode.opcode(0));
+		assertEquals(IF_ICMPGE, registerCode.opcode(2));
+		assertEquals(IADD, registerCode.opcode(3));
+		final JVMThread thread = new JVMThread();
+		thread.setEngine(JVMThread.Engine.REGISTER);
+		assertEquals(45, thread.run(javaClass, javaClass.getMethod("loop"), Slot.of(10)).intValue());
+		// Arguments of the wrong type are left to the threaded engine
+		assertThrows(ClassCastException.class,
+				() -> thread.run(javaClass, javaClass.getMethod("loop"), Slot.of(1.5F)));
+	}
+	@Test
+	void testStack() {
+		// Dups and pops only change where the slots are found, whatever their type
+		expect(new byte[] {
+				ICONST_1, ICONST_0, IFEQ, 0, 3, DUP, IADD, IRETURN
+		}, locals -> {
+		});
+		expect(new byte[] {
+				ICONST_1, NEWARRAY, T_INT, ICONST_2, DUP2, POP2, POP2, ICONST_3, IRETURN
+		}, locals -> {
+		});
+		expect(new byte[] {
+				ICONST_1, ICONST_2, NEWARRAY, T_INT, DUP2, POP2, POP2, ICONST_3, IRETURN
+		}, locals -> {
+		});
+		expect(new byte[] {
+				ICONST_2, ICONST_1, NEWARRAY, T_INT, POP2, ICONST_3, IRETURN
+		}, locals -> {
+		});
+		expect(new byte[] {
+				ICONST_1, NEWARRAY, T_INT, POP, ICONST_0, POP, ICONST_3, IRETURN
+		}, locals -> {
+		});
+	}
+	@Test
+	void testUntranslated() {
+		for (final byte[] code : new byte[][] {
+				{
+						// Half of a wide value
+						LCONST_1, POP, POP, RETURN
+				}, {
+						LCONST_1, ICONST_0, SWAP, POP2, POP, RETURN
+				}, {
+						// Falls off the end
+						NOP
+				}, {
+						// Different depths where the paths join
+						ICONST_0, IFEQ, 0, 4, ICONST_1, NOP, RETURN
+				}, {
+						ICONST_0, ICONST_0, IRETURN
+				}, {
+						ICONST_0, ISTORE, 4, RETURN
+				}, {
+						// Constants need a pool
+						LDC, 1, POP, RETURN
+				}, {
+						JSR, 0, 3, RETURN
+				}
+		}) {
+			assertNull(translate(code));
+		}
+	}
+}
@@ -0,0 +1,19 @@
+/*
+ * Copyright (c) 2020, Alex Blewitt, Bandlem Ltd
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package com.bandlem.jvm.jvmulator;
+import com.bandlem.jvm.jvmulator.classfile.JavaClass;
+// Runs the interpreter tests again with the register engine
+class RegisterTest extends JVMTest {
+	@Override
+	JVMFrame frame(final JavaClass javaClass, final int locals, final byte[] code) {
+		final JVMFrame frame = super.frame(javaClass, locals, code);
+		frame.getThread().setEngine(JVMThread.Engine.REGISTER);
+		return frame;
+	}
+}
@@ -0,0 +1,52 @@
+/*
+ * Copyright (c) 2020, Alex Blewitt, Bandlem Ltd
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package com.bandlem.jvm.jvmulator;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import org.junit.jupiter.api.Test;
+public class ResolvedFieldTest {
+	public static class Holder {
+		private long hidden = 5;
+		public int value = 42;
+		public int[] values = {
+				1, 2
+		};
+	}
+	public static class SubHolder extends Holder implements Constants {
+	}
+	interface Constants {
+		String NAME = "constants";
+	}
+	@Test
+	void testDeclared() {
+		// Private and inherited fields are found as they are by the bytecode
+		final SubHolder holder = new SubHolder();
+		final ResolvedField field = ResolvedField.resolve(SubHolder.class.getName(), "hidden", "J");
+		assertEquals(Holder.class.getName() + ":hidden", field.toString());
+		field.put(Slot.of(6L), holder);
+		assertEquals(6L, field.get(holder).longValue());
+		assertEquals(2, ((int[]) ResolvedField.resolve(SubHolder.class.getName(), "values", "[I").get(holder)
+				.referenceValue())[1]);
+		assertEquals("constants", ResolvedField.resolve(SubHolder.class.getName(), "NAME", "Ljava/lang/String;")
+				.get(null).referenceValue());
+	}
+	@Test
+	void testField() {
+		final Holder holder = new Holder();
+		final ResolvedField field = ResolvedField.resolve(Holder.class.getName(), "value", "I");
+		assertEquals(Holder.class.getName() + ":value", field.toString());
+		assertEquals(42, field.get(holder).intValue());
+		field.put(Slot.of(7), holder);
+		assertEquals(7, holder.value);
+		assertThrows(UnsupportedOperationException.class, () -> field.get("not a holder"));
+		assertThrows(UnsupportedOperationException.class, () -> field.put(Slot.of(1), "not a holder"));
+		assertThrows(UnsupportedOperationException.class,
+				() -> ResolvedField.resolve(Holder.class.getName(), "missing", "I"));
+	}
+}
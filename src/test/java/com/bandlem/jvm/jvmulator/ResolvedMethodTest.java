@@ -0,0 +1,97 @@
+/*
+ * Copyright (c) 2020, Alex Blewitt, Bandlem Ltd
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package com.bandlem.jvm.jvmulator;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.Test;
+public class ResolvedMethodTest {
+	private final Stack stack = new Stack();
+	private void invoke(final String className, final String methodName, final String descriptor) {
+		ResolvedMethod.resolve(methodName, descriptor, className, null).invoke(stack);
+	}
+	@Test
+	void testArgumentOrder() {
+		stack.push(5);
+		stack.push(3);
+		invoke("java/lang/Math", "subtractExact", "(II)I");
+		assertEquals(2, stack.popInt());
+		stack.push("emulator");
+		stack.push(1);
+		stack.push(4);
+		invoke("java/lang/String", "substring", "(II)Ljava/lang/String;");
+		assertEquals("mul", stack.popReference());
+		assertEquals(0, stack.size());
+	}
+	@Test
+	void testConstructor() {
+		final ResolvedMethod constructor = ResolvedMethod.constructor("(Ljava/lang/String;)V",
+				"java/lang/StringBuilder", null);
+		assertEquals("java.lang.StringBuilder:<init>", constructor.toString());
+		assertTrue(constructor.returnsValue());
+		stack.push("built");
+		constructor.invoke(stack);
+		assertEquals("built", stack.popReference().toString());
+		assertThrows(UnsupportedOperationException.class,
+				() -> ResolvedMethod.constructor("(Ljava/lang/Thread;)V", "java/lang/StringBuilder", null));
+	}
+	@Test
+	void testMethod() {
+		final ResolvedMethod method = ResolvedMethod.resolve("length", "()I", "java/lang/String", null);
+		assertEquals("java.lang.String:length", method.toString());
+		assertTrue(method.returnsValue());
+		stack.push("four");
+		method.invoke(stack);
+		assertEquals(4, stack.popInt());
+		stack.push(4);
+		assertThrows(ClassCastException.class, () -> method.invoke(stack));
+		assertThrows(UnsupportedOperationException.class,
+				() -> ResolvedMethod.resolve("missing", "()V", "java/lang/String", null));
+		assertFalse(ResolvedMethod.resolve("gc", "()V", "java/lang/System", null).returnsValue());
+	}
+	@Test
+	void testTypes() {
+		stack.push(1L);
+		stack.push(2L);
+		invoke("java/lang/Long", "compare", "(JJ)I");
+		assertEquals(-1, stack.popInt());
+		stack.push(2F);
+		stack.push(3F);
+		invoke("java/lang/Math", "max", "(FF)F");
+		assertEquals(3F, stack.popFloat());
+		stack.push(2D);
+		stack.push(3D);
+		invoke("java/lang/Math", "pow", "(DD)D");
+		assertEquals(8D, stack.popDouble());
+		stack.push(-1L);
+		invoke("java/lang/Math", "abs", "(J)J");
+		assertEquals(1L, stack.popLong());
+		stack.push(true);
+		stack.push(false);
+		invoke("java/lang/Boolean", "logicalXor", "(ZZ)Z");
+		assertEquals(1, stack.popInt());
+		stack.push('a');
+		invoke("java/lang/Character", "toUpperCase", "(C)C");
+		assertEquals('A', stack.popInt());
+		stack.push(-1);
+		invoke("java/lang/Byte", "toUnsignedInt", "(B)I");
+		assertEquals(255, stack.popInt());
+		stack.push(0x0102);
+		invoke("java/lang/Short", "reverseBytes", "(S)S");
+		assertEquals(0x0201, stack.popInt());
+		stack.push(0x7f);
+		invoke("java/lang/Byte", "valueOf", "(B)Ljava/lang/Byte;");
+		assertEquals(Byte.valueOf((byte) 0x7f), stack.popReference());
+		stack.push(Byte.valueOf((byte) -2));
+		invoke("java/lang/Byte", "byteValue", "()B");
+		assertEquals(-2, stack.popInt());
+		assertEquals(0, stack.size());
+	}
+}
@@ -0,0 +1,86 @@
+/*
+ * Copyright (c) 2020, Alex Blewitt, Bandlem Ltd
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package com.bandlem.jvm.jvmulator;
+import static com.bandlem.jvm.jvmulator.Opcodes.*;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+import com.bandlem.jvm.jvmulator.classfile.JavaClass;
+class SequenceMinerTest {
+	public static class Loop {
+		public static int loop(final int n) {
+			int total = 0;
+			for (int i = 0; i < n; i++) {
+				total += i;
+			}
+			return total;
+		}
+	}
+	private static String main(final String... args) throws IOException {
+		final PrintStream out = System.out;
+		final PrintStream err = System.err;
+		final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		try (PrintStream print = new PrintStream(bytes)) {
+			System.setOut(print);
+			System.setErr(print);
+			SequenceMiner.main(args);
+		} finally {
+			System.setOut(out);
+			System.setErr(err);
+		}
+		return bytes.toString();
+	}
+	@Test
+	void testAdd() {
+		final InputStream in = Loop.class.getResourceAsStream("/" + Loop.class.getName().replace('.', '/') + ".class");
+		final SequenceMiner miner = new SequenceMiner();
+		miner.add(new JavaClass(new DataInputStream(in)));
+		assertEquals(1, miner.getCount("iload iload if_icmpge"));
+		assertEquals(1, miner.getCount("iload iload iadd istore"));
+		assertEquals(2, miner.getCount("iload iload"));
+		assertEquals(1, miner.getCount("iinc goto"));
+		// Sequences stop at a transfer of control
+		assertEquals(0, miner.getCount("if_icmpge iload"));
+		assertEquals(0, miner.getCount("goto iload"));
+		assertEquals(0, miner.getCount("missing"));
+		assertTrue(miner.getInstructions() > 10);
+		assertEquals(List.of("iconst istore", "iload iload"), miner.top(2, 2));
+		assertTrue(miner.top(4, 100).contains("iload iload iadd istore"));
+		final String report = miner.report(5);
+		assertTrue(report.startsWith(miner.getInstructions() + " instructions"), report);
+		assertTrue(report.contains("length 4"), report);
+	}
+	@Test
+	void testGeneral() {
+		assertEquals("iconst", SequenceMiner.general(ICONST_M1));
+		assertEquals("iconst", SequenceMiner.general(SIPUSH));
+		assertEquals("aload", SequenceMiner.general(ALOAD_0));
+		assertEquals("istore", SequenceMiner.general(ISTORE_1));
+		assertEquals("dup_x1", SequenceMiner.general(DUP_X1));
+		assertEquals("lconst_0", SequenceMiner.general(LCONST_0));
+		assertEquals("iadd", SequenceMiner.general(IADD));
+		assertTrue(SequenceMiner.isTransfer(ATHROW));
+		assertFalse(SequenceMiner.isTransfer(IADD));
+	}
+	@Test
+	void testMain() throws IOException {
+		assertTrue(main().startsWith("Usage"));
+		final String path = Loop.class.getProtectionDomain().getCodeSource().getLocation().getPath();
+		final String report = main(path);
+		assertTrue(report.contains("length 2"), report);
+		assertTrue(report.contains("aload getfield"), report);
+	}
+}
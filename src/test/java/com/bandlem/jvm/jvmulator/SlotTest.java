@@ -60,6 +60,17 @@ public class SlotTest {
 		assertThrows(ClassCastException.class, slot::floatValue);
 	}
 	@Test
+	void testEquality() {
+		assertEquals(Slot.of(1), Slot.of(1));
+		assertEquals(Slot.of(1).hashCode(), Slot.of(1).hashCode());
+		assertEquals(Slot.of((Object) null), Slot.of((Object) null));
+		assertEquals(empty.hashCode(), Slot.of((Object) null).hashCode());
+		assertFalse(Slot.of(1).equals(Slot.of(2)));
+		assertFalse(Slot.of(1).equals(Slot.of(1L)));
+		assertFalse(empty.equals(Slot.of((Object) null)));
+		assertFalse(Slot.of(1).equals(1));
+	}
+	@Test
 	void testEmptySlot() {
 		final Slot slot = empty;
 		assertEquals("---", slot.toString());
@@ -71,6 +82,27 @@ public class SlotTest {
 		assertThrows(ClassCastException.class, slot::doubleValue);
 	}
 	@Test
+	void testFromBits() {
+		assertEquals(intSlot, Slot.of(Slot.INT_TYPE, intSlot.bits(), null));
+		assertEquals(floatSlot, Slot.of(Slot.FLOAT_TYPE, floatSlot.bits(), null));
+		assertEquals(longSlot, Slot.of(Slot.LONG_TYPE, longSlot.bits(), null));
+		assertEquals(doubleSlot, Slot.of(Slot.DOUBLE_TYPE, doubleSlot.bits(), null));
+		assertEquals(Slot.of("Hello"), Slot.of(Slot.REFERENCE_TYPE, 0, "Hello"));
+		assertEquals(empty, Slot.of(Slot.EMPTY_TYPE, 0, null));
+		assertEquals(0, empty.bits());
+		assertNull(intSlot.reference());
+		assertEquals("Hello", Slot.of("Hello").reference());
+		assertTrue(Slot.isWide(Slot.LONG_TYPE));
+		assertTrue(Slot.isWide(Slot.DOUBLE_TYPE));
+		assertFalse(Slot.isWide(Slot.INT_TYPE));
+		assertEquals("int", Slot.typeName(Slot.INT_TYPE));
+		assertEquals("float", Slot.typeName(Slot.FLOAT_TYPE));
+		assertEquals("long", Slot.typeName(Slot.LONG_TYPE));
+		assertEquals("double", Slot.typeName(Slot.DOUBLE_TYPE));
+		assertEquals("reference", Slot.typeName(Slot.REFERENCE_TYPE));
+		assertEquals("empty", Slot.typeName(Slot.EMPTY_TYPE));
+	}
+	@Test
 	void testFloatSlot() {
 		final Slot slot = floatSlot;
 		assertEquals(2F, slot.floatValue());
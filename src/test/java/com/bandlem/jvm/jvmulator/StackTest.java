@@ -11,12 +11,24 @@ import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
 import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.function.Executable;
 public class StackTest {
 	private Stack stack;
+	private void assertStack(final Slot... expected) {
+		final Stack slots = new Stack();
+		for (final Slot slot : expected) {
+			slots.pushSlot(slot);
+		}
+		assertEquals(slots.size(), stack.size());
+		for (int i = 0; i < slots.size(); i++) {
+			assertEquals(slots.at(i), stack.at(i));
+		}
+	}
 	@BeforeEach
 	void newStack() {
 		stack = new Stack();
@@ -31,6 +43,30 @@ public class StackTest {
 		assertThrows(IllegalStateException.class, stack::pop);
 	}
 	@Test
+	void testCapacity() {
+		stack = new Stack(1);
+		stack.push(1);
+		stack.push(2L);
+		stack.push(3F);
+		stack.push(4D);
+		stack.push("five");
+		assertEquals(7, stack.size());
+		assertEquals(1, stack.at(0).intValue());
+		assertEquals(2L, stack.at(1).longValue());
+		assertTrue(stack.at(2) == Slot.empty());
+		assertEquals(3F, stack.at(3).floatValue());
+		assertEquals(4D, stack.at(4).doubleValue());
+		assertEquals("five", stack.at(6).referenceValue());
+		assertThrows(IndexOutOfBoundsException.class, () -> stack.at(7));
+		assertThrows(IndexOutOfBoundsException.class, () -> stack.at(-1));
+		assertEquals("five", stack.popReference());
+		assertEquals(4D, stack.popDouble());
+		assertEquals(3F, stack.popFloat());
+		assertEquals(2L, stack.popLong());
+		assertEquals(1, stack.popInt());
+		assertEquals(0, new Stack(0).size());
+	}
+	@Test
 	void testDoublePushPeekPop() {
 		stack.push(8.0D);
 		final Slot s = stack.peek();
@@ -38,6 +74,98 @@ public class StackTest {
 		assertEquals(8.0D, s.doubleValue());
 	}
 	@Test
+	void testDrop() {
+		stack.push(1);
+		stack.push(2);
+		stack.drop();
+		assertEquals(1, stack.size());
+		stack.push(3L);
+		assertThrows(IllegalStateException.class, stack::drop);
+		stack.drop2();
+		assertEquals(1, stack.peek().intValue());
+		stack.push(4);
+		stack.drop2();
+		assertEquals(0, stack.size());
+		stack.push(5D);
+		stack.push(6);
+		assertThrows(IllegalStateException.class, stack::drop2);
+		assertEquals(5D, stack.popDouble());
+	}
+	@Test
+	void testDup() {
+		stack.push(1);
+		stack.push(2);
+		stack.dup();
+		assertStack(Slot.of(1), Slot.of(2), Slot.of(2));
+		stack.drop();
+		// The top value is copied below the ones that it is dup'ed past
+		stack.dup_x1();
+		assertStack(Slot.of(2), Slot.of(1), Slot.of(2));
+		stack.push(3);
+		stack.dup_x2();
+		assertStack(Slot.of(2), Slot.of(3), Slot.of(1), Slot.of(2), Slot.of(3));
+		stack.dup2();
+		assertStack(Slot.of(2), Slot.of(3), Slot.of(1), Slot.of(2), Slot.of(3), Slot.of(2), Slot.of(3));
+		stack.clear();
+		stack.push(1);
+		stack.push(2);
+		stack.push(3);
+		stack.dup2_x1();
+		assertStack(Slot.of(2), Slot.of(3), Slot.of(1), Slot.of(2), Slot.of(3));
+		stack.clear();
+		stack.push(1);
+		stack.push(2);
+		stack.push(3);
+		stack.push(4);
+		stack.dup2_x2();
+		assertStack(Slot.of(3), Slot.of(4), Slot.of(1), Slot.of(2), Slot.of(3), Slot.of(4));
+	}
+	@Test
+	void testDupWide() {
+		// Wide values take two slots, as in each form that the JVM defines
+		stack.push(7L);
+		stack.dup2();
+		assertStack(Slot.of(7L), Slot.of(7L));
+		stack.clear();
+		stack.push(1L);
+		stack.push(2);
+		stack.dup_x2();
+		assertStack(Slot.of(2), Slot.of(1L), Slot.of(2));
+		stack.clear();
+		stack.push(1);
+		stack.push(2D);
+		stack.dup2_x1();
+		assertStack(Slot.of(2D), Slot.of(1), Slot.of(2D));
+		stack.clear();
+		stack.push(1);
+		stack.push(2);
+		stack.push(3L);
+		stack.dup2_x2();
+		assertStack(Slot.of(3L), Slot.of(1), Slot.of(2), Slot.of(3L));
+		stack.clear();
+		stack.push(1L);
+		stack.push(2);
+		stack.push(3);
+		stack.dup2_x2();
+		assertStack(Slot.of(2), Slot.of(3), Slot.of(1L), Slot.of(2), Slot.of(3));
+		stack.clear();
+		stack.push(1L);
+		stack.push(2L);
+		stack.dup2_x2();
+		assertStack(Slot.of(2L), Slot.of(1L), Slot.of(2L));
+		// Part of a wide value cannot be moved, nor can slots that are not there
+		assertThrows(IllegalStateException.class, stack::dup);
+		assertThrows(IllegalStateException.class, stack::dup_x1);
+		stack.clear();
+		stack.push(1L);
+		stack.push(2);
+		assertThrows(IllegalStateException.class, stack::dup_x1);
+		stack.clear();
+		stack.push(1);
+		assertThrows(IllegalStateException.class, stack::dup_x1);
+		assertStack(Slot.of(1));
+	}
+	@Test
 	void testIncompatiblePop() {
 		final Slot[] slots = new Slot[] {
 				Slot.of(1), Slot.of(2f), Slot.of(3L), Slot.of(4d)
@@ -78,6 +206,49 @@ public class StackTest {
 		assertEquals(2, stack.pop().intValue());
 	}
 	@Test
+	void testPeekReference() {
+		final Object receiver = new Object();
+		stack.push(receiver);
+		stack.push(1L);
+		stack.push(2);
+		assertSame(receiver, stack.peekReference(3));
+		assertThrows(ClassCastException.class, () -> stack.peekReference(1));
+		assertEquals(4, stack.size());
+	}
+	@Test
+	void testPopBits() {
+		stack.push(1.5F);
+		stack.push(-1);
+		assertEquals(-1L, stack.popBits(Slot.INT_TYPE));
+		assertThrows(ClassCastException.class, () -> stack.popBits(Slot.INT_TYPE));
+		stack.push(2.5D);
+		assertEquals(Double.doubleToRawLongBits(2.5D), stack.popBits(Slot.DOUBLE_TYPE));
+		assertEquals(0, stack.size());
+	}
+	@Test
+	void testPopTo() {
+		final Locals locals = new Locals(4);
+		stack.push("first");
+		stack.push(1);
+		stack.push(2L);
+		stack.push("x");
+		stack.popTo(locals, 4);
+		assertEquals(1, stack.size());
+		assertEquals(1, locals.loadInt(0));
+		assertEquals(2L, locals.loadLong(1));
+		assertEquals("x", locals.loadReference(3));
+		assertThrows(IllegalStateException.class, () -> stack.popTo(locals, 2));
+		stack.clear();
+		assertEquals(0, stack.size());
+	}
+	@Test
+	void testPushSlot() {
+		assertThrows(IllegalStateException.class, () -> stack.push((Object) Slot.of(1)));
+		stack.push(Slot.of("Hello World").toObject());
+		assertThrows(ClassCastException.class, stack::popInt);
+		assertEquals(0, stack.size());
+	}
+	@Test
 	void testPushNull() {
 		stack.push(null);
 		assertNull(stack.popReference());
@@ -91,6 +262,31 @@ public class StackTest {
 		assertEquals("Hello World", stack.popReference());
 	}
 	@Test
+	void testReplace() {
+		final Object placeholder = new Object();
+		stack.push("other");
+		stack.push(placeholder);
+		stack.push(placeholder);
+		stack.push(3);
+		stack.pop();
+		stack.replace(placeholder, "constructed");
+		assertEquals("constructed", stack.popReference());
+		assertEquals("constructed", stack.popReference());
+		assertEquals("other", stack.popReference());
+	}
+	@Test
+	void testSwap() {
+		stack.push(1);
+		stack.push("two");
+		stack.swap();
+		assertEquals(1, stack.popInt());
+		assertEquals("two", stack.popReference());
+		stack.push(3L);
+		assertThrows(IllegalStateException.class, stack::swap);
+		stack.push(4);
+		assertThrows(IllegalStateException.class, stack::swap);
+	}
+	@Test
 	void testStackPopEmpty() {
 		assertThrows(IndexOutOfBoundsException.class, stack::pop);
 	}
@@ -0,0 +1,155 @@
+/*
+ * Copyright (c) 2020, Alex Blewitt, Bandlem Ltd
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package com.bandlem.jvm.jvmulator;
+import static com.bandlem.jvm.jvmulator.Opcodes.*;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import java.io.DataInputStream;
+import java.io.InputStream;
+import org.junit.jupiter.api.Test;
+import com.bandlem.jvm.jvmulator.classfile.JavaClass;
+class SuperinstructionsTest {
+	public static class Fields {
+		public static int ifNonNull(final Fields fields) {
+			return fields == null ? -1 : fields.value;
+		}
+		public static int ifNull(final Fields fields) {
+			return fields != null ? fields.value : -1;
+		}
+		public static int loop(final int n) {
+			int total = 0;
+			for (int i = 0; i < n; i++) {
+				total += i;
+			}
+			return total;
+		}
+		public int value = 42;
+	}
+	// Runs the code with both engines, checking that the threaded one fuses the
+	// first instruction and that both give the same result
+	private static void expect(final byte[] code, final int... locals) {
+		final Instructions instructions = new Instructions(code);
+		assertNotNull(Superinstructions.fuse(instructions, 0));
+		final JVMFrame threaded = new JVMFrame(null, 3, code);
+		threaded.getThread().setEngine(JVMThread.Engine.THREADED);
+		final JVMFrame interpreted = new JVMFrame(null, 3, code);
+		for (int i = 0; i < locals.length; i++) {
+			threaded.getLocals().store(i, locals[i]);
+			interpreted.getLocals().store(i, locals[i]);
+		}
+		assertEquals(interpreted.run(), threaded.run());
+	}
+	@Test
+	void testArithmetic() {
+		for (final byte op : new byte[] {
+				IADD, ISUB, IMUL
+		}) {
+			expect(new byte[] {
+					ILOAD_0, ILOAD_1, op, ISTORE_2, ILOAD_2, IRETURN
+			}, 7, 3);
+			expect(new byte[] {
+					ILOAD, 0, BIPUSH, 5, op, ISTORE, 2, ILOAD_2, IRETURN
+			}, 7);
+		}
+	}
+	@Test
+	void testCompare() {
+		for (final byte op : new byte[] {
+				IF_ICMPEQ, IF_ICMPNE, IF_ICMPLT, IF_ICMPGE, IF_ICMPGT, IF_ICMPLE
+		}) {
+			for (int a = 1; a <= 3; a++) {
+				expect(new byte[] {
+						ILOAD_0, ILOAD_1, op, 0, 5, ICONST_0, IRETURN, ICONST_1, IRETURN
+				}, a, 2);
+				expect(new byte[] {
+						ILOAD_0, ICONST_2, op, 0, 5, ICONST_0, IRETURN, ICONST_1, IRETURN
+				}, a);
+				expect(new byte[] {
+						ILOAD_0, SIPUSH, 0, 2, op, 0, 5, ICONST_0, IRETURN, ICONST_1, IRETURN
+				}, a);
+			}
+		}
+		for (final byte op : new byte[] {
+				IFEQ, IFNE, IFLT, IFGE, IFGT, IFLE
+		}) {
+			for (int a = -1; a <= 1; a++) {
+				expect(new byte[] {
+						ILOAD_0, op, 0, 5, ICONST_0, IRETURN, ICONST_1, IRETURN
+				}, a);
+			}
+		}
+	}
+	@Test
+	void testFields() {
+		final InputStream in = Fields.class
+				.getResourceAsStream("/" + Fields.class.getName().replace('.', '/') + ".class");
+		final JavaClass javaClass = new JavaClass(new DataInputStream(in));
+		final JVMThread thread = new JVMThread();
+		thread.setEngine(JVMThread.Engine.THREADED);
+		thread.setCompileThreshold(0);
+		for (final String name : new String[] {
+				"ifNonNull", "ifNull"
+		}) {
+			assertEquals(42, thread.run(javaClass, javaClass.getMethod(name), Slot.of(new Fields())).intValue());
+			assertEquals(-1, thread.run(javaClass, javaClass.getMethod(name), Slot.of(null)).intValue());
+		}
+		// The loop test, sum and increment with its back-edge are all fused
+		final Instructions loop = Instructions.of(javaClass.getMethod("loop").getCodeAttribute());
+		assertEquals(45, thread.run(javaClass, javaClass.getMethod("loop"), Slot.of(10)).intValue());
+		assertEquals(10, loop.heat);
+	}
+	@Test
+	void testUnfused() {
+		for (final byte[] code : new byte[][] {
+				{
+						RETURN
+				}, {
+						ALOAD_0, ARETURN
+				}, {
+						ICONST_0, IRETURN
+				}, {
+						ILOAD_0, IRETURN
+				}, {
+						ILOAD_0, ILOAD_1, IADD, IRETURN
+				}, {
+						ILOAD_0, ICONST_1, IADD, IRETURN
+				}, {
+						ILOAD_0, ILOAD_1, IDIV, ISTORE_2, RETURN
+				}, {
+						ILOAD_0, ICONST_1, IDIV, ISTORE_2, RETURN
+				}, {
+						ILOAD_0, ALOAD_1, POP, POP, RETURN
+				}, {
+						IINC, 0, 1, RETURN
+				}, {
+						IINC, 0, 1, GOTO, 0, 3, RETURN
+				}
+		}) {
+			assertNull(Superinstructions.fuse(new Instructions(code), 0));
+		}
+		// A comparison at the end of the code has nothing to store to
+		assertNotNull(Superinstructions.fuse(new Instructions(new byte[] {
+				ICONST_0, IRETURN, ILOAD_0, ILOAD_1, IF_ICMPEQ, (byte) 0xff, (byte) 0xfc
+		}), 2));
+		// A branch into the middle of a fused sequence runs the rest unfused
+		expect(new byte[] {
+				ILOAD_0, ILOAD_1, IADD, ISTORE_2, ILOAD_2, IFNE, 0, 9, ICONST_1, ISTORE_1, ILOAD_0, GOTO, (byte) 0xff,
+				(byte) 0xf6, ILOAD_2, IRETURN
+		}, 0, 0);
+		// Comparisons of values that are not in locals use the stack
+		for (int a = 0; a <= 1; a++) {
+			final JVMFrame frame = new JVMFrame(null, 0, new byte[] {
+					(byte) (ICONST_0 + a), ICONST_1, IF_ICMPGE, 0, 5, ICONST_0, IRETURN, ICONST_1, IRETURN
+			});
+			frame.getThread().setEngine(JVMThread.Engine.THREADED);
+			assertEquals(a, frame.run().intValue());
+		}
+	}
+}
@@ -0,0 +1,44 @@
+/*
+ * Copyright (c) 2020, Alex Blewitt, Bandlem Ltd
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package com.bandlem.jvm.jvmulator;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import org.junit.jupiter.api.Test;
+class SwitchTableTest {
+	@Test
+	void testLookup() {
+		final SwitchTable table = new SwitchTable(0, new int[] {
+				-100, 3, 1000
+		}, new int[] {
+				4, 5, 6
+		}, 9);
+		assertEquals(4, table.target(-100));
+		assertEquals(5, table.target(3));
+		assertEquals(6, table.target(1000));
+		assertEquals(9, table.target(0));
+		assertEquals(9, table.target(Integer.MAX_VALUE));
+	}
+	@Test
+	void testTable() {
+		final SwitchTable table = new SwitchTable(-1, null, new int[] {
+				4, 5, 6
+		}, 9);
+		assertEquals(4, table.target(-1));
+		assertEquals(6, table.target(1));
+		assertEquals(9, table.target(-2));
+		assertEquals(9, table.target(2));
+		// Keys far from the low value wrap to an index outside the targets
+		assertEquals(9, table.target(Integer.MAX_VALUE));
+		assertEquals(9, new SwitchTable(Integer.MAX_VALUE - 1, null, new int[] {
+				4, 5
+		}, 9).target(Integer.MIN_VALUE));
+		assertEquals(9, new SwitchTable(Integer.MIN_VALUE, null, new int[] {
+				4, 5
+		}, 9).target(Integer.MAX_VALUE));
+	}
+}
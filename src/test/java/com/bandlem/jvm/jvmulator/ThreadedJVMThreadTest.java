@@ -0,0 +1,17 @@
+/*
+ * Copyright (c) 2020, Alex Blewitt, Bandlem Ltd
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package com.bandlem.jvm.jvmulator;
+import org.junit.jupiter.api.BeforeEach;
+// Runs the emulated call tests again with the threaded engine
+class ThreadedJVMThreadTest extends JVMThreadTest {
+	@BeforeEach
+	void threaded() {
+		thread.setEngine(JVMThread.Engine.THREADED);
+	}
+}
@@ -0,0 +1,45 @@
+/*
+ * Copyright (c) 2020, Alex Blewitt, Bandlem Ltd
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package com.bandlem.jvm.jvmulator;
+import static com.bandlem.jvm.jvmulator.Opcodes.*;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import org.junit.jupiter.api.Test;
+import com.bandlem.jvm.jvmulator.classfile.JavaClass;
+// Runs the interpreter tests again with the threaded engine
+class ThreadedTest extends JVMTest {
+	@Override
+	JVMFrame frame(final JavaClass javaClass, final int locals, final byte[] code) {
+		final JVMFrame frame = super.frame(javaClass, locals, code);
+		frame.getThread().setEngine(JVMThread.Engine.THREADED);
+		return frame;
+	}
+	@Test
+	void testHandlers() {
+		final Instructions instructions = new Instructions(new byte[] {
+				ICONST_1, ICONST_2, SWAP, ISUB, IRETURN
+		});
+		final Threaded.Handler[] handlers = instructions.getHandlers();
+		assertEquals(5, handlers.length);
+		assertSame(handlers, instructions.getHandlers());
+		final JVMFrame frame = frame(null, 0, new byte[] {
+				ICONST_1, ICONST_2, SWAP, ISUB, IRETURN
+		});
+		assertEquals(JVMThread.Engine.THREADED, frame.getThread().getEngine());
+		assertEquals(1, frame.run().intValue());
+		// Left at the return instruction
+		assertEquals(4, frame.getPC());
+		// Handing a return back to the switch ends the method
+		final JVMFrame fallback = frame(null, 0, new byte[] {
+				ICONST_1, IRETURN
+		});
+		assertEquals(1, fallback.interpret(0));
+		assertEquals(-1, fallback.interpret(1));
+	}
+}
@@ -0,0 +1,107 @@
+/*
+ * Copyright (c) 2020, Alex Blewitt, Bandlem Ltd
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package com.bandlem.jvm.jvmulator;
+import static com.bandlem.jvm.jvmulator.Opcodes.*;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import java.io.DataInputStream;
+import java.io.InputStream;
+import org.junit.jupiter.api.Test;
+import com.bandlem.jvm.jvmulator.classfile.JavaClass;
+class TypeInferenceTest {
+	public static class Arguments {
+		public static double scale(final float a, final double b) {
+			return a * b;
+		}
+		public long add(final long a, final int b) {
+			return a + b;
+		}
+	}
+	private static TypeInference infer(final byte[] code, final byte... entry) {
+		return TypeInference.infer(new Instructions(code), null, entry);
+	}
+	@Test
+	void testDups() {
+		// A field post-increment leaves the old value below the object and the new
+		// value, as does a wide one below an object for dup2_x1
+		final TypeInference inference = infer(new byte[] {
+				ALOAD_0, ILOAD_1, DUP_X1, ISTORE_1, POP, POP, LLOAD_2, ALOAD_0, LLOAD_2, DUP2_X1, POP2, POP, POP2,
+				POP2, RETURN
+		}, Slot.REFERENCE_TYPE, Slot.INT_TYPE, Slot.LONG_TYPE, Slot.EMPTY_TYPE);
+		assertEquals(3, inference.depth(3));
+		assertEquals(Slot.INT_TYPE, inference.type(3, 4));
+		assertEquals(Slot.REFERENCE_TYPE, inference.type(3, 5));
+		assertEquals(Slot.INT_TYPE, inference.type(3, 6));
+		assertEquals(Slot.REFERENCE_TYPE, inference.type(4, 5));
+		assertEquals(7, inference.depth(10));
+		assertEquals(Slot.LONG_TYPE, inference.type(10, 6));
+		assertEquals(Slot.EMPTY_TYPE, inference.type(10, 7));
+		assertEquals(Slot.REFERENCE_TYPE, inference.type(10, 8));
+		assertEquals(Slot.LONG_TYPE, inference.type(10, 9));
+		assertEquals(Slot.EMPTY_TYPE, inference.type(10, 10));
+		// A dup cannot split a wide value
+		assertNull(infer(new byte[] {
+				LLOAD_2, ILOAD_1, DUP_X1, RETURN
+		}, Slot.REFERENCE_TYPE, Slot.INT_TYPE, Slot.LONG_TYPE, Slot.EMPTY_TYPE));
+	}
+	@Test
+	void testEntry() {
+		final InputStream in = Arguments.class
+				.getResourceAsStream("/" + Arguments.class.getName().replace('.', '/') + ".class");
+		final JavaClass javaClass = new JavaClass(new DataInputStream(in));
+		assertArrayEquals(new byte[] {
+				Slot.REFERENCE_TYPE, Slot.LONG_TYPE, Slot.EMPTY_TYPE, Slot.INT_TYPE, Slot.EMPTY_TYPE
+		}, TypeInference.entry(javaClass.getMethod("add"), 5));
+		assertArrayEquals(new byte[] {
+				Slot.FLOAT_TYPE, Slot.DOUBLE_TYPE, Slot.EMPTY_TYPE
+		}, TypeInference.entry(javaClass.getMethod("scale"), 3));
+		assertArrayEquals(new byte[2], TypeInference.entry(null, 2));
+	}
+	@Test
+	void testJoins() {
+		// A local with different types on each path is no longer known
+		final TypeInference inference = infer(new byte[] {
+				ICONST_0, ISTORE_1, ILOAD_0, IFEQ, 0, 5, FCONST_0, FSTORE_1, RETURN
+		}, Slot.INT_TYPE, Slot.EMPTY_TYPE);
+		assertEquals(1, inference.maxDepth);
+		assertEquals(1, inference.depth(3));
+		assertEquals(Slot.INT_TYPE, inference.type(1, 2));
+		assertEquals(Slot.INT_TYPE, inference.type(2, 1));
+		assertEquals(Slot.EMPTY_TYPE, inference.type(6, 1));
+		assertTrue(inference.isTarget(6));
+		assertFalse(inference.isTarget(5));
+		// Nor is one that is only known on one of them
+		assertEquals(Slot.EMPTY_TYPE, infer(new byte[] {
+				ILOAD_0, IFEQ, 0, 5, ICONST_0, ISTORE_1, RETURN
+		}, Slot.INT_TYPE, Slot.EMPTY_TYPE).type(4, 1));
+		// Stack slots must have the same type on each path
+		assertNull(infer(new byte[] {
+				ICONST_0, ICONST_0, IFEQ, 0, 5, POP, FCONST_0, POP, RETURN
+		}, Slot.EMPTY_TYPE));
+	}
+	@Test
+	void testLocals() {
+		// A load of an unknown local is proven by its check, and then known
+		final TypeInference inference = infer(new byte[] {
+				ILOAD_0, ILOAD_0, IADD, IRETURN
+		}, Slot.EMPTY_TYPE);
+		assertEquals(Slot.EMPTY_TYPE, inference.type(0, 0));
+		assertEquals(Slot.INT_TYPE, inference.type(1, 0));
+		// A load of a local known to have another type cannot be proven
+		assertNull(infer(new byte[] {
+				FCONST_0, FSTORE_0, ILOAD_0, IRETURN
+		}, Slot.EMPTY_TYPE));
+		assertNull(infer(new byte[] {
+				IINC, 0, 1, RETURN
+		}, Slot.FLOAT_TYPE));
+	}
+}
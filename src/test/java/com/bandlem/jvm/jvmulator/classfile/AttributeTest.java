@@ -7,16 +7,65 @@
  * http://www.eclipse.org/legal/epl-v10.html
  */
 package com.bandlem.jvm.jvmulator.classfile;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import org.junit.jupiter.api.Test;
+import com.bandlem.jvm.jvmulator.classfile.Attribute.BootstrapMethods;
 import com.bandlem.jvm.jvmulator.classfile.Attribute.Code;
+import com.bandlem.jvm.jvmulator.classfile.Attribute.LineNumberTable;
+import com.bandlem.jvm.jvmulator.classfile.Attribute.LocalVariableTable;
 import com.bandlem.jvm.jvmulator.classfile.Attribute.SourceFile;
+import com.bandlem.jvm.jvmulator.classfile.Attribute.StackMapTable;
 import com.bandlem.jvm.jvmulator.classfile.Attribute.Unknown;
 public class AttributeTest {
+	public static class Sample {
+		public int average(final int[] values) {
+			int total = 0;
+			for (final int value : values) {
+				total += value;
+			}
+			try {
+				return total / values.length;
+			} catch (final ArithmeticException e) {
+				return -1;
+			}
+		}
+	}
+	private static ConstantPool pool(final String... values) throws IOException {
+		final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		final DataOutputStream out = new DataOutputStream(bytes);
+		for (final String value : values) {
+			out.writeByte(ConstantPool.UTFConstant.TYPE);
+			out.writeUTF(value);
+		}
+		return new ConstantPool((short) (values.length + 1),
+				new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+	}
+	@Test
+	void testBootstrapMethods() {
+		final BootstrapMethods methods = (BootstrapMethods) Attribute.of(BootstrapMethods.NAME, null, new byte[] {
+				0x00, 0x02, 0x00, 0x05, 0x00, 0x02, 0x00, 0x07, 0x01, 0x02, 0x00, 0x09, 0x00, 0x00
+		});
+		assertArrayEquals(new int[] {
+				5, 9
+		}, methods.handles);
+		assertArrayEquals(new int[] {
+				7, 258
+		}, methods.arguments[0]);
+		assertEquals(0, methods.arguments[1].length);
+		assertThrows(IllegalArgumentException.class, () -> Attribute.of(BootstrapMethods.NAME, null, new byte[] {
+				0x00, 0x01, 0x00, 0x05
+		}));
+	}
 	@Test
 	void testCodeAttribute() {
 		final Code code = (Code) Attribute.of("Code", null, new byte[] {
@@ -29,12 +78,123 @@ public class AttributeTest {
 		assertEquals(2, bytecode.length);
 		assertEquals((byte) 0xca, bytecode[0]);
 		assertEquals((byte) 0xfe, bytecode[1]);
+		assertEquals(0, code.getExceptionTableLength());
+		final Code table = (Code) Attribute.of("Code", null, new byte[] {
+				0x00, 0x01, 0x00, 0x02, 0x00, 0x00, 0x00, 0x01, (byte) 0xb1, 0x00, 0x01
+		});
+		assertEquals(1, table.getExceptionTableLength());
+		assertEquals(0, table.getAttributes().length);
+		assertNull(table.getAttribute(LineNumberTable.NAME));
+		assertEquals(-1, table.getLineNumber(0));
+	}
+	@Test
+	void testCodeAttributes() throws IOException {
+		final InputStream in = Sample.class
+				.getResourceAsStream("/" + Sample.class.getName().replace('.', '/') + ".class");
+		final JavaClass javaClass = new JavaClass(new DataInputStream(in));
+		final Code code = javaClass.getMethod("average").getCodeAttribute();
+		final int[] handlers = code.getExceptionTable();
+		assertEquals(4, handlers.length);
+		assertSame(handlers, code.getExceptionTable());
+		assertEquals("java/lang/ArithmeticException", javaClass.pool.getClassName(handlers[3]));
+		assertEquals(code.getLineNumber(0) + 7, code.getLineNumber(code.getBytecode().length - 1));
+		final LocalVariableTable variables = (LocalVariableTable) code.getAttribute(LocalVariableTable.NAME);
+		assertEquals("this", variables.getName(0, 0));
+		assertEquals("values", variables.getName(0, 1));
+		assertNull(variables.getName(0, 2));
+		assertNull(variables.getName(0, 9));
+		assertNull(variables.getName(code.getBytecode().length, 0));
+		final StackMapTable frames = (StackMapTable) code.getAttribute(StackMapTable.NAME);
+		final int[][] locals = frames.getLocals(new int[] {
+				StackMapTable.OBJECT, StackMapTable.OBJECT
+		});
+		assertEquals(frames.offsets.length, locals.length);
+		// The handler is entered with the exception on the stack
+		final int handler = frames.offsets.length - 1;
+		assertEquals(handlers[2], frames.offsets[handler]);
+		assertEquals(StackMapTable.OBJECT, frames.getStack(handler)[0] & 0xff);
+		// Other attributes are skipped when looking for the line
+		final Code own = (Code) Attribute.of(Code.NAME, pool("Other", "LineNumberTable"), new byte[] {
+				0x00, 0x01, 0x00, 0x01, 0x00, 0x00, 0x00, 0x01, (byte) 0xb1, 0x00, 0x00, 0x00, 0x02, 0x00, 0x01, 0x00,
+				0x00, 0x00, 0x00, 0x00, 0x02, 0x00, 0x00, 0x00, 0x06, 0x00, 0x01, 0x00, 0x02, 0x00, 0x07
+		});
+		assertEquals(-1, own.getLineNumber(1));
+		assertEquals(7, own.getLineNumber(2));
+	}
+	@Test
+	void testLineNumberTable() {
+		final LineNumberTable lines = (LineNumberTable) Attribute.of(LineNumberTable.NAME, null, new byte[] {
+				0x00, 0x03, 0x00, 0x02, 0x00, 0x0b, 0x00, 0x06, 0x00, 0x0d, 0x00, 0x04, 0x00, 0x0c
+		});
+		assertEquals(-1, lines.getLine(1));
+		assertEquals(11, lines.getLine(3));
+		assertEquals(12, lines.getLine(5));
+		assertEquals(13, lines.getLine(7));
+	}
+	@Test
+	void testDecoded() {
+		final Code code = (Code) Attribute.of("Code", null, new byte[] {
+				0x00, 0x01, 0x00, 0x02, 0x00, 0x00, 0x00, 0x01, 0x00
+		});
+		final Object decoded = code.getDecoded(c -> new Object());
+		assertSame(decoded, code.getDecoded(c -> new Object()));
 	}
 	@Test
 	void testIncompleteData() {
 		assertThrows(IllegalArgumentException.class, () -> Attribute.of("Code", null, new byte[] {}));
 	}
 	@Test
+	void testStackMapTable() {
+		final StackMapTable frames = (StackMapTable) Attribute.of(StackMapTable.NAME, null, new byte[] {
+				0x00, 0x07, 0x03, 0x41, StackMapTable.INTEGER, (byte) 0xf7, 0x00, 0x02, StackMapTable.OBJECT, 0x00,
+				0x05, (byte) 0xfc, 0x00, 0x01, StackMapTable.LONG, (byte) 0xf8, 0x00, 0x00, (byte) 0xfb, 0x00, 0x00,
+				(byte) 0xff, 0x00, 0x01, 0x00, 0x02, StackMapTable.UNINITIALIZED, 0x00, 0x03, StackMapTable.TOP, 0x00,
+				0x01, StackMapTable.NULL
+		});
+		assertArrayEquals(new int[] {
+				3, 5, 8, 10, 11, 12, 14
+		}, frames.offsets);
+		final int[][] locals = frames.getLocals(new int[] {
+				StackMapTable.INTEGER, StackMapTable.FLOAT
+		});
+		assertArrayEquals(new int[][] {
+				{
+						StackMapTable.INTEGER, StackMapTable.FLOAT
+				}, {
+						StackMapTable.INTEGER, StackMapTable.FLOAT
+				}, {
+						StackMapTable.INTEGER, StackMapTable.FLOAT
+				}, {
+						StackMapTable.INTEGER, StackMapTable.FLOAT, StackMapTable.LONG
+				}, {}, {}, {
+						StackMapTable.UNINITIALIZED | 3 << 8, StackMapTable.TOP
+				}
+		}, locals);
+		assertArrayEquals(new int[] {}, frames.getStack(0));
+		assertArrayEquals(new int[] {
+				StackMapTable.INTEGER
+		}, frames.getStack(1));
+		assertArrayEquals(new int[] {
+				StackMapTable.OBJECT | 5 << 8
+		}, frames.getStack(2));
+		assertArrayEquals(new int[] {
+				StackMapTable.NULL
+		}, frames.getStack(6));
+		// Frames cannot remove locals that are not there
+		assertThrows(IllegalArgumentException.class, () -> frames.getLocals(new int[0]));
+		for (final byte[] data : new byte[][] {
+				{
+						0x00, 0x01, (byte) 0x80
+				}, {
+						0x00, 0x01, 0x40, 0x09
+				}, {
+						0x00, 0x01, 0x40, (byte) 0xff
+				}
+		}) {
+			assertThrows(IllegalArgumentException.class, () -> Attribute.of(StackMapTable.NAME, null, data));
+		}
+	}
+	@Test
 	void testSoruceFileAttribute() throws IOException {
 		final DataInputStream dis = new DataInputStream(new ByteArrayInputStream(new byte[] {
 				ConstantPool.UTFConstant.TYPE, 0x00, 0x02, 'O', 'K'
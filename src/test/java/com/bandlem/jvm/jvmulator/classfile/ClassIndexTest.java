@@ -0,0 +1,59 @@
+/*
+ * Copyright (c) 2020, Alex Blewitt, Bandlem Ltd
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package com.bandlem.jvm.jvmulator.classfile;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+public class ClassIndexTest {
+	private static final int CLASSES = 200;
+	private ClassPath classPath;
+	@TempDir
+	Path directory;
+	@BeforeEach
+	void setUp() throws IOException {
+		final String name = ClassIndexTest.class.getName().replace('.', '/') + ".class";
+		final byte[] bytes = ClassIndexTest.class.getClassLoader().getResourceAsStream(name).readAllBytes();
+		for (int i = 0; i < CLASSES; i++) {
+			Files.write(directory.resolve("C" + i + ".class"), bytes);
+		}
+		classPath = new ClassPath(directory);
+	}
+	@Test
+	void testIndex() throws IOException {
+		final ClassIndex index = classPath.index();
+		assertEquals(CLASSES, index.size());
+		assertEquals(classPath.getClassNames(), index.getClassNames());
+		for (int i = 0; i < CLASSES; i++) {
+			assertEquals(ClassIndexTest.class.getName().replace('.', '/'), index.getJavaClass("C" + i).this_class);
+		}
+		assertNull(index.getJavaClass("Missing"));
+		assertThrows(UnsupportedOperationException.class, () -> index.getClassNames().remove("C0"));
+	}
+	@Test
+	void testInvalid() throws IOException {
+		final ForkJoinPool pool = new ForkJoinPool(2);
+		try {
+			assertEquals(1, classPath.index(pool, List.of("C1")).size());
+			assertThrows(IllegalArgumentException.class, () -> classPath.index(pool, List.of("C1", "Missing")));
+			Files.delete(directory.resolve("C150.class"));
+			assertThrows(NoSuchFileException.class, () -> classPath.index(pool, classPath.getClassNames()));
+		} finally {
+			pool.shutdown();
+		}
+	}
+}
@@ -0,0 +1,161 @@
+/*
+ * Copyright (c) 2020, Alex Blewitt, Bandlem Ltd
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package com.bandlem.jvm.jvmulator.classfile;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Set;
+import java.util.jar.JarOutputStream;
+import java.util.jar.Manifest;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+public class ClassPathTest {
+	private static byte[] bytes(final Class<?> type) throws IOException {
+		final String name = type.getName().replace('.', '/') + ".class";
+		return type.getClassLoader().getResourceAsStream(name).readAllBytes();
+	}
+	// Finds the central directory header for the named entry
+	private static int central(final byte[] jar, final String name) {
+		final ByteBuffer buffer = ByteBuffer.wrap(jar).order(ByteOrder.LITTLE_ENDIAN);
+		final byte[] expected = name.getBytes(StandardCharsets.UTF_8);
+		for (int i = 0; i < jar.length - 46 - expected.length; i++) {
+			if (buffer.getInt(i) == 0x02014b50 && buffer.getShort(i + 28) == expected.length
+					&& ByteBuffer.wrap(jar, i + 46, expected.length).equals(ByteBuffer.wrap(expected))) {
+				return i;
+			}
+		}
+		throw new IllegalArgumentException(name);
+	}
+	private static void put(final JarOutputStream out, final String name, final byte[] bytes, final boolean stored)
+			throws IOException {
+		final ZipEntry entry = new ZipEntry(name);
+		if (stored) {
+			final CRC32 crc = new CRC32();
+			crc.update(bytes);
+			entry.setMethod(ZipEntry.STORED);
+			entry.setSize(bytes.length);
+			entry.setCompressedSize(bytes.length);
+			entry.setCrc(crc.getValue());
+		}
+		out.putNextEntry(entry);
+		out.write(bytes);
+		out.closeEntry();
+	}
+	@TempDir
+	Path directory;
+	private byte[] jar;
+	@BeforeEach
+	void setUp() throws IOException {
+		final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		try (JarOutputStream out = new JarOutputStream(bytes, new Manifest())) {
+			put(out, "a/Stored.class", bytes(ClassPathTest.class), true);
+			put(out, "a/Deflated.class", bytes(JavaClassTest.class), false);
+			put(out, "a/Unsupported.class", bytes(JavaClassTest.class), false);
+			put(out, "a/readme.txt", new byte[1], false);
+		}
+		jar = bytes.toByteArray();
+		// Mark one entry with a compression method that cannot be read
+		jar[central(jar, "a/Unsupported.class") + 10] = 12;
+	}
+	@Test
+	void testCache() throws IOException {
+		final ClassPath classPath = new ClassPath(1, write("test.jar", jar));
+		final JavaClass stored = classPath.getJavaClass("a/Stored");
+		assertSame(stored, classPath.getJavaClass("a/Stored"));
+		assertEquals(JavaClassTest.class.getName().replace('.', '/'), classPath.getJavaClass("a/Deflated").this_class);
+		assertNotSame(stored, classPath.getJavaClass("a/Stored"));
+		assertThrows(IllegalArgumentException.class, () -> new ClassPath(0));
+	}
+	@Test
+	void testDirectory() throws IOException {
+		final Path classes = directory.resolve("classes");
+		write("classes/a/Stored.class", bytes(JavaClassTest.class));
+		write("classes/b/Other.class", bytes(ClassPathTest.class));
+		write("classes/b/readme.txt", new byte[1]);
+		Files.createDirectories(classes.resolve("b/directory.class"));
+		final ClassPath classPath = new ClassPath(classes);
+		assertEquals(Set.of("a/Stored", "b/Other"), classPath.getClassNames());
+		assertEquals(ClassPathTest.class.getName().replace('.', '/'), classPath.getJavaClass("b/Other").this_class);
+		assertNull(classPath.getJavaClass("b/readme"));
+		// The jar comes first, so its classes are used where both have them
+		final ClassPath both = new ClassPath(write("test.jar", jar), classes);
+		assertEquals(Set.of("a/Stored", "a/Deflated", "b/Other"), both.getClassNames());
+		assertEquals(ClassPathTest.class.getName().replace('.', '/'), both.getJavaClass("a/Stored").this_class);
+	}
+	@Test
+	void testInvalid() throws IOException {
+		assertThrows(ZipException.class, () -> new ClassPath(write("short.jar", new byte[21])));
+		assertThrows(ZipException.class, () -> new ClassPath(write("text.jar", new byte[100])));
+		final byte[] central = jar.clone();
+		central[central(central, "a/Stored.class")] = 0;
+		assertThrows(ZipException.class, () -> new ClassPath(write("central.jar", central)));
+		// Replace the start of the deflated data with a reserved block type
+		final ByteBuffer buffer = ByteBuffer.wrap(jar).order(ByteOrder.LITTLE_ENDIAN);
+		final int local = buffer.getInt(central(jar, "a/Deflated.class") + 42);
+		jar[local + 30 + buffer.getShort(local + 26) + buffer.getShort(local + 28)] = (byte) 0xff;
+		final ClassPath classPath = new ClassPath(write("corrupt.jar", jar));
+		assertThrows(IllegalArgumentException.class, () -> classPath.getJavaClass("a/Deflated"));
+	}
+	@Test
+	void testInvalidSize() throws IOException {
+		// The central directory's sizes must match the deflated data
+		final ByteBuffer buffer = ByteBuffer.wrap(jar).order(ByteOrder.LITTLE_ENDIAN);
+		final int entry = central(jar, "a/Deflated.class");
+		final int compressed = buffer.getInt(entry + 20);
+		final int size = buffer.getInt(entry + 24);
+		final int[][] sizes = new int[][] {
+				{
+						compressed, size / 2
+				}, {
+						compressed, size + 1
+				}, {
+						compressed - 1, size
+				}
+		};
+		for (int i = 0; i < sizes.length; i++) {
+			buffer.putInt(entry + 20, sizes[i][0]).putInt(entry + 24, sizes[i][1]);
+			final ClassPath classPath = new ClassPath(write("sized" + i + ".jar", jar));
+			assertThrows(IllegalArgumentException.class, () -> classPath.getBytes("a/Deflated"));
+		}
+		buffer.putInt(entry + 20, compressed).putInt(entry + 24, size);
+		assertEquals(ByteBuffer.wrap(bytes(JavaClassTest.class)),
+				new ClassPath(write("sized.jar", jar)).getBytes("a/Deflated"));
+	}
+	@Test
+	void testJar() throws IOException {
+		final ClassPath classPath = new ClassPath(write("test.jar", jar));
+		assertEquals(Set.of("a/Stored", "a/Deflated"), classPath.getClassNames());
+		assertNull(classPath.getBytes("a/Unsupported"));
+		assertNull(classPath.getJavaClass("a/Missing"));
+		final ByteBuffer stored = classPath.getBytes("a/Stored");
+		assertEquals(ByteBuffer.wrap(bytes(ClassPathTest.class)), stored);
+		assertEquals(ByteBuffer.wrap(bytes(JavaClassTest.class)), classPath.getBytes("a/Deflated"));
+		final JavaClass javaClass = classPath.getJavaClass("a/Stored");
+		assertEquals(ClassPathTest.class.getName().replace('.', '/'), javaClass.this_class);
+		assertEquals("()V", javaClass.getMethod("testJar").descriptor);
+	}
+	private Path write(final String name, final byte[] bytes) throws IOException {
+		final Path path = directory.resolve(name);
+		Files.createDirectories(path.getParent());
+		return Files.write(path, bytes);
+	}
+}
@@ -8,11 +8,15 @@
  */
 package com.bandlem.jvm.jvmulator.classfile;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import java.io.ByteArrayInputStream;
 import java.io.DataInput;
 import java.io.DataInputStream;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
 import org.junit.jupiter.api.Test;
 import com.bandlem.jvm.jvmulator.classfile.ConstantPool.ClassConstant;
 import com.bandlem.jvm.jvmulator.classfile.ConstantPool.DoubleConstant;
@@ -32,15 +36,47 @@ import com.bandlem.jvm.jvmulator.classfile.ConstantPool.Package;
 import com.bandlem.jvm.jvmulator.classfile.ConstantPool.StringConstant;
 import com.bandlem.jvm.jvmulator.classfile.ConstantPool.UTFConstant;
 public class ConstantPoolTest {
+	private boolean buffered;
+	// Reads a single item either from a stream or lazily from a buffer
 	Item item(final int... data) throws IOException {
-		final byte[] bytes = new byte[data.length];
+		final byte[] bytes = new byte[data.length + 2];
+		bytes[1] = 2;
 		for (int i = 0; i < data.length; i++) {
-			bytes[i] = (byte) data[i];
+			bytes[i + 2] = (byte) data[i];
 		}
-		final ConstantPool pool = new ConstantPool((short) 2, with(bytes));
+		if (buffered) {
+			return new ConstantPool(ByteBuffer.wrap(bytes)).getItem(1);
+		}
+		final ConstantPool pool = new ConstantPool((short) 2, with(Arrays.copyOfRange(bytes, 2, bytes.length)));
 		return pool.getItem(1);
 	}
 	@Test
+	void testBuffer() throws IOException {
+		final ByteBuffer buffer = ByteBuffer.wrap(new byte[] {
+				0x00, 0x08, // count
+				0x01, 0x00, 0x05, (byte) 0xc3, (byte) 0xa9, (byte) 0xe2, (byte) 0x82, (byte) 0xac, // UTF-8 item
+				0x05, 0x00, 0x00, 0x00, 0x00, 0x00, 0x00, 0x00, 0x03, // Long item
+				0x07, 0x00, 0x01, // Class item
+				0x01, 0x00, 0x06, 0x3c, 0x69, 0x6e, 0x69, 0x74, 0x3e, // UTF-8 item as long as a Long item
+				0x06, 0x00, 0x00, 0x00, 0x00, 0x00, 0x00, 0x00, 0x00, // Double item
+				0x00 // Following data
+		});
+		final ConstantPool pool = new ConstantPool(buffer);
+		assertEquals(40, buffer.position());
+		assertEquals("\u00e9\u20ac", pool.getString(1));
+		assertEquals(3L, ((LongConstant) pool.getItem(2)).value);
+		assertNull(pool.getItem(3));
+		assertEquals("\u00e9\u20ac", pool.getClassName(4));
+		assertSame(pool.getItem(4), pool.getItem(4));
+		assertEquals("<init>", pool.getString(5));
+		assertEquals(0.0, ((DoubleConstant) pool.getItem(6)).value);
+		assertThrows(IllegalArgumentException.class, () -> Item.read(ByteBuffer.wrap(new byte[] {
+				0x02
+		}), 0));
+		buffered = true;
+		testItems();
+	}
+	@Test
 	void testItems() throws IOException {
 		final UTFConstant utfItem = (UTFConstant) item(0x01, 0x00, 0x06, 0x61, 0x6c, 0x62, 0x6c, 0x75, 0x65);
 		assertEquals(1, utfItem.type);
@@ -113,6 +149,16 @@ public class ConstantPoolTest {
 		assertEquals(1, empty.size());
 		assertEquals(3, single.size());
 	}
+	@Test
+	void testResolved() throws IOException {
+		final ConstantPool pool = new ConstantPool((short) 3, with(new byte[] {
+				0x01, 0x00, 0x06, 0x61, 0x6c, 0x62, 0x6c, 0x75, 0x65, // UTF-8 item
+				0x07, 0x00, 0x01 // Class item
+		}));
+		final String resolved = pool.getResolved(2, (p, i) -> new String(p.getClassName(i)));
+		assertEquals("alblue", resolved);
+		assertSame(resolved, pool.getResolved(2, (p, i) -> "not resolved again"));
+	}
 	DataInput with(final byte... data) throws IOException {
 		return new DataInputStream(new ByteArrayInputStream(data));
 	}
@@ -1,12 +1,17 @@
 package com.bandlem.jvm.jvmulator.classfile;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
 import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import java.io.ByteArrayInputStream;
 import java.io.DataInput;
 import java.io.DataInputStream;
+import java.io.IOException;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import com.bandlem.jvm.jvmulator.Opcodes;
@@ -22,6 +27,19 @@ public class JavaClassTest {
 			return field;
 		}
 	}
+	@SuppressWarnings("unused")
+	private static class Overloads {
+		private long value;
+		void set() {
+			value = 0;
+		}
+		void set(final int value) {
+			this.value = value;
+		}
+		void set(final long value) {
+			this.value = value;
+		}
+	}
 	private JavaClass classUnderTest;
 	private ConstantPool pool;
 	private DataInput dis(final byte... bytes) {
@@ -35,6 +53,38 @@ public class JavaClassTest {
 		assertNotNull(classUnderTest);
 		pool = classUnderTest.pool;
 	}
+	@SuppressWarnings("deprecation")
+	@Test
+	void testBuffer() throws IOException {
+		final String name = ClassUnderTest.class.getName().replace('.', '/') + ".class";
+		final byte[] bytes = ClassUnderTest.class.getClassLoader().getResourceAsStream(name).readAllBytes();
+		final ByteBuffer direct = ByteBuffer.allocateDirect(bytes.length + 1);
+		direct.put((byte) 0).put(bytes).position(1);
+		for (final ByteBuffer buffer : new ByteBuffer[] {
+				ByteBuffer.wrap(bytes), direct
+		}) {
+			final int position = buffer.position();
+			final JavaClass javaClass = new JavaClass(buffer);
+			assertEquals(position, buffer.position());
+			assertEquals(classUnderTest.this_class, javaClass.this_class);
+			assertEquals(classUnderTest.super_class, javaClass.super_class);
+			assertEquals(classUnderTest.interfaces[0], javaClass.interfaces[0]);
+			assertEquals(classUnderTest.major, javaClass.major);
+			assertEquals("field", javaClass.fields[0].name);
+			assertEquals(0, javaClass.fields[0].getAttributes().length);
+			assertArrayEquals(classUnderTest.getMethod("run").getCodeAttribute().getBytecode(),
+					javaClass.getMethod("run").getCodeAttribute().getBytecode());
+			assertEquals(JavaClassTest.class.getSimpleName() + ".java", javaClass.getAttribute("SourceFile").toString());
+			assertSame(javaClass.getAttributes(), javaClass.getAttributes());
+			assertSame(javaClass.getAttributes(), javaClass.getClassAttributes());
+		}
+		assertThrows(IllegalArgumentException.class, () -> new JavaClass(ByteBuffer.wrap(new byte[] {
+				(byte) 0xb0, 0x00, (byte) 0xb0, 0x00
+		})));
+		assertThrows(IllegalArgumentException.class,
+				() -> new JavaClass(ByteBuffer.wrap(Arrays.copyOf(bytes, bytes.length - 1))));
+		assertThrows(IllegalArgumentException.class, () -> new JavaClass(ByteBuffer.wrap(Arrays.copyOf(bytes, 15))));
+	}
 	@Test
 	void testClass() {
 		assertEquals(ClassUnderTest.class.getName().replace('.', '/'), classUnderTest.this_class);
@@ -74,5 +124,23 @@ public class JavaClassTest {
 		assertNotNull(classUnderTest.getField("field"));
 		assertNull(classUnderTest.getMethod("Not present"));
 		assertNotNull(classUnderTest.getMethod("run"));
+		assertNotNull(classUnderTest.getMethod("run", "()V"));
+		assertNull(classUnderTest.getMethod("run", "()I"));
+		assertNull(classUnderTest.getMethod("Not present", "()V"));
+		assertNotNull(classUnderTest.getField("field", "Ljava/lang/String;"));
+		assertNull(classUnderTest.getField("field", "I"));
+		assertSame(classUnderTest.getField("field"), classUnderTest.getField(MemberKey.of("field", "Ljava/lang/String;")));
+		assertSame(classUnderTest.getMethod("run"), classUnderTest.getMethod(MemberKey.of("run", "()V")));
+	}
+	@Test
+	void testOverloads() throws IOException {
+		final String name = Overloads.class.getName().replace('.', '/') + ".class";
+		final byte[] bytes = Overloads.class.getClassLoader().getResourceAsStream(name).readAllBytes();
+		final JavaClass overloads = new JavaClass(ByteBuffer.wrap(bytes));
+		// The first declared method is returned without a descriptor
+		assertEquals("()V", overloads.getMethod("set").descriptor);
+		assertEquals("(I)V", overloads.getMethod("set", "(I)V").descriptor);
+		assertEquals("(J)V", overloads.getMethod("set", "(J)V").descriptor);
+		assertSame(overloads.getMethod("set", "(J)V").getKey(), MemberKey.of("set", "(J)V"));
 	}
 }
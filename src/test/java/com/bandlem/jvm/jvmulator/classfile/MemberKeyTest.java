@@ -0,0 +1,66 @@
+/*
+ * Copyright (c) 2020, Alex Blewitt, Bandlem Ltd
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package com.bandlem.jvm.jvmulator.classfile;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import java.lang.ref.WeakReference;
+import org.junit.jupiter.api.Test;
+public class MemberKeyTest {
+	@Test
+	void testEquals() {
+		final MemberKey key = MemberKey.of("run", "()V");
+		final MemberKey copy = new MemberKey("run", "()V");
+		assertNotSame(key, copy);
+		assertEquals(key, copy);
+		assertEquals(key.hashCode(), copy.hashCode());
+		assertEquals(key, key);
+		assertNotEquals(key, new MemberKey("run", "()I"));
+		assertNotEquals(key, new MemberKey("walk", "()V"));
+		// Same hash code, different content
+		assertNotEquals(new MemberKey("Aa", "()V"), new MemberKey("BB", "()V"));
+		assertNotEquals(new MemberKey("x", "Aa"), new MemberKey("x", "BB"));
+		assertNotEquals(key, "run()V");
+		assertEquals("run()V", key.toString());
+	}
+	@Test
+	void testIntern() {
+		final MemberKey key = MemberKey.of("run", "()V");
+		assertSame(key, MemberKey.of("run", "()V"));
+		assertSame(key, MemberKey.of(new String("run"), new String("()V")));
+		assertEquals("run", key.name);
+		assertEquals("()V", key.descriptor);
+	}
+	@Test
+	void testCleared() {
+		// A reference whose key has been collected is replaced, not returned
+		final MemberKey stale = new MemberKey("cleared", "()V");
+		synchronized (MemberKey.KEYS) {
+			MemberKey.KEYS.put(stale, new WeakReference<>(null));
+		}
+		final MemberKey key = MemberKey.of("cleared", "()V");
+		assertEquals(stale, key);
+		assertSame(key, MemberKey.of("cleared", "()V"));
+		synchronized (MemberKey.KEYS) {
+			assertNotSame(stale, MemberKey.KEYS.keySet().stream().filter(key::equals).findFirst().get());
+		}
+	}
+	@Test
+	void testUnreferenced() throws InterruptedException {
+		// Keys that are no longer used are not kept by the intern table
+		final WeakReference<MemberKey> key = new WeakReference<>(MemberKey.of("unreferenced", "()V"));
+		for (int i = 0; i < 100 && key.get() != null; i++) {
+			System.gc();
+			Thread.sleep(10);
+		}
+		assertNull(key.get());
+	}
+}
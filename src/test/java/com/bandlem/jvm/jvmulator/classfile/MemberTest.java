@@ -10,6 +10,7 @@ package com.bandlem.jvm.jvmulator.classfile;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
 import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import java.nio.charset.StandardCharsets;
 import org.junit.jupiter.api.Test;
@@ -29,8 +30,11 @@ public class MemberTest {
 		assertEquals(Double.TYPE, types[6]);
 		assertEquals(String.class, types[7]);
 		assertEquals(Boolean.TYPE, types[8]);
+		assertEquals(Byte.TYPE, Method.argumentTypes("(B)V", null)[0]);
 		assertThrows(IllegalArgumentException.class, () -> Method.argumentTypes("(?)V", null));
-		assertThrows(IllegalStateException.class, () -> Method.argumentTypes("(I", null));
+		assertEquals(0, Method.argumentSlots("()V"));
+		assertEquals(8, Method.argumentSlots("(IJ[DLjava/lang/String;[[Ljava/lang/Object;D)V"));
+		assertThrows(IllegalArgumentException.class, () -> Method.argumentTypes("(I", null));
 		assertThrows(RuntimeException.class, () -> Method.argumentTypes("(Lmissingclass;)V", null));
 	}
 	@Test
@@ -39,7 +43,7 @@ public class MemberTest {
 		assertEquals(12, field.flags);
 		assertEquals("MyField", field.name);
 		assertEquals("[I", field.descriptor);
-		assertNotNull(field.attributes);
+		assertNotNull(field.getAttributes());
 		assertNull(field.getAttribute("Unknown"));
 	}
 	@Test
@@ -56,7 +60,8 @@ public class MemberTest {
 		assertEquals(34, method.flags);
 		assertEquals("MyMethod", method.name);
 		assertEquals("(I)V", method.descriptor);
-		assertNotNull(method.attributes);
+		assertSame(MethodDescriptor.of("(I)V"), method.getMethodDescriptor());
+		assertNotNull(method.getAttributes());
 		assertEquals("Unknown", method.getAttribute("Unknown").attributeName);
 		assertEquals("Code", method.getCodeAttribute().attributeName);
 		assertEquals(0, method.getCodeAttribute().getBytecode().length);
@@ -0,0 +1,102 @@
+/*
+ * Copyright (c) 2020, Alex Blewitt, Bandlem Ltd
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package com.bandlem.jvm.jvmulator.classfile;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.stream.IntStream;
+import org.junit.jupiter.api.Test;
+public class MethodDescriptorTest {
+	@Test
+	void testInvalid() {
+		assertThrows(IllegalArgumentException.class, () -> MethodDescriptor.of(""));
+		assertThrows(IllegalArgumentException.class, () -> MethodDescriptor.of("I"));
+		assertThrows(IllegalArgumentException.class, () -> MethodDescriptor.of("(I"));
+		assertThrows(IllegalArgumentException.class, () -> MethodDescriptor.of("(Ljava/lang/String)V"));
+		assertThrows(IllegalArgumentException.class, () -> MethodDescriptor.of("(?)V"));
+		assertThrows(IllegalArgumentException.class, () -> MethodDescriptor.of("(I)"));
+		assertThrows(IllegalArgumentException.class, () -> MethodDescriptor.of("(I)II"));
+		assertThrows(IllegalArgumentException.class, () -> MethodDescriptor.of("(I)VV"));
+		assertThrows(RuntimeException.class, () -> MethodDescriptor.of("()Lmissing;").getReturnType(null));
+	}
+	@Test
+	void testCapacity() {
+		final MethodDescriptor first = MethodDescriptor.of("(Lfirst;)V");
+		assertSame(first, MethodDescriptor.of("(Lfirst;)V"));
+		for (int i = 0; i < MethodDescriptor.CAPACITY; i++) {
+			MethodDescriptor.of("(Lclass" + i + ";)V");
+		}
+		// The oldest descriptor has been dropped
+		assertNotSame(first, MethodDescriptor.of("(Lfirst;)V"));
+	}
+	@Test
+	void testConcurrent() {
+		// Threads parsing the same descriptor share one instance
+		final MethodDescriptor shared = MethodDescriptor.of("(Lshared;)V");
+		assertTrue(IntStream.range(0, 1000).parallel().mapToObj(i -> MethodDescriptor.of("(Lshared;)V"))
+				.allMatch(descriptor -> descriptor == shared));
+	}
+	@Test
+	void testLayout() {
+		final MethodDescriptor descriptor = MethodDescriptor.of("(IJ[DLjava/lang/String;[[Ljava/lang/Object;D)[I");
+		assertSame(descriptor, MethodDescriptor.of("(IJ[DLjava/lang/String;[[Ljava/lang/Object;D)[I"));
+		assertEquals("(IJ[DLjava/lang/String;[[Ljava/lang/Object;D)[I", descriptor.toString());
+		assertEquals(6, descriptor.getArgumentCount());
+		assertEquals(8, descriptor.slots);
+		assertEquals('[', descriptor.returnKind);
+		final char[] kinds = {
+				'I', 'J', '[', 'L', '[', 'D'
+		};
+		final int[] starts = {
+				0, 1, 3, 4, 5, 6
+		};
+		for (int i = 0; i < kinds.length; i++) {
+			assertEquals(kinds[i], descriptor.getArgumentKind(i));
+			assertEquals(starts[i], descriptor.getArgumentSlot(i));
+		}
+		assertEquals('V', MethodDescriptor.of("()V").returnKind);
+		assertEquals(0, MethodDescriptor.of("()V").slots);
+	}
+	@Test
+	void testTypes() throws Exception {
+		final MethodDescriptor descriptor = MethodDescriptor.of("(ZBSCIJFDLjava/lang/String;[I[[Ljava/lang/Object;)J");
+		final Class<?>[] expected = {
+				boolean.class, byte.class, short.class, char.class, int.class, long.class, float.class,
+				double.class, String.class, int[].class, Object[][].class
+		};
+		final ClassLoader loader = getClass().getClassLoader();
+		final Class<?>[] types = descriptor.getArgumentTypes(loader);
+		assertArrayEquals(expected, types);
+		// Callers get their own copy of the resolved classes
+		types[0] = null;
+		assertArrayEquals(expected, descriptor.getArgumentTypes(loader));
+		assertEquals(long.class, descriptor.getReturnType(loader));
+		assertEquals(void.class, MethodDescriptor.of("()V").getReturnType(null));
+		final MethodDescriptor own = MethodDescriptor.of("()Lcom/bandlem/jvm/jvmulator/classfile/MethodDescriptorTest;");
+		final URL classes = MethodDescriptorTest.class.getProtectionDomain().getCodeSource().getLocation();
+		try (URLClassLoader other = new URLClassLoader(new URL[] {
+				classes
+		}, null)) {
+			assertSame(MethodDescriptorTest.class, own.getReturnType(loader));
+			assertSame(MethodDescriptorTest.class, own.getReturnType(loader));
+			final Class<?> reloaded = own.getReturnType(other);
+			assertNotSame(MethodDescriptorTest.class, reloaded);
+			assertEquals(MethodDescriptorTest.class.getName(), reloaded.getName());
+			// Each loader keeps its own classes, so alternating between them does
+			// not resolve them again
+			assertSame(MethodDescriptorTest.class, own.getReturnType(loader));
+			assertSame(reloaded, own.getReturnType(other));
+		}
+	}
+}